@@ -0,0 +1,96 @@
+package com.acme.onlineshop.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Counting orders into the co-occurrence matrix &amp; reading the top neighbours of an item from a snapshot, for a
+ * catalog of a million items.</p>
+ * <p>Orders hold 2-6 items. Item IDs are skewed (the square of a uniform random number), so a few items are part of
+ * many pairs, like bestsellers are. Queries run on all cores at once, since the snapshot is read without any lock.
+ * Run with: <code>gradle jmh</code></p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CoOccurrenceBenchmark {
+
+    private final static int ITEMS = 1_000_000;
+    private final static int ORDERS = 256 * 1024;
+
+    @Param({"500000"})
+    public int initialOrders;
+
+    private CoOccurrenceCounts counts;
+    private CoOccurrenceCounts.Neighbours neighbours;
+    private long[][] orders;
+    private int nextOrder;
+
+    /**
+     * Position of each query thread, so the threads don't contend on a shared field
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int nextItem;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            // Threads start at different positions, so they don't query the same items in lockstep
+            nextItem = (int) Thread.currentThread().getId() * 7919;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        orders = new long[ORDERS][];
+        for (int i = 0; i < ORDERS; i++) {
+            long[] order = new long[random.nextInt(2, 7)];
+            for (int j = 0; j < order.length; j++) {
+                order[j] = skewedItem(random);
+            }
+            orders[i] = order;
+        }
+        counts = new CoOccurrenceCounts();
+        for (int i = 0; i < initialOrders; i++) {
+            counts.addTogether(orders[i % ORDERS]);
+        }
+        neighbours = counts.topNeighbours(6, 1);
+    }
+
+    private static long skewedItem(SplittableRandom random) {
+        double uniform = random.nextDouble();
+        return 1 + (long) (uniform * uniform * ITEMS);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int countOrder() {
+        counts.addTogether(orders[nextOrder++ & (ORDERS - 1)]);
+        return counts.size();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long[] queryNeighbours(Cursor cursor) {
+        return neighbours.get(orders[cursor.nextItem++ & (ORDERS - 1)][0]);
+    }
+}
@@ -0,0 +1,62 @@
+package com.acme.onlineshop.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Reservations of a single hot item, with 1, 4 &amp; all cores taking pieces at the same time.</p>
+ * <p>With a single stripe every reservation competes for the same counter (like a row lock would), so the throughput
+ * doesn't grow with more threads. With one stripe per core it should grow nearly linear. Run with:
+ * <code>gradle jmh</code></p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StripedStockBenchmark {
+
+    @Param({"1", "8"})
+    public int stripes;
+
+    private StripedStock stock;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        stock = new StripedStock(stripes);
+        // Never sells out during an iteration
+        stock.add(Long.MAX_VALUE / 2);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean reserveSingleThread() {
+        return stock.tryTake(1);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean reserveFourThreads() {
+        return stock.tryTake(1);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean reserveAllCores() {
+        return stock.tryTake(1);
+    }
+}
@@ -34,6 +34,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Profile;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import javax.annotation.PreDestroy;
 import java.io.IOException;
@@ -53,6 +54,7 @@ import java.util.Set;
  */
 @ServletComponentScan
 @SpringBootApplication
+@EnableScheduling
 @PropertySource(value = "classpath:secrets/ssl.properties", ignoreResourceNotFound = true)
 @PropertySource(value = "classpath:secrets/jwt.properties", ignoreResourceNotFound = true)
 @ConfigurationPropertiesScan("com.acme.onlineshop.utils.validators")
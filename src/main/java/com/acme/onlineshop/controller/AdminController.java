@@ -2,14 +2,18 @@ package com.acme.onlineshop.controller;
 
 import com.acme.onlineshop.persistence.item.MainCategory;
 import com.acme.onlineshop.service.CategoryService;
+import com.acme.onlineshop.service.FacetService;
 import com.acme.onlineshop.service.ImageService;
+import com.acme.onlineshop.service.InventoryService;
 import com.acme.onlineshop.service.UserService;
 import com.acme.onlineshop.web.URL;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import javax.servlet.http.HttpSession;
 import java.util.List;
@@ -20,12 +24,17 @@ public class AdminController {
     private final UserService userService;
     private final ImageService imageService;
     private final CategoryService categoryService;
+    private final FacetService facetService;
+    private final InventoryService inventoryService;
 
     @Autowired
-    public AdminController(UserService userService, ImageService imageService, CategoryService categoryService) {
+    public AdminController(UserService userService, ImageService imageService, CategoryService categoryService, FacetService facetService,
+                           InventoryService inventoryService) {
         this.userService = userService;
         this.imageService = imageService;
         this.categoryService = categoryService;
+        this.facetService = facetService;
+        this.inventoryService = inventoryService;
     }
 
     @GetMapping(URL.Path.ADMIN)
@@ -36,7 +45,7 @@ public class AdminController {
 
     @GetMapping(URL.Path.ADMIN_CATEGORIES)
     public String categories(Model model, HttpSession session) {
-        model.addAttribute("categories", categoryService.getAllCategories());
+        model.addAttribute("categories", categoryService.getTree().getMainCategories());
         return URL.ADMIN_CATEGORIES.html;
     }
 
@@ -52,6 +61,14 @@ public class AdminController {
 
     @GetMapping(URL.Path.ADMIN_INVENTORY)
     public String inventory(Model model, HttpSession session) {
+        model.addAttribute("facets", facetService.getFacets(categoryService.getTree()));
+        model.addAttribute("stock", inventoryService.getLevels());
         return URL.ADMIN_INVENTORY.html;
     }
+
+    @PostMapping(URL.Path.ADMIN_INVENTORY)
+    public String restock(HttpSession session, @RequestParam long itemId, @RequestParam int quantity) {
+        inventoryService.restock(itemId, quantity);
+        return "redirect:" + URL.ADMIN_INVENTORY.url;
+    }
 }
@@ -1,21 +1,132 @@
 package com.acme.onlineshop.controller;
 
+import com.acme.onlineshop.controller.errors.ErrorResponseCodes;
+import com.acme.onlineshop.dto.BasketLine;
+import com.acme.onlineshop.dto.ErrorResponse;
+import com.acme.onlineshop.dto.PlacedOrder;
+import com.acme.onlineshop.filters.ErrorCodeFilter;
+import com.acme.onlineshop.persistence.user.User;
+import com.acme.onlineshop.service.BasketService;
+import com.acme.onlineshop.service.CategoryAffinityService;
+import com.acme.onlineshop.service.FacetService;
+import com.acme.onlineshop.service.OrderService;
+import com.acme.onlineshop.service.RecommendationService;
+import com.acme.onlineshop.service.UserService;
 import com.acme.onlineshop.web.URL;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import java.security.Principal;
+import java.util.List;
+import java.util.UUID;
 
+/**
+ * The basket is kept by the {@link BasketService}, <b>not</b> inside the HTTP session: the session is stored in the
+ * database &amp; would be serialized &amp; rewritten on every change of the basket.
+ */
 @Controller
 @RequestMapping(value = URL.Path.BASKET)
 public class BasketController {
 
+    /**
+     * ID of the basket of an anonymous visitor
+     */
+    public final static String BASKET_SESSION_ATTRIBUTE = "basket_id";
+
+    private final BasketService basketService;
+    private final OrderService orderService;
+    private final UserService userService;
+    private final FacetService facetService;
+    private final CategoryAffinityService affinityService;
+    private final RecommendationService recommendationService;
+
+    @Autowired
+    public BasketController(BasketService basketService, OrderService orderService, UserService userService, FacetService facetService,
+                            CategoryAffinityService affinityService, RecommendationService recommendationService) {
+        this.basketService = basketService;
+        this.orderService = orderService;
+        this.userService = userService;
+        this.facetService = facetService;
+        this.affinityService = affinityService;
+        this.recommendationService = recommendationService;
+    }
+
+    @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class})
+    private ResponseEntity<ErrorResponse> handleInvalidArgument(HttpServletResponse response, RuntimeException exc) {
+        response.setIntHeader(ErrorCodeFilter.ERROR_CODE_FIELD, ErrorResponseCodes.COMMON_ERROR.errorCode);
+        ErrorResponse error = new ErrorResponse(ErrorResponseCodes.COMMON_ERROR.errorCode, exc.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
     @GetMapping("")
-    public String getBasket(Model model, HttpSession session) {
-        //TODO...
+    public String getBasket(Model model, HttpSession session, Principal principal, @RequestParam(value = "order", required = false) Long orderId) {
+        model.addAttribute("basket", basketService.getLines(owner(session, principal)));
+        // Sent back with the checkout, so a resubmitted checkout form never places a second order
+        model.addAttribute("checkoutKey", UUID.randomUUID().toString());
+        model.addAttribute("order", orderId);
         return URL.BASKET.html;
     }
+
+    @PostMapping("")
+    public String addItem(HttpSession session, Principal principal, @RequestParam long itemId, @RequestParam(defaultValue = "1") int quantity) {
+        String owner = owner(session, principal);
+        if (basketService.add(owner, itemId, quantity) == quantity) {
+            // New line: bought together with everything already in the basket
+            recommendationService.recordBasketAdd(itemId, basketService.getLines(owner));
+        }
+        User user = userService.getCurrentUser();
+        long categoryId = facetService.getCategory(itemId);
+        if (user != null && categoryId != 0) {
+            affinityService.recordBasketAdd(user.getUserId(), categoryId);
+        }
+        return "redirect:" + URL.BASKET.url;
+    }
+
+    @PostMapping("/{itemId}")
+    public String setQuantity(HttpSession session, Principal principal, @PathVariable long itemId, @RequestParam int quantity) {
+        basketService.setQuantity(owner(session, principal), itemId, quantity);
+        return "redirect:" + URL.BASKET.url;
+    }
+
+    @PostMapping("/checkout")
+    public String checkout(HttpSession session, Principal principal, @RequestParam String checkoutKey) {
+        String owner = owner(session, principal);
+        List<BasketLine> lines = basketService.getLines(owner);
+        PlacedOrder order = orderService.place(owner, checkoutKey, lines);
+        basketService.clear(owner);
+        return "redirect:%s?order=%d".formatted(URL.BASKET.url, order.orderId());
+    }
+
+    @PostMapping("/clear")
+    public String clear(HttpSession session, Principal principal) {
+        basketService.clear(owner(session, principal));
+        return "redirect:" + URL.BASKET.url;
+    }
+
+    /**
+     * Logged-in users keep their basket across sessions, anonymous visitors per session. The basket of a session has
+     * its own random ID, since the session ID changes on login, but the basket has to be found to be merged.
+     */
+    private static String owner(HttpSession session, Principal principal) {
+        if (principal != null) {
+            return BasketService.userOwner(principal.getName());
+        }
+        String basketId = (String) session.getAttribute(BASKET_SESSION_ATTRIBUTE);
+        if (basketId == null) {
+            basketId = UUID.randomUUID().toString();
+            session.setAttribute(BASKET_SESSION_ATTRIBUTE, basketId);
+        }
+        return BasketService.sessionOwner(basketId);
+    }
 }
@@ -0,0 +1,79 @@
+package com.acme.onlineshop.controller;
+
+import com.acme.onlineshop.controller.errors.ErrorResponseCodes;
+import com.acme.onlineshop.dto.ErrorResponse;
+import com.acme.onlineshop.filters.ErrorCodeFilter;
+import com.acme.onlineshop.service.ExportService;
+import com.acme.onlineshop.web.OpenAPIConfig;
+import com.acme.onlineshop.web.RESTVersionURL;
+import com.acme.onlineshop.web.URL;
+import io.swagger.v3.oas.annotations.Hidden;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Locale;
+
+@RestController
+@RequestMapping(value = URL.Path.REST_EXPORT)
+@Tag(name = "Export", description = "Endpoints to export the catalog & users")
+public class ExportController {
+
+    private final static String GZIP_VALUE = "application/gzip";
+
+    private final ExportService exportService;
+
+    @Hidden
+    @ExceptionHandler(IllegalArgumentException.class)
+    private ResponseEntity<ErrorResponse> handleInvalidArgument(HttpServletResponse response, IllegalArgumentException exc) {
+        response.setIntHeader(ErrorCodeFilter.ERROR_CODE_FIELD, ErrorResponseCodes.COMMON_ERROR.errorCode);
+        ErrorResponse error = new ErrorResponse(ErrorResponseCodes.COMMON_ERROR.errorCode, exc.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
+    @Autowired
+    public ExportController(ExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    //------------------------------------------------------ GET -------------------------------------------------------
+
+    @Operation(summary = "Streams all rows of a dataset (items, categories or users) as NDJSON or CSV file, optionally GZIP compressed. Rows are read & sent chunk by chunk, so even huge exports need constant memory.", security = { @SecurityRequirement(name = OpenAPIConfig.BEARER_KEY) })
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Returns all rows of the dataset as file",
+                    content = {@Content(mediaType = "application/x-ndjson"), @Content(mediaType = "text/csv"), @Content(mediaType = GZIP_VALUE)}
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "If dataset or format is unknown",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = ErrorResponse.class))}
+            )
+    })
+    @GetMapping(RESTVersionURL.URL.V_01 + "/{dataset}")
+    public void export(@Parameter(description = "Data to export", example = "items") @PathVariable("dataset") String dataset,
+                       @Parameter(description = "Format of the rows") @RequestParam(value = "format", defaultValue = "ndjson") String format,
+                       @Parameter(description = "Compress the file with GZIP") @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+                       HttpServletResponse response) throws IOException {
+        ExportService.Dataset exported = ExportService.Dataset.valueOf(dataset.toUpperCase(Locale.ROOT));
+        ExportService.Format exportFormat = ExportService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        response.setContentType(gzip ? GZIP_VALUE : exportFormat.mediaType + ";charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(exported.fileName(exportFormat, gzip)).build().toString());
+        exportService.export(exported, exportFormat, gzip, response.getOutputStream());
+    }
+}
@@ -1,29 +1,36 @@
 package com.acme.onlineshop.controller;
 
+import com.acme.onlineshop.dto.MediaFilePage;
 import com.acme.onlineshop.exception.StorageException;
 import com.acme.onlineshop.exception.StorageFileNotFoundException;
 import com.acme.onlineshop.persistence.user.User;
+import com.acme.onlineshop.service.ImageDeliveryService;
+import com.acme.onlineshop.service.ImageDerivativeService;
 import com.acme.onlineshop.service.ImageService;
+import com.acme.onlineshop.service.MediaManifestService;
 import com.acme.onlineshop.service.UserService;
 import com.acme.onlineshop.web.URL;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.context.ApplicationContext;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.MvcUriComponentsBuilder;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.security.Principal;
-import java.util.stream.Collectors;
+import java.util.List;
 
 /**
  * <p>Controller for uploading all kind of different files</p>
@@ -36,38 +43,65 @@ public class FileUploadController {
 
     private final UserService userService;
     private final ImageService imageService;
+    private final ImageDerivativeService imageDerivativeService;
+    private final ImageDeliveryService imageDeliveryService;
 
     @Autowired
-    public FileUploadController(UserService userService, ImageService imageService) {
+    public FileUploadController(UserService userService, ImageService imageService, ImageDerivativeService imageDerivativeService, ImageDeliveryService imageDeliveryService) {
         this.userService = userService;
         this.imageService = imageService;
+        this.imageDerivativeService = imageDerivativeService;
+        this.imageDeliveryService = imageDeliveryService;
     }
 
     @GetMapping("/image")
-    public String listUploadedUserImages(Model model) {
+    public String listUploadedUserImages(@RequestParam(required = false) String cursor,
+                                         @RequestParam(defaultValue = "50") int size,
+                                         @RequestParam(defaultValue = "NAME") MediaManifestService.SortField sort,
+                                         @RequestParam(defaultValue = "ASC") Sort.Direction direction, Model model) {
         User currentUser = userService.getCurrentUser();
-        model.addAttribute("images", imageService.loadAll(currentUser).map(path -> MvcUriComponentsBuilder.fromMethodName(FileUploadController.class,"serveUserFile", currentUser.getUsername(), path.getFileName().toString()).build().toUri().toString()).collect(Collectors.toList()));
+        if (currentUser == null) {
+            model.addAttribute("images", List.of());
+            return URL.UPLOAD_FILE.html;
+        }
+        MediaFilePage images;
+        try {
+            images = imageService.list(currentUser, cursor, size, sort, direction);
+        } catch (IllegalArgumentException exc) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, exc.getMessage(), exc);
+        }
+        model.addAttribute("images", images.files().stream().map(image -> MvcUriComponentsBuilder.fromMethodName(FileUploadController.class,"serveUserFile", currentUser.getUsername(), image.getName(), null, null).build().toUri().toString()).toList());
+        model.addAttribute("cursor", cursor);
+        model.addAttribute("nextCursor", images.nextCursor());
+        model.addAttribute("size", size);
+        model.addAttribute("sort", sort);
+        model.addAttribute("direction", direction);
         return URL.UPLOAD_FILE.html;
     }
 
     @GetMapping("/images/{imageName:.+}")
-    @ResponseBody
-    public ResponseEntity<Resource> serveFile(@PathVariable String imageName) {
-        Resource file = imageService.loadAsResource(imageName);
-        return ResponseEntity.ok().header(HttpHeaders.CONTENT_DISPOSITION,"attachment; filename=\"" + file.getFilename() + "\"").body(file);
+    public void serveFile(@PathVariable String imageName, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        imageDeliveryService.send(imageName, request, response);
     }
 
     @GetMapping("/images/{userName}/{imageName:.+}")
-    @ResponseBody
-    public ResponseEntity<Resource> serveUserFile(@PathVariable String userName, @PathVariable String imageName) {
-        Resource file = imageService.loadAsResource(userName + "/" + imageName);
-        return ResponseEntity.ok().header(HttpHeaders.CONTENT_DISPOSITION,"attachment; filename=\"" + file.getFilename() + "\"").body(file);
+    public void serveUserFile(@PathVariable String userName, @PathVariable String imageName, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        imageDeliveryService.send(userName + "/" + imageName, request, response);
+    }
+
+    /**
+     * Serves content addressed files by their hash. Such URLs never change their content &amp; are cached immutable.
+     */
+    @GetMapping("/blobs/{contentHash:[0-9a-f]{64}}")
+    public void serveBlob(@PathVariable String contentHash, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        imageDeliveryService.sendBlob(contentHash, request, response);
     }
 
     @PostMapping("/image")
     public String handleFileUpload(@RequestParam("file") MultipartFile file, RedirectAttributes redirectAttributes) {
         try {
-            imageService.store(file, userService.getCurrentUser());
+            Path storedFile = imageService.store(file, userService.getCurrentUser());
+            imageDerivativeService.submit(storedFile);
             redirectAttributes.addFlashAttribute("message", "You successfully uploaded " + file.getOriginalFilename() + "!");
         } catch (StorageException exc) {
             redirectAttributes.addFlashAttribute("message", "Error occurred during image uploading process: " + exc.getMessage());
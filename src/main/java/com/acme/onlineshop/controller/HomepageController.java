@@ -1,19 +1,33 @@
 package com.acme.onlineshop.controller;
 
 import com.acme.onlineshop.dto.FavouriteCategory;
+import com.acme.onlineshop.dto.Recommendation;
+import com.acme.onlineshop.persistence.item.Item;
+import com.acme.onlineshop.persistence.user.User;
+import com.acme.onlineshop.service.CategoryAffinityService;
 import com.acme.onlineshop.service.CategoryService;
+import com.acme.onlineshop.service.CategoryTree;
+import com.acme.onlineshop.service.CompletionService;
+import com.acme.onlineshop.service.FacetService;
 import com.acme.onlineshop.service.ImageService;
+import com.acme.onlineshop.service.ItemService;
+import com.acme.onlineshop.service.PriceService;
+import com.acme.onlineshop.service.RecommendationService;
+import com.acme.onlineshop.service.SearchService;
 import com.acme.onlineshop.service.UserService;
 import com.acme.onlineshop.web.URL;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.server.ResponseStatusException;
 
 import javax.servlet.http.HttpSession;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -23,36 +37,106 @@ public class HomepageController {
     private final UserService userService;
     private final CategoryService categoryService;
     private final ImageService imageService;
+    private final SearchService searchService;
+    private final CompletionService completionService;
+    private final FacetService facetService;
+    private final CategoryAffinityService affinityService;
+    private final ItemService itemService;
+    private final PriceService priceService;
+    private final RecommendationService recommendationService;
 
     @Autowired
-    public HomepageController(UserService userService, CategoryService categoryService, ImageService imageService) {
+    public HomepageController(UserService userService, CategoryService categoryService, ImageService imageService, SearchService searchService,
+                              CompletionService completionService, FacetService facetService, CategoryAffinityService affinityService,
+                              ItemService itemService, PriceService priceService, RecommendationService recommendationService) {
         this.userService = userService;
         this.categoryService = categoryService;
         this.imageService = imageService;
+        this.searchService = searchService;
+        this.completionService = completionService;
+        this.facetService = facetService;
+        this.affinityService = affinityService;
+        this.itemService = itemService;
+        this.priceService = priceService;
+        this.recommendationService = recommendationService;
     }
 
     @GetMapping(URL.Path.HOME)
     public String homePage(Model model, HttpSession session) {
         model.addAttribute("logo", imageService.getLogo());
-        model.addAttribute("favourites", getFavouriteCategories());
+        model.addAttribute("favourites", getFavouriteCategories(userService.getCurrentUser()));
         return URL.HOME.html;
     }
 
-    @GetMapping(URL.Path.CATEGORY+"/{category}")
-    public String category(Model model, HttpSession session, @PathVariable String category) {
-        model.addAttribute("category", category);
+    /**
+     * Renders a main or sub-category. Its path is resolved from the in-memory category tree, so unknown paths (e.g.
+     * guessed by crawlers) are answered with 404 without touching the database.
+     */
+    @GetMapping({URL.Path.CATEGORY+"/{category}", URL.Path.CATEGORY+"/{category}/{subCategory}"})
+    public String category(Model model, HttpSession session, @PathVariable String category, @PathVariable(required = false) String subCategory) {
+        String path = (subCategory != null) ? category + CategoryTree.PATH_SEPARATOR + subCategory : category;
+        CategoryTree.Node node = categoryService.getTree().resolve(path);
+        if (node == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown category: " + path);
+        }
+        User user = userService.getCurrentUser();
+        if (user != null) {
+            affinityService.recordView(user.getUserId(), node.isMainCategory() ? node.getId() : node.getMainCategoryId());
+        }
+        model.addAttribute("category", node.getName());
+        model.addAttribute("facets", facetService.getFacets(node));
         return URL.CATEGORY.html;
     }
 
+    /**
+     * Renders an item with the items frequently bought together with it. Recommendations &amp; their prices are read
+     * from memory, only the item itself is queried.
+     */
+    @GetMapping(URL.Path.ITEM+"/{itemId}")
+    public String item(Model model, HttpSession session, @PathVariable long itemId) {
+        Item item = itemService.findDetail(itemId).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown item: " + itemId));
+        List<Recommendation> recommendations = new ArrayList<>();
+        for (long recommendedId : recommendationService.getFrequentlyBoughtWith(itemId)) {
+            long price = priceService.getPrice(recommendedId);
+            // Deleted items are skipped, until their pairs are pruned
+            if (price != PriceService.UNKNOWN) {
+                recommendations.add(new Recommendation(recommendedId, price, URL.ITEM.url + "/" + recommendedId));
+            }
+        }
+        model.addAttribute("item", item);
+        model.addAttribute("recommendations", recommendations);
+        return URL.ITEM.html;
+    }
+
     @GetMapping(URL.Path.SEARCH)
     public String search(Model model, HttpSession session, @RequestParam String search) {
         model.addAttribute("searchText", search);
-        System.out.println("SEARCH: "+ search);
+        model.addAttribute("searchResults", searchService.search(search));
+        completionService.recordSearch(search);
         return URL.SEARCH.html;
     }
 
-    //TODO: Add User ID to parameter, make DB request, build users favourite categories
-    private List<FavouriteCategory> getFavouriteCategories() {
-        return categoryService.getAllMainCategories().stream().map(category -> new FavouriteCategory(category.getName(), category.getLink())).collect(Collectors.toList());
+    /**
+     * Favourites of a logged-in user come from the in-memory {@link CategoryAffinityService}, without any query. Anonymous
+     * users &amp; users without any activity get all main categories.
+     *
+     * @param user Current user or <code>null</code>
+     */
+    private List<FavouriteCategory> getFavouriteCategories(User user) {
+        CategoryTree tree = categoryService.getTree();
+        if (user != null) {
+            List<FavouriteCategory> favourites = new ArrayList<>();
+            for (long categoryId : affinityService.getFavourites(user.getUserId())) {
+                CategoryTree.Node category = tree.get(categoryId);
+                // Deleted categories are skipped, until their scores have decayed
+                if (category != null && category.isMainCategory()) {
+                    favourites.add(new FavouriteCategory(category.getName(), category.getLink()));
+                }
+            }
+            if (!favourites.isEmpty()) {
+                return favourites;
+            }
+        }
+        return tree.getMainCategories().stream().map(category -> new FavouriteCategory(category.getName(), category.getLink())).collect(Collectors.toList());
     }
 }
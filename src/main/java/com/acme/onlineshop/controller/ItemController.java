@@ -1,6 +1,115 @@
 package com.acme.onlineshop.controller;
 
+import com.acme.onlineshop.controller.errors.ErrorResponseCodes;
+import com.acme.onlineshop.dto.ErrorResponse;
+import com.acme.onlineshop.dto.ItemImportStatus;
+import com.acme.onlineshop.dto.ItemTilePage;
+import com.acme.onlineshop.filters.ErrorCodeFilter;
+import com.acme.onlineshop.service.ItemImportService;
+import com.acme.onlineshop.service.ItemService;
+import com.acme.onlineshop.web.OpenAPIConfig;
+import com.acme.onlineshop.web.RESTVersionURL;
+import com.acme.onlineshop.web.URL;
+import io.swagger.v3.oas.annotations.Hidden;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+
+@RestController
+@RequestMapping(value = URL.Path.REST_ITEMS)
+@Tag(name = "Items", description = "Endpoints to browse & import the item catalog")
 public class ItemController {
 
+    private final ItemService itemService;
+    private final ItemImportService itemImportService;
+
+    @Hidden
+    @ExceptionHandler(IllegalArgumentException.class)
+    private ResponseEntity<ErrorResponse> handleInvalidArgument(HttpServletResponse response, IllegalArgumentException exc) {
+        response.setIntHeader(ErrorCodeFilter.ERROR_CODE_FIELD, ErrorResponseCodes.COMMON_ERROR.errorCode);
+        ErrorResponse error = new ErrorResponse(ErrorResponseCodes.COMMON_ERROR.errorCode, exc.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
+    @Autowired
+    public ItemController(ItemService itemService, ItemImportService itemImportService) {
+        this.itemService = itemService;
+        this.itemImportService = itemImportService;
+    }
+
+    //------------------------------------------------------ GET -------------------------------------------------------
+
+    @Operation(summary = "Lists the item catalog page by page. Every page is requested with the cursor of the previous one, so every page is as fast as the first one.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Returns requested page of item tiles & the cursor of the next page",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = ItemTilePage.class))}
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "If cursor is invalid",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = ErrorResponse.class))}
+            )
+    })
+    @GetMapping(value = RESTVersionURL.URL.V_01, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ItemTilePage getItems(@Parameter(description = "Only list items of this sub-category") @RequestParam(value = "subCategory", required = false) Long subCategoryId,
+                                 @Parameter(description = "Cursor of the previous page, omit for the first page") @RequestParam(value = "cursor", required = false) String cursor,
+                                 @Parameter(description = "Amount of items per page (max. " + ItemService.MAX_PAGE_SIZE + ")") @RequestParam(value = "size", defaultValue = "" + ItemService.DEFAULT_PAGE_SIZE) int size) {
+        return itemService.listTiles(subCategoryId, cursor, size);
+    }
+
+    @Operation(summary = "Returns the progress of the running or last bulk import of items", security = { @SecurityRequirement(name = OpenAPIConfig.BEARER_KEY) })
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Returns progress of the running or last import",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = ItemImportStatus.class))}
+            ),
+            @ApiResponse(
+                    responseCode = "204",
+                    description = "If there hasn't been any import yet",
+                    content = @Content
+            )
+    })
+    @GetMapping(value = RESTVersionURL.URL.V_01 + "/import", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ItemImportStatus> getImport() {
+        ItemImportStatus status = itemImportService.getStatus();
+        return (status != null) ? ResponseEntity.ok(status) : ResponseEntity.noContent().build();
+    }
+
+    //----------------------------------------------------- POST -------------------------------------------------------
 
+    @Operation(summary = "Starts to import items from CSV or NDJSON files inside the import directory in background. Completely imported files are skipped, interrupted imports continue after the last committed row. Does nothing, if an import is running already.", security = { @SecurityRequirement(name = OpenAPIConfig.BEARER_KEY) })
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Returns progress of the started (or already running) import",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = ItemImportStatus.class))}
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "If a file doesn't exist inside the import directory or has an unknown format",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = ErrorResponse.class))}
+            )
+    })
+    @PostMapping(value = RESTVersionURL.URL.V_01 + "/import", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public ItemImportStatus startImport(@Parameter(description = "Files inside the import directory, omit to import all files") @RequestParam(value = "file", required = false) List<String> files) throws IOException {
+        return itemImportService.start((files == null || files.isEmpty()) ? itemImportService.listFiles() : files);
+    }
 }
@@ -0,0 +1,202 @@
+package com.acme.onlineshop.controller;
+
+import com.acme.onlineshop.controller.errors.ErrorResponseCodes;
+import com.acme.onlineshop.dto.BatchUploadResponse;
+import com.acme.onlineshop.dto.ErrorResponse;
+import com.acme.onlineshop.dto.LayoutMigrationStatus;
+import com.acme.onlineshop.dto.MediaGcReport;
+import com.acme.onlineshop.exception.StorageException;
+import com.acme.onlineshop.filters.ErrorCodeFilter;
+import com.acme.onlineshop.persistence.user.User;
+import com.acme.onlineshop.service.MediaBatchService;
+import com.acme.onlineshop.service.MediaGarbageCollectionService;
+import com.acme.onlineshop.service.MediaLayoutMigrationService;
+import com.acme.onlineshop.service.UserService;
+import com.acme.onlineshop.web.OpenAPIConfig;
+import com.acme.onlineshop.web.RESTVersionURL;
+import com.acme.onlineshop.web.URL;
+import io.swagger.v3.oas.annotations.Hidden;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.Principal;
+import java.util.List;
+
+@RestController
+@RequestMapping(value = URL.Path.REST_MEDIA)
+@Tag(name = "Media", description = "Endpoints to upload media files")
+public class MediaController {
+
+    private final static String ZIP_VALUE = "application/zip";
+
+    private final UserService userService;
+    private final MediaBatchService mediaBatchService;
+    private final MediaLayoutMigrationService layoutMigrationService;
+    private final MediaGarbageCollectionService garbageCollectionService;
+
+    @Hidden
+    @ExceptionHandler(StorageException.class)
+    private ResponseEntity<ErrorResponse> handleStorageError(HttpServletResponse response, StorageException exc) {
+        response.setIntHeader(ErrorCodeFilter.ERROR_CODE_FIELD, ErrorResponseCodes.COMMON_ERROR.errorCode);
+        ErrorResponse error = new ErrorResponse(ErrorResponseCodes.COMMON_ERROR.errorCode, exc.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
+    @Autowired
+    public MediaController(UserService userService, MediaBatchService mediaBatchService, MediaLayoutMigrationService layoutMigrationService,
+                           MediaGarbageCollectionService garbageCollectionService) {
+        this.userService = userService;
+        this.mediaBatchService = mediaBatchService;
+        this.layoutMigrationService = layoutMigrationService;
+        this.garbageCollectionService = garbageCollectionService;
+    }
+
+    //------------------------------------------------------ GET -------------------------------------------------------
+
+    @Operation(summary = "Returns the progress of the migration of all media files into the configured on-disk layout", security = { @SecurityRequirement(name = OpenAPIConfig.BEARER_KEY) })
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Returns progress of the current or last migration",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = LayoutMigrationStatus.class))}
+            )
+    })
+    @GetMapping(value = RESTVersionURL.URL.V_01 + "/layout-migration", produces = MediaType.APPLICATION_JSON_VALUE)
+    public LayoutMigrationStatus getLayoutMigration() {
+        return layoutMigrationService.getStatus();
+    }
+
+    @Operation(summary = "Returns the report of the running or last run of the media garbage collector", security = { @SecurityRequirement(name = OpenAPIConfig.BEARER_KEY) })
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Returns report of the running or last run",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = MediaGcReport.class))}
+            ),
+            @ApiResponse(
+                    responseCode = "204",
+                    description = "If the garbage collector hasn't run yet",
+                    content = @Content
+            )
+    })
+    @GetMapping(value = RESTVersionURL.URL.V_01 + "/garbage-collection", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<MediaGcReport> getGarbageCollection() {
+        MediaGcReport report = garbageCollectionService.getReport();
+        return (report != null) ? ResponseEntity.ok(report) : ResponseEntity.noContent().build();
+    }
+
+    //----------------------------------------------------- POST -------------------------------------------------------
+
+    @Operation(summary = "Uploads many images at once. Every file is validated & stored on its own, the result document lists the outcome of each file in upload order.", security = { @SecurityRequirement(name = OpenAPIConfig.BEARER_KEY) })
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Returns outcome of every uploaded file",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = BatchUploadResponse.class))}
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "If batch exceeds the limits or user is unknown",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = ErrorResponse.class))}
+            )
+    })
+    @PostMapping(value = RESTVersionURL.URL.V_01 + "/images", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public BatchUploadResponse uploadImages(@Parameter(description = "Image files") @RequestParam("files") List<MultipartFile> files, Principal principal) {
+        return new BatchUploadResponse(mediaBatchService.storeAll(files, currentUser(principal)));
+    }
+
+    @Operation(summary = "Uploads all images of a zip archive, which is sent as request body. Directories inside the archive are ignored. The result document lists the outcome of each file in archive order.", security = { @SecurityRequirement(name = OpenAPIConfig.BEARER_KEY) })
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Returns outcome of every file inside the archive",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = BatchUploadResponse.class))}
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "If archive is invalid, exceeds the limits or user is unknown",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = ErrorResponse.class))}
+            )
+    })
+    @PostMapping(value = RESTVersionURL.URL.V_01 + "/images", consumes = ZIP_VALUE)
+    public BatchUploadResponse uploadImageArchive(HttpServletRequest request, Principal principal) throws IOException {
+        User user = currentUser(principal);
+        try (InputStream archive = request.getInputStream()) {
+            return new BatchUploadResponse(mediaBatchService.storeArchive(archive, user));
+        }
+    }
+
+    @Operation(summary = "Starts to move all media files into the configured on-disk layout in background. Files stay readable during the whole migration. Does nothing, if a migration is running already.", security = { @SecurityRequirement(name = OpenAPIConfig.BEARER_KEY) })
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Returns progress right after start",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = LayoutMigrationStatus.class))}
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "If files are stored content addressed",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = ErrorResponse.class))}
+            )
+    })
+    @PostMapping(value = RESTVersionURL.URL.V_01 + "/layout-migration", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public LayoutMigrationStatus startLayoutMigration() {
+        return layoutMigrationService.start();
+    }
+
+    @Operation(summary = "Starts a run of the media garbage collector in background, which quarantines or deletes orphaned media files. Does nothing, if a run is in progress already.", security = { @SecurityRequirement(name = OpenAPIConfig.BEARER_KEY) })
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Returns report of the started (or already running) run",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = MediaGcReport.class))}
+            )
+    })
+    @PostMapping(value = RESTVersionURL.URL.V_01 + "/garbage-collection", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public MediaGcReport startGarbageCollection() {
+        return garbageCollectionService.start();
+    }
+
+    //---------------------------------------------------- DELETE ------------------------------------------------------
+
+    @Operation(summary = "Cancels a running layout migration after the current file. Moved files stay where they are, a later migration continues with the remaining ones.", security = { @SecurityRequirement(name = OpenAPIConfig.BEARER_KEY) })
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Returns progress at the time of cancellation",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = LayoutMigrationStatus.class))}
+            )
+    })
+    @DeleteMapping(value = RESTVersionURL.URL.V_01 + "/layout-migration", produces = MediaType.APPLICATION_JSON_VALUE)
+    public LayoutMigrationStatus cancelLayoutMigration() {
+        return layoutMigrationService.cancel();
+    }
+
+    /**
+     * REST requests are authenticated by a JSON Web Token, whose principal is just the username
+     */
+    private User currentUser(Principal principal) {
+        if (principal == null) {
+            throw new StorageException("Anonymous users are NOT allowed to upload any files.");
+        }
+        return userService.loadUserByUsername(principal.getName());
+    }
+}
@@ -0,0 +1,56 @@
+package com.acme.onlineshop.controller;
+
+import com.acme.onlineshop.dto.Completion;
+import com.acme.onlineshop.service.CompletionService;
+import com.acme.onlineshop.web.RESTVersionURL;
+import com.acme.onlineshop.web.URL;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+import java.util.List;
+
+@RestController
+@RequestMapping(value = URL.Path.REST_SEARCH)
+@Tag(name = "Search", description = "Endpoints to search the item catalog")
+public class SearchController {
+
+    /**
+     * Suggestions change slowly, so browsers may reuse them for repeated keystrokes
+     */
+    private final static CacheControl COMPLETION_CACHE = CacheControl.maxAge(Duration.ofSeconds(30)).cachePublic();
+
+    private final CompletionService completionService;
+
+    @Autowired
+    public SearchController(CompletionService completionService) {
+        this.completionService = completionService;
+    }
+
+    //------------------------------------------------------ GET -------------------------------------------------------
+
+    @Operation(summary = "Suggests categories for a partially typed search, the most popular ones first")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Returns matching suggestions, empty if there is none",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, array = @ArraySchema(schema = @Schema(implementation = Completion.class)))}
+            )
+    })
+    @GetMapping(value = RESTVersionURL.URL.V_01 + "/completions", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<Completion>> getCompletions(@Parameter(description = "Typed text") @RequestParam(value = "prefix") String prefix,
+                                                           @Parameter(description = "Max. amount of suggestions (max. " + CompletionService.MAX_LIMIT + ")") @RequestParam(value = "limit", defaultValue = "" + CompletionService.DEFAULT_LIMIT) int limit) {
+        return ResponseEntity.ok().cacheControl(COMPLETION_CACHE).body(completionService.complete(prefix, limit));
+    }
+}
@@ -1,9 +1,11 @@
 package com.acme.onlineshop.controller;
 
 import com.acme.onlineshop.controller.errors.ErrorResponseCodes;
+import com.acme.onlineshop.dto.CacheStatistics;
 import com.acme.onlineshop.dto.ErrorResponse;
 import com.acme.onlineshop.dto.SystemInfoDTO;
 import com.acme.onlineshop.filters.ErrorCodeFilter;
+import com.acme.onlineshop.service.CatalogCacheService;
 import com.acme.onlineshop.service.SystemService;
 import com.acme.onlineshop.utils.Profile;
 import com.acme.onlineshop.web.OpenAPIConfig;
@@ -49,6 +51,7 @@ public class SystemController {
     private final static String newBehavior = "The application will follow new behavior rule.";
     private final static String metersGroupedByProtocol = "All meter devices of specified protocol";
     private final SystemService systemService;
+    private final CatalogCacheService catalogCacheService;
 
     @Hidden
     @ExceptionHandler(IOException.class)
@@ -58,9 +61,26 @@ public class SystemController {
         return new ResponseEntity<>(error, HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    @Hidden
+    @ExceptionHandler(IllegalArgumentException.class)
+    private ResponseEntity<ErrorResponse> handleInvalidArgument(HttpServletResponse response, IllegalArgumentException exc) {
+        response.setIntHeader(ErrorCodeFilter.ERROR_CODE_FIELD, ErrorResponseCodes.COMMON_ERROR.errorCode);
+        ErrorResponse error = new ErrorResponse(ErrorResponseCodes.COMMON_ERROR.errorCode, exc.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
+    @Hidden
+    @ExceptionHandler(IllegalStateException.class)
+    private ResponseEntity<ErrorResponse> handleUnavailable(HttpServletResponse response, IllegalStateException exc) {
+        response.setIntHeader(ErrorCodeFilter.ERROR_CODE_FIELD, ErrorResponseCodes.NOT_IMPLEMENTED_ERROR.errorCode);
+        ErrorResponse error = new ErrorResponse(ErrorResponseCodes.NOT_IMPLEMENTED_ERROR.errorCode, exc.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     @Autowired
-    public SystemController(SystemService systemService) {
+    public SystemController(SystemService systemService, CatalogCacheService catalogCacheService) {
         this.systemService = systemService;
+        this.catalogCacheService = catalogCacheService;
     }
 
     //------------------------------------------------------ GET -------------------------------------------------------
@@ -143,6 +163,24 @@ public class SystemController {
         return ErrorResponseCodes.getAllErrorCodes();
     }
 
+    @Operation(summary = "Returns hits & misses of the second-level & query cache of the catalog entities, overall & per region", security = { @SecurityRequirement(name = OpenAPIConfig.BEARER_KEY) })
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Returns cache statistics since startup",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = CacheStatistics.class))}
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "If Hibernate statistics are disabled (default outside of the development profile)",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = ErrorResponse.class))}
+            )
+    })
+    @GetMapping(value = RESTVersionURL.URL.V_01 + "/cache", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CacheStatistics getCacheStatistics() {
+        return catalogCacheService.getStatistics();
+    }
+
     //------------------------------------------------------ PUT -------------------------------------------------------
 
     @Operation(summary = "Changes the time zone in use", security = { @SecurityRequirement(name = OpenAPIConfig.BEARER_KEY) })
@@ -205,4 +243,24 @@ public class SystemController {
         return "Shutting system down. Bye, bye...";
     }
 
-}
\ No newline at end of file
+    //---------------------------------------------------- DELETE ------------------------------------------------------
+
+    @Operation(summary = "Evicts a region of the second-level cache, or all regions incl. the query cache. Necessary after the database has been changed directly, bypassing the application.", security = { @SecurityRequirement(name = OpenAPIConfig.BEARER_KEY) })
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Evicts the cache",
+                    content = {@Content(schema = @Schema(hidden = true))}
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "If region is unknown",
+                    content = {@Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = ErrorResponse.class))}
+            )
+    })
+    @DeleteMapping(RESTVersionURL.URL.V_01 + "/cache")
+    public void evictCache(@Parameter(description = "Name of the region, omit to evict all regions", example = "catalog.item") @RequestParam(value = "region", required = false) String region) {
+        catalogCacheService.evict(region);
+    }
+
+}
@@ -0,0 +1,9 @@
+package com.acme.onlineshop.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Single item inside a basket")
+public record BasketLine(
+        @Schema(description = "ID of the item") long itemId,
+        @Schema(description = "Amount of this item") int quantity) {
+}
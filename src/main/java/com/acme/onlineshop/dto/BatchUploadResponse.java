@@ -0,0 +1,17 @@
+package com.acme.onlineshop.dto;
+
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@Schema(description = "Result document of a batch upload, with one entry per file in upload order")
+public record BatchUploadResponse(
+        @Schema(description = "Amount of stored files") int stored,
+        @Schema(description = "Amount of rejected files") int rejected,
+        @ArraySchema(schema = @Schema(implementation = BatchUploadResult.class)) List<BatchUploadResult> files) {
+
+    public BatchUploadResponse(List<BatchUploadResult> files) {
+        this((int) files.stream().filter(BatchUploadResult::stored).count(), (int) files.stream().filter(result -> !result.stored()).count(), files);
+    }
+}
@@ -0,0 +1,19 @@
+package com.acme.onlineshop.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Outcome of a single file of a batch upload")
+public record BatchUploadResult(
+        @Schema(description = "File name as uploaded") String name,
+        @Schema(description = "TRUE if file has been stored") boolean stored,
+        @Schema(description = "Location of stored file, relative to the media directory", nullable = true) String location,
+        @Schema(description = "Reason why the file has been rejected", nullable = true) String error) {
+
+    public static BatchUploadResult stored(String name, String location) {
+        return new BatchUploadResult(name, true, location, null);
+    }
+
+    public static BatchUploadResult rejected(String name, String error) {
+        return new BatchUploadResult(name, false, null, error);
+    }
+}
@@ -0,0 +1,12 @@
+package com.acme.onlineshop.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Hits & misses of a single region of the second-level or query cache since startup")
+public record CacheRegionUsage(
+        @Schema(example = "catalog.item", description = "Name of the region") String region,
+        @Schema(description = "Lookups, that have been answered by the cache") long hits,
+        @Schema(description = "Lookups, that had to go to the database") long misses,
+        @Schema(description = "Entries, that have been put into the cache") long puts,
+        @Schema(description = "Entries currently held in memory, or -1 if unknown") long entries) {
+}
@@ -0,0 +1,16 @@
+package com.acme.onlineshop.dto;
+
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@Schema(description = "Statistics of the Hibernate second-level & query cache since startup")
+public record CacheStatistics(
+        @Schema(description = "Entity & collection lookups, that have been answered by the second-level cache") long hits,
+        @Schema(description = "Entity & collection lookups, that had to go to the database") long misses,
+        @Schema(description = "Queries, that have been answered by the query cache") long queryHits,
+        @Schema(description = "Cacheable queries, that had to go to the database") long queryMisses,
+        @Schema(description = "JDBC statements, that have been prepared") long statements,
+        @ArraySchema(schema = @Schema(implementation = CacheRegionUsage.class)) List<CacheRegionUsage> regions) {
+}
@@ -0,0 +1,16 @@
+package com.acme.onlineshop.dto;
+
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@Schema(description = "Item counts of a category & its sub-categories, e.g. to render a facet sidebar")
+public record CategoryFacet(
+        @Schema(description = "ID of the category") long categoryId,
+        @Schema(example = "Music", description = "Name of the category") String name,
+        @Schema(example = "/category/music", description = "Page of the category") String link,
+        @Schema(description = "Amount of items of this category") long items,
+        @Schema(description = "Amount of items of this category with a thumbnail") long itemsWithThumbnail,
+        @ArraySchema(schema = @Schema(description = "Counts of the sub-categories, empty for sub-categories")) List<CategoryFacet> subCategories) {
+}
@@ -0,0 +1,11 @@
+package com.acme.onlineshop.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Suggestion for a partially typed search, ordered by popularity")
+public record Completion(
+        @Schema(example = "Vinyl", description = "Name of the suggested category") String text,
+        @Schema(example = "Music", description = "Name of the main category, if the suggestion is a sub-category", nullable = true) String context,
+        @Schema(example = "/category/music/vinyl", description = "Page of the suggested category") String link,
+        @Schema(description = "Popularity (items & searches), only comparable within the same response") long weight) {
+}
@@ -0,0 +1,19 @@
+package com.acme.onlineshop.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+
+@Schema(description = "Progress of the bulk import of an item file")
+public record ItemImportStatus(
+        @Schema(description = "Name of the imported file inside the import directory", nullable = true) String file,
+        @Schema(description = "TRUE while rows are imported") boolean running,
+        @Schema(description = "Amount of rows, that have been read by this run") long rowsRead,
+        @Schema(description = "Amount of rows, that have been imported as items by this run") long rowsImported,
+        @Schema(description = "Amount of rows, that have been skipped, since an earlier run has imported them already") long rowsSkipped,
+        @Schema(description = "Amount of rows, that have been ignored, since their category is unknown or they are malformed") long rowsInvalid,
+        @Schema(description = "Read rows per second of this run") double rowsPerSecond,
+        @Schema(description = "Start of the last run, if any", nullable = true) Instant startedAt,
+        @Schema(description = "End of the last run, if finished", nullable = true) Instant finishedAt,
+        @Schema(description = "Reason, why the last run has been aborted", nullable = true) String error) {
+}
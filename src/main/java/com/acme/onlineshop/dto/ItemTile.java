@@ -0,0 +1,13 @@
+package com.acme.onlineshop.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Everything a catalog grid needs to render the tile of a single item")
+public record ItemTile(
+        @Schema(description = "ID of the item") long id,
+        @Schema(description = "ID of the main category") long categoryId,
+        @Schema(description = "Name of the main category") String categoryName,
+        @Schema(description = "ID of the sub-category, if any", nullable = true) Long subCategoryId,
+        @Schema(description = "Name of the sub-category, if any", nullable = true) String subCategoryName,
+        @Schema(example = "alice/derivatives/image_thumb.jpg", description = "Location of the thumbnail inside the image directory, if any", nullable = true) String thumbnail) {
+}
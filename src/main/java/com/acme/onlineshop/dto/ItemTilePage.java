@@ -0,0 +1,12 @@
+package com.acme.onlineshop.dto;
+
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@Schema(description = "One page of the item catalog")
+public record ItemTilePage(
+        @ArraySchema(schema = @Schema(implementation = ItemTile.class)) List<ItemTile> items,
+        @Schema(description = "Cursor of the next page, or null if this is the last page", nullable = true) String nextCursor) {
+}
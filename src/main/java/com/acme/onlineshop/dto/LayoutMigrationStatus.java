@@ -0,0 +1,17 @@
+package com.acme.onlineshop.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+
+@Schema(description = "Progress of the migration of all media files into the configured on-disk layout")
+public record LayoutMigrationStatus(
+        @Schema(description = "TRUE while files are moved") boolean running,
+        @Schema(description = "Amount of hash-prefix directories of the target layout, 0 for a flat layout") int shardLevels,
+        @Schema(description = "Amount of user directories, that have been completed") long migratedUsers,
+        @Schema(description = "Amount of files, that have been checked") long checkedFiles,
+        @Schema(description = "Amount of files, that have been moved") long movedFiles,
+        @Schema(description = "Amount of files, that couldn't be moved") long failedFiles,
+        @Schema(description = "Start of the last migration, if any", nullable = true) Instant startedAt,
+        @Schema(description = "End of the last migration, if finished", nullable = true) Instant finishedAt) {
+}
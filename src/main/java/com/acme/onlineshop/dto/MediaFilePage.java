@@ -0,0 +1,13 @@
+package com.acme.onlineshop.dto;
+
+import com.acme.onlineshop.persistence.media.MediaFile;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@Schema(description = "One page of the media manifest")
+public record MediaFilePage(
+        @ArraySchema(schema = @Schema(implementation = MediaFile.class)) List<MediaFile> files,
+        @Schema(description = "Cursor of the next page, or null if this is the last page", nullable = true) String nextCursor) {
+}
@@ -0,0 +1,21 @@
+package com.acme.onlineshop.dto;
+
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+import java.util.List;
+
+@Schema(description = "Outcome of a run of the media garbage collector")
+public record MediaGcReport(
+        @Schema(description = "TRUE if orphans have been moved into quarantine, FALSE if they have been deleted") boolean quarantine,
+        @Schema(description = "Start of the run") Instant startedAt,
+        @Schema(description = "End of the run, or null while it is running", nullable = true) Instant finishedAt,
+        @Schema(description = "Amount of directories of deleted users") long orphanedUserDirectories,
+        @Schema(description = "Amount of files without owner or database row (incl. the files of orphaned user directories)") long orphanedFiles,
+        @Schema(description = "Size of all orphaned files in bytes") long orphanedBytes,
+        @Schema(description = "Bytes, that have actually been freed (deleted orphans & expired quarantine)") long reclaimedBytes,
+        @Schema(description = "Amount of image rows, whose file doesn't exist") long danglingImages,
+        @ArraySchema(arraySchema = @Schema(description = "Locations of the first dangling image rows")) List<String> danglingLocations,
+        @Schema(description = "Amount of files or directories, that couldn't be processed") long failures) {
+}
@@ -0,0 +1,13 @@
+package com.acme.onlineshop.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+
+@Schema(description = "Order, that has been placed & committed")
+public record PlacedOrder(
+        @Schema(description = "ID of the order") long orderId,
+        @Schema(description = "Key of the checkout, that placed the order") String idempotencyKey,
+        @Schema(example = "1999", description = "Sum of all lines in cents") long total,
+        @Schema(description = "When the order has been placed") Instant createdAt) {
+}
@@ -0,0 +1,6 @@
+package com.acme.onlineshop.dto;
+
+/**
+ * @param price Price in cents
+ */
+public record Recommendation(long itemId, long price, String link) {}
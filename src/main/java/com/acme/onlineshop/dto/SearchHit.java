@@ -0,0 +1,13 @@
+package com.acme.onlineshop.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Single category found by a catalog search, ordered by relevance")
+public record SearchHit(
+        @Schema(description = "ID of the category") long id,
+        @Schema(description = "Name of the category") String title,
+        @Schema(description = "Description of the category") String description,
+        @Schema(example = "/category/music", description = "Page of the category") String link,
+        @Schema(description = "Amount of items in the category") int itemCount,
+        @Schema(description = "Relevance (BM25), only comparable within the same search") double score) {
+}
@@ -0,0 +1,10 @@
+package com.acme.onlineshop.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Stock of a single item")
+public record StockLevel(
+        @Schema(description = "ID of the item") long itemId,
+        @Schema(description = "Pieces, that can still be reserved") long available,
+        @Schema(description = "Pieces held by open reservations") long reserved) {
+}
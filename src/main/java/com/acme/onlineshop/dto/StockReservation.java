@@ -0,0 +1,13 @@
+package com.acme.onlineshop.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+
+@Schema(description = "Pieces of an item, that are held for a customer until the reservation is confirmed or expires")
+public record StockReservation(
+        @Schema(description = "ID of the reservation") long id,
+        @Schema(description = "ID of the reserved item") long itemId,
+        @Schema(description = "Reserved pieces") int quantity,
+        @Schema(description = "Pieces go back into stock after this point in time") Instant expiresAt) {
+}
@@ -0,0 +1,83 @@
+package com.acme.onlineshop.persistence.basket;
+
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.Transient;
+import javax.validation.constraints.NotBlank;
+import java.time.Instant;
+
+/**
+ * <p>Persisted content of a single basket, written behind by the basket service.</p>
+ * <p>The lines are stored as one compact binary value instead of a row per line, so saving a basket is a single row
+ * write, no matter how many items it holds. Baskets live apart from the HTTP session, so a change never rewrites the
+ * serialized session.</p>
+ */
+@Entity
+public class StoredBasket implements Persistable<String> {
+
+    /**
+     * Session or user, the basket belongs to
+     */
+    @Id
+    @NotBlank
+    @Column(nullable = false, length = 128)
+    private String owner;
+    @Lob
+    @Column(nullable = false)
+    private byte[] content;
+    private Instant updatedAt;
+    /**
+     * Owners are assigned, so saving a new basket must not look for an existing one first
+     */
+    @Transient
+    private boolean isNew = true;
+
+    public StoredBasket(String owner, byte[] content) {
+        this.owner = owner;
+        this.content = content;
+        this.updatedAt = Instant.now();
+    }
+
+    public StoredBasket() {
+        this("", new byte[0]);
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        isNew = false;
+    }
+
+    @Override
+    public String getId() {
+        return owner;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public void setContent(byte[] content) {
+        this.content = content;
+        this.updatedAt = Instant.now();
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -0,0 +1,18 @@
+package com.acme.onlineshop.persistence.basket;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface StoredBasketRepository extends JpaRepository<StoredBasket, String> {
+
+    /**
+     * @return Owners starting with given prefix, whose baskets haven't been changed since given time
+     */
+    @Query("SELECT b.owner FROM StoredBasket b WHERE b.owner LIKE CONCAT(:prefix, '%') AND b.updatedAt < :before")
+    List<String> findOwnersUnchangedSince(@Param("prefix") String prefix, @Param("before") Instant before, Pageable limit);
+}
@@ -0,0 +1,23 @@
+package com.acme.onlineshop.persistence.item;
+
+import org.hibernate.jpa.QueryHints;
+
+/**
+ * <p>Names of the second-level cache regions of all catalog entities &amp; their collections.</p>
+ * <p>The size limit of every region is configured in <code>config/ehcache.xml</code>. Regions of an entity hierarchy
+ * (e.g. {@link Category}) are shared by all of its subclasses.</p>
+ */
+public final class CatalogCacheRegions {
+
+    public final static String ITEM = "catalog.item";
+    public final static String ITEM_IMAGES = "catalog.item.images";
+    public final static String CATEGORY = "catalog.category";
+    public final static String SUB_CATEGORIES = "catalog.category.sub-categories";
+    public final static String IMAGE = "catalog.image";
+    /**
+     * Query hint, that caches the results of a query until one of its tables changes
+     */
+    public final static String CACHEABLE = QueryHints.HINT_CACHEABLE;
+
+    private CatalogCacheRegions() { }
+}
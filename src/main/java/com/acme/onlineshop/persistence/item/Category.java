@@ -2,6 +2,8 @@ package com.acme.onlineshop.persistence.item;
 
 import com.acme.onlineshop.persistence.validation.NoneWhitespace;
 import com.acme.onlineshop.web.URL;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotBlank;
@@ -9,6 +11,8 @@ import java.util.Locale;
 
 @Entity
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CatalogCacheRegions.CATEGORY)
 public abstract class Category {
 
     protected final static String ROOT_URL = URL.CATEGORY.url;
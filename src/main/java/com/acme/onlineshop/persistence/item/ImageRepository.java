@@ -0,0 +1,15 @@
+package com.acme.onlineshop.persistence.item;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface ImageRepository extends JpaRepository<Image, Long> {
+
+    /**
+     * @return Locations of all {@link SmallImage}s &amp; {@link LargeImage}s, relative to the media root directory
+     */
+    @Query("SELECT i.location FROM Image i")
+    List<String> findAllLocations();
+}
@@ -0,0 +1,91 @@
+package com.acme.onlineshop.persistence.item;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.validation.constraints.NotBlank;
+import java.time.Instant;
+
+/**
+ * <p>Progress of the bulk import of a single file.</p>
+ * <p>The checkpoint is written in the same transaction as every chunk of imported items, so it never counts a row,
+ * that hasn't been committed, &amp; vice versa. An interrupted import continues after the last committed row. If the
+ * file has been changed in the meantime (size or modification time), it is imported from the beginning.</p>
+ */
+@Entity
+public class ImportCheckpoint {
+
+    @Id
+    @NotBlank
+    @Column(nullable = false)
+    private String fileName;
+    private long fileSize;
+    private long fileModifiedAt;
+    private long rows;
+    private boolean completed;
+    private Instant updatedAt;
+
+    public ImportCheckpoint(String fileName, long fileSize, long fileModifiedAt) {
+        this.fileName = fileName;
+        this.fileSize = fileSize;
+        this.fileModifiedAt = fileModifiedAt;
+    }
+
+    public ImportCheckpoint() {
+        this("", 0, 0);
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public long getFileModifiedAt() {
+        return fileModifiedAt;
+    }
+
+    public void setFileModifiedAt(long fileModifiedAt) {
+        this.fileModifiedAt = fileModifiedAt;
+    }
+
+    /**
+     * @return Amount of data rows (header excluded), that have been processed &amp; committed
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public void setRows(long rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * @return TRUE if the whole file has been imported
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(boolean completed) {
+        this.completed = completed;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -1,32 +1,53 @@
 package com.acme.onlineshop.persistence.item;
 
 import io.swagger.v3.oas.annotations.media.Schema;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Fetch;
 import org.hibernate.annotations.FetchMode;
 
 import javax.persistence.*;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * <p>All associations are loaded lazily. The item page loads everything it renders by the named entity graph
+ * {@link #GRAPH_DETAIL} with a single query (see {@link ItemRepository}): categories (incl. main category of the
+ * sub-category for its link), thumbnail &amp; all large images. Lists of items don't load entities at all, but
+ * {@link com.acme.onlineshop.dto.ItemTile}s.</p>
+ */
 @Entity
+@Table(indexes = @Index(columnList = "sub_category_id, id"))
+@NamedEntityGraph(name = Item.GRAPH_DETAIL,
+        attributeNodes = {@NamedAttributeNode("category"), @NamedAttributeNode(value = "subCategory", subgraph = "link"), @NamedAttributeNode("thumbnail"), @NamedAttributeNode("images")},
+        subgraphs = @NamedSubgraph(name = "link", attributeNodes = @NamedAttributeNode("mainCategory")))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CatalogCacheRegions.ITEM)
 public class Item {
 
+    public final static String GRAPH_DETAIL = "Item.detail";
+
     @Id
     @NotNull
     @GeneratedValue(strategy = GenerationType.SEQUENCE)
     private long id;
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @NotNull
     @Schema(description = "Category of this item")
     protected Category category;
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @Schema(description = "Sub-Category of this item")
     protected SubCategory subCategory;
-    @ManyToOne(cascade = CascadeType.ALL)
+    @ManyToOne(fetch = FetchType.LAZY, cascade = CascadeType.ALL)
     SmallImage thumbnail;
+    @Min(0)
+    @Schema(example = "1999", description = "Price in cents")
+    private long price;
     @ManyToMany(fetch = FetchType.LAZY, mappedBy = "items", cascade = CascadeType.ALL)
     @Fetch(value = FetchMode.SUBSELECT)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CatalogCacheRegions.ITEM_IMAGES)
     private List<LargeImage> images;
 
     public Item(Category category, SubCategory subCategory, SmallImage thumbnail, List<LargeImage> images) {
@@ -48,6 +69,14 @@ public class Item {
         this.id = id;
     }
 
+    public long getPrice() {
+        return price;
+    }
+
+    public void setPrice(long price) {
+        this.price = price;
+    }
+
     public Category getCategory() {
         return category;
     }
@@ -1,5 +1,70 @@
 package com.acme.onlineshop.persistence.item;
 
+import com.acme.onlineshop.dto.ItemTile;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface ItemRepository extends JpaRepository<Item, Long> {}
\ No newline at end of file
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * <p>Besides the usual entity access, this repository lists the catalog as {@link ItemTile} projections, page by page.</p>
+ * <p>The tile queries use keyset (seek) pagination on <code>(subCategory, id)</code>: every page starts right after the
+ * last tile of the previous page. Unlike an offset, the database seeks directly into the index, so page 1000 costs the
+ * same as page 1. Pass {@link Pageable#ofSize(int)} to limit the amount of tiles, no count query is issued.</p>
+ * <p>Views, that need entities, load them with the named entity graph of the view (see {@link Item}), so rendering
+ * them never triggers a lazy load per item.</p>
+ */
+public interface ItemRepository extends JpaRepository<Item, Long> {
+
+    String TILE_SELECT = """
+            SELECT new com.acme.onlineshop.dto.ItemTile(i.id, c.id, c.name, sc.id, sc.name, t.location)
+            FROM Item i JOIN i.category c LEFT JOIN i.subCategory sc LEFT JOIN i.thumbnail t
+            """;
+
+    /**
+     * Items without sub-category come first in the catalog
+     *
+     * @param afterId ID of the last tile of the previous page, or 0 for the first page
+     */
+    @Query(TILE_SELECT + "WHERE i.subCategory IS NULL AND i.id > :afterId ORDER BY i.id")
+    List<ItemTile> findTilesWithoutSubCategory(@Param("afterId") long afterId, Pageable limit);
+
+    /**
+     * Items with sub-category, ordered by <code>(subCategory, id)</code>
+     *
+     * @param subCategoryId Sub-category of the last tile of the previous page, or 0 for the first page
+     * @param afterId ID of the last tile of the previous page, or 0 for the first page
+     */
+    @Query(TILE_SELECT + """
+            WHERE i.subCategory.id >= :subCategoryId AND (i.subCategory.id > :subCategoryId OR i.id > :afterId)
+            ORDER BY i.subCategory.id, i.id
+            """)
+    List<ItemTile> findTilesAfter(@Param("subCategoryId") long subCategoryId, @Param("afterId") long afterId, Pageable limit);
+
+    /**
+     * Items of a single sub-category, ordered by ID
+     *
+     * @param afterId ID of the last tile of the previous page, or 0 for the first page
+     */
+    @Query(TILE_SELECT + "WHERE i.subCategory.id = :subCategoryId AND i.id > :afterId ORDER BY i.id")
+    List<ItemTile> findTilesOfSubCategory(@Param("subCategoryId") long subCategoryId, @Param("afterId") long afterId, Pageable limit);
+
+    /**
+     * @return Highest item ID, or 0 if there are no items
+     */
+    @Query("SELECT COALESCE(MAX(i.id), 0) FROM Item i")
+    long findMaxId();
+
+    /**
+     * @return Pairs of item ID &amp; price in cents, for all items
+     */
+    @Query("SELECT i.id, i.price FROM Item i")
+    List<Object[]> findAllPrices();
+
+    @EntityGraph(Item.GRAPH_DETAIL)
+    Optional<Item> findDetailById(long id);
+}
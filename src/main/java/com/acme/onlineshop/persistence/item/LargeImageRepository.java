@@ -2,4 +2,9 @@ package com.acme.onlineshop.persistence.item;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 
-public interface LargeImageRepository extends JpaRepository<LargeImage, Long> {}
+import java.util.Optional;
+
+public interface LargeImageRepository extends JpaRepository<LargeImage, Long> {
+
+    Optional<LargeImage> findByLocation(String location);
+}
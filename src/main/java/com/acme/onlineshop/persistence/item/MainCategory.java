@@ -1,5 +1,8 @@
 package com.acme.onlineshop.persistence.item;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.Entity;
 import javax.persistence.NamedAttributeNode;
 import javax.persistence.NamedEntityGraph;
@@ -13,6 +16,7 @@ public class MainCategory extends Category {
 
     @NotNull
     @OneToMany(mappedBy = "mainCategory", orphanRemoval = true)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CatalogCacheRegions.SUB_CATEGORIES)
     private List<SubCategory> subCategories;
 
     public MainCategory(String name, String description, List<SubCategory> subCategories) {
@@ -2,15 +2,17 @@ package com.acme.onlineshop.persistence.item;
 
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.repository.query.Param;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 
 public interface MainCategoryRepository extends JpaRepository<MainCategory, Long> {
 
+    @QueryHints(@QueryHint(name = CatalogCacheRegions.CACHEABLE, value = "true"))
     List<MainCategory> findAllByOrderByName();
 
     @EntityGraph(attributePaths = {"subCategories"}, type = EntityGraph.EntityGraphType.LOAD)
+    @QueryHints(@QueryHint(name = CatalogCacheRegions.CACHEABLE, value = "true"))
     List<MainCategory> findEagerAllByOrderByName();
-}
\ No newline at end of file
+}
@@ -20,8 +20,7 @@ public class SmallImage extends Image {
         }
     }
 
-    @OneToOne
-    @MapsId
+    @OneToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "item_id")
     @JsonIgnore
     private Item item;
@@ -2,4 +2,9 @@ package com.acme.onlineshop.persistence.item;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 
-public interface SmallImageRepository extends JpaRepository<SmallImage, Long> {}
+import java.util.Optional;
+
+public interface SmallImageRepository extends JpaRepository<SmallImage, Long> {
+
+    Optional<SmallImage> findByLocation(String location);
+}
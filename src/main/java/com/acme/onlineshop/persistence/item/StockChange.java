@@ -0,0 +1,77 @@
+package com.acme.onlineshop.persistence.item;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+import java.time.Instant;
+
+/**
+ * <p>Single entry of the inventory journal: a change of the stock of an item.</p>
+ * <p>The journal is append-only, the stock of an item is the sum of all its changes. Reservations are not journaled,
+ * they only live in memory until they are confirmed (then journaled as {@link Reason#SALE}) or expire.</p>
+ */
+@Entity
+@Table(indexes = @Index(columnList = "itemId"))
+public class StockChange {
+
+    public enum Reason {
+        RESTOCK,
+        SALE,
+        CORRECTION
+    }
+
+    /**
+     * Pooled sequence: IDs are reserved 50 at a time, so the changes of a commit are inserted within a single JDBC batch
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stock_change_seq")
+    @SequenceGenerator(name = "stock_change_seq", sequenceName = "stock_change_seq", allocationSize = 50)
+    private long id;
+    @Column(nullable = false)
+    private long itemId;
+    private int delta;
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Reason reason;
+    private Instant createdAt;
+
+    public StockChange(long itemId, int delta, Reason reason) {
+        this.itemId = itemId;
+        this.delta = delta;
+        this.reason = reason;
+        this.createdAt = Instant.now();
+    }
+
+    public StockChange() {
+        this(0, 0, Reason.CORRECTION);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getItemId() {
+        return itemId;
+    }
+
+    public int getDelta() {
+        return delta;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
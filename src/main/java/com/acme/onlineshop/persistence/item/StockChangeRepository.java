@@ -0,0 +1,15 @@
+package com.acme.onlineshop.persistence.item;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface StockChangeRepository extends JpaRepository<StockChange, Long> {
+
+    /**
+     * @return Pairs of item ID &amp; its current stock, for every item with at least one change
+     */
+    @Query("SELECT c.itemId, SUM(c.delta) FROM StockChange c GROUP BY c.itemId")
+    List<Object[]> sumByItem();
+}
@@ -1,12 +1,20 @@
 package com.acme.onlineshop.persistence.item;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 
 public interface SubCategoryRepository extends JpaRepository<SubCategory, Long> {
 
+    /**
+     * Loads the main categories as well, since {@link SubCategory#getLink()} needs them
+     */
+    @EntityGraph(attributePaths = {"mainCategory"}, type = EntityGraph.EntityGraphType.LOAD)
+    @QueryHints(@QueryHint(name = CatalogCacheRegions.CACHEABLE, value = "true"))
     List<SubCategory> findAllByOrderByName();
 
     List<SubCategory> findAllByMainCategoryOrderByName(MainCategory mainCategory);
-}
\ No newline at end of file
+}
@@ -0,0 +1,60 @@
+package com.acme.onlineshop.persistence.media;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.PositiveOrZero;
+
+/**
+ * <p>A stored file of the content addressed media store. The file is identified by the hash of its content, therefore
+ * identical uploads are stored only once.</p>
+ * <p>Every {@link MediaFile} that points to this blob increases the reference counter. If the counter drops to zero,
+ * the blob can be deleted.</p>
+ */
+@Entity
+public class MediaBlob {
+
+    @Id
+    @NotBlank
+    @Column(length = 64, nullable = false)
+    private String contentHash;
+    @PositiveOrZero
+    private long sizeInBytes;
+    @PositiveOrZero
+    private long referenceCount;
+
+    public MediaBlob(String contentHash, long sizeInBytes) {
+        this.contentHash = contentHash;
+        this.sizeInBytes = sizeInBytes;
+        this.referenceCount = 0;
+    }
+
+    public MediaBlob() {
+        this("", 0);
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public void setSizeInBytes(long sizeInBytes) {
+        this.sizeInBytes = sizeInBytes;
+    }
+
+    public long getReferenceCount() {
+        return referenceCount;
+    }
+
+    public void setReferenceCount(long referenceCount) {
+        this.referenceCount = referenceCount;
+    }
+}
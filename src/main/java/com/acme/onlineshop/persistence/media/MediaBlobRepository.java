@@ -0,0 +1,5 @@
+package com.acme.onlineshop.persistence.media;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface MediaBlobRepository extends JpaRepository<MediaBlob, String> { }
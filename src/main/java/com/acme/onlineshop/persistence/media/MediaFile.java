@@ -0,0 +1,97 @@
+package com.acme.onlineshop.persistence.media;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.PositiveOrZero;
+import java.time.Instant;
+
+/**
+ * <p>A file name within the media directory of a user. Together, all entries form the manifest of the media
+ * directory, which is listed instead of the file system.</p>
+ * <p>In content addressed mode, the entry points to the {@link MediaBlob} holding its content. Otherwise, the
+ * content hash is <code>null</code>.</p>
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"username", "name"}),
+        indexes = {
+                @Index(columnList = "username, sizeInBytes, name"),
+                @Index(columnList = "username, uploadedAt, name"),
+                @Index(columnList = "sizeInBytes, username, name"),
+                @Index(columnList = "uploadedAt, username, name")
+        })
+public class MediaFile {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false)
+    private long id;
+    @NotBlank
+    private String username;
+    @NotBlank
+    private String name;
+    @Column(length = 64)
+    private String contentHash;
+    @PositiveOrZero
+    private long sizeInBytes;
+    private Instant uploadedAt;
+
+    public MediaFile(String username, String name, String contentHash, long sizeInBytes, Instant uploadedAt) {
+        this.username = username;
+        this.name = name;
+        this.contentHash = contentHash;
+        this.sizeInBytes = sizeInBytes;
+        this.uploadedAt = uploadedAt;
+    }
+
+    public MediaFile() {
+        this("", "", null, 0, Instant.now());
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public void setSizeInBytes(long sizeInBytes) {
+        this.sizeInBytes = sizeInBytes;
+    }
+
+    public Instant getUploadedAt() {
+        return uploadedAt;
+    }
+
+    public void setUploadedAt(Instant uploadedAt) {
+        this.uploadedAt = uploadedAt;
+    }
+}
@@ -0,0 +1,29 @@
+package com.acme.onlineshop.persistence.media;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface MediaFileRepository extends JpaRepository<MediaFile, Long> {
+
+    Optional<MediaFile> findByUsernameAndName(String username, String name);
+
+    List<MediaFile> findAllByUsernameOrderByName(String username);
+
+    List<MediaFile> findAllByOrderByUsernameAscNameAsc();
+
+    /**
+     * Sums up the sizes of all files of given user
+     *
+     * @param username Owner of the files
+     * @return Amount of files &amp; their total size in bytes
+     */
+    @Query("SELECT COUNT(f), COALESCE(SUM(f.sizeInBytes), 0) FROM MediaFile f WHERE f.username = :username")
+    List<Object[]> sumSizesByUsername(@Param("username") String username);
+
+    @Query("SELECT DISTINCT f.username FROM MediaFile f")
+    List<String> findDistinctUsernames();
+}
@@ -0,0 +1,66 @@
+package com.acme.onlineshop.persistence.media;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.validation.constraints.NotBlank;
+import java.time.Instant;
+
+/**
+ * <p>Ledger entry of the media storage a user occupies.</p>
+ * <p>The entry is updated incrementally by every upload &amp; deletion, so quotas can be checked without scanning the
+ * directory of the user. It is corrected by a periodic reconciliation against the actual files.</p>
+ */
+@Entity
+public class MediaUsage {
+
+    @Id
+    @NotBlank
+    @Column(nullable = false)
+    private String username;
+    private long usedBytes;
+    private long fileCount;
+    private Instant reconciledAt;
+
+    public MediaUsage(String username, long usedBytes, long fileCount) {
+        this.username = username;
+        this.usedBytes = usedBytes;
+        this.fileCount = fileCount;
+    }
+
+    public MediaUsage() {
+        this("", 0, 0);
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public void setUsedBytes(long usedBytes) {
+        this.usedBytes = usedBytes;
+    }
+
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    public void setFileCount(long fileCount) {
+        this.fileCount = fileCount;
+    }
+
+    public Instant getReconciledAt() {
+        return reconciledAt;
+    }
+
+    public void setReconciledAt(Instant reconciledAt) {
+        this.reconciledAt = reconciledAt;
+    }
+}
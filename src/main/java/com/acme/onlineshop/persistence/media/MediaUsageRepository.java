@@ -0,0 +1,10 @@
+package com.acme.onlineshop.persistence.media;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+
+public interface MediaUsageRepository extends JpaRepository<MediaUsage, String> {
+
+    void deleteByUsernameIn(Collection<String> usernames);
+}
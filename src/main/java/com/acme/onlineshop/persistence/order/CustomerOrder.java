@@ -0,0 +1,86 @@
+package com.acme.onlineshop.persistence.order;
+
+import javax.persistence.CollectionTable;
+import javax.persistence.Column;
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.validation.constraints.NotBlank;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Placed order of a customer ("ORDER" is a reserved SQL word).</p>
+ * <p>The idempotency key is chosen by the client &amp; unique per owner, so a retried checkout never places the same
+ * order twice.</p>
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"owner", "idempotencyKey"}))
+public class CustomerOrder {
+
+    /**
+     * Pooled sequence: IDs are reserved 50 at a time, so most orders get their ID without a sequence call &amp; the
+     * inserts of a commit are sent as a single JDBC batch
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_order_seq")
+    @SequenceGenerator(name = "customer_order_seq", sequenceName = "customer_order_seq", allocationSize = 50)
+    private long id;
+    @NotBlank
+    @Column(nullable = false, length = 64)
+    private String idempotencyKey;
+    @NotBlank
+    @Column(nullable = false, length = 128)
+    private String owner;
+    /**
+     * Sum of all lines in cents
+     */
+    private long total;
+    private Instant createdAt;
+    @ElementCollection
+    @CollectionTable(joinColumns = @JoinColumn(name = "order_id"))
+    private List<OrderLine> lines;
+
+    public CustomerOrder(String idempotencyKey, String owner, List<OrderLine> lines) {
+        this.idempotencyKey = idempotencyKey;
+        this.owner = owner;
+        this.lines = lines;
+        this.total = lines.stream().mapToLong(line -> line.getPrice() * line.getQuantity()).sum();
+        this.createdAt = Instant.now();
+    }
+
+    public CustomerOrder() {
+        this("", "", new ArrayList<>());
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public List<OrderLine> getLines() {
+        return lines;
+    }
+}
@@ -0,0 +1,20 @@
+package com.acme.onlineshop.persistence.order;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface CustomerOrderRepository extends JpaRepository<CustomerOrder, Long> {
+
+    List<CustomerOrder> findAllByIdempotencyKeyIn(Collection<String> idempotencyKeys);
+
+    /**
+     * @return Pairs of order ID &amp; item ID of all orders after given ID, ordered by order ID
+     */
+    @Query("SELECT o.id, l.itemId FROM CustomerOrder o JOIN o.lines l WHERE o.id > :afterId ORDER BY o.id")
+    List<Object[]> findItemsOfOrdersAfter(@Param("afterId") long afterId, Pageable limit);
+}
@@ -0,0 +1,41 @@
+package com.acme.onlineshop.persistence.order;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+
+/**
+ * Single item of an order, with the price it has been sold for
+ */
+@Embeddable
+public class OrderLine {
+
+    @Column(nullable = false)
+    private long itemId;
+    private int quantity;
+    /**
+     * Price per piece in cents
+     */
+    private long price;
+
+    public OrderLine(long itemId, int quantity, long price) {
+        this.itemId = itemId;
+        this.quantity = quantity;
+        this.price = price;
+    }
+
+    public OrderLine() {
+        this(0, 0, 0);
+    }
+
+    public long getItemId() {
+        return itemId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public long getPrice() {
+        return price;
+    }
+}
@@ -0,0 +1,68 @@
+package com.acme.onlineshop.persistence.user;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.MapsId;
+import javax.persistence.OneToOne;
+import java.time.Instant;
+
+/**
+ * <p>Decayed interest of a user in the main categories, written behind by the category affinity service.</p>
+ * <p>Shares its ID with the {@link Profile} of the user. All scores are stored as one compact binary value, relative to
+ * the reference time, so writing a user's affinity is a single row write.</p>
+ */
+@Entity
+public class CategoryAffinity {
+
+    @Id
+    @Column(name = "profile_id", nullable = false)
+    private long profileId;
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY, optional = false)
+    private Profile profile;
+    @Lob
+    @Column(nullable = false)
+    private byte[] scores;
+    /**
+     * Epoch millis, the stored scores are relative to
+     */
+    private long referenceMillis;
+    private Instant updatedAt;
+
+    public CategoryAffinity(Profile profile) {
+        this.profile = profile;
+        this.scores = new byte[0];
+    }
+
+    public CategoryAffinity() {
+    }
+
+    public long getProfileId() {
+        return profileId;
+    }
+
+    public Profile getProfile() {
+        return profile;
+    }
+
+    public byte[] getScores() {
+        return scores;
+    }
+
+    public long getReferenceMillis() {
+        return referenceMillis;
+    }
+
+    public void setScores(byte[] scores, long referenceMillis) {
+        this.scores = scores;
+        this.referenceMillis = referenceMillis;
+        this.updatedAt = Instant.now();
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -0,0 +1,13 @@
+package com.acme.onlineshop.persistence.user;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+public interface CategoryAffinityRepository extends JpaRepository<CategoryAffinity, Long> {
+
+    @Query("SELECT a FROM CategoryAffinity a WHERE a.profile.user.userId = :userId")
+    Optional<CategoryAffinity> findByUserId(@Param("userId") long userId);
+}
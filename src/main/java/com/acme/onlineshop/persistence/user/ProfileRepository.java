@@ -0,0 +1,20 @@
+package com.acme.onlineshop.persistence.user;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ProfileRepository extends JpaRepository<Profile, Long> {
+
+    /**
+     * @return Pairs of user ID &amp; profile ID, without loading any profile or user
+     */
+    @Query("SELECT p.user.userId, p.id FROM USER_PROFILE p WHERE p.user.userId IN :userIds")
+    List<Object[]> findIdsByUserIds(@Param("userIds") Collection<Long> userIds);
+
+    @Query("SELECT p FROM USER_PROFILE p WHERE p.user.username IN :usernames")
+    List<Profile> findAllByUsernames(@Param("usernames") Collection<String> usernames);
+}
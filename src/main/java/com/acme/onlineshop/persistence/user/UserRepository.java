@@ -3,6 +3,8 @@ package com.acme.onlineshop.persistence.user;
 import com.acme.onlineshop.security.Role;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.EntityNotFoundException;
@@ -79,6 +81,9 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     long countByRoleAndUsernameIn(Role role, Collection<String> username);
 
+    @Query("SELECT u.userId FROM ONLINE_SHOP_USER u WHERE u.username IN :usernames")
+    List<Long> findIdsByUsernameIn(@Param("usernames") Collection<String> usernames);
+
     /**
      * Deletes a {@link User}, if the given username matches to any existing {@link User}
      *
@@ -1,19 +1,43 @@
 package com.acme.onlineshop.runner;
 
+import com.acme.onlineshop.service.ItemImportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 /**
- * This runner sets up some basic items
+ * This runner imports all item files inside the import directory in background. Files, that have been imported
+ * completely already, are skipped; interrupted imports continue where they stopped.
+ *
+ * @see ItemImportService
  */
 @Component
 @Order(5)
 public class DefaultItems implements ApplicationRunner {
 
+    private final ItemImportService itemImportService;
+    private final boolean importOnStartup;
+
+    @Autowired
+    public DefaultItems(ItemImportService itemImportService, @Value("${shop.catalog.import.on-startup:true}") boolean importOnStartup) {
+        this.itemImportService = itemImportService;
+        this.importOnStartup = importOnStartup;
+    }
+
     @Override
     public void run(ApplicationArguments args) throws Exception {
-        System.out.println("Loading default items...");
+        if (!importOnStartup) {
+            return;
+        }
+        List<String> files = itemImportService.listFiles();
+        if (!files.isEmpty()) {
+            itemImportService.start(files);
+            System.out.printf("Loading default items from %d file(s) in background...%n", files.size());
+        }
     }
 }
@@ -1,6 +1,8 @@
 package com.acme.onlineshop.security;
 
+import com.acme.onlineshop.controller.BasketController;
 import com.acme.onlineshop.controller.WebController;
+import com.acme.onlineshop.service.BasketService;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
 import org.springframework.security.web.authentication.SimpleUrlAuthenticationSuccessHandler;
@@ -12,18 +14,27 @@ import javax.servlet.http.HttpSession;
 import java.io.IOException;
 
 /**
- * Handler to redirect user after successful login approach, to his previous site.
+ * Handler to redirect user after successful login approach, to his previous site. The basket, that has been filled
+ * before the login, is merged into the basket of the user.
  */
 public class RedirectionAuthenticationSuccessHandler extends SimpleUrlAuthenticationSuccessHandler implements AuthenticationSuccessHandler {
 
-    public RedirectionAuthenticationSuccessHandler(String defaultRedirectURL) {
+    private final BasketService basketService;
+
+    public RedirectionAuthenticationSuccessHandler(String defaultRedirectURL, BasketService basketService) {
         super(defaultRedirectURL);
+        this.basketService = basketService;
     }
 
     @Override
     public void onAuthenticationSuccess(HttpServletRequest request, HttpServletResponse response, Authentication authentication) throws ServletException, IOException {
         HttpSession session = request.getSession();
         if (session != null) {
+            String basketId = (String) session.getAttribute(BasketController.BASKET_SESSION_ATTRIBUTE);
+            if (basketId != null) {
+                session.removeAttribute(BasketController.BASKET_SESSION_ATTRIBUTE);
+                basketService.merge(BasketService.sessionOwner(basketId), BasketService.userOwner(authentication.getName()));
+            }
             String redirectUrl = (String) session.getAttribute(WebController.REDIRECT_LOGIN_SESSION_ATTRIBUTE);
             if (redirectUrl != null) {
                 //remove redirect from session
@@ -2,6 +2,7 @@ package com.acme.onlineshop.security;
 
 import com.acme.onlineshop.Constants;
 import com.acme.onlineshop.filters.JWTFilter;
+import com.acme.onlineshop.service.BasketService;
 import com.acme.onlineshop.web.URL;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
@@ -47,7 +48,6 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 @EnableWebSecurity(debug = Constants.WEB_SECURITY_DEBUG)
 public class SecurityConfig {
 
-    private final static AuthenticationSuccessHandler successHandler = loginAuthenticationSuccessHandler();
     private final static AuthenticationFailureHandler failureHandler = loginAuthenticationFailureHandler();
 
     private static final String[] WHITELIST_RESOURCES = {
@@ -61,7 +61,10 @@ public class SecurityConfig {
             URL.Path.REST_SYSTEM + "/error-codes*",
             URL.Path.REST_SYSTEM + "/error-code-header*",
             URL.Path.REST_SECURITY + "*",
-            URL.Path.REST_SECURITY + "/**"
+            URL.Path.REST_SECURITY + "/**",
+            // The catalog is public, just like the shop pages
+            URL.Path.REST_ITEMS + "/*",
+            URL.Path.REST_SEARCH + "/**"
     };
     private static final String[] WHITELIST_WEBSITES = {
             URL.INDEX.url,
@@ -74,10 +77,12 @@ public class SecurityConfig {
             "/swagger-ui/**"
     };
     private final JWTFilter jwtFilter;
+    private final AuthenticationSuccessHandler successHandler;
 
     @Autowired
-    SecurityConfig(JWTFilter jwtFilter) {
+    SecurityConfig(JWTFilter jwtFilter, BasketService basketService) {
         this.jwtFilter = jwtFilter;
+        this.successHandler = loginAuthenticationSuccessHandler(basketService);
     }
 
     /**
@@ -99,6 +104,17 @@ public class SecurityConfig {
                     .antMatchers(HttpMethod.POST, "%s/*".formatted(URL.REST_SECURITY.url)).hasAuthority(PermissionFunction.CREATE.getPermission(PermissionOperation.SYSTEM))
                     .antMatchers(HttpMethod.PUT, "%s/*".formatted(URL.REST_SECURITY.url)).hasAuthority(PermissionFunction.CREATE_UPDATE.getPermission(PermissionOperation.SYSTEM))
                     .antMatchers(HttpMethod.GET, "%s/*".formatted(URL.REST_SECURITY.url)).hasAuthority(PermissionFunction.READ.getPermission(PermissionOperation.SYSTEM))
+                    // The layout migration & the garbage collector process the files of all users
+                    .antMatchers(HttpMethod.GET, "%s/*/layout-migration".formatted(URL.REST_MEDIA.url), "%s/*/garbage-collection".formatted(URL.REST_MEDIA.url)).hasAuthority(PermissionFunction.READ.getPermission(PermissionOperation.SYSTEM))
+                    .antMatchers("%s/*/layout-migration".formatted(URL.REST_MEDIA.url), "%s/*/garbage-collection".formatted(URL.REST_MEDIA.url)).hasAuthority(PermissionFunction.CREATE_UPDATE.getPermission(PermissionOperation.SYSTEM))
+                    // Bulk imports change the whole catalog
+                    .antMatchers(HttpMethod.GET, "%s/*/import".formatted(URL.REST_ITEMS.url)).hasAuthority(PermissionFunction.READ.getPermission(PermissionOperation.SYSTEM))
+                    .antMatchers("%s/*/import".formatted(URL.REST_ITEMS.url)).hasAuthority(PermissionFunction.CREATE_UPDATE.getPermission(PermissionOperation.SYSTEM))
+                    // Exports contain the whole catalog & all users
+                    .antMatchers("%s/**".formatted(URL.REST_EXPORT.url)).hasAuthority(PermissionFunction.READ.getPermission(PermissionOperation.SYSTEM))
+                    // The cache serves all users
+                    .antMatchers(HttpMethod.GET, "%s/*/cache".formatted(URL.REST_SYSTEM.url)).hasAuthority(PermissionFunction.READ.getPermission(PermissionOperation.SYSTEM))
+                    .antMatchers(HttpMethod.DELETE, "%s/*/cache".formatted(URL.REST_SYSTEM.url)).hasAuthority(PermissionFunction.DELETE.getPermission(PermissionOperation.SYSTEM))
                     // All other requests have to be from any authenticated user
                     .anyRequest().authenticated()
                     // Stateless session for JWT
@@ -153,6 +169,8 @@ public class SecurityConfig {
                     .antMatchers(WHITELIST_WEBSITES).permitAll()
                     // All "User" related sites are just accessible for admin users
                     .antMatchers(URL.USERS.url + "/**").hasRole(Role.ADMIN.name())
+                    // Only admins change the stock
+                    .antMatchers(HttpMethod.POST, URL.ADMIN_INVENTORY.url).hasRole(Role.ADMIN.name())
                     // All other requests (e.g. statistics, meters, modbus,...) have to be from any authenticated user
                     .anyRequest().authenticated()
                     // Login mechanism
@@ -202,8 +220,8 @@ public class SecurityConfig {
         return authenticationConfiguration.getAuthenticationManager();
     }
 
-    private static AuthenticationSuccessHandler loginAuthenticationSuccessHandler() {
-        return new RedirectionAuthenticationSuccessHandler(URL.Path.HOME);
+    private static AuthenticationSuccessHandler loginAuthenticationSuccessHandler(BasketService basketService) {
+        return new RedirectionAuthenticationSuccessHandler(URL.Path.HOME, basketService);
     }
 
     private static AuthenticationFailureHandler loginAuthenticationFailureHandler() {
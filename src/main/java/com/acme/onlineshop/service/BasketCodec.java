@@ -0,0 +1,87 @@
+package com.acme.onlineshop.service;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * <p>Compact binary encoding of the lines of a basket.</p>
+ * <p>Layout: a version byte, the amount of lines &amp; then per line the item ID (as difference to the previous ID,
+ * since lines are sorted by ID) &amp; the quantity. All numbers are unsigned variable length integers (7 bits per
+ * byte), so a typical line takes 2-4 bytes.</p>
+ */
+public final class BasketCodec {
+
+    private final static byte VERSION = 1;
+
+    /**
+     * Decoded lines, sorted by item ID
+     */
+    public record Lines(long[] itemIds, int[] quantities) {
+    }
+
+    private BasketCodec() {
+    }
+
+    /**
+     * @param itemIds Item IDs sorted ascending, only the first <code>size</code> are encoded
+     * @param quantities Quantity per item ID
+     * @param size Amount of lines
+     */
+    public static byte[] encode(long[] itemIds, int[] quantities, int size) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(2 + size * 4);
+        output.write(VERSION);
+        writeVarLong(output, size);
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            writeVarLong(output, itemIds[i] - previous);
+            writeVarLong(output, quantities[i]);
+            previous = itemIds[i];
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException If content is corrupt or has an unknown version
+     */
+    public static Lines decode(byte[] content) {
+        if (content == null || content.length == 0 || content[0] != VERSION) {
+            throw new IllegalArgumentException("Unknown basket encoding");
+        }
+        int[] position = {1};
+        int size = (int) readVarLong(content, position);
+        if (size < 0 || size > content.length) {
+            throw new IllegalArgumentException("Corrupt basket: " + size + " lines");
+        }
+        long[] itemIds = new long[size];
+        int[] quantities = new int[size];
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            previous += readVarLong(content, position);
+            itemIds[i] = previous;
+            quantities[i] = (int) readVarLong(content, position);
+        }
+        return new Lines(itemIds, quantities);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream output, long value) {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    private static long readVarLong(byte[] content, int[] position) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= content.length) {
+                throw new IllegalArgumentException("Corrupt basket: truncated");
+            }
+            byte current = content[position[0]++];
+            value |= (long) (current & 0x7F) << shift;
+            if ((current & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Corrupt basket: number too long");
+    }
+}
@@ -0,0 +1,430 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.BasketLine;
+import com.acme.onlineshop.persistence.basket.StoredBasket;
+import com.acme.onlineshop.persistence.basket.StoredBasketRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * <p>Keeps all active baskets in memory, apart from the HTTP session.</p>
+ * <p>Baskets are spread over {@link #STRIPES} maps, each guarded by its own lock, so requests of different owners
+ * rarely wait for each other. A basket holds its lines as two primitive arrays (item IDs sorted ascending &amp;
+ * quantities), no object per line.</p>
+ * <p>Changes are written behind: a change only marks the basket as dirty, {@link #flush()} writes all dirty baskets
+ * periodically, in batches, each in the compact encoding of {@link BasketCodec}. A basket, that isn't in memory (e.g.
+ * after a restart or after it has been evicted for being idle), is restored from the database on its next access.</p>
+ * <p>Anonymous visitors own a basket per session, which is merged into their user basket, when they log in. Session
+ * baskets, that haven't been changed for the session TTL, are deleted, since their session is gone by then.</p>
+ */
+@Service
+public class BasketService {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(BasketService.class);
+    private final static String METRIC_PREFIX = "shop.basket";
+    /**
+     * Must be a power of 2
+     */
+    private final static int STRIPES = 64;
+    public final static int MAX_LINES = 100;
+    public final static int MAX_QUANTITY = 99;
+    private final static String USER_OWNER = "user:";
+    private final static String SESSION_OWNER = "session:";
+
+    private final StoredBasketRepository basketRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    private final List<Map<String, Basket>> stripes = new ArrayList<>(STRIPES);
+    /**
+     * Owners of all baskets, that have been changed since they were written last
+     */
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger basketsInMemory = new AtomicInteger();
+    private final int batchSize;
+    private final long idleTimeoutMillis;
+    private final Duration sessionTtl;
+    private final Counter restores;
+    private final Counter writes;
+
+    @Autowired
+    public BasketService(StoredBasketRepository basketRepository, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                         @Value("${shop.basket.flush-batch-size:500}") int batchSize,
+                         @Value("${shop.basket.idle-timeout:PT30M}") Duration idleTimeout,
+                         @Value("${shop.basket.session-ttl:PT24H}") Duration sessionTtl) {
+        this.basketRepository = basketRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+            stripes.add(new HashMap<>());
+        }
+        this.batchSize = Math.max(1, batchSize);
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+        this.sessionTtl = sessionTtl;
+        Gauge.builder(METRIC_PREFIX + ".memory", basketsInMemory, AtomicInteger::get)
+                .description("Amount of baskets in memory")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".dirty", dirty, Set::size)
+                .description("Amount of baskets, that haven't been written yet")
+                .register(meterRegistry);
+        this.restores = Counter.builder(METRIC_PREFIX + ".restores")
+                .description("Baskets looked up in the database, since they weren't in memory")
+                .register(meterRegistry);
+        this.writes = Counter.builder(METRIC_PREFIX + ".writes")
+                .description("Baskets written to the database")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return Owner of the basket of given user, kept across sessions
+     */
+    public static String userOwner(String username) {
+        return USER_OWNER + username;
+    }
+
+    /**
+     * @param basketId Random ID of the basket, kept in the session of an anonymous visitor
+     * @return Owner of the basket of an anonymous visitor
+     */
+    public static String sessionOwner(String basketId) {
+        return SESSION_OWNER + basketId;
+    }
+
+    /**
+     * @param owner Session or user, the basket belongs to
+     * @return Lines of the basket sorted by item ID, empty if there is none
+     */
+    public List<BasketLine> getLines(String owner) {
+        return access(owner, false, basket -> {
+            List<BasketLine> lines = new ArrayList<>(basket.size);
+            for (int i = 0; i < basket.size; i++) {
+                lines.add(new BasketLine(basket.itemIds[i], basket.quantities[i]));
+            }
+            return lines;
+        });
+    }
+
+    /**
+     * Adds an item to the basket, or increases its quantity if it is in the basket already
+     *
+     * @return New quantity of the item
+     * @throws IllegalArgumentException If quantity isn't positive, or the basket would exceed {@link #MAX_LINES} or
+     *                                  {@link #MAX_QUANTITY}
+     */
+    public int add(String owner, long itemId, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        return access(owner, true, basket -> {
+            int index = basket.indexOf(itemId);
+            int current = (index >= 0) ? basket.quantities[index] : 0;
+            return basket.set(itemId, current + quantity);
+        });
+    }
+
+    /**
+     * Sets the quantity of an item, 0 removes it from the basket
+     *
+     * @throws IllegalArgumentException If quantity is negative, or the basket would exceed {@link #MAX_LINES} or
+     *                                  {@link #MAX_QUANTITY}
+     */
+    public void setQuantity(String owner, long itemId, int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity must not be negative: " + quantity);
+        }
+        access(owner, true, basket -> basket.set(itemId, quantity));
+    }
+
+    /**
+     * Moves all lines of a basket into another one, e.g. the session basket into the user basket on login. Quantities
+     * of items in both baskets are added up (at most {@link #MAX_QUANTITY}), lines exceeding {@link #MAX_LINES} are
+     * dropped. The source basket is emptied.
+     */
+    public void merge(String from, String to) {
+        if (from.equals(to)) {
+            return;
+        }
+        List<BasketLine> lines = getLines(from);
+        if (lines.isEmpty()) {
+            return;
+        }
+        access(to, true, basket -> {
+            for (BasketLine line : lines) {
+                int index = basket.indexOf(line.itemId());
+                if (index >= 0) {
+                    basket.set(line.itemId(), Math.min(MAX_QUANTITY, basket.quantities[index] + line.quantity()));
+                } else if (basket.size < MAX_LINES) {
+                    basket.set(line.itemId(), line.quantity());
+                }
+            }
+            return null;
+        });
+        clear(from);
+    }
+
+    public void clear(String owner) {
+        access(owner, true, basket -> {
+            basket.size = 0;
+            return null;
+        });
+    }
+
+    /**
+     * Runs an action on the basket of given owner, while its stripe is locked. Restores the basket first, if it isn't
+     * in memory. The database is read without holding the lock.
+     */
+    private <T> T access(String owner, boolean modify, Function<Basket, T> action) {
+        int stripe = stripe(owner);
+        Basket restored = null;
+        while (true) {
+            locks[stripe].lock();
+            try {
+                Basket basket = stripes.get(stripe).get(owner);
+                if (basket == null && restored != null) {
+                    basket = restored;
+                    stripes.get(stripe).put(owner, basket);
+                    basketsInMemory.incrementAndGet();
+                }
+                if (basket != null) {
+                    basket.lastAccess = System.currentTimeMillis();
+                    T result = action.apply(basket);
+                    if (modify) {
+                        dirty.add(owner);
+                    }
+                    return result;
+                }
+            } finally {
+                locks[stripe].unlock();
+            }
+            restored = restore(owner);
+        }
+    }
+
+    private Basket restore(String owner) {
+        restores.increment();
+        Basket basket = new Basket();
+        StoredBasket stored = basketRepository.findById(owner).orElse(null);
+        if (stored != null) {
+            try {
+                BasketCodec.Lines lines = BasketCodec.decode(stored.getContent());
+                basket.itemIds = lines.itemIds();
+                basket.quantities = lines.quantities();
+                basket.size = lines.itemIds().length;
+            } catch (IllegalArgumentException exc) {
+                LOGGER.warn("Dropping unreadable basket of " + owner, exc);
+            }
+        }
+        return basket;
+    }
+
+    /**
+     * Writes all dirty baskets in batches: a single query looks up the stored baskets of a batch, changed &amp; new
+     * ones are written in JDBC batches, emptied ones are deleted with a single statement. Afterwards evicts all
+     * baskets from memory, that have been written &amp; idle for longer than the idle timeout.
+     *
+     * @return Amount of written baskets
+     */
+    @Scheduled(fixedDelayString = "${shop.basket.flush-interval:PT5S}")
+    public synchronized int flush() {
+        int written = 0;
+        List<String> batch = new ArrayList<>(batchSize);
+        Iterator<String> owners = dirty.iterator();
+        try {
+            while (owners.hasNext()) {
+                // Removed before the snapshot is taken, so later changes mark the basket dirty again
+                batch.add(owners.next());
+                owners.remove();
+                if (batch.size() == batchSize || !owners.hasNext()) {
+                    written += write(batch);
+                    batch.clear();
+                }
+            }
+        } catch (RuntimeException exc) {
+            // Not only data access, but also e.g. transaction failures must not lose the changes of the batch
+            dirty.addAll(batch);
+            LOGGER.error("Couldn't write baskets, retrying with next flush", exc);
+        }
+        evictIdle();
+        return written;
+    }
+
+    private int write(List<String> owners) {
+        Map<String, byte[]> contents = new HashMap<>();
+        List<String> emptied = new ArrayList<>();
+        for (String owner : owners) {
+            int stripe = stripe(owner);
+            locks[stripe].lock();
+            try {
+                Basket basket = stripes.get(stripe).get(owner);
+                if (basket == null) {
+                    continue;
+                }
+                if (basket.size == 0) {
+                    emptied.add(owner);
+                } else {
+                    contents.put(owner, BasketCodec.encode(basket.itemIds, basket.quantities, basket.size));
+                }
+            } finally {
+                locks[stripe].unlock();
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!emptied.isEmpty()) {
+                basketRepository.deleteAllByIdInBatch(emptied);
+            }
+            if (!contents.isEmpty()) {
+                List<StoredBasket> created = new ArrayList<>();
+                for (StoredBasket stored : basketRepository.findAllById(contents.keySet())) {
+                    stored.setContent(contents.remove(stored.getOwner()));
+                }
+                contents.forEach((owner, content) -> created.add(new StoredBasket(owner, content)));
+                basketRepository.saveAll(created);
+            }
+        });
+        int written = owners.size();
+        writes.increment(written);
+        return written;
+    }
+
+    /**
+     * Deletes session baskets, that haven't been changed for the session TTL, up to the batch size per transaction.
+     * Baskets accessed meanwhile are kept.
+     *
+     * @return Amount of deleted baskets
+     */
+    @Scheduled(fixedDelayString = "${shop.basket.session-expiry-interval:PT1H}")
+    public synchronized int expireSessionBaskets() {
+        long expiredBefore = System.currentTimeMillis() - sessionTtl.toMillis();
+        int deleted = 0;
+        List<String> owners;
+        List<String> expired = new ArrayList<>(batchSize);
+        do {
+            owners = basketRepository.findOwnersUnchangedSince(SESSION_OWNER, Instant.ofEpochMilli(expiredBefore), Pageable.ofSize(batchSize));
+            expired.clear();
+            for (String owner : owners) {
+                int stripe = stripe(owner);
+                locks[stripe].lock();
+                try {
+                    Basket basket = stripes.get(stripe).get(owner);
+                    if (basket == null || (basket.lastAccess < expiredBefore && !dirty.contains(owner))) {
+                        if (basket != null) {
+                            stripes.get(stripe).remove(owner);
+                            basketsInMemory.decrementAndGet();
+                        }
+                        expired.add(owner);
+                    }
+                } finally {
+                    locks[stripe].unlock();
+                }
+            }
+            if (!expired.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> basketRepository.deleteAllByIdInBatch(expired));
+                deleted += expired.size();
+            }
+            // Stops at a batch of baskets, that are all still in use, they are looked at again next time
+        } while (owners.size() == batchSize && !expired.isEmpty());
+        return deleted;
+    }
+
+    private void evictIdle() {
+        long idleSince = System.currentTimeMillis() - idleTimeoutMillis;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            locks[stripe].lock();
+            try {
+                Iterator<Map.Entry<String, Basket>> baskets = stripes.get(stripe).entrySet().iterator();
+                while (baskets.hasNext()) {
+                    Map.Entry<String, Basket> basket = baskets.next();
+                    if (basket.getValue().lastAccess < idleSince && !dirty.contains(basket.getKey())) {
+                        baskets.remove();
+                        basketsInMemory.decrementAndGet();
+                    }
+                }
+            } finally {
+                locks[stripe].unlock();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private static int stripe(String owner) {
+        int hash = owner.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * Lines of a single basket, only accessed while the lock of its stripe is held
+     */
+    private static final class Basket {
+
+        private long[] itemIds = new long[4];
+        private int[] quantities = new int[4];
+        private int size;
+        private long lastAccess;
+
+        int indexOf(long itemId) {
+            return Arrays.binarySearch(itemIds, 0, size, itemId);
+        }
+
+        /**
+         * @return New quantity
+         */
+        int set(long itemId, int quantity) {
+            if (quantity > MAX_QUANTITY) {
+                throw new IllegalArgumentException("At most %d pieces per item".formatted(MAX_QUANTITY));
+            }
+            int index = indexOf(itemId);
+            if (index >= 0) {
+                if (quantity == 0) {
+                    System.arraycopy(itemIds, index + 1, itemIds, index, size - index - 1);
+                    System.arraycopy(quantities, index + 1, quantities, index, size - index - 1);
+                    size--;
+                } else {
+                    quantities[index] = quantity;
+                }
+            } else if (quantity > 0) {
+                if (size == MAX_LINES) {
+                    throw new IllegalArgumentException("At most %d items per basket".formatted(MAX_LINES));
+                }
+                if (size == itemIds.length) {
+                    itemIds = Arrays.copyOf(itemIds, Math.max(4, size * 2));
+                    quantities = Arrays.copyOf(quantities, itemIds.length);
+                }
+                int insertAt = -(index + 1);
+                System.arraycopy(itemIds, insertAt, itemIds, insertAt + 1, size - insertAt);
+                System.arraycopy(quantities, insertAt, quantities, insertAt + 1, size - insertAt);
+                itemIds[insertAt] = itemId;
+                quantities[insertAt] = quantity;
+                size++;
+            }
+            return quantity;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.CacheRegionUsage;
+import com.acme.onlineshop.dto.CacheStatistics;
+import com.acme.onlineshop.persistence.item.CatalogCacheRegions;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Evicts &amp; reports the Hibernate second-level &amp; query cache of the catalog entities (see
+ * {@link CatalogCacheRegions}).</p>
+ * <p>Changes through Hibernate keep the cached entities up-to-date on their own. Eviction is only necessary, if the
+ * cache can't know about a change: inverse collections (e.g. the sub-categories of a main category, after a new
+ * sub-category has been saved), bulk queries &amp; changes made directly inside the database.</p>
+ */
+@Service
+public class CatalogCacheService {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(CatalogCacheService.class);
+
+    private final SessionFactory sessionFactory;
+
+    @Autowired
+    public CatalogCacheService(EntityManagerFactory entityManagerFactory) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+    }
+
+    /**
+     * Evicts the cached sub-categories of all main categories, after sub-categories have been added, moved or removed
+     */
+    public void evictSubCategories() {
+        cache().evictRegion(CatalogCacheRegions.SUB_CATEGORIES);
+    }
+
+    /**
+     * Evicts given region, or all regions incl. the query cache
+     *
+     * @param region Name of the region, or <code>null</code> for all regions
+     * @throws IllegalArgumentException If region is unknown
+     */
+    public void evict(String region) {
+        if (region == null || region.isBlank()) {
+            cache().evictAllRegions();
+            LOGGER.info("Evicted all cache regions");
+        } else if (Arrays.asList(sessionFactory.getStatistics().getSecondLevelCacheRegionNames()).contains(region)) {
+            cache().evictRegion(region);
+            LOGGER.info("Evicted cache region '{}'", region);
+        } else {
+            throw new IllegalArgumentException("Unknown cache region: " + region);
+        }
+    }
+
+    /**
+     * @return Hits &amp; misses since startup, overall &amp; per region
+     * @throws IllegalStateException If Hibernate doesn't collect statistics (<code>hibernate.generate_statistics</code>)
+     */
+    public CacheStatistics getStatistics() {
+        Statistics statistics = sessionFactory.getStatistics();
+        if (!statistics.isStatisticsEnabled()) {
+            // All counts would be 0, which can't be told apart from an unused cache
+            throw new IllegalStateException("Cache statistics are disabled, set 'spring.jpa.properties.hibernate.generate_statistics = true' to collect them");
+        }
+        List<CacheRegionUsage> regions = new ArrayList<>();
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics usage = statistics.getCacheRegionStatistics(region);
+            if (usage != null) {
+                regions.add(new CacheRegionUsage(region, usage.getHitCount(), usage.getMissCount(), usage.getPutCount(), usage.getElementCountInMemory()));
+            }
+        }
+        return new CacheStatistics(statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount(),
+                statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount(), statistics.getPrepareStatementCount(), regions);
+    }
+
+    private Cache cache() {
+        return sessionFactory.getCache();
+    }
+}
@@ -0,0 +1,435 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.persistence.user.CategoryAffinity;
+import com.acme.onlineshop.persistence.user.CategoryAffinityRepository;
+import com.acme.onlineshop.persistence.user.Profile;
+import com.acme.onlineshop.persistence.user.ProfileRepository;
+import com.acme.onlineshop.persistence.user.User;
+import com.acme.onlineshop.persistence.user.UserRepository;
+import com.acme.onlineshop.utils.LongFloatHashMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Interest of every logged-in user in the main categories, derived from category views &amp; items put into the
+ * basket, so the home page shows the user's favourite categories first.</p>
+ * <p>Each user's scores decay exponentially with the configured half-life. Instead of decaying every score over time,
+ * an event at time <i>t</i> adds <code>weight * 2^((t - reference) / half-life)</code>: the scores of a user share the
+ * same decay, so their order never changes between events. Scores are brought back to the current time (&amp; tiny
+ * ones dropped), before they grow too large for a <code>float</code>.</p>
+ * <p>Events are applied by a single background thread, never by the request: a full queue drops events instead of
+ * slowing down page views. After each event the top categories of the user are published as a small array, so
+ * reading them takes no lock &amp; no query. Scores are kept per user in a {@link LongFloatHashMap} &amp; written
+ * behind by {@link #flush()}, one compact row per user, linked to the user's {@link Profile}. Users idle for longer
+ * than the timeout are dropped from memory &amp; restored on their next access.</p>
+ */
+@Service
+public class CategoryAffinityService {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(CategoryAffinityService.class);
+    private final static String METRIC_PREFIX = "shop.affinity";
+    public final static float VIEW_WEIGHT = 1;
+    public final static float BASKET_WEIGHT = 3;
+    /**
+     * Scores are brought back to the current time after this many half-lives, i.e. before they exceed 2^16
+     */
+    private final static int RENORMALIZE_HALF_LIVES = 16;
+    /**
+     * Decayed scores below this value are dropped
+     */
+    private final static float MIN_SCORE = 0.01f;
+    private final static byte VERSION = 1;
+    private final static long[] NONE = new long[0];
+
+    private final CategoryAffinityRepository affinityRepository;
+    private final ProfileRepository profileRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolExecutor executor;
+    /**
+     * Users in memory. Users are only added by the executor thread &amp; removed by it or by {@link #remove(Collection)},
+     * their scores only changed by the executor thread
+     */
+    private final Map<Long, UserAffinity> users = new ConcurrentHashMap<>();
+    /**
+     * Users, whose scores have changed since they were written last
+     */
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private final double decayPerMilli;
+    private final long renormalizeMillis;
+    private final int top;
+    private final int batchSize;
+    private final long idleTimeoutMillis;
+    private final Counter dropped;
+    private final Counter restores;
+    private final Counter writes;
+
+    @Autowired
+    public CategoryAffinityService(CategoryAffinityRepository affinityRepository, ProfileRepository profileRepository, UserRepository userRepository,
+                                   PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                                   @Value("${shop.affinity.half-life:P7D}") Duration halfLife,
+                                   @Value("${shop.affinity.top:5}") int top,
+                                   @Value("${shop.affinity.queue-capacity:10000}") int queueCapacity,
+                                   @Value("${shop.affinity.flush-batch-size:500}") int batchSize,
+                                   @Value("${shop.affinity.idle-timeout:PT30M}") Duration idleTimeout) {
+        if (halfLife.isNegative() || halfLife.isZero()) {
+            throw new IllegalArgumentException("Half-life must be positive: " + halfLife);
+        }
+        this.affinityRepository = affinityRepository;
+        this.profileRepository = profileRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.decayPerMilli = Math.log(2) / halfLife.toMillis();
+        this.renormalizeMillis = halfLife.toMillis() * RENORMALIZE_HALF_LIVES;
+        this.top = Math.max(1, top);
+        this.batchSize = Math.max(1, batchSize);
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                new CustomizableThreadFactory("category-affinity-"));
+        this.dropped = Counter.builder(METRIC_PREFIX + ".dropped")
+                .description("Events, that were dropped, since the queue was full")
+                .register(meterRegistry);
+        this.restores = Counter.builder(METRIC_PREFIX + ".restores")
+                .description("Users looked up in the database, since they weren't in memory")
+                .register(meterRegistry);
+        this.writes = Counter.builder(METRIC_PREFIX + ".writes")
+                .description("Users, whose scores were written to the database")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".memory", users, Map::size)
+                .description("Amount of users in memory")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".dirty", dirty, Set::size)
+                .description("Amount of users, whose scores haven't been written yet")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".queue", executor, pool -> pool.getQueue().size())
+                .description("Events waiting to be applied")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts a view of a main or sub-category, towards its main category
+     *
+     * @param categoryId ID of the main category
+     */
+    public void recordView(long userId, long categoryId) {
+        record(userId, categoryId, VIEW_WEIGHT, System.currentTimeMillis());
+    }
+
+    /**
+     * Counts an item put into the basket, towards its main category
+     *
+     * @param categoryId ID of the main category of the item
+     */
+    public void recordBasketAdd(long userId, long categoryId) {
+        record(userId, categoryId, BASKET_WEIGHT, System.currentTimeMillis());
+    }
+
+    void record(long userId, long categoryId, float weight, long timeMillis) {
+        submit(() -> {
+            UserAffinity affinity = getOrRestore(userId);
+            if (affinity != null) {
+                add(affinity, categoryId, weight, timeMillis);
+                dirty.add(userId);
+            }
+        });
+    }
+
+    /**
+     * Returns the favourite main categories of a user from memory. A user, who isn't in memory, gets none this time
+     * &amp; is restored in the background.
+     *
+     * @return IDs of the favourite main categories, best first. At most the configured amount, empty if there are none
+     */
+    public long[] getFavourites(long userId) {
+        UserAffinity affinity = users.get(userId);
+        if (affinity == null) {
+            submit(() -> getOrRestore(userId));
+            return NONE;
+        }
+        affinity.lastAccess = System.currentTimeMillis();
+        return affinity.top;
+    }
+
+    private void submit(Runnable event) {
+        try {
+            executor.execute(event);
+        } catch (RejectedExecutionException exc) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Waits until all events, that have been recorded so far, are applied
+     */
+    void awaitEvents() throws InterruptedException, ExecutionException {
+        executor.submit(() -> {
+        }).get();
+    }
+
+    /**
+     * Must only be called by the executor thread
+     *
+     * @return Scores of given user, or <code>null</code> if they couldn't be restored
+     */
+    private UserAffinity getOrRestore(long userId) {
+        UserAffinity affinity = users.get(userId);
+        if (affinity == null) {
+            restores.increment();
+            Optional<CategoryAffinity> stored;
+            try {
+                stored = affinityRepository.findByUserId(userId);
+            } catch (DataAccessException exc) {
+                // Starting over would overwrite the stored scores with the next flush
+                LOGGER.error("Couldn't restore category affinity of user {}", userId, exc);
+                return null;
+            }
+            affinity = stored.map(CategoryAffinityService::decode).orElseGet(() -> new UserAffinity(new LongFloatHashMap(), System.currentTimeMillis()));
+            synchronized (affinity) {
+                affinity.top = topOf(affinity.scores);
+            }
+            users.put(userId, affinity);
+        }
+        affinity.lastAccess = System.currentTimeMillis();
+        return affinity;
+    }
+
+    private void add(UserAffinity affinity, long categoryId, float weight, long timeMillis) {
+        synchronized (affinity) {
+            long elapsed = timeMillis - affinity.referenceMillis;
+            if (elapsed > renormalizeMillis) {
+                affinity.scores.scale((float) Math.exp(-decayPerMilli * elapsed), MIN_SCORE);
+                affinity.referenceMillis = timeMillis;
+                elapsed = 0;
+            }
+            affinity.scores.addTo(categoryId, (float) (weight * Math.exp(decayPerMilli * elapsed)));
+            affinity.top = topOf(affinity.scores);
+        }
+    }
+
+    /**
+     * @return IDs of the best scores, best first
+     */
+    private long[] topOf(LongFloatHashMap scores) {
+        int size = Math.min(top, scores.size());
+        long[] ids = new long[size];
+        float[] best = new float[size];
+        int[] filled = {0};
+        scores.forEach((categoryId, score) -> {
+            int index = filled[0];
+            if (index == size && score <= best[size - 1]) {
+                return;
+            }
+            if (index < size) {
+                filled[0]++;
+            } else {
+                index = size - 1;
+            }
+            while (index > 0 && best[index - 1] < score) {
+                best[index] = best[index - 1];
+                ids[index] = ids[index - 1];
+                index--;
+            }
+            best[index] = score;
+            ids[index] = categoryId;
+        });
+        return ids;
+    }
+
+    /**
+     * Writes the scores of all changed users to the database, in batches
+     *
+     * @return Amount of written users
+     */
+    @Scheduled(fixedDelayString = "${shop.affinity.flush-interval:PT30S}")
+    public synchronized int flush() {
+        int written = 0;
+        List<Long> batch = new ArrayList<>(batchSize);
+        Iterator<Long> userIds = dirty.iterator();
+        try {
+            while (userIds.hasNext()) {
+                // Removed before the snapshot is taken, so later events mark the user dirty again
+                batch.add(userIds.next());
+                userIds.remove();
+                if (batch.size() == batchSize || !userIds.hasNext()) {
+                    written += write(batch);
+                    batch.clear();
+                }
+            }
+        } catch (DataAccessException exc) {
+            dirty.addAll(batch);
+            LOGGER.error("Couldn't write category affinities, retrying with next flush", exc);
+        }
+        if (!executor.isShutdown()) {
+            submit(this::evictIdle);
+        }
+        return written;
+    }
+
+    private int write(List<Long> userIds) {
+        Map<Long, Snapshot> snapshots = new HashMap<>();
+        for (long userId : userIds) {
+            UserAffinity affinity = users.get(userId);
+            if (affinity != null) {
+                synchronized (affinity) {
+                    snapshots.put(userId, new Snapshot(encode(affinity.scores), affinity.referenceMillis));
+                }
+            }
+        }
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+        Integer written = transactionTemplate.execute(status -> {
+            Map<Long, Long> profileIds = new HashMap<>();
+            for (Object[] row : profileRepository.findIdsByUserIds(snapshots.keySet())) {
+                profileIds.put(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+            }
+            Map<Long, CategoryAffinity> stored = new HashMap<>();
+            affinityRepository.findAllById(profileIds.values()).forEach(affinity -> stored.put(affinity.getProfileId(), affinity));
+            List<CategoryAffinity> changed = new ArrayList<>(snapshots.size());
+            snapshots.forEach((userId, snapshot) -> {
+                Long profileId = profileIds.get(userId);
+                CategoryAffinity affinity = (profileId != null) ? stored.get(profileId) : null;
+                if (affinity == null) {
+                    Profile profile = (profileId != null) ? profileRepository.getReferenceById(profileId) : createProfile(userId);
+                    if (profile == null) {
+                        return;
+                    }
+                    affinity = new CategoryAffinity(profile);
+                }
+                affinity.setScores(snapshot.scores(), snapshot.referenceMillis());
+                changed.add(affinity);
+            });
+            affinityRepository.saveAll(changed);
+            return changed.size();
+        });
+        writes.increment(written);
+        return written;
+    }
+
+    /**
+     * @return New profile of given user, or <code>null</code> if the user doesn't exist anymore
+     */
+    private Profile createProfile(long userId) {
+        Optional<User> user = userRepository.findById(userId);
+        if (user.isEmpty()) {
+            return null;
+        }
+        Profile profile = new Profile();
+        profile.setUser(user.get());
+        profileRepository.save(profile);
+        user.get().setProfile(profile);
+        return profile;
+    }
+
+    /**
+     * Deletes the scores &amp; profiles of given users &amp; drops them from memory. Must be called within the
+     * transaction, that deletes the users, before they are deleted: the profile references the user &amp; the user its
+     * profile, so the user's reference is cleared first.
+     *
+     * @param usernames Names of the users, that are deleted
+     */
+    public void remove(Collection<String> usernames) {
+        List<Profile> profiles = profileRepository.findAllByUsernames(usernames);
+        profiles.forEach(profile -> profile.getUser().setProfile(null));
+        affinityRepository.deleteAll(affinityRepository.findAllById(profiles.stream().map(Profile::getId).toList()));
+        profileRepository.deleteAll(profiles);
+        for (long userId : userRepository.findIdsByUsernameIn(usernames)) {
+            users.remove(userId);
+            dirty.remove(userId);
+        }
+    }
+
+    /**
+     * Drops users, that haven't been accessed for the idle timeout &amp; have no unwritten changes. Runs on the
+     * executor thread, so no event is applied to a dropped user.
+     */
+    private void evictIdle() {
+        long idleSince = System.currentTimeMillis() - idleTimeoutMillis;
+        users.entrySet().removeIf(entry -> entry.getValue().lastAccess < idleSince && !dirty.contains(entry.getKey()));
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            LOGGER.warn("Not all category affinity events could be applied before shutdown");
+        }
+        flush();
+    }
+
+    /**
+     * Layout: a version byte, the reference time is stored apart. Then per category its ID &amp; its score.
+     */
+    private static byte[] encode(LongFloatHashMap scores) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + scores.size() * (Long.BYTES + Float.BYTES));
+        buffer.put(VERSION);
+        scores.forEach((categoryId, score) -> buffer.putLong(categoryId).putFloat(score));
+        return buffer.array();
+    }
+
+    private static UserAffinity decode(CategoryAffinity stored) {
+        byte[] content = stored.getScores();
+        if (content.length == 0 || content[0] != VERSION || (content.length - 1) % (Long.BYTES + Float.BYTES) != 0) {
+            LOGGER.warn("Dropping category affinity of profile {} with unknown encoding", stored.getProfileId());
+            return new UserAffinity(new LongFloatHashMap(), System.currentTimeMillis());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(content, 1, content.length - 1);
+        LongFloatHashMap scores = new LongFloatHashMap(buffer.remaining() / (Long.BYTES + Float.BYTES));
+        while (buffer.hasRemaining()) {
+            scores.put(buffer.getLong(), buffer.getFloat());
+        }
+        return new UserAffinity(scores, stored.getReferenceMillis());
+    }
+
+    /**
+     * Scores of a single user. Scores &amp; reference time are only accessed while holding its lock, the published
+     * top categories without any lock.
+     */
+    private static final class UserAffinity {
+
+        private final LongFloatHashMap scores;
+        private long referenceMillis;
+        private volatile long[] top = NONE;
+        private volatile long lastAccess;
+
+        UserAffinity(LongFloatHashMap scores, long referenceMillis) {
+            this.scores = scores;
+            this.referenceMillis = referenceMillis;
+        }
+    }
+
+    /**
+     * Encoded scores of a user, taken for writing
+     */
+    private record Snapshot(byte[] scores, long referenceMillis) {
+    }
+}
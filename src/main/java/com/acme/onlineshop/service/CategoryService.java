@@ -4,8 +4,12 @@ import com.acme.onlineshop.persistence.item.MainCategory;
 import com.acme.onlineshop.persistence.item.MainCategoryRepository;
 import com.acme.onlineshop.persistence.item.SubCategory;
 import com.acme.onlineshop.persistence.item.SubCategoryRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -15,24 +19,106 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+/**
+ * <p>Manages main &amp; sub-categories.</p>
+ * <p>Pages render the categories from an immutable {@link CategoryTree}, which is built once &amp; shared by all
+ * requests. Every change through this service replaces the tree atomically, readers never wait for a rebuild.</p>
+ * <p>Sub-categories are saved through their owning side, so the cached sub-categories of the main categories are
+ * evicted before the tree is rebuilt (see {@link CatalogCacheService}).</p>
+ * <p>If a change is part of a surrounding transaction, eviction &amp; rebuild are deferred until it has been committed.
+ * Otherwise, the rebuild would read the old state from the database (or the cache would be refilled with it), &amp; a
+ * rolled back change would show up in the tree.</p>
+ */
 @Service
 public class CategoryService {
 
+    private final static String METRIC_PREFIX = "shop.categories";
+
     private final MainCategoryRepository mainCategoryRepository;
     private final SubCategoryRepository subCategoryRepository;
+    private final CatalogCacheService catalogCacheService;
+    private volatile CategoryTree tree;
 
     @Autowired
-    public CategoryService(MainCategoryRepository mainCategoryRepository, SubCategoryRepository subCategoryRepository) {
+    public CategoryService(MainCategoryRepository mainCategoryRepository, SubCategoryRepository subCategoryRepository, CatalogCacheService catalogCacheService,
+                           MeterRegistry meterRegistry) {
         this.mainCategoryRepository = mainCategoryRepository;
         this.subCategoryRepository = subCategoryRepository;
+        this.catalogCacheService = catalogCacheService;
+        Gauge.builder(METRIC_PREFIX + ".tree.version", this, CategoryService::getTreeVersion)
+                .description("Version of the category tree, incremented by every change")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".tree.size", this, service -> (service.tree != null) ? service.tree.size() : 0)
+                .description("Amount of main & sub-categories")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns current snapshot of all categories. The first call builds it.
+     *
+     * @return Immutable category tree
+     */
+    public CategoryTree getTree() {
+        CategoryTree current = tree;
+        return (current != null) ? current : refresh();
+    }
+
+    /**
+     * @return Version of the current category tree, or 0 if it hasn't been built yet
+     */
+    public long getTreeVersion() {
+        CategoryTree current = tree;
+        return (current != null) ? current.getVersion() : 0;
+    }
+
+    /**
+     * Rebuilds the category tree from the database with a single query &amp; replaces the current one.
+     * Serialized, so an older tree never replaces a newer one.
+     *
+     * @return New category tree
+     */
+    public synchronized CategoryTree refresh() {
+        tree = new CategoryTree(getTreeVersion() + 1, mainCategoryRepository.findEagerAllByOrderByName());
+        return tree;
+    }
+
+    /**
+     * Runs given action after the current transaction has been committed, or right away if there is none
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void refreshAfterCommit() {
+        afterCommit(this::refresh);
+    }
+
+    private void evictSubCategoriesAndRefreshAfterCommit() {
+        afterCommit(() -> {
+            catalogCacheService.evictSubCategories();
+            refresh();
+        });
     }
 
     public MainCategory addNewMainCategory(MainCategory mainCategory) {
-        return mainCategoryRepository.save(mainCategory);
+        MainCategory result = mainCategoryRepository.save(mainCategory);
+        refreshAfterCommit();
+        return result;
     }
 
     public List<MainCategory> addNewMainCategories(Iterable<MainCategory> mainCategories) {
-        return mainCategoryRepository.saveAll(mainCategories);
+        List<MainCategory> result = mainCategoryRepository.saveAll(mainCategories);
+        refreshAfterCommit();
+        return result;
     }
 
     public MainCategory addNewMainCategory(String name, String description) {
@@ -40,15 +126,19 @@ public class CategoryService {
     }
 
     public MainCategory addNewMainCategory(String name, String description, List<SubCategory> subCategories) {
-        return mainCategoryRepository.save(new MainCategory(name, description, subCategories));
+        return addNewMainCategory(new MainCategory(name, description, subCategories));
     }
 
     public SubCategory addNewSubCategory(SubCategory subCategory) {
-        return subCategoryRepository.save(subCategory);
+        SubCategory result = subCategoryRepository.save(subCategory);
+        evictSubCategoriesAndRefreshAfterCommit();
+        return result;
     }
 
     public List<SubCategory> addNewSubCategories(Iterable<SubCategory> subCategories) {
-        return subCategoryRepository.saveAll(subCategories);
+        List<SubCategory> result = subCategoryRepository.saveAll(subCategories);
+        evictSubCategoriesAndRefreshAfterCommit();
+        return result;
     }
 
     public SubCategory addNewSubCategory(String name, String description, MainCategory mainCategory) {
@@ -0,0 +1,189 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.persistence.item.Category;
+import com.acme.onlineshop.persistence.item.MainCategory;
+import com.acme.onlineshop.persistence.item.SubCategory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>Immutable snapshot of all categories, sorted by name, with precomputed links &amp; slugs.</p>
+ * <p>A snapshot is built once by the {@link CategoryService} &amp; shared by all requests, until it is replaced as a
+ * whole by a newer one. The getters match the ones of the {@link Category} entities, so templates can render either.</p>
+ * <p>Category paths (<code>main</code> or <code>main/sub</code>, as used inside the links) are resolved with a single
+ * hash lookup, so unknown paths are answered without any database query.</p>
+ */
+public final class CategoryTree {
+
+    public final static String PATH_SEPARATOR = "/";
+
+    private final long version;
+    private final Instant createdAt;
+    private final List<Node> mainCategories;
+    private final Map<Long, Node> byId;
+    private final Map<String, Node> byPath;
+
+    CategoryTree(long version, List<MainCategory> mainCategories) {
+        this.version = version;
+        this.createdAt = Instant.now();
+        Map<Long, Node> nodes = new HashMap<>();
+        Map<String, Node> paths = new HashMap<>();
+        // Fetch joins may return a main category once per sub-category
+        Map<Long, MainCategory> distinct = new LinkedHashMap<>();
+        for (MainCategory mainCategory : mainCategories) {
+            distinct.putIfAbsent(mainCategory.getId(), mainCategory);
+        }
+        List<MainCategory> sortedMainCategories = new ArrayList<>(distinct.values());
+        sortedMainCategories.sort(Comparator.comparing(Category::getName, String.CASE_INSENSITIVE_ORDER));
+        List<Node> mains = new ArrayList<>(sortedMainCategories.size());
+        for (MainCategory mainCategory : sortedMainCategories) {
+            List<SubCategory> sortedSubCategories = new ArrayList<>((mainCategory.getSubCategories() != null) ? mainCategory.getSubCategories() : List.of());
+            sortedSubCategories.sort(Comparator.comparing(Category::getName, String.CASE_INSENSITIVE_ORDER));
+            List<Node> subs = new ArrayList<>(sortedSubCategories.size());
+            for (SubCategory subCategory : sortedSubCategories) {
+                Node sub = new Node(subCategory.getId(), subCategory.getName(), subCategory.getNameLowerCase(), subCategory.getDescription(),
+                        mainCategory.getLink() + PATH_SEPARATOR + subCategory.getNameLowerCase(), subs.size(), mainCategory.getId(), List.of());
+                subs.add(sub);
+                nodes.put(sub.getId(), sub);
+                paths.put(mainCategory.getNameLowerCase() + PATH_SEPARATOR + subCategory.getNameLowerCase(), sub);
+            }
+            Node main = new Node(mainCategory.getId(), mainCategory.getName(), mainCategory.getNameLowerCase(), mainCategory.getDescription(),
+                    mainCategory.getLink(), mains.size(), null, Collections.unmodifiableList(subs));
+            mains.add(main);
+            nodes.put(main.getId(), main);
+            paths.put(mainCategory.getNameLowerCase(), main);
+        }
+        this.mainCategories = Collections.unmodifiableList(mains);
+        this.byId = Collections.unmodifiableMap(nodes);
+        this.byPath = Collections.unmodifiableMap(paths);
+    }
+
+    /**
+     * @return Incremented by every rebuild, starting with 1
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @return Main categories sorted by name, each with its sub-categories sorted by name
+     */
+    public List<Node> getMainCategories() {
+        return mainCategories;
+    }
+
+    /**
+     * @return Main or sub-category with given ID, or <code>null</code>
+     */
+    public Node get(long id) {
+        return byId.get(id);
+    }
+
+    /**
+     * @param slug Lower case name of a main category, as used inside its link
+     * @return Main category with given slug, or <code>null</code>
+     */
+    public Node getMainCategory(String slug) {
+        Node category = byPath.get(slug);
+        return (category != null && category.isMainCategory()) ? category : null;
+    }
+
+    /**
+     * @param path Path of a category below the category URL, either <code>main</code> or <code>main/sub</code>. Case is
+     *             ignored, like it is for category names.
+     * @return Main or sub-category with given path, or <code>null</code>
+     */
+    public Node resolve(String path) {
+        return (path != null) ? byPath.get(path.toLowerCase(Locale.getDefault())) : null;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    /**
+     * Single category of a {@link CategoryTree}
+     */
+    public static final class Node {
+
+        private final long id;
+        private final String name;
+        private final String nameLowerCase;
+        private final String description;
+        private final String link;
+        private final int position;
+        private final Long mainCategoryId;
+        private final List<Node> subCategories;
+
+        private Node(long id, String name, String nameLowerCase, String description, String link, int position, Long mainCategoryId, List<Node> subCategories) {
+            this.id = id;
+            this.name = name;
+            this.nameLowerCase = nameLowerCase;
+            this.description = description;
+            this.link = link;
+            this.position = position;
+            this.mainCategoryId = mainCategoryId;
+            this.subCategories = subCategories;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return Slug of this category, as used inside its link
+         */
+        public String getNameLowerCase() {
+            return nameLowerCase;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public String getLink() {
+            return link;
+        }
+
+        /**
+         * @return Index of this category among its siblings
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        /**
+         * @return ID of the main category, or <code>null</code> if this is a main category itself
+         */
+        public Long getMainCategoryId() {
+            return mainCategoryId;
+        }
+
+        public boolean isMainCategory() {
+            return mainCategoryId == null;
+        }
+
+        /**
+         * @return Sub-categories sorted by name, empty for sub-categories
+         */
+        public List<Node> getSubCategories() {
+            return subCategories;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.utils.LongLongHashMap;
+
+import java.util.Arrays;
+
+/**
+ * <p>How often two items have been bought (or put into a basket) together, as a sparse symmetric matrix.</p>
+ * <p>Each pair is counted once, in a single {@link LongLongHashMap} keyed by both item IDs packed into one
+ * <code>long</code> (the smaller ID in the upper 32 bits), so a pair costs 16 bytes per slot &amp; no object. Pairs
+ * with low counts are pruned, whenever there are more than allowed. <b>Not</b> thread-safe, see
+ * {@link RecommendationService}.</p>
+ */
+final class CoOccurrenceCounts {
+
+    /**
+     * Item IDs must fit into 32 bits to be packed into a pair
+     */
+    private final static long MAX_ITEM_ID = 0xFFFFFFFFL;
+    private final static long[] NONE = new long[0];
+
+    private final LongLongHashMap pairs = new LongLongHashMap(1024);
+
+    /**
+     * Counts every pair of distinct items once, e.g. of an order
+     */
+    void addTogether(long[] itemIds) {
+        long[] items = Arrays.stream(itemIds).sorted().distinct().toArray();
+        for (int i = 0; i < items.length; i++) {
+            for (int j = i + 1; j < items.length; j++) {
+                add(items[i], items[j]);
+            }
+        }
+    }
+
+    /**
+     * Counts the pairs of an item with each of the other items once, e.g. of an item put into a basket
+     */
+    void addWith(long itemId, long[] otherIds) {
+        for (long otherId : otherIds) {
+            if (otherId != itemId) {
+                add(itemId, otherId);
+            }
+        }
+    }
+
+    private void add(long itemId, long otherId) {
+        if (itemId > 0 && otherId > 0 && itemId <= MAX_ITEM_ID && otherId <= MAX_ITEM_ID) {
+            pairs.addTo(pair(itemId, otherId), 1);
+        }
+    }
+
+    private static long pair(long itemId, long otherId) {
+        return (Math.min(itemId, otherId) << 32) | Math.max(itemId, otherId);
+    }
+
+    /**
+     * @return How often both items have been counted together
+     */
+    long get(long itemId, long otherId) {
+        return pairs.get(pair(itemId, otherId));
+    }
+
+    /**
+     * @return Amount of counted pairs
+     */
+    int size() {
+        return pairs.size();
+    }
+
+    /**
+     * Drops the pairs with the lowest counts, until only three quarters of the max. amount are left. Pairs seen once
+     * are dropped first, then twice &amp; so on, so pairs, that are bought together regularly, survive.
+     *
+     * @return Amount of dropped pairs
+     */
+    int prune(int maxPairs) {
+        if (pairs.size() <= maxPairs) {
+            return 0;
+        }
+        int target = maxPairs - maxPairs / 4;
+        int removed = 0;
+        while (pairs.size() > target) {
+            long[] lowest = {Long.MAX_VALUE};
+            pairs.forEach((pair, count) -> lowest[0] = Math.min(lowest[0], count));
+            removed += pairs.removeIf((pair, count) -> count <= lowest[0]);
+        }
+        return removed;
+    }
+
+    /**
+     * Takes the neighbours with the highest counts of every item, from a single pass over all pairs.
+     *
+     * @param top Max. amount of neighbours per item
+     * @param minCount Pairs counted less often are ignored
+     */
+    Neighbours topNeighbours(int top, long minCount) {
+        TopBuilder builder = new TopBuilder(top);
+        pairs.forEach((pair, count) -> {
+            if (count >= minCount) {
+                long itemId = pair >>> 32;
+                long otherId = pair & MAX_ITEM_ID;
+                builder.offer(itemId, otherId, count);
+                builder.offer(otherId, itemId, count);
+            }
+        });
+        return builder.build();
+    }
+
+    /**
+     * Immutable snapshot of the top neighbours of every item: all neighbours in one array, best first per item, &amp;
+     * the offset of every item's neighbours. Safe to read by many threads at once.
+     */
+    static final class Neighbours {
+
+        static final Neighbours EMPTY = new Neighbours(new LongLongHashMap(), new int[]{0}, NONE);
+
+        /**
+         * Item ID to its ordinal in the offsets
+         */
+        private final LongLongHashMap ordinals;
+        private final int[] offsets;
+        private final long[] neighbours;
+
+        private Neighbours(LongLongHashMap ordinals, int[] offsets, long[] neighbours) {
+            this.ordinals = ordinals;
+            this.offsets = offsets;
+            this.neighbours = neighbours;
+        }
+
+        /**
+         * @return IDs of the items bought together with given item most often, best first
+         */
+        long[] get(long itemId) {
+            int ordinal = (int) ordinals.get(itemId, -1);
+            return (ordinal < 0) ? NONE : Arrays.copyOfRange(neighbours, offsets[ordinal], offsets[ordinal + 1]);
+        }
+
+        /**
+         * @return Amount of items with neighbours
+         */
+        int size() {
+            return ordinals.size();
+        }
+    }
+
+    /**
+     * Collects the best neighbours per item in fixed size blocks of flat arrays, sorted by count (descending) &amp; ID
+     */
+    private static final class TopBuilder {
+
+        private final int top;
+        private final LongLongHashMap ordinals = new LongLongHashMap();
+        private long[] neighbours;
+        private long[] counts;
+        private int[] sizes;
+        private int items;
+
+        TopBuilder(int top) {
+            this.top = top;
+            this.sizes = new int[1024];
+            this.neighbours = new long[sizes.length * top];
+            this.counts = new long[sizes.length * top];
+        }
+
+        void offer(long itemId, long neighbourId, long count) {
+            int ordinal = (int) ordinals.get(itemId, -1);
+            if (ordinal < 0) {
+                ordinal = items++;
+                ordinals.put(itemId, ordinal);
+                if (items > sizes.length) {
+                    sizes = Arrays.copyOf(sizes, sizes.length * 2);
+                    neighbours = Arrays.copyOf(neighbours, sizes.length * top);
+                    counts = Arrays.copyOf(counts, sizes.length * top);
+                }
+            }
+            int start = ordinal * top;
+            int size = sizes[ordinal];
+            if (size == top && !isBetter(count, neighbourId, counts[start + top - 1], neighbours[start + top - 1])) {
+                return;
+            }
+            int index = start + ((size < top) ? sizes[ordinal]++ : top - 1);
+            while (index > start && isBetter(count, neighbourId, counts[index - 1], neighbours[index - 1])) {
+                counts[index] = counts[index - 1];
+                neighbours[index] = neighbours[index - 1];
+                index--;
+            }
+            counts[index] = count;
+            neighbours[index] = neighbourId;
+        }
+
+        private static boolean isBetter(long count, long itemId, long otherCount, long otherItemId) {
+            return count > otherCount || (count == otherCount && itemId < otherItemId);
+        }
+
+        Neighbours build() {
+            int[] offsets = new int[items + 1];
+            for (int ordinal = 0; ordinal < items; ordinal++) {
+                offsets[ordinal + 1] = offsets[ordinal] + sizes[ordinal];
+            }
+            long[] compact = new long[offsets[items]];
+            for (int ordinal = 0; ordinal < items; ordinal++) {
+                System.arraycopy(neighbours, ordinal * top, compact, offsets[ordinal], sizes[ordinal]);
+            }
+            return new Neighbours(ordinals, offsets, compact);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.Completion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Immutable, read-optimized prefix index, that returns the heaviest completions of a prefix.</p>
+ * <p>Every completion is reachable by its slug (e.g. "science_fiction") &amp; by each later word of it ("fiction").
+ * All keys are sorted &amp; packed into a single <code>char</code> array, so the keys starting with a prefix form one
+ * contiguous range, found by two binary searches. A sparse table holds the heaviest key of every power-of-two range,
+ * so the top-k of any range take <i>O(k²)</i> steps, regardless of how many keys share the prefix.</p>
+ * <p>Lookups allocate nothing but the returned list &amp; a few tiny arrays. Build a new index instead of changing
+ * one.</p>
+ */
+public final class CompletionIndex {
+
+    public final static CompletionIndex EMPTY = new CompletionIndex(List.of());
+
+    private final static char WORD_SEPARATOR = '_';
+
+    private final char[] keys;
+    /**
+     * Key <i>i</i> spans <code>keys[keyOffsets[i]]</code> to <code>keys[keyOffsets[i + 1]]</code>
+     */
+    private final int[] keyOffsets;
+    private final Completion[] completions;
+    /**
+     * <code>heaviest[j][i]</code> is the heaviest key within <code>[i, i + 2^j)</code>
+     */
+    private final int[][] heaviest;
+
+    /**
+     * @param entries Completions with their slugs, as built by {@link com.acme.onlineshop.persistence.item.Category}
+     */
+    public CompletionIndex(List<Entry> entries) {
+        List<Key> sorted = new ArrayList<>();
+        for (Entry entry : entries) {
+            String slug = normalize(entry.slug());
+            int start = 0;
+            while (start < slug.length()) {
+                if (slug.charAt(start) != WORD_SEPARATOR) {
+                    sorted.add(new Key(slug.substring(start), entry.completion()));
+                }
+                int separator = slug.indexOf(WORD_SEPARATOR, start);
+                if (separator < 0) {
+                    break;
+                }
+                start = separator + 1;
+            }
+        }
+        sorted.sort(Comparator.comparing(Key::key));
+        int size = sorted.size();
+        this.keyOffsets = new int[size + 1];
+        this.completions = new Completion[size];
+        StringBuilder packed = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            keyOffsets[i] = packed.length();
+            packed.append(sorted.get(i).key());
+            completions[i] = sorted.get(i).completion();
+        }
+        keyOffsets[size] = packed.length();
+        this.keys = packed.toString().toCharArray();
+        int levels = (size == 0) ? 0 : 32 - Integer.numberOfLeadingZeros(size);
+        this.heaviest = new int[levels][];
+        if (levels > 0) {
+            heaviest[0] = new int[size];
+            Arrays.setAll(heaviest[0], i -> i);
+        }
+        for (int level = 1; level < levels; level++) {
+            int half = 1 << (level - 1);
+            int[] previous = heaviest[level - 1];
+            heaviest[level] = new int[size - (1 << level) + 1];
+            for (int i = 0; i < heaviest[level].length; i++) {
+                heaviest[level][i] = heavier(previous[i], previous[i + half]);
+            }
+        }
+    }
+
+    /**
+     * Finds the heaviest completions, one of whose keys starts with given prefix.
+     *
+     * @param prefix Typed text, spaces match the word separator of slugs
+     * @param limit Max. amount of completions
+     * @return Distinct completions, heaviest first (equal weights in alphabetical order of their matching key)
+     */
+    public List<Completion> complete(String prefix, int limit) {
+        String normalized = normalize(prefix);
+        if (normalized.isEmpty() || limit <= 0 || completions.length == 0) {
+            return List.of();
+        }
+        int from = lowerBound(normalized);
+        int to = upperBound(normalized, from);
+        // Candidate ranges, each with its heaviest key. Every step replaces one range by at most two
+        int[] rangeFrom = new int[limit + 1];
+        int[] rangeTo = new int[limit + 1];
+        int[] rangeTop = new int[limit + 1];
+        int ranges = 0;
+        if (from < to) {
+            rangeFrom[0] = from;
+            rangeTo[0] = to;
+            rangeTop[0] = heaviest(from, to);
+            ranges = 1;
+        }
+        List<Completion> result = new ArrayList<>(Math.min(limit, to - from));
+        while (ranges > 0 && result.size() < limit) {
+            int best = 0;
+            for (int i = 1; i < ranges; i++) {
+                if (heavier(rangeTop[i], rangeTop[best]) == rangeTop[i]) {
+                    best = i;
+                }
+            }
+            int top = rangeTop[best];
+            int bestFrom = rangeFrom[best];
+            int bestTo = rangeTo[best];
+            ranges--;
+            rangeFrom[best] = rangeFrom[ranges];
+            rangeTo[best] = rangeTo[ranges];
+            rangeTop[best] = rangeTop[ranges];
+            if (!containsSame(result, completions[top])) {
+                result.add(completions[top]);
+            }
+            if (ranges + 2 > rangeFrom.length) {
+                // Only if a completion has been reached by several of its keys
+                rangeFrom = Arrays.copyOf(rangeFrom, rangeFrom.length * 2);
+                rangeTo = Arrays.copyOf(rangeTo, rangeTo.length * 2);
+                rangeTop = Arrays.copyOf(rangeTop, rangeTop.length * 2);
+            }
+            if (bestFrom < top) {
+                rangeFrom[ranges] = bestFrom;
+                rangeTo[ranges] = top;
+                rangeTop[ranges++] = heaviest(bestFrom, top);
+            }
+            if (top + 1 < bestTo) {
+                rangeFrom[ranges] = top + 1;
+                rangeTo[ranges] = bestTo;
+                rangeTop[ranges++] = heaviest(top + 1, bestTo);
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return completions.length;
+    }
+
+    /**
+     * Converts typed text the same way as category names are converted into slugs
+     */
+    static String normalize(String text) {
+        return (text == null) ? "" : text.stripLeading().toLowerCase(Locale.getDefault()).replace(' ', WORD_SEPARATOR);
+    }
+
+    private static boolean containsSame(List<Completion> result, Completion completion) {
+        for (Completion added : result) {
+            if (added == completion) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int heavier(int first, int second) {
+        long firstWeight = completions[first].weight();
+        long secondWeight = completions[second].weight();
+        return (firstWeight > secondWeight || (firstWeight == secondWeight && first < second)) ? first : second;
+    }
+
+    private int heaviest(int from, int to) {
+        int level = 31 - Integer.numberOfLeadingZeros(to - from);
+        return heavier(heaviest[level][from], heaviest[level][to - (1 << level)]);
+    }
+
+    /**
+     * @return First key, that is not less than given prefix
+     */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = completions.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(middle, prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return First key after <code>from</code>, that doesn't start with given prefix
+     */
+    private int upperBound(String prefix, int from) {
+        int low = from;
+        int high = completions.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(middle, prefix) == 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares the beginning of a key with given prefix, without creating a string
+     *
+     * @return 0 if key starts with prefix, otherwise the order of key &amp; prefix
+     */
+    private int compare(int key, String prefix) {
+        int offset = keyOffsets[key];
+        int length = keyOffsets[key + 1] - offset;
+        int common = Math.min(length, prefix.length());
+        for (int i = 0; i < common; i++) {
+            char character = keys[offset + i];
+            if (character != prefix.charAt(i)) {
+                return character - prefix.charAt(i);
+            }
+        }
+        return (length < prefix.length()) ? -1 : 0;
+    }
+
+    /**
+     * @param slug Lower case name with words separated by <code>_</code>
+     * @param completion Returned for every key of this slug
+     */
+    public record Entry(String slug, Completion completion) {
+    }
+
+    private record Key(String key, Completion completion) {
+    }
+}
@@ -0,0 +1,110 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.Completion;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Suggests categories while a search is typed, heaviest first.</p>
+ * <p>The weight of a category is its amount of items plus the amount of searches for its exact name. Suggestions are
+ * answered by an immutable {@link CompletionIndex}, which is rebuilt in background, whenever categories, items or
+ * search counts have changed, &amp; then replaced atomically. Neither building nor answering touches the database.</p>
+ */
+@Service
+public class CompletionService {
+
+    private final static String METRIC_PREFIX = "shop.search.completion";
+    public final static int DEFAULT_LIMIT = 8;
+    public final static int MAX_LIMIT = 20;
+
+    private final CategoryService categoryService;
+    private final SearchService searchService;
+    /**
+     * Searches per slug, only counted for slugs of existing categories
+     */
+    private final Map<String, LongAdder> searches = new ConcurrentHashMap<>();
+    private final LongAdder searchCount = new LongAdder();
+    private volatile CompletionIndex index = CompletionIndex.EMPTY;
+    private volatile Set<String> slugs = Set.of();
+    private long builtTreeVersion = -1;
+    private long builtModifications = -1;
+    private long builtSearchCount = -1;
+
+    @Autowired
+    public CompletionService(CategoryService categoryService, SearchService searchService, MeterRegistry meterRegistry) {
+        this.categoryService = categoryService;
+        this.searchService = searchService;
+        Gauge.builder(METRIC_PREFIX + ".keys", this, service -> service.index.size())
+                .description("Amount of keys in the completion index")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param prefix Typed text
+     * @param limit Max. amount of suggestions, at most {@link #MAX_LIMIT}
+     * @return Categories, whose name or a later word of it starts with given prefix, heaviest first
+     */
+    public List<Completion> complete(String prefix, int limit) {
+        return index.complete(prefix, Math.max(1, Math.min(limit, MAX_LIMIT)));
+    }
+
+    /**
+     * Counts a submitted search, if it names a category exactly, to suggest this category earlier.
+     *
+     * @param query Submitted search text
+     */
+    public void recordSearch(String query) {
+        String slug = CompletionIndex.normalize((query != null) ? query.strip() : null);
+        if (slugs.contains(slug)) {
+            searches.computeIfAbsent(slug, key -> new LongAdder()).increment();
+            searchCount.increment();
+        }
+    }
+
+    /**
+     * Builds a new completion index from the current categories, item counts &amp; search counts &amp; replaces the
+     * current one. Skipped, if none of them has changed since the last build.
+     */
+    @Scheduled(fixedDelayString = "${shop.search.completion.rebuild-interval:PT10S}")
+    public synchronized void rebuild() {
+        CategoryTree tree = categoryService.getTree();
+        long modifications = searchService.getModifications();
+        long currentSearchCount = searchCount.sum();
+        if (tree.getVersion() == builtTreeVersion && modifications == builtModifications && currentSearchCount == builtSearchCount) {
+            return;
+        }
+        List<CompletionIndex.Entry> entries = new ArrayList<>(tree.size());
+        Set<String> builtSlugs = new HashSet<>();
+        for (CategoryTree.Node mainCategory : tree.getMainCategories()) {
+            entries.add(entry(mainCategory, null));
+            builtSlugs.add(mainCategory.getNameLowerCase());
+            for (CategoryTree.Node subCategory : mainCategory.getSubCategories()) {
+                entries.add(entry(subCategory, mainCategory.getName()));
+                builtSlugs.add(subCategory.getNameLowerCase());
+            }
+        }
+        index = new CompletionIndex(entries);
+        slugs = builtSlugs;
+        searches.keySet().retainAll(builtSlugs);
+        builtTreeVersion = tree.getVersion();
+        builtModifications = modifications;
+        builtSearchCount = currentSearchCount;
+    }
+
+    private CompletionIndex.Entry entry(CategoryTree.Node category, String context) {
+        LongAdder categorySearches = searches.get(category.getNameLowerCase());
+        long weight = searchService.countItems(category.getId()) + ((categorySearches != null) ? categorySearches.sum() : 0);
+        return new CompletionIndex.Entry(category.getNameLowerCase(), new Completion(category.getName(), context, category.getLink(), weight));
+    }
+}
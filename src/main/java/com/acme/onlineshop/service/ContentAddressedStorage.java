@@ -0,0 +1,331 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.ApplicationConfiguration;
+import com.acme.onlineshop.exception.StorageException;
+import com.acme.onlineshop.exception.StorageFileNotFoundException;
+import com.acme.onlineshop.persistence.media.MediaBlob;
+import com.acme.onlineshop.persistence.media.MediaBlobRepository;
+import com.acme.onlineshop.persistence.media.MediaFile;
+import com.acme.onlineshop.persistence.media.MediaFileRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Content addressed &amp; deduplicating media store.</p>
+ * <p>Every upload is identified by the SHA-256 hash of its content &amp; stored only once as {@link MediaBlob} under
+ * a sharded directory: <code>&lt;mediaRoot&gt;/blobs/ab/cd/abcd...</code>. The file names users see are just
+ * {@link MediaFile} references to a blob. A blob is deleted as soon as its last reference is gone.</p>
+ * <p>A duplicate upload costs one hash calculation over the uploaded stream &amp; no write. Only unknown content is
+ * streamed to disk, while it is hashed again, to make sure the content didn't change in between.</p>
+ * <p>Two kinds of striped locks keep the reference counters exact: changes of a file name are serialized by the lock
+ * of the name, changes of a blob by the lock of its hash. A name lock may be held while taking a hash lock, never the
+ * other way round.</p>
+ */
+@Component
+@DependsOn("ResourcePropertiesTest")
+public class ContentAddressedStorage {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(ContentAddressedStorage.class);
+
+    public final static String BLOB_DIRECTORY = "blobs";
+    private final static String HASH_ALGORITHM = "SHA-256";
+    private final static int SHARD_LENGTH = 2;
+    private final static int LOCK_STRIPES = 64;
+    private final static Pattern CONTENT_HASH = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path rootLocation;
+    private final MediaBlobRepository blobRepository;
+    private final MediaFileRepository fileRepository;
+    private final TransactionTemplate transactionTemplate;
+    /**
+     * All changes of a blob &amp; its reference counter are serialized by the lock its hash belongs to
+     */
+    private final ReentrantLock[] locks;
+    /**
+     * All changes of a file name of a user are serialized by the lock the name belongs to
+     */
+    private final ReentrantLock[] nameLocks;
+
+    @Autowired
+    public ContentAddressedStorage(MediaBlobRepository blobRepository, MediaFileRepository fileRepository, PlatformTransactionManager transactionManager) {
+        this(ApplicationConfiguration.getMediaRootDirectory(), blobRepository, fileRepository, transactionManager);
+    }
+
+    ContentAddressedStorage(Path rootLocation, MediaBlobRepository blobRepository, MediaFileRepository fileRepository, PlatformTransactionManager transactionManager) {
+        this.rootLocation = rootLocation;
+        this.blobRepository = blobRepository;
+        this.fileRepository = fileRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.locks = newLocks();
+        this.nameLocks = newLocks();
+    }
+
+    private static ReentrantLock[] newLocks() {
+        ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    /**
+     * Returns location of a blob with given hash, relative to the media root directory
+     *
+     * @param contentHash Hash of content as hexadecimal string
+     * @return Sharded location of the blob, e.g. <code>blobs/ab/cd/abcd...</code>
+     */
+    public static Path blobLocation(String contentHash) {
+        return Path.of(BLOB_DIRECTORY, contentHash.substring(0, SHARD_LENGTH), contentHash.substring(SHARD_LENGTH, 2 * SHARD_LENGTH), contentHash);
+    }
+
+    /**
+     * Checks, if given text has the form of a content hash: 64 lower case hexadecimal digits
+     *
+     * @param text Text to check, e.g. a file name
+     * @return <code>TRUE</code> if text could be a content hash
+     */
+    public static boolean isContentHash(String text) {
+        return CONTENT_HASH.matcher(text).matches();
+    }
+
+    /**
+     * Stores content of given file (if not already known) &amp; references it under its original file name for given
+     * user. An already existing reference with the same name is replaced.
+     *
+     * @param file Uploaded file
+     * @param username Owner of the file
+     * @return Location of the blob, relative to the media root directory
+     */
+    public Path store(MultipartFile file, String username) throws IOException {
+        String name = file.getOriginalFilename();
+        String contentHash;
+        try (InputStream inputStream = file.getInputStream()) {
+            contentHash = hash(inputStream);
+        }
+        // The reference of the name is read & replaced under its lock, so concurrent uploads of the same name
+        // neither release the replaced content twice nor lose a reference to the new one
+        ReentrantLock nameLock = lockOf(username, name);
+        nameLock.lock();
+        try {
+            Optional<String> replacedHash;
+            ReentrantLock lock = lockOf(contentHash);
+            lock.lock();
+            try {
+                if (!blobRepository.existsById(contentHash)) {
+                    writeBlob(file, contentHash);
+                }
+                replacedHash = transactionTemplate.execute(status -> {
+                    Optional<MediaFile> existing = fileRepository.findByUsernameAndName(username, name);
+                    if (existing.isPresent() && contentHash.equals(existing.get().getContentHash())) {
+                        // Same content under same name again, nothing changes
+                        return Optional.<String>empty();
+                    }
+                    MediaBlob blob = blobRepository.findById(contentHash).orElseGet(() -> new MediaBlob(contentHash, file.getSize()));
+                    blob.setReferenceCount(blob.getReferenceCount() + 1);
+                    blobRepository.save(blob);
+                    MediaFile reference = existing.orElseGet(() -> new MediaFile(username, name, null, 0, null));
+                    String oldHash = reference.getContentHash();
+                    reference.setContentHash(contentHash);
+                    reference.setSizeInBytes(file.getSize());
+                    reference.setUploadedAt(Instant.now());
+                    fileRepository.save(reference);
+                    return Optional.ofNullable(oldHash);
+                });
+            } finally {
+                lock.unlock();
+            }
+            // Release replaced content outside of the hash lock above, otherwise two stripes could be locked at once
+            if (replacedHash != null) {
+                replacedHash.ifPresent(this::release);
+            }
+        } finally {
+            nameLock.unlock();
+        }
+        return blobLocation(contentHash);
+    }
+
+    /**
+     * Resolves file name of given user to the blob holding its content.
+     *
+     * @param username Owner of the file
+     * @param name File name
+     * @return Location of the blob, relative to the media root directory
+     * @throws StorageFileNotFoundException If user has no such file
+     */
+    public Path load(String username, String name) {
+        return fileRepository.findByUsernameAndName(username, name)
+                .map(reference -> blobLocation(reference.getContentHash()))
+                .orElseThrow(() -> new StorageFileNotFoundException("Could not read file: %s/%s".formatted(username, name)));
+    }
+
+    /**
+     * @return Size of the file with given name, or empty if user has no such file
+     */
+    public OptionalLong sizeOf(String username, String name) {
+        return fileRepository.findByUsernameAndName(username, name)
+                .map(reference -> OptionalLong.of(reference.getSizeInBytes()))
+                .orElse(OptionalLong.empty());
+    }
+
+    /**
+     * Sums up the files of given user. Deduplicated content is counted for every reference.
+     */
+    public MediaQuotaService.Usage usage(String username) {
+        Object[] sums = fileRepository.sumSizesByUsername(username).get(0);
+        return new MediaQuotaService.Usage(((Number) sums[1]).longValue(), ((Number) sums[0]).longValue());
+    }
+
+    public List<String> usernames() {
+        return fileRepository.findDistinctUsernames();
+    }
+
+    /**
+     * @return <code>TRUE</code> if there is a blob with given hash, that is still referenced
+     */
+    public boolean isReferenced(String contentHash) {
+        return blobRepository.existsById(contentHash);
+    }
+
+    public List<MediaFile> loadAll() {
+        return fileRepository.findAllByOrderByUsernameAscNameAsc();
+    }
+
+    public List<MediaFile> loadAll(String username) {
+        return fileRepository.findAllByUsernameOrderByName(username);
+    }
+
+    /**
+     * Removes all file references of given user. Blobs that are no longer referenced are deleted.
+     *
+     * @param username Owner of the files
+     */
+    public void deleteAll(String username) {
+        for (MediaFile listed : fileRepository.findAllByUsernameOrderByName(username)) {
+            ReentrantLock nameLock = lockOf(username, listed.getName());
+            nameLock.lock();
+            try {
+                // Read again under the lock, the name may have been replaced meanwhile
+                String contentHash = transactionTemplate.execute(status -> fileRepository.findByUsernameAndName(username, listed.getName())
+                        .map(reference -> {
+                            fileRepository.delete(reference);
+                            return reference.getContentHash();
+                        }).orElse(null));
+                if (contentHash != null) {
+                    release(contentHash);
+                }
+            } finally {
+                nameLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes all references &amp; blobs
+     */
+    public void deleteAll() {
+        transactionTemplate.executeWithoutResult(status -> {
+            fileRepository.deleteAllInBatch();
+            blobRepository.deleteAllInBatch();
+        });
+    }
+
+    /**
+     * Decrements the reference counter of given blob &amp; deletes it, if it isn't referenced anymore.
+     */
+    private void release(String contentHash) {
+        ReentrantLock lock = lockOf(contentHash);
+        lock.lock();
+        try {
+            Boolean unreferenced = transactionTemplate.execute(status -> blobRepository.findById(contentHash).map(blob -> {
+                blob.setReferenceCount(blob.getReferenceCount() - 1);
+                if (blob.getReferenceCount() > 0) {
+                    blobRepository.save(blob);
+                    return false;
+                } else {
+                    blobRepository.delete(blob);
+                    return true;
+                }
+            }).orElse(false));
+            if (Boolean.TRUE.equals(unreferenced)) {
+                Files.deleteIfExists(rootLocation.resolve(blobLocation(contentHash)));
+            }
+        } catch (IOException exc) {
+            LOGGER.warn("Couldn't delete unreferenced blob: {}", contentHash, exc);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Streams given file into a temporary file &amp; moves it to its sharded location afterwards. This way, readers
+     * never see a half written blob.
+     */
+    private void writeBlob(MultipartFile file, String expectedHash) throws IOException {
+        Path target = rootLocation.resolve(blobLocation(expectedHash));
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), expectedHash, ".tmp");
+        try {
+            MessageDigest digest = newDigest();
+            try (InputStream inputStream = new DigestInputStream(file.getInputStream(), digest);
+                 OutputStream outputStream = Files.newOutputStream(temp)) {
+                inputStream.transferTo(outputStream);
+            }
+            if (!expectedHash.equals(HexFormat.of().formatHex(digest.digest()))) {
+                throw new StorageException("Content of file %s changed during upload.".formatted(file.getOriginalFilename()));
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private ReentrantLock lockOf(String contentHash) {
+        return locks[Math.floorMod(contentHash.hashCode(), LOCK_STRIPES)];
+    }
+
+    private ReentrantLock lockOf(String username, String name) {
+        return nameLocks[Math.floorMod(Objects.hash(username, name), LOCK_STRIPES)];
+    }
+
+    private static String hash(InputStream inputStream) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException exc) {
+            throw new IllegalStateException("Every Java platform has to support " + HASH_ALGORITHM, exc);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.acme.onlineshop.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>Exports items, categories &amp; users as NDJSON or CSV, streamed straight into an {@link OutputStream}.</p>
+ * <p>Rows are read chunk by chunk with a forward-only keyset cursor on the ID (every chunk starts right after the last
+ * ID of the previous one). Each chunk is a single projection query in its own short, read-only transaction, so no
+ * entity is ever managed &amp; neither heap usage nor transaction length grow with the amount of rows. Every chunk is
+ * flushed to the client before the next one is read.</p>
+ */
+@Service
+public class ExportService {
+
+    private final static String METRIC_PREFIX = "shop.export";
+
+    /**
+     * Exportable data with the columns of its rows. The first column is always the ID, the keyset cursor runs on.
+     */
+    public enum Dataset {
+        ITEMS("""
+                SELECT i.id, c.nameLowerCase, sc.nameLowerCase, t.location
+                FROM Item i JOIN i.category c LEFT JOIN i.subCategory sc LEFT JOIN i.thumbnail t
+                WHERE i.id > :after ORDER BY i.id
+                """, "id", "category", "subCategory", "thumbnail"),
+        CATEGORIES("""
+                SELECT c.id, c.name, c.nameLowerCase, c.description, m.id
+                FROM Category c LEFT JOIN SubCategory s ON s.id = c.id LEFT JOIN s.mainCategory m
+                WHERE c.id > :after ORDER BY c.id
+                """, "id", "name", "slug", "description", "mainCategoryId"),
+        // Never export passwords or tokens
+        USERS("""
+                SELECT u.userId, u.username, u.email, u.role, u.enabled, u.accountNonLocked
+                FROM ONLINE_SHOP_USER u
+                WHERE u.userId > :after ORDER BY u.userId
+                """, "id", "username", "email", "role", "enabled", "accountNonLocked");
+
+        private final String query;
+        private final List<String> columns;
+
+        Dataset(String query, String... columns) {
+            this.query = query;
+            this.columns = List.of(columns);
+        }
+
+        public List<String> getColumns() {
+            return columns;
+        }
+
+        public String fileName(Format format, boolean gzip) {
+            return name().toLowerCase(Locale.ROOT) + format.extension + (gzip ? ".gz" : "");
+        }
+    }
+
+    public enum Format {
+        NDJSON(".ndjson", "application/x-ndjson"),
+        CSV(".csv", "text/csv");
+
+        public final String extension;
+        public final String mediaType;
+
+        Format(String extension, String mediaType) {
+            this.extension = extension;
+            this.mediaType = mediaType;
+        }
+    }
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final JsonFactory jsonFactory;
+    private final int chunkSize;
+
+    @Autowired
+    public ExportService(EntityManager entityManager, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                         @Value("${shop.export.chunk-size:1000}") int chunkSize) {
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.meterRegistry = meterRegistry;
+        this.jsonFactory = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Writes all rows of given dataset into given stream. The stream itself is not closed.
+     *
+     * @param dataset Data to export
+     * @param format Format of the rows
+     * @param gzip TRUE to compress the rows with GZIP
+     * @param output Target of the export, e.g. the body of a response
+     * @return Amount of exported rows
+     * @throws IOException If output can't be written, e.g. since the client has disconnected
+     */
+    public long export(Dataset dataset, Format format, boolean gzip, OutputStream output) throws IOException {
+        GZIPOutputStream compressed = gzip ? new GZIPOutputStream(output, true) : null;
+        OutputStream target = (compressed != null) ? compressed : output;
+        long rows;
+        try (RowWriter writer = (format == Format.CSV) ? new CsvRowWriter(target, dataset.getColumns()) : new NdjsonRowWriter(target, dataset.getColumns())) {
+            rows = export(dataset, writer);
+        }
+        if (compressed != null) {
+            compressed.finish();
+        }
+        output.flush();
+        meterRegistry.counter(METRIC_PREFIX + ".rows", "dataset", dataset.name().toLowerCase(Locale.ROOT)).increment(rows);
+        return rows;
+    }
+
+    private long export(Dataset dataset, RowWriter writer) throws IOException {
+        long rows = 0;
+        long after = 0;
+        List<Object[]> chunk;
+        do {
+            long position = after;
+            chunk = transactionTemplate.execute(status -> entityManager.createQuery(dataset.query, Object[].class)
+                    .setParameter("after", position)
+                    .setMaxResults(chunkSize)
+                    .setHint(QueryHints.HINT_FETCH_SIZE, chunkSize)
+                    .setHint(QueryHints.HINT_READONLY, true)
+                    .getResultList());
+            for (Object[] row : chunk) {
+                writer.write(row);
+            }
+            writer.flush();
+            rows += chunk.size();
+            if (!chunk.isEmpty()) {
+                after = ((Number) chunk.get(chunk.size() - 1)[0]).longValue();
+            }
+        } while (chunk.size() == chunkSize);
+        return rows;
+    }
+
+    /**
+     * Writes rows one after another, without keeping any of them
+     */
+    private interface RowWriter extends AutoCloseable {
+
+        void write(Object[] row) throws IOException;
+
+        void flush() throws IOException;
+
+        /**
+         * Flushes all rows, but doesn't close the target stream
+         */
+        @Override
+        void close() throws IOException;
+    }
+
+    private final class NdjsonRowWriter implements RowWriter {
+
+        private final JsonGenerator generator;
+        private final List<String> columns;
+
+        NdjsonRowWriter(OutputStream output, List<String> columns) throws IOException {
+            this.generator = jsonFactory.createGenerator(output, JsonEncoding.UTF8);
+            this.generator.setRootValueSeparator(null);
+            this.columns = columns;
+        }
+
+        @Override
+        public void write(Object[] row) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < columns.size(); i++) {
+                Object value = row[i];
+                generator.writeFieldName(columns.get(i));
+                if (value == null) {
+                    generator.writeNull();
+                } else if (value instanceof Number number) {
+                    generator.writeNumber(number.longValue());
+                } else if (value instanceof Boolean bool) {
+                    generator.writeBoolean(bool);
+                } else {
+                    generator.writeString(value.toString());
+                }
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.close();
+        }
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+
+        private final CSVPrinter printer;
+
+        CsvRowWriter(OutputStream output, List<String> columns) throws IOException {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            this.printer = new CSVPrinter(writer, CSVFormat.DEFAULT.builder().setHeader(columns.toArray(String[]::new)).build());
+        }
+
+        @Override
+        public void write(Object[] row) throws IOException {
+            printer.printRecord(row);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            printer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Closing the printer would close the response stream as well
+            printer.flush();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.utils.LongLongHashMap;
+
+/**
+ * <p>Item counts per category, maintained item by item. Remembers the facets of every item, so an update or delete
+ * takes back exactly what the item has counted before, without knowing its former state.</p>
+ * <p>All maps are keyed by primitive IDs, so a million items cost a few dozen megabytes instead of hundreds.
+ * <b>Not</b> thread-safe, see {@link FacetService}.</p>
+ */
+final class FacetCounts {
+
+    private final LongLongHashMap itemCategories = new LongLongHashMap();
+    /**
+     * Sub-category of every item, shifted left by one bit. The lowest bit is set, if the item has a thumbnail
+     */
+    private final LongLongHashMap itemSubCategories = new LongLongHashMap();
+    private final LongLongHashMap items = new LongLongHashMap();
+    private final LongLongHashMap itemsWithThumbnail = new LongLongHashMap();
+
+    /**
+     * Adds or replaces an item
+     *
+     * @param subCategoryId ID of its sub-category, or 0 if it has none
+     */
+    void put(long itemId, long categoryId, long subCategoryId, boolean hasThumbnail) {
+        remove(itemId);
+        itemCategories.put(itemId, categoryId);
+        itemSubCategories.put(itemId, (subCategoryId << 1) | (hasThumbnail ? 1 : 0));
+        count(categoryId, subCategoryId, hasThumbnail, 1);
+    }
+
+    void remove(long itemId) {
+        if (itemCategories.containsKey(itemId)) {
+            long categoryId = itemCategories.remove(itemId);
+            long subCategory = itemSubCategories.remove(itemId);
+            count(categoryId, subCategory >>> 1, (subCategory & 1) != 0, -1);
+        }
+    }
+
+    private void count(long categoryId, long subCategoryId, boolean hasThumbnail, int delta) {
+        add(items, categoryId, delta);
+        if (subCategoryId != 0) {
+            add(items, subCategoryId, delta);
+        }
+        if (hasThumbnail) {
+            add(itemsWithThumbnail, categoryId, delta);
+            if (subCategoryId != 0) {
+                add(itemsWithThumbnail, subCategoryId, delta);
+            }
+        }
+    }
+
+    private static void add(LongLongHashMap counts, long categoryId, int delta) {
+        if (counts.addTo(categoryId, delta) == 0) {
+            counts.remove(categoryId);
+        }
+    }
+
+    /**
+     * @param categoryId ID of a main or sub-category
+     */
+    long getItems(long categoryId) {
+        return items.get(categoryId);
+    }
+
+    /**
+     * @param categoryId ID of a main or sub-category
+     */
+    long getItemsWithThumbnail(long categoryId) {
+        return itemsWithThumbnail.get(categoryId);
+    }
+
+    /**
+     * @return ID of the main category of given item, or 0 if the item is unknown
+     */
+    long getCategory(long itemId) {
+        return itemCategories.get(itemId);
+    }
+
+    /**
+     * @return Amount of all items
+     */
+    int size() {
+        return itemCategories.size();
+    }
+
+    /**
+     * @return Amount of categories, whose counts differ between these &amp; other counts
+     */
+    int differences(FacetCounts other) {
+        int[] differences = new int[1];
+        LongLongHashMap categories = new LongLongHashMap(items.size() + other.items.size());
+        items.forEach((categoryId, count) -> categories.put(categoryId, 1));
+        other.items.forEach((categoryId, count) -> categories.put(categoryId, 1));
+        categories.forEach((categoryId, ignored) -> {
+            if (getItems(categoryId) != other.getItems(categoryId) || getItemsWithThumbnail(categoryId) != other.getItemsWithThumbnail(categoryId)) {
+                differences[0]++;
+            }
+        });
+        return differences[0];
+    }
+}
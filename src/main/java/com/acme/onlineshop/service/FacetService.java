@@ -0,0 +1,199 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.CategoryFacet;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * <p>Item counts per main &amp; sub-category (in total &amp; with thumbnail), ready for every page view.</p>
+ * <p>Counts are never queried per request: an {@link ItemChangeListener} updates them on every committed insert,
+ * update &amp; delete of an item. A periodic reconciliation recounts all items from the database &amp; replaces the
+ * counts, which corrects any drift, e.g. by bulk queries, that bypass the listener.</p>
+ */
+@Service
+public class FacetService implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(FacetService.class);
+
+    private final static String METRIC_PREFIX = "shop.catalog.facets";
+    private final static int RECONCILE_BATCH_SIZE = 1000;
+
+    private final ItemService itemService;
+    private final Counter drift;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private FacetCounts counts = new FacetCounts();
+    /**
+     * Changes, that happen while the counts are reconciled. <code>null</code> if no reconciliation is running.
+     */
+    private List<Consumer<FacetCounts>> pendingChanges;
+    private boolean reconciled;
+
+    @Autowired
+    public FacetService(ItemService itemService, EntityManagerFactory entityManagerFactory, MeterRegistry meterRegistry) {
+        this.itemService = itemService;
+        ItemChangeListener.register(entityManagerFactory, new ItemChangeListener() {
+            @Override
+            protected void saved(long itemId, long categoryId, long subCategoryId, boolean hasThumbnail) {
+                apply(target -> target.put(itemId, categoryId, subCategoryId, hasThumbnail));
+            }
+
+            @Override
+            protected void deleted(long itemId) {
+                apply(target -> target.remove(itemId));
+            }
+        });
+        this.drift = Counter.builder(METRIC_PREFIX + ".drift")
+                .description("Categories, whose counts had to be corrected by a reconciliation")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".items", this, FacetService::countAllItems)
+                .description("Amount of counted items")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts all items, when the application is fully loaded.
+     *
+     * @param readyEvent The "boot up is finished" event
+     * @see ApplicationReadyEvent
+     */
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent readyEvent) {
+        reconcile();
+    }
+
+    /**
+     * Recounts all items from the database &amp; replaces the current counts. Changes during the recount are applied
+     * to both, so none of them is lost.
+     */
+    @Scheduled(initialDelayString = "${shop.catalog.facets.reconcile-interval:PT1H}", fixedDelayString = "${shop.catalog.facets.reconcile-interval:PT1H}")
+    public synchronized void reconcile() {
+        lock.writeLock().lock();
+        try {
+            pendingChanges = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        FacetCounts recounted = new FacetCounts();
+        try {
+            itemService.forEachTile(RECONCILE_BATCH_SIZE, tile -> recounted.put(tile.id(), tile.categoryId(),
+                    (tile.subCategoryId() != null) ? tile.subCategoryId() : 0, tile.thumbnail() != null));
+        } catch (RuntimeException exc) {
+            lock.writeLock().lock();
+            try {
+                pendingChanges = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw exc;
+        }
+        lock.writeLock().lock();
+        try {
+            pendingChanges.forEach(change -> change.accept(recounted));
+            pendingChanges = null;
+            int differences = counts.differences(recounted);
+            if (reconciled && differences > 0) {
+                drift.increment(differences);
+                LOGGER.warn("Item counts of {} categories have drifted & have been corrected", differences);
+            }
+            counts = recounted;
+            reconciled = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(Consumer<FacetCounts> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(counts);
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param categoryId ID of a main or sub-category
+     * @return Amount of items of this category
+     */
+    public long countItems(long categoryId) {
+        lock.readLock().lock();
+        try {
+            return counts.getItems(categoryId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return ID of the main category of given item, or 0 if the item is unknown
+     */
+    public long getCategory(long itemId) {
+        lock.readLock().lock();
+        try {
+            return counts.getCategory(itemId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long countAllItems() {
+        lock.readLock().lock();
+        try {
+            return counts.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the counts of a category &amp; its sub-categories in a single step per sub-category, regardless of the
+     * amount of items.
+     *
+     * @param category Main or sub-category
+     * @return Counts of given category
+     */
+    public CategoryFacet getFacets(CategoryTree.Node category) {
+        lock.readLock().lock();
+        try {
+            return facet(category);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param tree Current category tree
+     * @return Counts of all main categories (&amp; their sub-categories) in the order of the tree
+     */
+    public List<CategoryFacet> getFacets(CategoryTree tree) {
+        lock.readLock().lock();
+        try {
+            return tree.getMainCategories().stream().map(this::facet).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private CategoryFacet facet(CategoryTree.Node category) {
+        return new CategoryFacet(category.getId(), category.getName(), category.getLink(), counts.getItems(category.getId()),
+                counts.getItemsWithThumbnail(category.getId()), category.getSubCategories().stream().map(this::facet).toList());
+    }
+}
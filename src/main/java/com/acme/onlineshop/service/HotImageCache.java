@@ -0,0 +1,405 @@
+package com.acme.onlineshop.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Byte budgeted in-memory cache for the bodies &amp; metadata of small, frequently requested images (e.g. the hero
+ * images of the home page). A hit is served without a single file system call.</p>
+ * <p>Entries are evicted in LRU order. A new entry, that would exceed the budget, is only admitted if it has been
+ * requested more often than the entries it would evict (TinyLFU admission). The request frequencies are tracked by a
+ * small count-min sketch, which is halved periodically, so former hot images cool down again.</p>
+ * <p>Reads never lock: entries live in a {@link ConcurrentHashMap} &amp; carry their last access time, the sketch
+ * counts with CAS. Only admission &amp; invalidation take the lock, an admission, that has to evict, sorts the cached
+ * entries by their last access.</p>
+ * <p>All files are written through the {@link StorageService}, which invalidates the affected entries.</p>
+ *
+ * @see <a href="https://arxiv.org/abs/1512.00727">TinyLFU: A Highly Efficient Cache Admission Policy</a>
+ */
+@Component
+public class HotImageCache {
+
+    private final static String METRIC_PREFIX = "shop.images.cache";
+    private final static int MAX_READ_ATTEMPTS = 3;
+
+    /**
+     * Cached image
+     *
+     * @param content Entire file content
+     * @param lastModified Modification time of the file in milliseconds
+     * @param contentType MIME type of the file
+     */
+    public record CachedImage(byte[] content, long lastModified, String contentType) {
+
+        public long length() {
+            return content.length;
+        }
+
+        public Resource asResource(String filename) {
+            return new ByteArrayResource(content, filename) {
+                @Override
+                public String getFilename() {
+                    return filename;
+                }
+
+                @Override
+                public long lastModified() {
+                    return lastModified;
+                }
+            };
+        }
+    }
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final FrequencySketch sketch;
+    /**
+     * Guards all changes of the entries
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile long usedBytes;
+    /**
+     * Incremented by every invalidation. A file, that has been read while an invalidation happened, may be outdated
+     * already &amp; isn't admitted.
+     */
+    private volatile long generation;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter rejections;
+
+    @Autowired
+    public HotImageCache(MeterRegistry meterRegistry,
+                         @Value("${shop.images.cache.enabled:false}") boolean enabled,
+                         @Value("${shop.images.cache.max-bytes:33554432}") long maxBytes,
+                         @Value("${shop.images.cache.max-entry-bytes:262144}") long maxEntryBytes) {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+        // Roughly one counter per image, that fits into the budget
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(256, maxBytes / 8192)));
+        this.hits = Counter.builder(METRIC_PREFIX + ".requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder(METRIC_PREFIX + ".requests").tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder(METRIC_PREFIX + ".evictions")
+                .description("Cached images, that made room for more frequently requested ones")
+                .register(meterRegistry);
+        this.rejections = Counter.builder(METRIC_PREFIX + ".rejections")
+                .description("Images, that weren't admitted, since they are requested less often than the cached ones")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".size", this, HotImageCache::getUsedBytes).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".entries", this, HotImageCache::getEntryCount).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Checks, if a file of given size is small enough to be cached at all
+     */
+    public boolean accepts(long length) {
+        return enabled && length <= maxEntryBytes;
+    }
+
+    /**
+     * Returns cached image &amp; records the request.
+     *
+     * @param file Absolute location of the file
+     * @return Cached image or <code>null</code>
+     */
+    public CachedImage get(Path file) {
+        if (!enabled) {
+            return null;
+        }
+        sketch.increment(file);
+        Entry entry = entries.get(file);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        entry.accessed = System.nanoTime();
+        hits.increment();
+        return entry.image;
+    }
+
+    /**
+     * Checks, if given file is cached, without recording a request
+     *
+     * @param file Absolute location of the file
+     */
+    public boolean contains(Path file) {
+        if (!enabled) {
+            return false;
+        }
+        return entries.containsKey(file);
+    }
+
+    /**
+     * Reads given file &amp; offers it to the cache. The caller has to check {@link #accepts(long)} beforehand. The
+     * modification time is determined here as well, so an invalidation at any time after the caller's lookup blocks
+     * the admission of a possibly outdated file. A file, that is changed while it is read, is read again. If it
+     * doesn't settle, the last read is returned without being admitted.
+     *
+     * @param file Absolute location of the file
+     * @param contentType MIME type of the file
+     * @return Read image, regardless if it has been admitted or not. Its length &amp; modification time always belong
+     * to the content, that has actually been read.
+     * @throws IOException If file couldn't be read
+     */
+    public CachedImage load(Path file, String contentType) throws IOException {
+        long readGeneration = generation;
+        FileTime modified = Files.getLastModifiedTime(file);
+        for (int attempt = 1; ; attempt++) {
+            byte[] content = Files.readAllBytes(file);
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (attributes.lastModifiedTime().equals(modified) && attributes.size() == content.length) {
+                CachedImage image = new CachedImage(content, modified.toMillis(), contentType);
+                if (accepts(image.length())) {
+                    admit(file, image, readGeneration);
+                }
+                return image;
+            }
+            modified = attributes.lastModifiedTime();
+            if (attempt == MAX_READ_ATTEMPTS) {
+                return new CachedImage(content, modified.toMillis(), contentType);
+            }
+        }
+    }
+
+    private void admit(Path file, CachedImage image, long readGeneration) {
+        lock.lock();
+        try {
+            if (readGeneration != generation) {
+                return;
+            }
+            Entry previous = entries.remove(file);
+            if (previous != null) {
+                usedBytes -= previous.image.length();
+            }
+            List<Path> victims = new ArrayList<>();
+            long freedBytes = 0;
+            if (usedBytes + image.length() > maxBytes) {
+                // Collect the least recently used victims first, so a rejected image doesn't evict anything
+                int frequency = sketch.frequency(file);
+                // Access times are copied, since requests keep changing them while sorting
+                List<Candidate> eldest = new ArrayList<>(entries.size());
+                entries.forEach((cached, entry) -> eldest.add(new Candidate(cached, entry.accessed, entry.image.length())));
+                eldest.sort(Comparator.comparingLong(Candidate::accessed));
+                for (int i = 0; usedBytes - freedBytes + image.length() > maxBytes && i < eldest.size(); i++) {
+                    Candidate victim = eldest.get(i);
+                    if (frequency <= sketch.frequency(victim.file())) {
+                        rejections.increment();
+                        return;
+                    }
+                    victims.add(victim.file());
+                    freedBytes += victim.length();
+                }
+            }
+            for (Path victim : victims) {
+                usedBytes -= entries.remove(victim).image.length();
+                evictions.increment();
+            }
+            entries.put(file, new Entry(image));
+            usedBytes += image.length();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes given file, e.g. because it has been overwritten
+     *
+     * @param file Absolute location of the file
+     */
+    public void invalidate(Path file) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            generation++;
+            Entry entry = entries.remove(file);
+            if (entry != null) {
+                usedBytes -= entry.image.length();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes given file or all files inside given directory
+     *
+     * @param location Absolute location of a file or directory
+     */
+    public void invalidateAll(Path location) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            generation++;
+            for (Path file : entries.keySet()) {
+                if (file.startsWith(location)) {
+                    usedBytes -= entries.remove(file).image.length();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            generation++;
+            entries.clear();
+            usedBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Cached image with the time of its last request
+     */
+    private static final class Entry {
+
+        private final CachedImage image;
+        /**
+         * {@link System#nanoTime()} of the last request, written without lock, so the LRU order is approximate
+         */
+        private volatile long accessed;
+
+        private Entry(CachedImage image) {
+            this.image = image;
+            this.accessed = System.nanoTime();
+        }
+    }
+
+    /**
+     * Cached file, that may be evicted, with its last access time at the start of the admission
+     */
+    private record Candidate(Path file, long accessed, long length) {
+    }
+
+    /**
+     * Count-min sketch of 4 rows with saturating 4 bit counters, 16 counters packed into each <code>long</code> &amp;
+     * incremented by CAS, so concurrent requests don't lock. After a sample of <code>10 * width</code> increments, all
+     * counters are halved.
+     */
+    static final class FrequencySketch {
+
+        private final static int ROWS = 4;
+        private final static int MAX_COUNT = 15;
+        private final static int COUNTERS_PER_WORD = 16;
+        /**
+         * Lowest 3 bits of every counter, to halve all counters of a word with a single shift
+         */
+        private final static long HALF_MASK = 0x7777777777777777L;
+        private final static int[] SEEDS = {0x97CB3127, 0x5AB2A4D3, 0x4C7A29E5, 0x2F1B5E87};
+
+        private final AtomicLongArray[] table;
+        private final int mask;
+        private final int sampleSize;
+        private final AtomicInteger additions = new AtomicInteger();
+
+        FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(Math.max(COUNTERS_PER_WORD, expectedEntries - 1) << 1);
+            this.table = new AtomicLongArray[ROWS];
+            for (int row = 0; row < ROWS; row++) {
+                table[row] = new AtomicLongArray(width / COUNTERS_PER_WORD);
+            }
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int row = 0; row < ROWS; row++) {
+                added |= increment(table[row], indexOf(hash, row));
+            }
+            // Exactly one thread reaches the sample size, the others keep counting meanwhile
+            if (added && additions.incrementAndGet() == sampleSize) {
+                reset();
+            }
+        }
+
+        private static boolean increment(AtomicLongArray words, int index) {
+            int word = index / COUNTERS_PER_WORD;
+            int shift = (index % COUNTERS_PER_WORD) * 4;
+            long value;
+            do {
+                value = words.get(word);
+                if (((value >>> shift) & MAX_COUNT) == MAX_COUNT) {
+                    return false;
+                }
+            } while (!words.compareAndSet(word, value, value + (1L << shift)));
+            return true;
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < ROWS; row++) {
+                int index = indexOf(hash, row);
+                long value = table[row].get(index / COUNTERS_PER_WORD);
+                frequency = Math.min(frequency, (int) ((value >>> ((index % COUNTERS_PER_WORD) * 4)) & MAX_COUNT));
+            }
+            return frequency;
+        }
+
+        private void reset() {
+            for (AtomicLongArray words : table) {
+                for (int i = 0; i < words.length(); i++) {
+                    words.getAndUpdate(i, value -> (value >>> 1) & HALF_MASK);
+                }
+            }
+            additions.addAndGet(-sampleSize / 2);
+        }
+        private int indexOf(int hash, int row) {
+            int index = hash * SEEDS[row];
+            index ^= index >>> 16;
+            return index & mask;
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 17;
+            hash *= 0xED5AD4BB;
+            hash ^= hash >>> 11;
+            return hash;
+        }
+    }
+}
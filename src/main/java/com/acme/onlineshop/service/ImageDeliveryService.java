@@ -0,0 +1,281 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.exception.StorageFileNotFoundException;
+import com.acme.onlineshop.utils.ImageTypeDetector;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Sends stored images to the client, without pushing every byte through the servlet output stream.</p>
+ * <ul>
+ *     <li>Every response carries a strong <code>ETag</code> &amp; <code>Last-Modified</code>, so revalidations are
+ *     answered with <code>304 Not Modified</code> (or <code>412</code> for failed <code>If-Match</code>).</li>
+ *     <li>A single byte range is answered with <code>206 Partial Content</code>. Multiple ranges are answered with the
+ *     full file, as allowed by RFC 7233.</li>
+ *     <li>Large bodies are handed over to Tomcat's sendfile support, so the kernel copies them from the page cache
+ *     into the socket. If sendfile isn't available (e.g. on TLS connections), the file is transferred with
+ *     {@link FileChannel#transferTo(long, long, WritableByteChannel)}.</li>
+ *     <li>Small hot images are served from the {@link HotImageCache}, without touching the file system at all.</li>
+ *     <li>Blobs are requested by their content hash. Their content can never change, therefore they are cached for a
+ *     year without revalidation.</li>
+ *     <li>Only raster images are shown inline. Everything else (e.g. SVG, which may contain scripts) is sent as
+ *     attachment, &amp; every response is sandboxed &amp; must not be sniffed as another type, so an uploaded file
+ *     never runs as a page of the shop's origin.</li>
+ * </ul>
+ */
+@Service
+public class ImageDeliveryService {
+
+    /**
+     * Request attributes of Tomcat's sendfile support
+     *
+     * @see <a href="https://tomcat.apache.org/tomcat-9.0-doc/aio.html#Asynchronous_writes">Tomcat - Asynchronous writes</a>
+     */
+    private final static String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private final static String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private final static String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private final static String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final static String METRIC_PREFIX = "shop.images.delivery";
+    /**
+     * {@link CacheControl} of Spring 5 has no <code>immutable</code> directive yet
+     */
+    private final static String IMMUTABLE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().getHeaderValue() + ", immutable";
+    private final static String REVALIDATE = CacheControl.noCache().getHeaderValue();
+    /**
+     * Types, that can't contain any active content, so they are safe to show inline
+     */
+    private final static Set<MediaType> RASTER_TYPES = Set.of(MediaType.IMAGE_PNG, MediaType.IMAGE_JPEG, MediaType.IMAGE_GIF,
+            MediaType.parseMediaType("image/webp"), MediaType.parseMediaType("image/bmp"), MediaType.parseMediaType("image/avif"));
+
+    private final ImageService imageService;
+    private final HotImageCache cache;
+    private final MeterRegistry meterRegistry;
+    private final long sendfileMinSize;
+
+    @Autowired
+    public ImageDeliveryService(ImageService imageService, HotImageCache cache, MeterRegistry meterRegistry,
+                                @Value("${shop.images.delivery.sendfile-min-size:49152}") long sendfileMinSize) {
+        this.imageService = imageService;
+        this.cache = cache;
+        this.meterRegistry = meterRegistry;
+        this.sendfileMinSize = sendfileMinSize;
+    }
+
+    /**
+     * Sends stored file with given name. Its content may change, therefore clients have to revalidate it every time.
+     *
+     * @param filename File name relative to the media root directory, e.g. <code>&lt;username&gt;/&lt;filename&gt;</code>
+     * @throws StorageFileNotFoundException If there is no such file
+     * @throws IOException If file couldn't be sent
+     */
+    public void send(String filename, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path file = imageService.load(filename);
+        String contentHash = imageService.contentHashOf(file).orElse(null);
+        deliver(file, Path.of(filename).getFileName().toString(), contentHash, false, request, response);
+    }
+
+    /**
+     * Sends blob with given content hash as immutable file. Only available in content addressed mode.
+     *
+     * @param contentHash SHA-256 hash of the content as hexadecimal string
+     * @throws StorageFileNotFoundException If there is no such blob
+     * @throws IOException If blob couldn't be sent
+     */
+    public void sendBlob(String contentHash, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!imageService.isContentAddressed()) {
+            throw new StorageFileNotFoundException("Content addressed storage is disabled");
+        }
+        Path file = imageService.getRootLocation().resolve(ContentAddressedStorage.blobLocation(contentHash));
+        deliver(file, contentHash, contentHash, true, request, response);
+    }
+
+    private void deliver(Path file, String displayName, String contentHash, boolean immutable, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        HotImageCache.CachedImage cached = cache.get(file);
+        long length;
+        long lastModified;
+        String contentType;
+        if (cached != null) {
+            length = cached.length();
+            lastModified = cached.lastModified();
+            contentType = cached.contentType();
+        } else {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (!attributes.isRegularFile()) {
+                    throw new StorageFileNotFoundException("Could not read file: " + displayName);
+                }
+                length = attributes.size();
+                lastModified = attributes.lastModifiedTime().toMillis();
+                contentType = contentType(file, displayName).toString();
+                if (cache.accepts(length)) {
+                    // The file may have been replaced since its lookup, so the headers have to describe what's been read
+                    cached = cache.load(file, contentType);
+                    length = cached.length();
+                    lastModified = cached.lastModified();
+                }
+            } catch (NoSuchFileException exc) {
+                // Deleted in between
+                throw new StorageFileNotFoundException("Could not read file: " + displayName, exc);
+            }
+        }
+        // Plain files may be replaced, but never without changing their modification time and/or size
+        String etag = (contentHash != null) ? "\"%s\"".formatted(contentHash) : "\"%x-%x\"".formatted(lastModified, length);
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, immutable ? IMMUTABLE : REVALIDATE);
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        response.setHeader("Content-Security-Policy", "sandbox");
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            count("not-modified", 0);
+            return;
+        }
+        response.setContentType(contentType);
+        ContentDisposition.Builder disposition = isRaster(contentType) ? ContentDisposition.inline() : ContentDisposition.attachment();
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, disposition.filename(displayName, StandardCharsets.UTF_8).build().toString());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        long start = 0;
+        long end = length - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && isRangeApplicable(request, etag, lastModified)) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException exc) {
+                // A malformed range header is ignored
+                ranges = List.of();
+            }
+            if (ranges.size() == 1) {
+                start = ranges.get(0).getRangeStart(length);
+                end = ranges.get(0).getRangeEnd(length);
+                if (start >= length || start > end) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */%d".formatted(length));
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes %d-%d/%d".formatted(start, end, length));
+            }
+        }
+        long contentLength = end - start + 1;
+        response.setContentLengthLong(contentLength);
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+
+        if (cached != null) {
+            response.getOutputStream().write(cached.content(), (int) start, (int) contentLength);
+            count("cache", contentLength);
+        } else if (contentLength >= sendfileMinSize && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // Tomcat sends the file itself, after this request has been processed (the end is exclusive)
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            count("sendfile", contentLength);
+        } else {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+                long position = start;
+                long remaining = contentLength;
+                while (remaining > 0) {
+                    long transferred = channel.transferTo(position, remaining, target);
+                    if (transferred <= 0) {
+                        // File has been truncated in between
+                        break;
+                    }
+                    position += transferred;
+                    remaining -= transferred;
+                }
+            }
+            count("transfer", contentLength);
+        }
+    }
+
+    /**
+     * A range request is only answered partially, if the <code>If-Range</code> validator (if any) still matches.
+     * Otherwise, the client would combine parts of two different versions of the file.
+     */
+    private static boolean isRangeApplicable(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        } else if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag);
+        } else {
+            try {
+                long date = request.getDateHeader(HttpHeaders.IF_RANGE);
+                // HTTP dates have a precision of one second. Any other date, even a later one, is another version.
+                return lastModified / 1000 == date / 1000;
+            } catch (IllegalArgumentException exc) {
+                return false;
+            }
+        }
+    }
+
+    private static boolean isRaster(String contentType) {
+        try {
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+            return RASTER_TYPES.contains(new MediaType(mediaType.getType(), mediaType.getSubtype()));
+        } catch (InvalidMediaTypeException exc) {
+            return false;
+        }
+    }
+
+    /**
+     * Known file extensions are mapped directly. Blobs have no extension, so their header is inspected.
+     */
+    private static MediaType contentType(Path file, String displayName) throws IOException {
+        MediaType mediaType = MediaTypeFactory.getMediaType(displayName).orElse(null);
+        if (mediaType == null) {
+            try (InputStream inputStream = Files.newInputStream(file)) {
+                mediaType = MediaType.parseMediaType(ImageTypeDetector.detect(inputStream).mimeType());
+            }
+        }
+        return mediaType;
+    }
+
+    private void count(String mode, long bytes) {
+        Counter.builder(METRIC_PREFIX + ".responses")
+                .description("Image responses by the way their body was sent")
+                .tag("mode", mode)
+                .register(meterRegistry)
+                .increment();
+        if (bytes > 0) {
+            Counter.builder(METRIC_PREFIX + ".bytes")
+                    .description("Image bytes sent")
+                    .baseUnit("bytes")
+                    .tag("mode", mode)
+                    .register(meterRegistry)
+                    .increment(bytes);
+        }
+    }
+}
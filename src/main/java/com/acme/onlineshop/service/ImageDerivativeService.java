@@ -0,0 +1,302 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.persistence.item.Image;
+import com.acme.onlineshop.persistence.item.LargeImage;
+import com.acme.onlineshop.persistence.item.LargeImageRepository;
+import com.acme.onlineshop.persistence.item.SmallImage;
+import com.acme.onlineshop.persistence.item.SmallImageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Background pipeline, that produces the downscaled variants ({@link Derivative}s) of every uploaded image.</p>
+ * <p>Each original is decoded exactly once. All derivatives are scaled down from the decoded image, written into the
+ * {@link #DERIVATIVE_DIRECTORY} next to the original &amp; registered as {@link SmallImage} or {@link LargeImage}.</p>
+ * <p>The pipeline runs on a bounded pool. If its queue is full, the uploading thread does the work itself, which
+ * slows down further uploads until the pipeline caught up (backpressure).</p>
+ */
+@Service
+public class ImageDerivativeService {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(ImageDerivativeService.class);
+
+    public final static String DERIVATIVE_DIRECTORY = "derivatives";
+    private final static String METRIC_PREFIX = "shop.images.derivatives";
+    private final static float[] JPEG_QUALITIES = {0.85f, 0.7f, 0.5f};
+    private final static int NAME_HASH_BYTES = 4;
+
+    /**
+     * All variants that are generated for an uploaded image
+     */
+    public enum Derivative {
+        THUMBNAIL("thumbnail", SmallImage.MAX_SIZE_IN_KILO_BYTES),
+        LISTING("listing", SmallImage.MAX_SIZE_IN_KILO_BYTES),
+        ZOOM("zoom", LargeImage.MAX_SIZE_IN_KILO_BYTES);
+
+        public final String suffix;
+        public final int maxSizeInKiloBytes;
+
+        Derivative(String suffix, int maxSizeInKiloBytes) {
+            this.suffix = suffix;
+            this.maxSizeInKiloBytes = maxSizeInKiloBytes;
+        }
+
+        public boolean isSmallImage() {
+            return maxSizeInKiloBytes <= SmallImage.MAX_SIZE_IN_KILO_BYTES;
+        }
+    }
+
+    private final ImageService imageService;
+    private final SmallImageRepository smallImageRepository;
+    private final LargeImageRepository largeImageRepository;
+    private final Map<Derivative, Integer> maxEdges;
+    private final ThreadPoolExecutor executor;
+    private final MeterRegistry meterRegistry;
+    private final Counter backpressure;
+
+    @Autowired
+    public ImageDerivativeService(ImageService imageService, SmallImageRepository smallImageRepository, LargeImageRepository largeImageRepository, MeterRegistry meterRegistry,
+                                  @Value("${shop.images.derivatives.thumbnail:160}") int thumbnailEdge,
+                                  @Value("${shop.images.derivatives.listing:480}") int listingEdge,
+                                  @Value("${shop.images.derivatives.zoom:1600}") int zoomEdge,
+                                  @Value("${shop.images.derivatives.threads:2}") int threads,
+                                  @Value("${shop.images.derivatives.queue-capacity:64}") int queueCapacity) {
+        this.imageService = imageService;
+        this.smallImageRepository = smallImageRepository;
+        this.largeImageRepository = largeImageRepository;
+        this.meterRegistry = meterRegistry;
+        this.maxEdges = new EnumMap<>(Derivative.class);
+        this.maxEdges.put(Derivative.THUMBNAIL, thumbnailEdge);
+        this.maxEdges.put(Derivative.LISTING, listingEdge);
+        this.maxEdges.put(Derivative.ZOOM, zoomEdge);
+        this.backpressure = Counter.builder(METRIC_PREFIX + ".backpressure")
+                .description("Derivative jobs, that had to run on the uploading thread, since the queue was full")
+                .register(meterRegistry);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("image-derivative-"), (job, pool) -> {
+            backpressure.increment();
+            if (!pool.isShutdown()) {
+                job.run();
+            }
+        });
+        Gauge.builder(METRIC_PREFIX + ".queue", executor, pool -> pool.getQueue().size())
+                .description("Uploaded images waiting for their derivatives")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Enqueues given original for derivative generation.
+     *
+     * @param original Location of original image, relative to the media root directory
+     */
+    public void submit(Path original) {
+        executor.execute(() -> {
+            try {
+                generate(original);
+            } catch (IOException | RuntimeException exc) {
+                LOGGER.error("Couldn't generate derivatives of image: %s".formatted(original), exc);
+            }
+        });
+    }
+
+    /**
+     * Returns location of the derivative of given original image, relative to the media root directory. The
+     * derivative may not (yet) exist.
+     * <p>The name is made of the (readable) base name &amp; a short hash of the complete original file name, so
+     * originals, that only differ in their extension or whitespace (e.g. <code>shoe.png</code>, <code>shoe.jpg</code>
+     * &amp; <code>shoe .png</code>), never share their derivatives.</p>
+     *
+     * @param original Location of original image, relative to the media root directory
+     * @param derivative Desired variant
+     * @return Relative location of derivative
+     */
+    public static Path resolve(Path original, Derivative derivative) {
+        String fileName = original.getFileName().toString();
+        int extension = fileName.lastIndexOf('.');
+        String baseName = ((extension > 0) ? fileName.substring(0, extension) : fileName).replaceAll("\\s", "_");
+        Path parent = original.getParent();
+        Path directory = (parent == null) ? Path.of(DERIVATIVE_DIRECTORY) : parent.resolve(DERIVATIVE_DIRECTORY);
+        return directory.resolve("%s_%s_%s.%s".formatted(baseName, nameHash(fileName), derivative.suffix, "jpg"));
+    }
+
+    /**
+     * @return First 8 hexadecimal digits of the SHA-256 hash of given file name
+     */
+    private static String nameHash(String fileName) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(fileName.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, NAME_HASH_BYTES);
+        } catch (NoSuchAlgorithmException exc) {
+            throw new IllegalStateException("Every Java platform has to support SHA-256", exc);
+        }
+    }
+
+    /**
+     * Decodes given original once &amp; writes all derivatives of it. Formats that can't be rasterized (SVG) are
+     * skipped, since they scale anyway.
+     *
+     * @param original Location of original image, relative to the media root directory
+     * @throws IOException If original couldn't be read, or a derivative couldn't be written
+     */
+    void generate(Path original) throws IOException {
+        Path root = imageService.getRootLocation();
+        Path source = root.resolve(original);
+        BufferedImage decoded = measure("decode", () -> read(source));
+        if (decoded == null) {
+            LOGGER.debug("No raster image, skip derivatives of: {}", original);
+            return;
+        }
+        BufferedImage current = decoded;
+        // Largest first, so every smaller variant is scaled down from the previous (already smaller) one
+        Derivative[] derivatives = Derivative.values();
+        Arrays.sort(derivatives, Comparator.comparing(maxEdges::get, Comparator.reverseOrder()));
+        for (Derivative derivative : derivatives) {
+            final BufferedImage input = current;
+            current = measure("scale", () -> scale(input, maxEdges.get(derivative)));
+            final BufferedImage output = current;
+            byte[] encoded = measure("encode", () -> encode(output, derivative.maxSizeInKiloBytes * 1024));
+            if (encoded == null) {
+                LOGGER.warn("Derivative '{}' of {} exceeds {}KB, skip it", derivative.suffix, original, derivative.maxSizeInKiloBytes);
+                continue;
+            }
+            Path location = resolve(original, derivative);
+            measure("write", () -> write(root.resolve(location), encoded));
+            imageService.invalidate(root.resolve(location));
+            measure("register", () -> register(location, derivative));
+        }
+    }
+
+    private static BufferedImage read(Path source) throws IOException {
+        return ImageIO.read(source.toFile());
+    }
+
+    /**
+     * Scales given image down, so its longest edge fits into given bound. Images are never scaled up.
+     */
+    private static BufferedImage scale(BufferedImage image, int maxEdge) {
+        int longestEdge = Math.max(image.getWidth(), image.getHeight());
+        double factor = (longestEdge > maxEdge) ? (double) maxEdge / longestEdge : 1.0;
+        int width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+        // JPEG has no alpha channel, therefore always render into RGB
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = result.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return result;
+    }
+
+    /**
+     * Encodes given image as JPEG. The quality is lowered step by step, until the result fits into given size.
+     *
+     * @return Encoded image, or <code>null</code> if it doesn't fit even with the lowest quality
+     */
+    private static byte[] encode(BufferedImage image, int maxBytes) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            for (float quality : JPEG_QUALITIES) {
+                param.setCompressionQuality(quality);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ImageOutputStream output = ImageIO.createImageOutputStream(bytes)) {
+                    writer.setOutput(output);
+                    writer.write(null, new IIOImage(image, null, null), param);
+                }
+                if (bytes.size() <= maxBytes) {
+                    return bytes.toByteArray();
+                }
+            }
+            return null;
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static Void write(Path target, byte[] encoded) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        Files.write(temp, encoded);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return null;
+    }
+
+    private Image register(Path location, Derivative derivative) {
+        String relativeLocation = location.toString().replace('\\', '/');
+        if (derivative.isSmallImage()) {
+            return smallImageRepository.findByLocation(relativeLocation).orElseGet(() -> {
+                SmallImage image = new SmallImage();
+                image.setLocation(relativeLocation);
+                return smallImageRepository.save(image);
+            });
+        } else {
+            return largeImageRepository.findByLocation(relativeLocation).orElseGet(() -> {
+                LargeImage image = new LargeImage();
+                image.setLocation(relativeLocation);
+                return largeImageRepository.save(image);
+            });
+        }
+    }
+
+    @FunctionalInterface
+    private interface Stage<T> {
+        T run() throws IOException;
+    }
+
+    private <T> T measure(String stage, Stage<T> work) throws IOException {
+        Timer timer = Timer.builder(METRIC_PREFIX + ".stage")
+                .description("Latency of a single step of the image derivative pipeline")
+                .tag("stage", stage)
+                .register(meterRegistry);
+        long start = System.nanoTime();
+        try {
+            return work.run();
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -2,24 +2,34 @@ package com.acme.onlineshop.service;
 
 import com.acme.onlineshop.ApplicationConfiguration;
 import com.acme.onlineshop.exception.StorageException;
-import com.acme.onlineshop.utils.validators.ResourceProperties;
-import liquibase.pro.packaged.M;
-import org.apache.tika.Tika;
+import com.acme.onlineshop.utils.ImageTypeDetector;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.ComponentScan;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @DependsOn("ResourcePropertiesTest")
 public class ImageService extends StorageService {
 
-    public ImageService() {
-        super(ApplicationConfiguration.getMediaRootDirectory());
+    private final static String VALIDATION_TIMER = "shop.images.validation";
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public ImageService(MeterRegistry meterRegistry, ContentAddressedStorage contentStorage, HotImageCache cache, MediaQuotaService quota, MediaManifestService manifest,
+                        @Value("${shop.storage.content-addressed:false}") boolean contentAddressed,
+                        @Value("${shop.storage.shard-levels:0}") int shardLevels) {
+        super(ApplicationConfiguration.getMediaRootDirectory(), contentAddressed ? contentStorage : null, cache.isEnabled() ? cache : null, quota, manifest, shardLevels);
+        this.meterRegistry = meterRegistry;
     }
 
     /**
@@ -28,25 +38,35 @@ public class ImageService extends StorageService {
      * @see <a href="https://developer.mozilla.org/en-US/docs/Web/HTTP/Basics_of_HTTP/MIME_types#image_types">MDN - Web DOCs</a>
      */
     private final static Set<String> allowedImageFormats = Set.of(
-            "image/bmp", "image/jpeg", "image/png", "image/svg+xml"
+            ImageTypeDetector.BMP, ImageTypeDetector.JPEG, ImageTypeDetector.PNG, ImageTypeDetector.SVG
     );
 
     /**
-     * Validates if given file is a real image file or not.
+     * Validates if given file is a real image file or not. Only the leading bytes of the upload are read, the
+     * validation latency is recorded per detected format.
      *
      * @param file Uploaded file
+     * @see ImageTypeDetector
      */
     @Override
     protected void validateFile(MultipartFile file) {
         super.validateFile(file);
-        try {
-            Tika tika = new Tika();
-            String detectedMimeType = tika.detect(file.getBytes());
-            if (!allowedImageFormats.contains(detectedMimeType)) {
-                throw new StorageException("Uploaded file (%s) is not a valid image file. Detected format: %s. (Allowed formats: %s)".formatted(file.getOriginalFilename(), detectedMimeType, allowedImageFormats));
-            }
+        long start = System.nanoTime();
+        ImageTypeDetector.Detection detection;
+        try (InputStream inputStream = file.getInputStream()) {
+            detection = ImageTypeDetector.detect(inputStream);
         } catch (IOException exc) {
-            throw new StorageException("Couldn't detect the media type of uploaded file: %s".formatted(file));
+            throw new StorageException("Couldn't detect the media type of uploaded file: %s".formatted(file), exc);
+        }
+        boolean allowed = allowedImageFormats.contains(detection.mimeType());
+        Timer.builder(VALIDATION_TIMER)
+                .description("Time to validate the MIME type of an uploaded image")
+                .tag("format", allowed ? detection.mimeType() : "rejected")
+                .tag("detector", detection.fromHeader() ? "header" : "tika")
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (!allowed) {
+            throw new StorageException("Uploaded file (%s) is not a valid image file. Detected format: %s. (Allowed formats: %s)".formatted(file.getOriginalFilename(), detection.mimeType(), allowedImageFormats));
         }
     }
 
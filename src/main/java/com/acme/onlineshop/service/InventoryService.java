@@ -0,0 +1,298 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.StockLevel;
+import com.acme.onlineshop.dto.StockReservation;
+import com.acme.onlineshop.persistence.item.StockChange;
+import com.acme.onlineshop.persistence.item.StockChangeRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Keeps the stock of all items in memory &amp; reserves pieces of it, without locking any database row.</p>
+ * <p>Every item has a {@link StripedStock}, so concurrent reservations of the same item (e.g. during a flash sale) take
+ * pieces with a CAS on different counters, instead of waiting for each other. A reservation holds its pieces until it
+ * is confirmed (sold), cancelled or expires, then cancelled &amp; expired pieces go back into stock.</p>
+ * <p>Restocks &amp; confirmed sales are appended to a queue &amp; written to the journal ({@link StockChange})
+ * periodically, many per transaction. Sales of orders are claimed instead &amp; journaled within the transaction of the
+ * order, so the journal never misses a sale. The stock is rebuilt from the journal, when the application is
+ * started.</p>
+ */
+@Service
+public class InventoryService implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(InventoryService.class);
+    private final static String METRIC_PREFIX = "shop.inventory";
+
+    private final StockChangeRepository changeRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<Long, StripedStock> stock = new ConcurrentHashMap<>();
+    private final Map<Long, StockReservation> reservations = new ConcurrentHashMap<>();
+    private final Queue<StockChange> journal = new ConcurrentLinkedQueue<>();
+    private final AtomicLong reservationIds = new AtomicLong();
+    private final int stripes;
+    private final Duration reservationTimeout;
+    private final int batchSize;
+    private final Counter reserved;
+    private final Counter soldOut;
+    private final Counter expired;
+
+    @Autowired
+    public InventoryService(StockChangeRepository changeRepository, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                            @Value("${shop.inventory.stripes:0}") int stripes,
+                            @Value("${shop.inventory.reservation-timeout:PT15M}") Duration reservationTimeout,
+                            @Value("${shop.inventory.journal.batch-size:500}") int batchSize) {
+        this.changeRepository = changeRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // One stripe per core, at most 8 (512 bytes per item)
+        int wanted = (stripes > 0) ? stripes : Math.min(Runtime.getRuntime().availableProcessors(), 8);
+        this.stripes = Integer.highestOneBit(Math.max(1, wanted));
+        this.reservationTimeout = reservationTimeout;
+        this.batchSize = Math.max(1, batchSize);
+        Gauge.builder(METRIC_PREFIX + ".reservations.open", reservations, Map::size)
+                .description("Amount of open reservations")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".journal.pending", journal, Queue::size)
+                .description("Stock changes, that haven't been journaled yet")
+                .register(meterRegistry);
+        this.reserved = Counter.builder(METRIC_PREFIX + ".reservations").tag("result", "reserved").register(meterRegistry);
+        this.soldOut = Counter.builder(METRIC_PREFIX + ".reservations").tag("result", "sold_out").register(meterRegistry);
+        this.expired = Counter.builder(METRIC_PREFIX + ".reservations").tag("result", "expired").register(meterRegistry);
+    }
+
+    /**
+     * Loads the stock from the journal, when the application is fully loaded.
+     *
+     * @param readyEvent The "boot up is finished" event
+     * @see ApplicationReadyEvent
+     */
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent readyEvent) {
+        load();
+    }
+
+    /**
+     * Replaces the stock of all journaled items with the sums of their journal entries. Open reservations are kept.
+     */
+    public synchronized void load() {
+        flushJournal();
+        Map<Long, Long> reservedPerItem = countReserved();
+        for (Object[] row : changeRepository.sumByItem()) {
+            long itemId = ((Number) row[0]).longValue();
+            StripedStock loaded = new StripedStock(stripes);
+            loaded.add(Math.max(0, ((Number) row[1]).longValue() - reservedPerItem.getOrDefault(itemId, 0L)));
+            stock.put(itemId, loaded);
+        }
+    }
+
+    /**
+     * @return Pieces of given item, that can be reserved
+     */
+    public long getAvailable(long itemId) {
+        StripedStock itemStock = stock.get(itemId);
+        return (itemStock != null) ? itemStock.available() : 0;
+    }
+
+    /**
+     * @return Stock of all items, that have been stocked at least once, ordered by item ID
+     */
+    public List<StockLevel> getLevels() {
+        Map<Long, Long> reservedPerItem = countReserved();
+        List<StockLevel> levels = new ArrayList<>(stock.size());
+        stock.forEach((itemId, itemStock) -> levels.add(new StockLevel(itemId, itemStock.available(), reservedPerItem.getOrDefault(itemId, 0L))));
+        levels.sort(Comparator.comparingLong(StockLevel::itemId));
+        return levels;
+    }
+
+    private Map<Long, Long> countReserved() {
+        Map<Long, Long> reservedPerItem = new HashMap<>();
+        for (StockReservation reservation : reservations.values()) {
+            reservedPerItem.merge(reservation.itemId(), (long) reservation.quantity(), Long::sum);
+        }
+        return reservedPerItem;
+    }
+
+    /**
+     * Adds delivered pieces to the stock of an item
+     *
+     * @throws IllegalArgumentException If quantity isn't positive
+     */
+    public void restock(long itemId, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        stock.computeIfAbsent(itemId, id -> new StripedStock(stripes)).add(quantity);
+        journal.add(new StockChange(itemId, quantity, StockChange.Reason.RESTOCK));
+    }
+
+    /**
+     * Takes pieces of an item out of stock, until the reservation is confirmed, cancelled or expires.
+     *
+     * @return New reservation, or nothing if there are not enough pieces in stock
+     * @throws IllegalArgumentException If quantity isn't positive
+     */
+    public Optional<StockReservation> reserve(long itemId, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        StripedStock itemStock = stock.get(itemId);
+        if (itemStock == null || !itemStock.tryTake(quantity)) {
+            soldOut.increment();
+            return Optional.empty();
+        }
+        StockReservation reservation = new StockReservation(reservationIds.incrementAndGet(), itemId, quantity, Instant.now().plus(reservationTimeout));
+        reservations.put(reservation.id(), reservation);
+        reserved.increment();
+        return Optional.of(reservation);
+    }
+
+    /**
+     * Sells the reserved pieces for good
+     *
+     * @return FALSE if the reservation is unknown, e.g. since it has expired or has been confirmed already
+     */
+    public boolean confirm(long reservationId) {
+        StockReservation reservation = reservations.remove(reservationId);
+        if (reservation == null) {
+            return false;
+        }
+        journal.add(new StockChange(reservation.itemId(), -reservation.quantity(), StockChange.Reason.SALE));
+        return true;
+    }
+
+    /**
+     * Takes all given reservations out of the open ones, so none of them expires, while the sale is being committed.
+     * Their pieces stay out of stock, until they are journaled by {@link #journalSales(List)} or given back by
+     * {@link #giveBack(List)}.
+     *
+     * @return FALSE if any reservation is unknown, then the pieces of all given reservations are back in stock
+     */
+    public boolean claim(List<StockReservation> claimed) {
+        for (int i = 0; i < claimed.size(); i++) {
+            if (reservations.remove(claimed.get(i).id()) == null) {
+                // Pieces of the unknown (expired) one are back already, the others have to be released
+                giveBack(claimed.subList(0, i));
+                claimed.subList(i + 1, claimed.size()).forEach(reservation -> cancel(reservation.id()));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the sales of given claimed reservations to the journal right away, not queued. Meant to be called within
+     * the transaction of the sale, so the journal never misses a committed sale.
+     */
+    public void journalSales(List<StockReservation> claimed) {
+        changeRepository.saveAll(claimed.stream().map(reservation -> new StockChange(reservation.itemId(), -reservation.quantity(), StockChange.Reason.SALE)).toList());
+    }
+
+    /**
+     * Puts the pieces of given claimed reservations back into stock, e.g. since their sale couldn't be committed
+     */
+    public void giveBack(List<StockReservation> claimed) {
+        claimed.forEach(this::release);
+    }
+
+    /**
+     * Puts the reserved pieces back into stock
+     *
+     * @return FALSE if the reservation is unknown, e.g. since it has expired or has been confirmed already
+     */
+    public boolean cancel(long reservationId) {
+        StockReservation reservation = reservations.remove(reservationId);
+        if (reservation == null) {
+            return false;
+        }
+        release(reservation);
+        return true;
+    }
+
+    /**
+     * Puts the pieces of all expired reservations back into stock
+     *
+     * @return Amount of expired reservations
+     */
+    @Scheduled(fixedDelayString = "${shop.inventory.expiry-interval:PT1S}")
+    public int expireReservations() {
+        return expireReservations(Instant.now());
+    }
+
+    int expireReservations(Instant now) {
+        int count = 0;
+        for (StockReservation reservation : reservations.values()) {
+            // Removal decides the race against a concurrent confirm or cancel
+            if (reservation.expiresAt().isBefore(now) && reservations.remove(reservation.id(), reservation)) {
+                release(reservation);
+                count++;
+            }
+        }
+        expired.increment(count);
+        return count;
+    }
+
+    private void release(StockReservation reservation) {
+        stock.computeIfAbsent(reservation.itemId(), id -> new StripedStock(stripes)).giveBack(reservation.quantity());
+    }
+
+    /**
+     * Writes all queued stock changes to the journal, up to the batch size per transaction (&amp; JDBC batch).
+     *
+     * @return Amount of written changes
+     */
+    @Scheduled(fixedDelayString = "${shop.inventory.journal.interval:PT1S}")
+    public synchronized int flushJournal() {
+        int written = 0;
+        List<StockChange> batch = new ArrayList<>(batchSize);
+        StockChange change;
+        do {
+            batch.clear();
+            while (batch.size() < batchSize && (change = journal.poll()) != null) {
+                batch.add(change);
+            }
+            if (batch.isEmpty()) {
+                break;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> changeRepository.saveAll(batch));
+            } catch (DataAccessException exc) {
+                // Order doesn't matter, the stock is the sum of all changes
+                journal.addAll(batch);
+                LOGGER.error("Couldn't write stock changes, retrying with next flush", exc);
+                break;
+            }
+            written += batch.size();
+        } while (batch.size() == batchSize);
+        return written;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushJournal();
+    }
+}
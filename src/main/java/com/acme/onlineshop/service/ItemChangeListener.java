@@ -0,0 +1,105 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.persistence.item.Item;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * <p>Reports committed changes of {@link Item}s to in-memory data, that is derived from all items (e.g. indexes or
+ * counters), so it never has to be rebuilt from the database on every change.</p>
+ * <p>Hibernate calls the listener only after the transaction has been committed, so rolled back changes are never
+ * reported. Changes of bulk queries (JPQL <code>UPDATE</code> &amp; <code>DELETE</code>) bypass Hibernate events &amp;
+ * have to be reconciled otherwise.</p>
+ */
+abstract class ItemChangeListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    /**
+     * Registers given listener for all inserts, updates &amp; deletes of the persistence unit.
+     */
+    static void register(EntityManagerFactory entityManagerFactory, ItemChangeListener listener) {
+        EventListenerRegistry listenerRegistry = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getServiceRegistry().getService(EventListenerRegistry.class);
+        listenerRegistry.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+        listenerRegistry.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+        listenerRegistry.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+    }
+
+    /**
+     * @param itemId ID of the inserted or updated item
+     * @param categoryId ID of its main category
+     * @param subCategoryId ID of its sub-category, or 0 if it has none
+     * @param hasThumbnail TRUE if it has a thumbnail
+     */
+    protected abstract void saved(long itemId, long categoryId, long subCategoryId, boolean hasThumbnail);
+
+    /**
+     * Called after {@link #saved(long, long, long, boolean)} for listeners, that need the price as well. Does nothing
+     * by default.
+     *
+     * @param itemId ID of the inserted or updated item
+     * @param price Its price in cents
+     */
+    protected void savedPrice(long itemId, long price) {
+    }
+
+    /**
+     * @param itemId ID of the deleted item
+     */
+    protected abstract void deleted(long itemId);
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Item item) {
+            saved(item);
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof Item item) {
+            saved(item);
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Item item) {
+            deleted(item.getId());
+        }
+    }
+
+    private void saved(Item item) {
+        long subCategoryId = (item.getSubCategory() != null) ? item.getSubCategory().getId() : 0;
+        saved(item.getId(), item.getCategory().getId(), subCategoryId, item.getThumbnail() != null);
+        savedPrice(item.getId(), item.getPrice());
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+        // Nothing to undo, changes are only reported after a successful commit
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+        // Nothing to undo, changes are only reported after a successful commit
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+        // Nothing to undo, changes are only reported after a successful commit
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return Item.class.isAssignableFrom(persister.getMappedClass());
+    }
+}
@@ -0,0 +1,381 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.ItemImportStatus;
+import com.acme.onlineshop.persistence.item.ImportCheckpoint;
+import com.acme.onlineshop.persistence.item.ImportCheckpointRepository;
+import com.acme.onlineshop.persistence.item.Item;
+import com.acme.onlineshop.persistence.item.MainCategory;
+import com.acme.onlineshop.persistence.item.SubCategory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * <p>Imports items in bulk from files inside the import directory (<code>shop.catalog.import.directory</code>):</p>
+ * <ul>
+ *     <li><b>CSV</b> (<code>*.csv</code>) with header, columns <code>category</code> &amp; optional <code>subCategory</code></li>
+ *     <li><b>NDJSON</b> (<code>*.ndjson</code>, <code>*.jsonl</code>), one object per line with the same fields</li>
+ * </ul>
+ * <p>Categories are given by name or slug &amp; resolved from a map of the current {@link CategoryTree}, so a row costs
+ * no query. Files are streamed row by row &amp; written in chunks: every chunk is persisted with JDBC batching, committed
+ * in its own transaction together with its {@link ImportCheckpoint} &amp; then detached. Heap usage therefore depends on
+ * the chunk size only, never on the file size. An interrupted import continues after the last committed chunk.</p>
+ * <p>Items are written through Hibernate (not plain JDBC), so the search index &amp; facet counts are updated by the
+ * usual post-commit events (see {@link ItemChangeListener}).</p>
+ */
+@Service
+public class ItemImportService {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(ItemImportService.class);
+
+    private final static String METRIC_PREFIX = "shop.catalog.import";
+    private final static List<String> CSV_EXTENSIONS = List.of(".csv");
+    private final static List<String> NDJSON_EXTENSIONS = List.of(".ndjson", ".jsonl");
+    private final static String CATEGORY_FIELD = "category";
+    private final static String SUB_CATEGORY_FIELD = "subCategory";
+
+    /**
+     * Single row of an import file, with slugs of its categories
+     */
+    record Row(String category, String subCategory) { }
+
+    private final EntityManager entityManager;
+    private final CategoryService categoryService;
+    private final ImportCheckpointRepository checkpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectReader jsonReader;
+    private final Path directory;
+    private final int chunkSize;
+    private final int batchSize;
+    private final ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Counter imported;
+    private final Counter invalid;
+    private volatile Run current;
+
+    @Autowired
+    public ItemImportService(EntityManager entityManager, CategoryService categoryService, ImportCheckpointRepository checkpointRepository,
+                             PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                             @Value("${shop.catalog.import.directory:import}") String directory,
+                             @Value("${shop.catalog.import.chunk-size:1000}") int chunkSize,
+                             @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:20}") int batchSize) {
+        this.entityManager = entityManager;
+        this.categoryService = categoryService;
+        this.checkpointRepository = checkpointRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.jsonReader = new ObjectMapper().readerFor(JsonNode.class);
+        this.directory = Path.of(directory).toAbsolutePath().normalize();
+        this.chunkSize = Math.max(1, chunkSize);
+        this.batchSize = Math.max(1, batchSize);
+        this.executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("item-import-"));
+        this.imported = Counter.builder(METRIC_PREFIX + ".rows").tag("result", "imported").register(meterRegistry);
+        this.invalid = Counter.builder(METRIC_PREFIX + ".rows").tag("result", "invalid").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return All importable files inside the import directory, sorted by name
+     * @throws IOException If directory can't be listed
+     */
+    public List<String> listFiles() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile)
+                    .map(file -> file.getFileName().toString())
+                    .filter(name -> isCsv(name) || isNdjson(name))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Starts to import given files one after another in background, unless an import is running already. Files, that
+     * have been imported completely &amp; haven't changed since, are skipped.
+     *
+     * @param fileNames Names of files inside the import directory
+     * @return Status right after start
+     * @throws IllegalArgumentException If a file doesn't exist inside the import directory or has an unknown format
+     */
+    public ItemImportStatus start(List<String> fileNames) {
+        List<Path> files = fileNames.stream().map(this::resolve).toList();
+        if (!files.isEmpty() && running.compareAndSet(false, true)) {
+            Run run = new Run();
+            current = run;
+            executor.execute(() -> execute(run, files));
+        }
+        return getStatus();
+    }
+
+    /**
+     * Imports given files on the calling thread
+     *
+     * @param fileNames Names of files inside the import directory
+     * @return Status after the import
+     */
+    ItemImportStatus importFiles(List<String> fileNames) {
+        List<Path> files = fileNames.stream().map(this::resolve).toList();
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Another import is running already.");
+        }
+        Run run = new Run();
+        current = run;
+        execute(run, files);
+        return getStatus();
+    }
+
+    private void execute(Run run, List<Path> files) {
+        try {
+            for (Path file : files) {
+                run.importFile(file);
+            }
+        } finally {
+            run.finishedAt = Instant.now();
+            running.set(false);
+        }
+    }
+
+    /**
+     * @return Progress of the running or last import, or <code>null</code> if there hasn't been any import yet
+     */
+    public ItemImportStatus getStatus() {
+        Run run = current;
+        return (run != null) ? run.status(running.get()) : null;
+    }
+
+    private Path resolve(String fileName) {
+        Path file = directory.resolve(fileName).normalize();
+        if (!file.startsWith(directory) || !Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("There is no file '%s' inside the import directory.".formatted(fileName));
+        }
+        String name = file.getFileName().toString();
+        if (!isCsv(name) && !isNdjson(name)) {
+            throw new IllegalArgumentException("Unknown import format of file '%s', expected CSV or NDJSON.".formatted(fileName));
+        }
+        return file;
+    }
+
+    private static boolean isCsv(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        return CSV_EXTENSIONS.stream().anyMatch(name::endsWith);
+    }
+
+    private static boolean isNdjson(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        return NDJSON_EXTENSIONS.stream().anyMatch(name::endsWith);
+    }
+
+    /**
+     * Same normalization as {@link com.acme.onlineshop.persistence.item.Category}, so names &amp; slugs both match
+     */
+    static String slug(String name) {
+        return (name == null) ? "" : name.strip().toLowerCase(Locale.getDefault()).replace(' ', '_');
+    }
+
+    /**
+     * Streams the rows of a CSV file. Malformed rows are returned as <code>null</code>.
+     */
+    private Iterator<Row> csvRows(BufferedReader reader) throws IOException {
+        CSVParser parser = CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).setIgnoreHeaderCase(true)
+                .setIgnoreSurroundingSpaces(true).setIgnoreEmptyLines(true).build().parse(reader);
+        List<String> header = parser.getHeaderNames();
+        if (header.stream().noneMatch(CATEGORY_FIELD::equalsIgnoreCase)) {
+            throw new IOException("CSV header has no column '%s'".formatted(CATEGORY_FIELD));
+        }
+        boolean hasSubCategory = header.stream().anyMatch(SUB_CATEGORY_FIELD::equalsIgnoreCase);
+        Iterator<CSVRecord> records = parser.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public Row next() {
+                CSVRecord record = records.next();
+                if (!record.isConsistent()) {
+                    return null;
+                }
+                return new Row(slug(record.get(CATEGORY_FIELD)), hasSubCategory ? slug(record.get(SUB_CATEGORY_FIELD)) : "");
+            }
+        };
+    }
+
+    /**
+     * Streams the rows of a NDJSON file. Blank lines are ignored, malformed lines are returned as <code>null</code>.
+     */
+    private Iterator<Row> ndjsonRows(BufferedReader reader) {
+        Iterator<String> lines = reader.lines().filter(line -> !line.isBlank()).iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return lines.hasNext();
+            }
+
+            @Override
+            public Row next() {
+                try {
+                    JsonNode node = jsonReader.readValue(lines.next());
+                    return new Row(slug(node.path(CATEGORY_FIELD).asText(null)), slug(node.path(SUB_CATEGORY_FIELD).asText(null)));
+                } catch (JsonProcessingException exc) {
+                    return null;
+                }
+            }
+        };
+    }
+
+    /**
+     * Progress of a single import, possibly of many files
+     */
+    private final class Run {
+
+        private final Instant startedAt = Instant.now();
+        private volatile String file;
+        private volatile long rowsRead;
+        private volatile long rowsImported;
+        private volatile long rowsSkipped;
+        private volatile long rowsInvalid;
+        private volatile Instant finishedAt;
+        private volatile String error;
+
+        ItemImportStatus status(boolean running) {
+            Instant end = (finishedAt != null) ? finishedAt : Instant.now();
+            double seconds = Math.max(1, Duration.between(startedAt, end).toMillis()) / 1000.0;
+            return new ItemImportStatus(file, running, rowsRead, rowsImported, rowsSkipped, rowsInvalid, rowsRead / seconds,
+                    startedAt, finishedAt, error);
+        }
+
+        void importFile(Path path) {
+            String fileName = directory.relativize(path).toString();
+            file = fileName;
+            try {
+                long fileSize = Files.size(path);
+                long fileModifiedAt = Files.getLastModifiedTime(path).toMillis();
+                ImportCheckpoint checkpoint = checkpointRepository.findById(fileName)
+                        .filter(previous -> previous.getFileSize() == fileSize && previous.getFileModifiedAt() == fileModifiedAt)
+                        .orElseGet(() -> new ImportCheckpoint(fileName, fileSize, fileModifiedAt));
+                if (checkpoint.isCompleted()) {
+                    rowsSkipped += checkpoint.getRows();
+                    LOGGER.info("Skip import of '{}', all {} rows have been imported already", fileName, checkpoint.getRows());
+                    return;
+                }
+                LOGGER.info("Start import of '{}'{}", fileName, (checkpoint.getRows() > 0) ? " after row " + checkpoint.getRows() : "");
+                long readBefore = rowsRead;
+                long start = System.nanoTime();
+                try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                    importRows(isCsv(fileName) ? csvRows(reader) : ndjsonRows(reader), checkpoint);
+                }
+                double seconds = Math.max(1, System.nanoTime() - start) / 1e9;
+                LOGGER.info("Finished import of '{}': {} rows in {} s ({} rows/s)", fileName, rowsRead - readBefore,
+                        "%.1f".formatted(seconds), "%.0f".formatted((rowsRead - readBefore) / seconds));
+            } catch (IOException | RuntimeException exc) {
+                error = "%s: %s".formatted(fileName, exc.getMessage());
+                LOGGER.error("Aborted import of '{}', it continues after the last committed row on the next run", fileName, exc);
+            }
+        }
+
+        private void importRows(Iterator<Row> rows, ImportCheckpoint checkpoint) {
+            Map<String, Long> mainCategories = new HashMap<>();
+            Map<String, Long> subCategories = new HashMap<>();
+            for (CategoryTree.Node main : categoryService.getTree().getMainCategories()) {
+                mainCategories.put(main.getNameLowerCase(), main.getId());
+                for (CategoryTree.Node sub : main.getSubCategories()) {
+                    subCategories.put(main.getNameLowerCase() + "/" + sub.getNameLowerCase(), sub.getId());
+                }
+            }
+            long row = 0;
+            while (row < checkpoint.getRows() && rows.hasNext()) {
+                rows.next();
+                row++;
+                rowsSkipped++;
+            }
+            List<long[]> chunk = new ArrayList<>(chunkSize);
+            long chunkRows = 0;
+            while (rows.hasNext()) {
+                Row next = rows.next();
+                rowsRead++;
+                chunkRows++;
+                Long categoryId = (next != null) ? mainCategories.get(next.category()) : null;
+                Long subCategoryId = (categoryId != null && !next.subCategory().isEmpty())
+                        ? subCategories.get(next.category() + "/" + next.subCategory()) : Long.valueOf(0);
+                if (categoryId == null || subCategoryId == null) {
+                    rowsInvalid++;
+                    invalid.increment();
+                } else {
+                    chunk.add(new long[]{categoryId, subCategoryId});
+                }
+                if (chunkRows == chunkSize) {
+                    commit(chunk, checkpoint, chunkRows, false);
+                    chunk.clear();
+                    chunkRows = 0;
+                }
+            }
+            commit(chunk, checkpoint, chunkRows, true);
+        }
+
+        /**
+         * Persists a chunk of items &amp; the checkpoint in a single transaction
+         *
+         * @param chunk Pairs of main category ID &amp; sub-category ID (0 if none)
+         * @param rows Amount of rows read for this chunk, including invalid ones
+         */
+        private void commit(List<long[]> chunk, ImportCheckpoint checkpoint, long rows, boolean completed) {
+            checkpoint.setRows(checkpoint.getRows() + rows);
+            checkpoint.setCompleted(completed);
+            checkpoint.setUpdatedAt(Instant.now());
+            transactionTemplate.executeWithoutResult(status -> {
+                entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+                for (long[] categories : chunk) {
+                    MainCategory category = entityManager.getReference(MainCategory.class, categories[0]);
+                    SubCategory subCategory = (categories[1] != 0) ? entityManager.getReference(SubCategory.class, categories[1]) : null;
+                    entityManager.persist(new Item(category, subCategory, null, new ArrayList<>()));
+                }
+                entityManager.merge(checkpoint);
+                entityManager.flush();
+                entityManager.clear();
+            });
+            rowsImported += chunk.size();
+            imported.increment(chunk.size());
+        }
+    }
+}
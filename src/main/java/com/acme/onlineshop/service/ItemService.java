@@ -0,0 +1,133 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.ItemTile;
+import com.acme.onlineshop.dto.ItemTilePage;
+import com.acme.onlineshop.persistence.item.Item;
+import com.acme.onlineshop.persistence.item.ItemRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * <p>Lists the item catalog page by page as lightweight {@link ItemTile}s, without loading any entity.</p>
+ * <p>Pages are addressed by an opaque cursor instead of a page number (see {@link ItemRepository}). The catalog is
+ * ordered by <code>(subCategory, id)</code>, items without sub-category come first.</p>
+ * <p>The item page gets the entity itself with the named entity graph of its view (see {@link Item}), so it is a
+ * single query, no matter how many images it renders.</p>
+ */
+@Service
+public class ItemService {
+
+    public final static int DEFAULT_PAGE_SIZE = 24;
+    public final static int MAX_PAGE_SIZE = 100;
+    private final static String NO_SUB_CATEGORY = "-";
+
+    private final ItemRepository itemRepository;
+
+    @Autowired
+    public ItemService(ItemRepository itemRepository) {
+        this.itemRepository = itemRepository;
+    }
+
+    /**
+     * Returns the tiles following given cursor.
+     *
+     * @param subCategoryId Only list items of this sub-category, or <code>null</code> for the entire catalog
+     * @param cursor Cursor of the previous page, or <code>null</code> for the first page
+     * @param size Amount of tiles, at most {@link #MAX_PAGE_SIZE}
+     * @return Requested page with the cursor of the next one
+     * @throws IllegalArgumentException If cursor is invalid
+     */
+    public ItemTilePage listTiles(Long subCategoryId, String cursor, int size) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        Cursor position = (cursor == null || cursor.isBlank()) ? Cursor.FIRST : Cursor.decode(cursor);
+        List<ItemTile> tiles = findTiles(subCategoryId, position, limit);
+        String nextCursor = null;
+        if (tiles.size() == limit) {
+            nextCursor = Cursor.after(tiles).encode();
+        }
+        return new ItemTilePage(tiles, nextCursor);
+    }
+
+    /**
+     * Walks through the entire catalog in batches, e.g. to build in-memory data from all items. Every batch is a
+     * single keyset query, so the whole walk costs the same per item, regardless of the catalog size.
+     *
+     * @param batchSize Amount of tiles per query
+     * @param consumer Called for every tile in catalog order
+     */
+    public void forEachTile(int batchSize, Consumer<ItemTile> consumer) {
+        Cursor position = Cursor.FIRST;
+        List<ItemTile> tiles;
+        do {
+            tiles = findTiles(null, position, batchSize);
+            tiles.forEach(consumer);
+            if (!tiles.isEmpty()) {
+                position = Cursor.after(tiles);
+            }
+        } while (tiles.size() == batchSize);
+    }
+
+    /**
+     * Returns a single item with categories, thumbnail &amp; all large images
+     */
+    public Optional<Item> findDetail(long id) {
+        return itemRepository.findDetailById(id);
+    }
+
+    private List<ItemTile> findTiles(Long subCategoryId, Cursor position, int limit) {
+        List<ItemTile> tiles;
+        if (subCategoryId != null) {
+            tiles = itemRepository.findTilesOfSubCategory(subCategoryId, position.itemId(), Pageable.ofSize(limit));
+        } else if (position.subCategoryId() == null) {
+            tiles = new ArrayList<>(itemRepository.findTilesWithoutSubCategory(position.itemId(), Pageable.ofSize(limit)));
+            if (tiles.size() < limit) {
+                // Continue with the items of the first sub-category on the same page
+                tiles.addAll(itemRepository.findTilesAfter(0, 0, Pageable.ofSize(limit - tiles.size())));
+            }
+        } else {
+            tiles = itemRepository.findTilesAfter(position.subCategoryId(), position.itemId(), Pageable.ofSize(limit));
+        }
+        return tiles;
+    }
+
+    /**
+     * Position right after the last tile of a page
+     *
+     * @param subCategoryId Sub-category of the last tile, <code>null</code> while items without sub-category are listed
+     * @param itemId ID of the last tile
+     */
+    record Cursor(Long subCategoryId, long itemId) {
+
+        static final Cursor FIRST = new Cursor(null, 0);
+
+        static Cursor after(List<ItemTile> tiles) {
+            ItemTile last = tiles.get(tiles.size() - 1);
+            return new Cursor(last.subCategoryId(), last.id());
+        }
+
+        String encode() {
+            String plain = "%s:%d".formatted((subCategoryId != null) ? subCategoryId.toString() : NO_SUB_CATEGORY, itemId);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                String plain = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+                int separator = plain.indexOf(':');
+                String subCategory = plain.substring(0, separator);
+                long itemId = Long.parseLong(plain.substring(separator + 1));
+                return new Cursor(subCategory.equals(NO_SUB_CATEGORY) ? null : Long.valueOf(subCategory), itemId);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException exc) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor, exc);
+            }
+        }
+    }
+}
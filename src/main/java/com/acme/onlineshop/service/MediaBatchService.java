@@ -0,0 +1,294 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.BatchUploadResult;
+import com.acme.onlineshop.exception.StorageException;
+import com.acme.onlineshop.persistence.item.LargeImage;
+import com.acme.onlineshop.persistence.user.User;
+import com.acme.onlineshop.utils.PathMultipartFile;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * <p>Stores many uploaded images at once, e.g. to onboard the photos of an entire catalog.</p>
+ * <p>The files of a batch are validated &amp; stored in parallel on a bounded pool. Every file runs through the
+ * regular {@link ImageService#store(MultipartFile, User)} (format validation, quota, manifest) &amp; is handed over to the
+ * {@link ImageDerivativeService} afterwards.</p>
+ * <p>Zip archives are read straight from the request: each entry is streamed into a temporary file &amp; processed while
+ * the next entry is read. The amount of extracted, but not yet stored entries is bounded, so a fast client can't fill
+ * up the temporary directory.</p>
+ */
+@Service
+public class MediaBatchService {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(MediaBatchService.class);
+
+    private final static String METRIC_PREFIX = "shop.images.batch";
+    private final static long MAX_FILE_BYTES = LargeImage.MAX_SIZE_IN_KILO_BYTES * 1024L;
+    private final static String DUPLICATE_NAME = "Batch contains another file with this name.";
+
+    private final ImageService imageService;
+    private final ImageDerivativeService imageDerivativeService;
+    private final ThreadPoolExecutor executor;
+    private final MeterRegistry meterRegistry;
+    private final int maxPendingFiles;
+    private final int maxFiles;
+    private final long maxArchiveBytes;
+
+    @Autowired
+    public MediaBatchService(ImageService imageService, ImageDerivativeService imageDerivativeService, MeterRegistry meterRegistry,
+                             @Value("${shop.images.batch.threads:0}") int threads,
+                             @Value("${shop.images.batch.max-files:1000}") int maxFiles,
+                             @Value("${shop.images.batch.max-archive-bytes:268435456}") long maxArchiveBytes) {
+        this.imageService = imageService;
+        this.imageDerivativeService = imageDerivativeService;
+        this.meterRegistry = meterRegistry;
+        int poolSize = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), new CustomizableThreadFactory("image-batch-"));
+        this.maxPendingFiles = 2 * poolSize;
+        this.maxFiles = maxFiles;
+        this.maxArchiveBytes = maxArchiveBytes;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Stores all given files of given user.
+     *
+     * @param files Uploaded files
+     * @param user Owner of the files
+     * @return Result of every file, in the order of given files
+     * @throws StorageException If batch contains too many files
+     */
+    public List<BatchUploadResult> storeAll(List<MultipartFile> files, User user) {
+        if (files.size() > maxFiles) {
+            throw new StorageException("Batch contains %d files, but at most %d are allowed.".formatted(files.size(), maxFiles));
+        }
+        Batch batch = new Batch(user);
+        for (MultipartFile file : files) {
+            if (file.getOriginalFilename() != null && !batch.claim(file.getOriginalFilename())) {
+                batch.reject(file.getOriginalFilename(), DUPLICATE_NAME);
+            } else {
+                batch.submit(file, null);
+            }
+        }
+        return batch.results();
+    }
+
+    /**
+     * Extracts all files of given zip archive &amp; stores them for given user. Directories inside the archive are
+     * ignored, every file is stored by its plain file name. Therefore, only the first of several files with the same
+     * name (e.g. <code>a/x.jpg</code> &amp; <code>b/x.jpg</code>) is stored, the others are rejected.
+     *
+     * @param archive Stream of a zip archive
+     * @param user Owner of the files
+     * @return Result of every file, in the order of the archive
+     * @throws StorageException If archive exceeds the limits, or couldn't be read
+     */
+    public List<BatchUploadResult> storeArchive(InputStream archive, User user) {
+        Batch batch = new Batch(user);
+        long archiveBytes = 0;
+        try (ZipInputStream zip = new ZipInputStream(archive)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = fileNameOf(entry);
+                if (name == null) {
+                    continue;
+                }
+                if (batch.size() >= maxFiles) {
+                    throw new StorageException("Archive contains more than %d files.".formatted(maxFiles));
+                }
+                if (!batch.claim(name)) {
+                    // Would be stored concurrently to the same location
+                    batch.reject(name, DUPLICATE_NAME);
+                    continue;
+                }
+                Path temp = Files.createTempFile("image-batch-", ".tmp");
+                long written;
+                try (OutputStream outputStream = Files.newOutputStream(temp)) {
+                    written = copy(zip, outputStream, MAX_FILE_BYTES + 1);
+                } catch (IOException | RuntimeException exc) {
+                    Files.deleteIfExists(temp);
+                    throw exc;
+                }
+                archiveBytes += written;
+                if (archiveBytes > maxArchiveBytes) {
+                    Files.deleteIfExists(temp);
+                    throw new StorageException("Archive exceeds %d MB of extracted content.".formatted(maxArchiveBytes / (1024 * 1024)));
+                }
+                if (written > MAX_FILE_BYTES) {
+                    Files.deleteIfExists(temp);
+                    batch.reject(name, "File exceeds %d KB.".formatted(LargeImage.MAX_SIZE_IN_KILO_BYTES));
+                } else {
+                    batch.submit(new PathMultipartFile(temp, name), temp);
+                }
+            }
+        } catch (IOException exc) {
+            batch.abort();
+            throw new StorageException("Couldn't read uploaded archive.", exc);
+        } catch (RuntimeException exc) {
+            batch.abort();
+            throw exc;
+        }
+        return batch.results();
+    }
+
+    /**
+     * @return Plain file name of given entry, or <code>null</code> if entry should be skipped (directories &amp;
+     * meta data of archive tools)
+     */
+    private static String fileNameOf(ZipEntry entry) {
+        if (entry.isDirectory() || entry.getName().startsWith("__MACOSX/")) {
+            return null;
+        }
+        String name = entry.getName().replace('\\', '/');
+        name = name.substring(name.lastIndexOf('/') + 1);
+        return (name.isBlank() || name.startsWith(".")) ? null : name;
+    }
+
+    /**
+     * Copies at most given amount of bytes
+     *
+     * @return Amount of copied bytes
+     */
+    private static long copy(InputStream inputStream, OutputStream outputStream, long limit) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        int read;
+        while (total < limit && (read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, limit - total))) != -1) {
+            outputStream.write(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+
+    private BatchUploadResult store(MultipartFile file, User user, Path temp) {
+        long start = System.nanoTime();
+        BatchUploadResult result;
+        try {
+            Path location = imageService.store(file, user);
+            imageDerivativeService.submit(location);
+            result = BatchUploadResult.stored(file.getOriginalFilename(), location.toString().replace('\\', '/'));
+        } catch (StorageException exc) {
+            result = BatchUploadResult.rejected(file.getOriginalFilename(), exc.getMessage());
+        } catch (RuntimeException exc) {
+            LOGGER.error("Couldn't store file of batch upload: {}", file.getOriginalFilename(), exc);
+            result = BatchUploadResult.rejected(file.getOriginalFilename(), "Internal error while storing file.");
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException exc) {
+                    LOGGER.warn("Couldn't delete temporary file: {}", temp, exc);
+                }
+            }
+        }
+        Timer.builder(METRIC_PREFIX + ".file")
+                .description("Time to validate & store a single file of a batch upload")
+                .tag("result", result.stored() ? "stored" : "rejected")
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    /**
+     * Files of a single batch. At most {@link #maxPendingFiles} of them are waiting for the pool at once.
+     */
+    private class Batch {
+
+        private final User user;
+        private final Semaphore pending = new Semaphore(maxPendingFiles);
+        private final List<Future<BatchUploadResult>> results = new ArrayList<>();
+        private final Set<String> names = new HashSet<>();
+
+        Batch(User user) {
+            this.user = user;
+        }
+
+        int size() {
+            return results.size();
+        }
+
+        /**
+         * @return <code>TRUE</code> if no other file of this batch has given name
+         */
+        boolean claim(String name) {
+            return names.add(name);
+        }
+
+        void submit(MultipartFile file, Path temp) {
+            pending.acquireUninterruptibly();
+            try {
+                results.add(executor.submit(() -> {
+                    try {
+                        return store(file, user, temp);
+                    } finally {
+                        pending.release();
+                    }
+                }));
+            } catch (RuntimeException exc) {
+                pending.release();
+                throw exc;
+            }
+        }
+
+        void reject(String name, String error) {
+            results.add(CompletableFuture.completedFuture(BatchUploadResult.rejected(name, error)));
+        }
+
+        /**
+         * Waits for all files, which have been submitted already. Their temporary files are deleted by themselves.
+         */
+        void abort() {
+            try {
+                results();
+            } catch (StorageException exc) {
+                LOGGER.warn("Aborted batch upload of user: {}", user.getUsername(), exc);
+            }
+        }
+
+        List<BatchUploadResult> results() {
+            List<BatchUploadResult> done = new ArrayList<>(results.size());
+            for (Future<BatchUploadResult> result : results) {
+                try {
+                    done.add(result.get());
+                } catch (InterruptedException exc) {
+                    Thread.currentThread().interrupt();
+                    throw new StorageException("Batch upload has been interrupted", exc);
+                } catch (ExecutionException exc) {
+                    throw new StorageException("Batch upload failed", exc.getCause());
+                }
+            }
+            return done;
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.MediaGcReport;
+import com.acme.onlineshop.persistence.item.ImageRepository;
+import com.acme.onlineshop.persistence.user.UserRepository;
+import com.acme.onlineshop.utils.MediaLayout;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * <p>Finds media files, that nobody owns or references anymore, &amp; reclaims their space in background:</p>
+ * <ul>
+ *     <li>Directories of deleted users (&amp; their manifest, ledger &amp; blob references)</li>
+ *     <li>Derivatives without {@link com.acme.onlineshop.persistence.item.Image} row</li>
+ *     <li>Blobs without {@link com.acme.onlineshop.persistence.media.MediaBlob} row &amp; left over temporary files</li>
+ * </ul>
+ * <p>Orphans are either moved into a quarantine directory (<code>&lt;media&gt;/.quarantine/&lt;run&gt;</code>), which is
+ * purged after a retention period, or deleted right away. Only files older than a minimum age are touched, so uploads
+ * &amp; derivatives, that are written just now, are never mistaken for orphans. Image rows, whose file is missing, are
+ * reported only, since items still reference them.</p>
+ * <p>All file system operations of a run share an IO budget (bytes per second), so the collector never competes with
+ * uploads &amp; downloads for the disk.</p>
+ */
+@Service
+public class MediaGarbageCollectionService {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(MediaGarbageCollectionService.class);
+
+    private final static String METRIC_PREFIX = "shop.storage.gc";
+    private final static int MAX_DANGLING_LOCATIONS = 100;
+    /**
+     * Every file system operation costs at least this many bytes of the IO budget, even if the file is smaller
+     */
+    private final static long MIN_OPERATION_BYTES = 4096;
+    private final static DateTimeFormatter RUN_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+
+    private final StorageService storageService;
+    private final ContentAddressedStorage contentStorage;
+    private final UserRepository userRepository;
+    private final ImageRepository imageRepository;
+    private final boolean enabled;
+    private final boolean quarantine;
+    private final Duration minAge;
+    private final Duration retention;
+    private final long maxBytesPerSecond;
+    private final int maxFilesPerRun;
+    private final ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Counter orphanedFiles;
+    private final Counter reclaimedBytes;
+    private volatile Run current;
+
+    @Autowired
+    public MediaGarbageCollectionService(StorageService storageService, ContentAddressedStorage contentStorage, UserRepository userRepository,
+                                         ImageRepository imageRepository, MeterRegistry meterRegistry,
+                                         @Value("${shop.storage.gc.enabled:true}") boolean enabled,
+                                         @Value("${shop.storage.gc.quarantine:true}") boolean quarantine,
+                                         @Value("${shop.storage.gc.min-age:PT24H}") Duration minAge,
+                                         @Value("${shop.storage.gc.retention:P7D}") Duration retention,
+                                         @Value("${shop.storage.gc.max-bytes-per-second:10485760}") long maxBytesPerSecond,
+                                         @Value("${shop.storage.gc.max-files-per-run:10000}") int maxFilesPerRun) {
+        this.storageService = storageService;
+        this.contentStorage = contentStorage;
+        this.userRepository = userRepository;
+        this.imageRepository = imageRepository;
+        this.enabled = enabled;
+        this.quarantine = quarantine;
+        this.minAge = minAge;
+        this.retention = retention;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.maxFilesPerRun = maxFilesPerRun;
+        this.executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("media-gc-"));
+        this.orphanedFiles = Counter.builder(METRIC_PREFIX + ".orphans")
+                .description("Orphaned media files, that have been quarantined or deleted")
+                .register(meterRegistry);
+        this.reclaimedBytes = Counter.builder(METRIC_PREFIX + ".reclaimed")
+                .description("Bytes freed by deleting orphaned or expired quarantined media files")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts a run on the executor of the collector, so the throttled run never blocks the shared scheduler threads.
+     */
+    @Scheduled(initialDelayString = "${shop.storage.gc.initial-delay:PT10M}", fixedDelayString = "${shop.storage.gc.interval:PT6H}")
+    public void scheduledCollect() {
+        if (enabled) {
+            start();
+        }
+    }
+
+    /**
+     * Starts a run in background, unless one is running already.
+     *
+     * @return Report of the started (or already running) run
+     */
+    public MediaGcReport start() {
+        if (running.compareAndSet(false, true)) {
+            Run run = new Run();
+            current = run;
+            executor.execute(() -> execute(run));
+        }
+        return getReport();
+    }
+
+    /**
+     * @return Report of the running or last run, or <code>null</code> if there hasn't been any run yet
+     */
+    public MediaGcReport getReport() {
+        Run run = current;
+        return (run != null) ? run.report() : null;
+    }
+
+    /**
+     * Runs the collector on the calling thread, unless it is running already.
+     *
+     * @return Report of this run, or of the run, that is running already
+     */
+    public MediaGcReport collect() {
+        if (!running.compareAndSet(false, true)) {
+            return getReport();
+        }
+        Run run = new Run();
+        current = run;
+        return execute(run);
+    }
+
+    private MediaGcReport execute(Run run) {
+        try {
+            run.execute();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Media garbage collection has been interrupted");
+        } catch (IOException | RuntimeException exc) {
+            run.failures++;
+            LOGGER.error("Media garbage collection failed", exc);
+        } finally {
+            run.finishedAt = Instant.now();
+            running.set(false);
+        }
+        MediaGcReport report = run.report();
+        LOGGER.info("Media garbage collection: {} orphaned user directories, {} orphaned files ({} bytes), {} bytes reclaimed, {} dangling images, {} failures",
+                report.orphanedUserDirectories(), report.orphanedFiles(), report.orphanedBytes(), report.reclaimedBytes(), report.danglingImages(), report.failures());
+        return report;
+    }
+
+    /**
+     * State of a single run
+     */
+    private class Run {
+
+        private final Instant startedAt = Instant.now();
+        private final Instant cutoff = startedAt.minus(minAge);
+        private final Path root = storageService.getRootLocation();
+        private final Path quarantineDirectory = root.resolve(StorageService.QUARANTINE_DIRECTORY).resolve(RUN_NAME.format(startedAt));
+        private final long startNanos = System.nanoTime();
+        private final List<String> danglingLocations = new ArrayList<>();
+        private long budgetUsed;
+        private volatile Instant finishedAt;
+        private volatile long orphanedUserDirectories;
+        private volatile long orphanedFiles;
+        private volatile long orphanedBytes;
+        private volatile long reclaimedBytes;
+        private volatile long danglingImages;
+        private volatile long failures;
+
+        MediaGcReport report() {
+            List<String> locations;
+            synchronized (danglingLocations) {
+                locations = List.copyOf(danglingLocations);
+            }
+            return new MediaGcReport(quarantine, startedAt, finishedAt, orphanedUserDirectories, orphanedFiles, orphanedBytes,
+                    reclaimedBytes, danglingImages, locations, failures);
+        }
+
+        void execute() throws IOException, InterruptedException {
+            if (!Files.isDirectory(root)) {
+                return;
+            }
+            purgeQuarantine();
+            Set<String> locations = new HashSet<>();
+            for (String location : imageRepository.findAllLocations()) {
+                locations.add(normalize(location));
+            }
+            collectUsers();
+            for (String username : storageService.listUserDirectories()) {
+                collectDerivatives(storageService.userDirectory(username), MediaLayout.MAX_LEVELS + 2, locations);
+            }
+            if (storageService.isContentAddressed()) {
+                collectBlobs();
+                // Derivatives of blobs are generated next to them: blobs/ab/cd/derivatives/...
+                collectDerivatives(root.resolve(ContentAddressedStorage.BLOB_DIRECTORY), 4, locations);
+            }
+            findDanglingImages(locations);
+        }
+
+        /**
+         * Directories &amp; blob references of users, that don't exist anymore
+         */
+        private void collectUsers() throws IOException, InterruptedException {
+            Set<String> usernames = new HashSet<>(storageService.listUserDirectories());
+            if (storageService.isContentAddressed()) {
+                usernames.addAll(contentStorage.usernames());
+            }
+            for (String username : usernames) {
+                if (isExhausted()) {
+                    return;
+                }
+                throttle(0);
+                if (userRepository.existsUserByUsername(username)) {
+                    continue;
+                }
+                Path directory = storageService.userDirectory(username);
+                if (Files.isDirectory(directory)) {
+                    if (!isOldEnough(directory)) {
+                        // Might belong to a user, that is created right now
+                        continue;
+                    }
+                    collectDirectory(directory);
+                    orphanedUserDirectories++;
+                }
+                storageService.forget(username);
+            }
+        }
+
+        private void collectDirectory(Path directory) throws IOException, InterruptedException {
+            List<Path> files;
+            try (Stream<Path> paths = Files.walk(directory)) {
+                files = paths.filter(Files::isRegularFile).toList();
+            }
+            if (quarantine) {
+                // A single rename moves the entire directory
+                long bytes = 0;
+                for (Path file : files) {
+                    throttle(0);
+                    bytes += sizeOf(file);
+                }
+                try {
+                    Path target = quarantineDirectory.resolve(root.relativize(directory));
+                    Files.createDirectories(target.getParent());
+                    Files.move(directory, target);
+                    orphaned(files.size(), bytes);
+                } catch (IOException exc) {
+                    failures++;
+                    LOGGER.warn("Couldn't quarantine directory: {}", directory, exc);
+                }
+            } else {
+                for (Path file : files) {
+                    collectFile(file, sizeOf(file));
+                }
+                deleteEmptyDirectories(directory);
+            }
+        }
+
+        /**
+         * Derivatives inside given directory, that have no image row
+         */
+        private void collectDerivatives(Path directory, int depth, Set<String> locations) throws IOException, InterruptedException {
+            if (!Files.isDirectory(directory)) {
+                return;
+            }
+            List<Path> candidates;
+            try (Stream<Path> paths = Files.walk(directory, depth)) {
+                candidates = paths.filter(path -> ImageDerivativeService.DERIVATIVE_DIRECTORY.equals(fileNameOf(path.getParent())))
+                        .filter(Files::isRegularFile)
+                        .toList();
+            }
+            for (Path file : candidates) {
+                if (isExhausted()) {
+                    return;
+                }
+                throttle(0);
+                if (!locations.contains(normalize(root.relativize(file).toString())) && isOldEnough(file)) {
+                    collectFile(file, sizeOf(file));
+                }
+            }
+        }
+
+        /**
+         * Blobs without row, e.g. after a crash between writing &amp; registering, and left over temporary files
+         */
+        private void collectBlobs() throws IOException, InterruptedException {
+            Path directory = root.resolve(ContentAddressedStorage.BLOB_DIRECTORY);
+            if (!Files.isDirectory(directory)) {
+                return;
+            }
+            List<Path> candidates;
+            try (Stream<Path> paths = Files.walk(directory, 3)) {
+                candidates = paths.filter(Files::isRegularFile).toList();
+            }
+            for (Path file : candidates) {
+                if (isExhausted()) {
+                    return;
+                }
+                throttle(0);
+                String name = file.getFileName().toString();
+                if (ContentAddressedStorage.isContentHash(name) && contentStorage.isReferenced(name)) {
+                    continue;
+                }
+                if (isOldEnough(file)) {
+                    collectFile(file, sizeOf(file));
+                }
+            }
+        }
+
+        private void findDanglingImages(Set<String> locations) throws InterruptedException {
+            for (String location : locations) {
+                throttle(0);
+                if (!Files.exists(root.resolve(location))) {
+                    danglingImages++;
+                    synchronized (danglingLocations) {
+                        if (danglingLocations.size() < MAX_DANGLING_LOCATIONS) {
+                            danglingLocations.add(location);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void collectFile(Path file, long size) throws InterruptedException {
+            throttle(size);
+            try {
+                if (quarantine) {
+                    Path target = quarantineDirectory.resolve(root.relativize(file));
+                    Files.createDirectories(target.getParent());
+                    Files.move(file, target);
+                } else {
+                    Files.delete(file);
+                    reclaimed(size);
+                }
+                orphaned(1, size);
+                storageService.invalidate(file);
+            } catch (NoSuchFileException exc) {
+                // Deleted in between
+            } catch (IOException exc) {
+                failures++;
+                LOGGER.warn("Couldn't collect orphaned file: {}", file, exc);
+            }
+        }
+
+        /**
+         * Deletes quarantined runs, whose retention period is over
+         */
+        private void purgeQuarantine() throws IOException, InterruptedException {
+            Path directory = root.resolve(StorageService.QUARANTINE_DIRECTORY);
+            if (!Files.isDirectory(directory)) {
+                return;
+            }
+            Instant expiry = startedAt.minus(retention);
+            List<Path> expiredRuns;
+            try (Stream<Path> runs = Files.list(directory)) {
+                expiredRuns = runs.filter(run -> lastModified(run).isBefore(expiry)).toList();
+            }
+            for (Path run : expiredRuns) {
+                List<Path> files;
+                try (Stream<Path> paths = Files.walk(run)) {
+                    files = paths.filter(Files::isRegularFile).toList();
+                }
+                for (Path file : files) {
+                    long size = sizeOf(file);
+                    throttle(size);
+                    try {
+                        Files.deleteIfExists(file);
+                        reclaimed(size);
+                    } catch (IOException exc) {
+                        failures++;
+                        LOGGER.warn("Couldn't purge quarantined file: {}", file, exc);
+                    }
+                }
+                deleteEmptyDirectories(run);
+            }
+        }
+
+        private void deleteEmptyDirectories(Path directory) throws IOException {
+            List<Path> directories;
+            try (Stream<Path> paths = Files.walk(directory)) {
+                directories = paths.filter(Files::isDirectory).sorted(Comparator.reverseOrder()).toList();
+            }
+            for (Path empty : directories) {
+                try {
+                    Files.deleteIfExists(empty);
+                } catch (IOException exc) {
+                    // Not empty, e.g. a file couldn't be deleted
+                    LOGGER.debug("Couldn't delete directory: {}", empty, exc);
+                }
+            }
+        }
+
+        private void orphaned(long files, long bytes) {
+            orphanedFiles += files;
+            orphanedBytes += bytes;
+            MediaGarbageCollectionService.this.orphanedFiles.increment(files);
+        }
+
+        private void reclaimed(long bytes) {
+            reclaimedBytes += bytes;
+            MediaGarbageCollectionService.this.reclaimedBytes.increment(bytes);
+        }
+
+        private boolean isExhausted() {
+            return maxFilesPerRun > 0 && orphanedFiles >= maxFilesPerRun;
+        }
+
+        private boolean isOldEnough(Path path) {
+            return lastModified(path).isBefore(cutoff);
+        }
+
+        /**
+         * Charges given amount of bytes to the IO budget &amp; sleeps, if the run is ahead of the budget
+         */
+        private void throttle(long bytes) throws InterruptedException {
+            if (maxBytesPerSecond <= 0) {
+                return;
+            }
+            budgetUsed += Math.max(bytes, MIN_OPERATION_BYTES);
+            long dueNanos = (long) ((double) budgetUsed / maxBytesPerSecond * TimeUnit.SECONDS.toNanos(1));
+            long aheadNanos = dueNanos - (System.nanoTime() - startNanos);
+            if (aheadNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(aheadNanos);
+            }
+        }
+    }
+
+    /**
+     * Image locations are stored with forward slashes &amp; sometimes with a leading one
+     */
+    private static String normalize(String location) {
+        String normalized = location.replace('\\', '/');
+        return normalized.startsWith("/") ? normalized.substring(1) : normalized;
+    }
+
+    private static String fileNameOf(Path path) {
+        return (path != null && path.getFileName() != null) ? path.getFileName().toString() : null;
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException exc) {
+            return 0;
+        }
+    }
+
+    private static Instant lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toInstant();
+        } catch (IOException exc) {
+            // Deleted in between, therefore never old enough
+            return Instant.MAX;
+        }
+    }
+}
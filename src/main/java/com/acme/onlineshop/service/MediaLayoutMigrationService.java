@@ -0,0 +1,169 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.LayoutMigrationStatus;
+import com.acme.onlineshop.exception.StorageException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * <p>Moves the files of all users into the on-disk layout configured by <code>shop.storage.shard-levels</code>, while
+ * the shop keeps running.</p>
+ * <p>Users are migrated one after another on a single background thread. After every batch of moved files, the
+ * migration pauses for a moment, so it doesn't starve uploads &amp; downloads of disk bandwidth. Every file stays
+ * readable through both layouts during the whole migration (see {@link StorageService#relocate(String, Path)}).
+ * Derivatives stay where they have been generated, since their locations are stored in the database.</p>
+ */
+@Service
+public class MediaLayoutMigrationService {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(MediaLayoutMigrationService.class);
+
+    private final static String METRIC_PREFIX = "shop.storage.layout.migration";
+
+    private final StorageService storageService;
+    private final int batchSize;
+    private final Duration pause;
+    private final ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final AtomicLong migratedUsers = new AtomicLong();
+    private final AtomicLong checkedFiles = new AtomicLong();
+    private final AtomicLong movedFiles = new AtomicLong();
+    private final AtomicLong failedFiles = new AtomicLong();
+    private final Counter moved;
+    private final Counter failed;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+
+    @Autowired
+    public MediaLayoutMigrationService(StorageService storageService, MeterRegistry meterRegistry,
+                                       @Value("${shop.storage.layout-migration.batch-size:500}") int batchSize,
+                                       @Value("${shop.storage.layout-migration.pause:PT0.1S}") Duration pause) {
+        this.storageService = storageService;
+        this.batchSize = Math.max(1, batchSize);
+        this.pause = pause;
+        this.executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("media-layout-migration-"));
+        this.moved = Counter.builder(METRIC_PREFIX + ".files").tag("result", "moved").register(meterRegistry);
+        this.failed = Counter.builder(METRIC_PREFIX + ".files").tag("result", "failed").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cancelled.set(true);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts the migration in background, unless it is running already.
+     *
+     * @return Status right after start
+     * @throws StorageException In content addressed mode, since blobs are sharded anyway
+     */
+    public LayoutMigrationStatus start() {
+        if (storageService.isContentAddressed()) {
+            throw new StorageException("Content addressed storage is sharded already, there is nothing to migrate.");
+        }
+        if (running.compareAndSet(false, true)) {
+            cancelled.set(false);
+            migratedUsers.set(0);
+            checkedFiles.set(0);
+            movedFiles.set(0);
+            failedFiles.set(0);
+            startedAt = Instant.now();
+            finishedAt = null;
+            executor.execute(this::migrate);
+        }
+        return getStatus();
+    }
+
+    /**
+     * Stops a running migration after the current file. Files, that have been moved already, stay where they are.
+     * A later migration continues with the remaining files.
+     *
+     * @return Current status
+     */
+    public LayoutMigrationStatus cancel() {
+        cancelled.set(true);
+        return getStatus();
+    }
+
+    public LayoutMigrationStatus getStatus() {
+        return new LayoutMigrationStatus(running.get(), storageService.getShardLevels(), migratedUsers.get(), checkedFiles.get(),
+                movedFiles.get(), failedFiles.get(), startedAt, finishedAt);
+    }
+
+    /**
+     * Migrates the directories of all users on the calling thread
+     */
+    void migrate() {
+        LOGGER.info("Start migration of media files into layout with {} shard levels", storageService.getShardLevels());
+        try {
+            List<String> usernames = storageService.listUserDirectories();
+            for (String username : usernames) {
+                if (cancelled.get()) {
+                    break;
+                }
+                migrate(username);
+                migratedUsers.incrementAndGet();
+            }
+        } catch (IOException exc) {
+            LOGGER.error("Couldn't list user directories for layout migration", exc);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        } finally {
+            finishedAt = Instant.now();
+            running.set(false);
+            LOGGER.info("{} migration of media files: moved {} of {} files, {} failed", cancelled.get() ? "Cancelled" : "Finished",
+                    movedFiles.get(), checkedFiles.get(), failedFiles.get());
+        }
+    }
+
+    private void migrate(String username) throws InterruptedException {
+        List<Path> files;
+        try (Stream<Path> paths = storageService.files(username)) {
+            files = paths.toList();
+        } catch (IOException exc) {
+            LOGGER.warn("Couldn't list files of user for layout migration: {}", username, exc);
+            return;
+        }
+        int movedInBatch = 0;
+        for (Path file : files) {
+            if (cancelled.get()) {
+                return;
+            }
+            checkedFiles.incrementAndGet();
+            try {
+                if (storageService.relocate(username, file)) {
+                    movedFiles.incrementAndGet();
+                    moved.increment();
+                    if (++movedInBatch >= batchSize) {
+                        movedInBatch = 0;
+                        Thread.sleep(pause.toMillis());
+                    }
+                }
+            } catch (IOException exc) {
+                failedFiles.incrementAndGet();
+                failed.increment();
+                LOGGER.warn("Couldn't move file into new layout: {}", file, exc);
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.MediaFilePage;
+import com.acme.onlineshop.persistence.media.MediaFile;
+import com.acme.onlineshop.persistence.media.MediaFileRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Database manifest of all stored media files (the {@link MediaFile} table).</p>
+ * <p>Every store &amp; delete updates the manifest, so listing the files of a user is an indexed query, no matter how
+ * many files the user has or how cold the file system metadata is. In content addressed mode, the
+ * {@link ContentAddressedStorage} maintains the very same table as its references.</p>
+ * <p>Listings are paginated by an opaque cursor instead of a page number: every page is a keyset query, that continues
+ * right after the <code>(sort property, username, name)</code> of the last file of the previous page, so later pages
+ * cost the same as the first one.</p>
+ */
+@Service
+public class MediaManifestService {
+
+    public final static int MAX_PAGE_SIZE = 200;
+
+    /**
+     * Sortable properties of a listing. Files with equal values are ordered by user &amp; name.
+     */
+    public enum SortField {
+        /**
+         * By user, then by name
+         */
+        NAME(null),
+        SIZE("sizeInBytes"),
+        UPLOADED("uploadedAt");
+
+        /**
+         * Property sorted by before user &amp; name, or <code>null</code> if there is none
+         */
+        public final String property;
+
+        SortField(String property) {
+            this.property = property;
+        }
+    }
+
+    private final MediaFileRepository fileRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public MediaManifestService(MediaFileRepository fileRepository, EntityManager entityManager, PlatformTransactionManager transactionManager) {
+        this.fileRepository = fileRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Adds given file to the manifest, or updates its entry
+     *
+     * @param username Owner of the file
+     * @param name File name
+     * @param sizeInBytes Size of the file
+     */
+    public void record(String username, String name, long sizeInBytes) {
+        transactionTemplate.executeWithoutResult(status -> {
+            MediaFile entry = fileRepository.findByUsernameAndName(username, name).orElseGet(() -> new MediaFile(username, name, null, 0, null));
+            entry.setSizeInBytes(sizeInBytes);
+            entry.setUploadedAt(Instant.now());
+            fileRepository.save(entry);
+        });
+    }
+
+    public void remove(String username) {
+        transactionTemplate.executeWithoutResult(status -> fileRepository.deleteAllInBatch(fileRepository.findAllByUsernameOrderByName(username)));
+    }
+
+    public void removeAll() {
+        transactionTemplate.executeWithoutResult(status -> fileRepository.deleteAllInBatch());
+    }
+
+    /**
+     * Returns the files of given user, or of all users, following given cursor.
+     *
+     * @param username Owner of the files, or <code>null</code> for the files of all users
+     * @param cursor Cursor of the previous page, or <code>null</code> for the first page
+     * @param size Amount of files per page, at most {@link #MAX_PAGE_SIZE}
+     * @param sortField Property to sort by
+     * @param direction Sort direction of the property, user &amp; name
+     * @return Requested page with the cursor of the next one
+     * @throws IllegalArgumentException If cursor is invalid, e.g. since it belongs to another sort property
+     */
+    public MediaFilePage list(String username, String cursor, int size, SortField sortField, Sort.Direction direction) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        Cursor position = (cursor == null || cursor.isBlank()) ? null : Cursor.decode(cursor);
+        String operator = direction.isAscending() ? ">" : "<";
+        String order = direction.isAscending() ? " ASC" : " DESC";
+        List<String> conditions = new ArrayList<>();
+        if (username != null) {
+            conditions.add("f.username = :username");
+        }
+        if (position != null) {
+            String after = "(f.username %1$s :afterUsername OR (f.username = :afterUsername AND f.name %1$s :afterName))".formatted(operator);
+            if (sortField.property != null) {
+                after = "(f.%2$s %1$s :afterValue OR (f.%2$s = :afterValue AND %3$s))".formatted(operator, sortField.property, after);
+            }
+            conditions.add(after);
+        }
+        String orderBy = ((sortField.property != null) ? "f." + sortField.property + order + ", " : "") + "f.username" + order + ", f.name" + order;
+        TypedQuery<MediaFile> query = entityManager.createQuery("SELECT f FROM MediaFile f"
+                + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions)) + " ORDER BY " + orderBy, MediaFile.class);
+        if (username != null) {
+            query.setParameter("username", username);
+        }
+        if (position != null) {
+            query.setParameter("afterUsername", position.username());
+            query.setParameter("afterName", position.name());
+            if (sortField.property != null) {
+                query.setParameter("afterValue", position.value(sortField));
+            }
+        }
+        List<MediaFile> files = query.setMaxResults(limit).getResultList();
+        String nextCursor = null;
+        if (files.size() == limit) {
+            nextCursor = Cursor.after(files.get(files.size() - 1), sortField).encode();
+        }
+        return new MediaFilePage(files, nextCursor);
+    }
+
+    public List<MediaFile> listAll(String username) {
+        return fileRepository.findAllByUsernameOrderByName(username);
+    }
+
+    public List<MediaFile> listAll() {
+        return fileRepository.findAllByOrderByUsernameAscNameAsc();
+    }
+
+    /**
+     * Aligns the manifest of given user with the files actually found on disk: missing files are added, vanished
+     * ones removed &amp; changed sizes corrected.
+     *
+     * @param username Owner of the files
+     * @param filesOnDisk Size of every file of the user by its name
+     * @return Amount of corrected entries
+     */
+    public int synchronize(String username, Map<String, Long> filesOnDisk) {
+        Integer corrections = transactionTemplate.execute(status -> {
+            Map<String, MediaFile> entries = fileRepository.findAllByUsernameOrderByName(username).stream()
+                    .collect(Collectors.toMap(MediaFile::getName, Function.identity()));
+            int corrected = 0;
+            for (MediaFile entry : entries.values()) {
+                if (!filesOnDisk.containsKey(entry.getName())) {
+                    fileRepository.delete(entry);
+                    corrected++;
+                }
+            }
+            for (Map.Entry<String, Long> file : filesOnDisk.entrySet()) {
+                MediaFile entry = entries.get(file.getKey());
+                if (entry == null) {
+                    fileRepository.save(new MediaFile(username, file.getKey(), null, file.getValue(), Instant.now()));
+                    corrected++;
+                } else if (entry.getSizeInBytes() != file.getValue()) {
+                    entry.setSizeInBytes(file.getValue());
+                    fileRepository.save(entry);
+                    corrected++;
+                }
+            }
+            return corrected;
+        });
+        return (corrections != null) ? corrections : 0;
+    }
+
+    /**
+     * Position right after the last file of a page
+     *
+     * @param value Sort property of the last file as text, empty if sorted by name
+     * @param username Owner of the last file
+     * @param name Name of the last file
+     */
+    record Cursor(String value, String username, String name) {
+
+        static Cursor after(MediaFile file, SortField sortField) {
+            String value = switch (sortField) {
+                case NAME -> "";
+                case SIZE -> Long.toString(file.getSizeInBytes());
+                case UPLOADED -> file.getUploadedAt().toString();
+            };
+            return new Cursor(value, file.getUsername(), file.getName());
+        }
+
+        Object value(SortField sortField) {
+            try {
+                return switch (sortField) {
+                    case NAME -> null;
+                    case SIZE -> Long.valueOf(value);
+                    case UPLOADED -> Instant.parse(value);
+                };
+            } catch (IllegalArgumentException | DateTimeParseException exc) {
+                throw new IllegalArgumentException("Cursor doesn't belong to a listing by " + sortField, exc);
+            }
+        }
+
+        /**
+         * Every part is encoded on its own, so names may contain any character
+         */
+        String encode() {
+            Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+            return encoder.encodeToString(value.getBytes(StandardCharsets.UTF_8)) + "." + encoder.encodeToString(username.getBytes(StandardCharsets.UTF_8))
+                    + "." + encoder.encodeToString(name.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            String[] parts = cursor.split("\\.", -1);
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            try {
+                Base64.Decoder decoder = Base64.getUrlDecoder();
+                return new Cursor(new String(decoder.decode(parts[0]), StandardCharsets.UTF_8), new String(decoder.decode(parts[1]), StandardCharsets.UTF_8),
+                        new String(decoder.decode(parts[2]), StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException exc) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor, exc);
+            }
+        }
+    }
+}
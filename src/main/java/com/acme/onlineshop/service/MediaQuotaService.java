@@ -0,0 +1,214 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.exception.StorageException;
+import com.acme.onlineshop.persistence.media.MediaUsage;
+import com.acme.onlineshop.persistence.media.MediaUsageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Keeps the {@link MediaUsage} ledger of every user &amp; enforces the configured storage quota.</p>
+ * <p>Every change of the media directory of a user is booked incrementally, so an upload is checked by a single
+ * primary key lookup. Checks &amp; bookings of a user (including reconciliation) are serialized by the lock the username
+ * belongs to. The upload itself is written outside the lock, so uploads of the same user can run in parallel: its size
+ * is reserved before &amp; released again, if writing fails.</p>
+ */
+@Service
+public class MediaQuotaService {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(MediaQuotaService.class);
+
+    private final static String METRIC_PREFIX = "shop.storage.quota";
+    private final static int LOCK_STRIPES = 64;
+
+    /**
+     * Storage occupied by a user
+     *
+     * @param usedBytes Total size of all files
+     * @param fileCount Amount of files
+     */
+    public record Usage(long usedBytes, long fileCount) { }
+
+    /**
+     * Action on the file system, which may fail
+     */
+    @FunctionalInterface
+    public interface StorageAction<T> {
+        T run() throws IOException;
+    }
+
+    private final MediaUsageRepository usageRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long maxBytesPerUser;
+    private final ReentrantLock[] locks;
+    private final Counter rejections;
+    private final Counter drifts;
+
+    @Autowired
+    public MediaQuotaService(MediaUsageRepository usageRepository, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                             @Value("${shop.storage.quota.max-bytes-per-user:0}") long maxBytesPerUser) {
+        this.usageRepository = usageRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxBytesPerUser = maxBytesPerUser;
+        this.locks = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.rejections = Counter.builder(METRIC_PREFIX + ".rejections")
+                .description("Uploads, that were rejected since they would exceed the quota")
+                .register(meterRegistry);
+        this.drifts = Counter.builder(METRIC_PREFIX + ".drifts")
+                .description("Ledger entries, that had to be corrected by reconciliation")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return Max. amount of bytes a user may store, or a value &lt;= 0 if unlimited
+     */
+    public long getMaxBytesPerUser() {
+        return maxBytesPerUser;
+    }
+
+    public Usage getUsage(String username) {
+        return usageRepository.findById(username)
+                .map(usage -> new Usage(usage.getUsedBytes(), usage.getFileCount()))
+                .orElse(new Usage(0, 0));
+    }
+
+    public List<String> getKnownUsernames() {
+        return usageRepository.findAll().stream().map(MediaUsage::getUsername).toList();
+    }
+
+    /**
+     * Checks the quota of given user, reserves the size of the file &amp; writes it.
+     *
+     * @param username Owner of the file
+     * @param incomingBytes Size of the new file
+     * @param replaced Returns the size of the file that is going to be overwritten, or empty if it's a new one. It's
+     *                 evaluated under the lock of the user.
+     * @param write Writes the file
+     * @return Result of write action
+     * @throws StorageException If the quota would be exceeded
+     * @throws IOException If write action fails, the reservation is released in this case
+     */
+    public <T> T store(String username, long incomingBytes, StorageAction<OptionalLong> replaced, StorageAction<T> write) throws IOException {
+        long deltaBytes;
+        long deltaFiles;
+        ReentrantLock lock = lockOf(username);
+        lock.lock();
+        try {
+            OptionalLong replacedBytes = replaced.run();
+            deltaBytes = incomingBytes - replacedBytes.orElse(0);
+            deltaFiles = replacedBytes.isPresent() ? 0 : 1;
+            if (maxBytesPerUser > 0 && deltaBytes > 0) {
+                long usedBytes = getUsage(username).usedBytes();
+                if (usedBytes + deltaBytes > maxBytesPerUser) {
+                    rejections.increment();
+                    throw new StorageException("Storage quota exceeded: %d of %d KB used, upload needs another %d KB."
+                            .formatted(usedBytes / 1024, maxBytesPerUser / 1024, (deltaBytes + 1023) / 1024));
+                }
+            }
+            book(username, deltaBytes, deltaFiles);
+        } finally {
+            lock.unlock();
+        }
+        try {
+            return write.run();
+        } catch (IOException | RuntimeException exc) {
+            lock.lock();
+            try {
+                book(username, -deltaBytes, -deltaFiles);
+            } finally {
+                lock.unlock();
+            }
+            throw exc;
+        }
+    }
+
+    /**
+     * Resets usage of given user, after all of its files have been deleted
+     *
+     * @param username Owner of the files
+     */
+    public void reset(String username) {
+        ReentrantLock lock = lockOf(username);
+        lock.lock();
+        try {
+            transactionTemplate.executeWithoutResult(status -> usageRepository.findById(username).ifPresent(usageRepository::delete));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void resetAll() {
+        transactionTemplate.executeWithoutResult(status -> usageRepository.deleteAllInBatch());
+    }
+
+    /**
+     * Removes ledger entries of deleted users
+     *
+     * @param usernames Names of deleted users
+     */
+    public void remove(Collection<String> usernames) {
+        transactionTemplate.executeWithoutResult(status -> usageRepository.deleteByUsernameIn(usernames));
+    }
+
+    /**
+     * Replaces the booked usage of given user with its actual usage.
+     *
+     * @param username Owner of the files
+     * @param scan Determines the actual usage, e.g. by listing the directory of the user
+     * @throws IOException If scan fails
+     */
+    public void reconcile(String username, StorageAction<Usage> scan) throws IOException {
+        ReentrantLock lock = lockOf(username);
+        lock.lock();
+        try {
+            Usage actual = scan.run();
+            transactionTemplate.executeWithoutResult(status -> {
+                MediaUsage usage = usageRepository.findById(username).orElseGet(() -> new MediaUsage(username, 0, 0));
+                if (usage.getUsedBytes() != actual.usedBytes() || usage.getFileCount() != actual.fileCount()) {
+                    drifts.increment();
+                    LOGGER.warn("Media usage of '{}' drifted: booked {} bytes in {} files, found {} bytes in {} files", username,
+                            usage.getUsedBytes(), usage.getFileCount(), actual.usedBytes(), actual.fileCount());
+                }
+                usage.setUsedBytes(actual.usedBytes());
+                usage.setFileCount(actual.fileCount());
+                usage.setReconciledAt(Instant.now());
+                usageRepository.save(usage);
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void book(String username, long deltaBytes, long deltaFiles) {
+        if (deltaBytes == 0 && deltaFiles == 0) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            MediaUsage usage = usageRepository.findById(username).orElseGet(() -> new MediaUsage(username, 0, 0));
+            usage.setUsedBytes(Math.max(0, usage.getUsedBytes() + deltaBytes));
+            usage.setFileCount(Math.max(0, usage.getFileCount() + deltaFiles));
+            usageRepository.save(usage);
+        });
+    }
+
+    private ReentrantLock lockOf(String username) {
+        return locks[Math.floorMod(username.hashCode(), LOCK_STRIPES)];
+    }
+}
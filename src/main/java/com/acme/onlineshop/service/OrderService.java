@@ -0,0 +1,363 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.BasketLine;
+import com.acme.onlineshop.dto.PlacedOrder;
+import com.acme.onlineshop.dto.StockReservation;
+import com.acme.onlineshop.persistence.order.CustomerOrder;
+import com.acme.onlineshop.persistence.order.CustomerOrderRepository;
+import com.acme.onlineshop.persistence.order.OrderLine;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <p>Places orders in a pipeline of 3 stages:</p>
+ * <ol>
+ *     <li><b>Validate:</b> On the thread of the request, without any database query. Every line is priced by the
+ *     {@link PriceService} &amp; its pieces are reserved by the {@link InventoryService}.</li>
+ *     <li><b>Queue:</b> Validated orders wait for the writer, at most the max. batch delay.</li>
+ *     <li><b>Commit:</b> A single writer thread commits all queued orders (up to the max. batch size) in one
+ *     transaction &amp; JDBC batch (group commit), together with the sales of their reservations. So the database
+ *     syncs once per batch instead of once per order, &amp; throughput grows with the amount of concurrent
+ *     checkouts.</li>
+ * </ol>
+ * <p>Every checkout carries an idempotency key, that is unique per owner. Retries of an owner with the same key get
+ * the result of the first attempt &amp; never place a second order: keys are tracked in memory for the idempotency
+ * window &amp; are unique per owner in the database, which is checked once per batch (e.g. for retries after a
+ * restart). A failed checkout releases its key, so it can be retried.</p>
+ * <p>If a batch can't be committed, its orders are committed one by one, so only the orders, that are broken
+ * themselves, fail.</p>
+ * <p>The latency of each stage is recorded as histogram (<code>shop.orders.stage</code>).</p>
+ */
+@Service
+public class OrderService {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(OrderService.class);
+    private final static String METRIC_PREFIX = "shop.orders";
+    public final static int MAX_KEY_LENGTH = 64;
+
+    private final PriceService priceService;
+    private final InventoryService inventoryService;
+    private final CustomerOrderRepository orderRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<PendingOrder> queue = new LinkedBlockingQueue<>();
+    private final Map<Checkout, Placement> placements = new ConcurrentHashMap<>();
+    private final ExecutorService writer;
+    private final int maxBatchSize;
+    private final long maxBatchDelayNanos;
+    private final Duration timeout;
+    private final long idempotencyWindowMillis;
+    private final Timer validateTimer;
+    private final Timer queueTimer;
+    private final Timer commitTimer;
+    private final Timer totalTimer;
+    private final DistributionSummary batchSizes;
+    private volatile boolean running = true;
+
+    /**
+     * Idempotency keys are chosen by the clients, so they are only unique per owner
+     */
+    private record Checkout(String owner, String idempotencyKey) {
+
+        static Checkout of(CustomerOrder order) {
+            return new Checkout(order.getOwner(), order.getIdempotencyKey());
+        }
+    }
+
+    /**
+     * Validated order, waiting to be committed
+     */
+    private record PendingOrder(CustomerOrder order, List<StockReservation> reservations, Placement placement, long queuedAt) {
+    }
+
+    /**
+     * Result of the checkout of an idempotency key
+     */
+    private static final class Placement {
+
+        private final CompletableFuture<PlacedOrder> result = new CompletableFuture<>();
+        private volatile long completedAt = Long.MAX_VALUE;
+    }
+
+    @Autowired
+    public OrderService(PriceService priceService, InventoryService inventoryService, CustomerOrderRepository orderRepository,
+                        PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                        @Value("${shop.orders.max-batch-size:200}") int maxBatchSize,
+                        @Value("${shop.orders.max-batch-delay:PT0.005S}") Duration maxBatchDelay,
+                        @Value("${shop.orders.timeout:PT10S}") Duration timeout,
+                        @Value("${shop.orders.idempotency-window:PT24H}") Duration idempotencyWindow) {
+        this.priceService = priceService;
+        this.inventoryService = inventoryService;
+        this.orderRepository = orderRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxBatchDelayNanos = maxBatchDelay.toNanos();
+        this.timeout = timeout;
+        this.idempotencyWindowMillis = idempotencyWindow.toMillis();
+        this.validateTimer = stageTimer("validate", meterRegistry);
+        this.queueTimer = stageTimer("queue", meterRegistry);
+        this.commitTimer = stageTimer("commit", meterRegistry);
+        this.totalTimer = stageTimer("total", meterRegistry);
+        this.batchSizes = DistributionSummary.builder(METRIC_PREFIX + ".batch.size")
+                .description("Orders committed together in one transaction")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".queued", queue, BlockingQueue::size)
+                .description("Validated orders waiting to be committed")
+                .register(meterRegistry);
+        this.writer = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("order-writer-"));
+        this.writer.execute(this::writeLoop);
+    }
+
+    private static Timer stageTimer(String stage, MeterRegistry meterRegistry) {
+        return Timer.builder(METRIC_PREFIX + ".stage")
+                .description("Latency of a stage of the order placement")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Places an order &amp; waits until it is committed.
+     *
+     * @param owner Session or user, that places the order
+     * @param idempotencyKey Key of this checkout, the same for all retries of the owner
+     * @param lines Ordered items
+     * @return Placed order, the same one for all calls of the owner with the same key
+     * @throws IllegalArgumentException If key or lines are invalid, or an item is unknown
+     * @throws IllegalStateException If an item is sold out, or the order couldn't be committed
+     */
+    public PlacedOrder place(String owner, String idempotencyKey, List<BasketLine> lines) {
+        if (idempotencyKey == null || idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency key must have 1-%d characters".formatted(MAX_KEY_LENGTH));
+        }
+        long start = System.nanoTime();
+        Placement placement = new Placement();
+        Checkout checkout = new Checkout(owner, idempotencyKey);
+        Placement existing = placements.putIfAbsent(checkout, placement);
+        if (existing != null) {
+            return await(existing);
+        }
+        placement.result.whenComplete((order, exc) -> placement.completedAt = System.currentTimeMillis());
+        try {
+            List<StockReservation> reservations = new ArrayList<>(lines.size());
+            CustomerOrder order = validate(owner, idempotencyKey, lines, reservations);
+            long validated = System.nanoTime();
+            validateTimer.record(validated - start, TimeUnit.NANOSECONDS);
+            if (!running) {
+                reservations.forEach(reservation -> inventoryService.cancel(reservation.id()));
+                throw new IllegalStateException("Orders are not accepted while shutting down");
+            }
+            queue.add(new PendingOrder(order, reservations, placement, validated));
+        } catch (RuntimeException exc) {
+            fail(checkout, placement, exc);
+            throw exc;
+        }
+        PlacedOrder placed = await(placement);
+        totalTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return placed;
+    }
+
+    /**
+     * Prices all lines &amp; reserves their pieces. Already made reservations are cancelled, if a line is invalid.
+     */
+    private CustomerOrder validate(String owner, String idempotencyKey, List<BasketLine> lines, List<StockReservation> reservations) {
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("Order has no items");
+        }
+        List<OrderLine> orderLines = new ArrayList<>(lines.size());
+        try {
+            for (BasketLine line : lines) {
+                if (line.quantity() <= 0) {
+                    throw new IllegalArgumentException("Quantity must be positive: " + line.quantity());
+                }
+                long price = priceService.getPrice(line.itemId());
+                if (price == PriceService.UNKNOWN) {
+                    throw new IllegalArgumentException("Unknown item: " + line.itemId());
+                }
+                StockReservation reservation = inventoryService.reserve(line.itemId(), line.quantity())
+                        .orElseThrow(() -> new IllegalStateException("Sold out: item " + line.itemId()));
+                reservations.add(reservation);
+                orderLines.add(new OrderLine(line.itemId(), line.quantity(), price));
+            }
+        } catch (RuntimeException exc) {
+            reservations.forEach(reservation -> inventoryService.cancel(reservation.id()));
+            throw exc;
+        }
+        return new CustomerOrder(idempotencyKey, owner, orderLines);
+    }
+
+    private PlacedOrder await(Placement placement) {
+        try {
+            return placement.result.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException exc) {
+            if (exc.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(exc.getCause());
+        } catch (TimeoutException exc) {
+            throw new IllegalStateException("Order is still being placed, retry with the same key");
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while placing order", exc);
+        }
+    }
+
+    /**
+     * Releases the key, so the checkout can be retried, &amp; reports the failure to all waiting retries
+     */
+    private void fail(Checkout checkout, Placement placement, RuntimeException exc) {
+        placements.remove(checkout, placement);
+        placement.result.completeExceptionally(exc);
+    }
+
+    private void writeLoop() {
+        List<PendingOrder> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (running || !queue.isEmpty()) {
+                PendingOrder first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Wait for more orders, but never longer than the max. batch delay after the first one
+                long deadline = System.nanoTime() + maxBatchDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingOrder next = (remaining > 0) ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+        // Orders, that haven't been committed
+        batch.addAll(queue);
+        for (PendingOrder pending : batch) {
+            pending.reservations().forEach(reservation -> inventoryService.cancel(reservation.id()));
+            fail(Checkout.of(pending.order()), pending.placement(), new IllegalStateException("Order has not been placed, since the shop is shutting down"));
+        }
+    }
+
+    private void commit(List<PendingOrder> batch) {
+        long start = System.nanoTime();
+        for (PendingOrder pending : batch) {
+            queueTimer.record(start - pending.queuedAt(), TimeUnit.NANOSECONDS);
+        }
+        batchSizes.record(batch.size());
+        // Claimed reservations can't expire anymore, until the sale is committed or given back
+        List<PendingOrder> claimed = new ArrayList<>(batch.size());
+        for (PendingOrder pending : batch) {
+            if (inventoryService.claim(pending.reservations())) {
+                claimed.add(pending);
+            } else {
+                fail(Checkout.of(pending.order()), pending.placement(), new IllegalStateException("Reservation has expired, please retry"));
+            }
+        }
+        if (claimed.isEmpty()) {
+            return;
+        }
+        try {
+            commitTogether(claimed);
+        } catch (RuntimeException exc) {
+            if (claimed.size() == 1) {
+                reject(claimed.get(0), exc);
+            } else {
+                // Usually a single order breaks the batch, so only that one should fail
+                LOGGER.warn("Couldn't commit %d orders together, committing them one by one".formatted(claimed.size()), exc);
+                for (PendingOrder pending : claimed) {
+                    try {
+                        commitTogether(List.of(pending));
+                    } catch (RuntimeException singleExc) {
+                        reject(pending, singleExc);
+                    }
+                }
+            }
+        }
+        commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Commits given orders &amp; the sales of their reservations in one transaction &amp; completes their checkouts
+     * afterwards. Nothing is completed, if the transaction fails.
+     */
+    private void commitTogether(List<PendingOrder> orders) {
+        Map<Checkout, CustomerOrder> placedBefore = new HashMap<>();
+        Map<Checkout, CustomerOrder> saved = new HashMap<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            // Keys, that have been placed before by the same owner (e.g. before a restart), are never placed again
+            orderRepository.findAllByIdempotencyKeyIn(orders.stream().map(pending -> pending.order().getIdempotencyKey()).toList())
+                    .forEach(order -> placedBefore.put(Checkout.of(order), order));
+            List<PendingOrder> placed = orders.stream().filter(pending -> !placedBefore.containsKey(Checkout.of(pending.order()))).toList();
+            // A retried order may have been given an ID by the failed attempt, so take the entity, that was saved
+            orderRepository.saveAll(placed.stream().map(PendingOrder::order).toList()).forEach(order -> saved.put(Checkout.of(order), order));
+            // Sales are journaled together with their orders, so a committed order is never missing in the stock
+            inventoryService.journalSales(placed.stream().flatMap(pending -> pending.reservations().stream()).toList());
+        });
+        for (PendingOrder pending : orders) {
+            Checkout checkout = Checkout.of(pending.order());
+            CustomerOrder order = placedBefore.get(checkout);
+            if (order != null) {
+                inventoryService.giveBack(pending.reservations());
+            } else {
+                order = saved.get(checkout);
+            }
+            pending.placement().result.complete(new PlacedOrder(order.getId(), order.getIdempotencyKey(), order.getTotal(), order.getCreatedAt()));
+        }
+    }
+
+    private void reject(PendingOrder pending, RuntimeException exc) {
+        LOGGER.error("Couldn't commit order {} of {}", pending.order().getIdempotencyKey(), pending.order().getOwner(), exc);
+        inventoryService.giveBack(pending.reservations());
+        fail(Checkout.of(pending.order()), pending.placement(), new IllegalStateException("Order couldn't be placed, please retry", exc));
+    }
+
+    /**
+     * Forgets the results of all checkouts, that have been completed before the idempotency window
+     */
+    @Scheduled(fixedDelayString = "${shop.orders.idempotency-cleanup-interval:PT1M}")
+    public void forgetExpiredKeys() {
+        long expiredBefore = System.currentTimeMillis() - idempotencyWindowMillis;
+        placements.values().removeIf(placement -> placement.completedAt < expiredBefore);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.shutdown();
+        if (!writer.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            writer.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.persistence.item.ItemRepository;
+import com.acme.onlineshop.utils.LongLongHashMap;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>Keeps the prices of all items in memory, so orders are priced without any database query.</p>
+ * <p>Prices are loaded once, when the application is ready, &amp; kept up to date by committed item changes (see
+ * {@link ItemChangeListener}). Changes during a reload are applied to both, the current &amp; the reloaded prices.</p>
+ */
+@Service
+public class PriceService implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final static String METRIC_PREFIX = "shop.catalog.prices";
+    /**
+     * Price of unknown items, real prices are never negative
+     */
+    public final static long UNKNOWN = -1;
+
+    private final ItemRepository itemRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private LongLongHashMap prices = new LongLongHashMap();
+    /**
+     * Prices, that are reloaded right now, or <code>null</code>
+     */
+    private LongLongHashMap reloading;
+
+    @Autowired
+    public PriceService(ItemRepository itemRepository, EntityManagerFactory entityManagerFactory, MeterRegistry meterRegistry) {
+        this.itemRepository = itemRepository;
+        ItemChangeListener.register(entityManagerFactory, new ItemChangeListener() {
+            @Override
+            protected void saved(long itemId, long categoryId, long subCategoryId, boolean hasThumbnail) {
+                // Only the price matters
+            }
+
+            @Override
+            protected void savedPrice(long itemId, long price) {
+                setPrice(itemId, price);
+            }
+
+            @Override
+            protected void deleted(long itemId) {
+                removePrice(itemId);
+            }
+        });
+        Gauge.builder(METRIC_PREFIX + ".items", this, PriceService::size)
+                .description("Amount of priced items in memory")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Loads all prices, when the application is fully loaded.
+     *
+     * @param readyEvent The "boot up is finished" event
+     * @see ApplicationReadyEvent
+     */
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent readyEvent) {
+        reload();
+    }
+
+    /**
+     * Reads all prices from the database &amp; replaces the current ones
+     */
+    public synchronized void reload() {
+        lock.writeLock().lock();
+        try {
+            reloading = new LongLongHashMap();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        List<Object[]> rows;
+        try {
+            rows = itemRepository.findAllPrices();
+        } catch (RuntimeException exc) {
+            lock.writeLock().lock();
+            try {
+                reloading = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw exc;
+        }
+        lock.writeLock().lock();
+        try {
+            LongLongHashMap reloaded = new LongLongHashMap(rows.size());
+            for (Object[] row : rows) {
+                reloaded.put(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+            }
+            // Changes, that were committed during the query
+            reloading.forEach((itemId, price) -> {
+                if (price == UNKNOWN) {
+                    reloaded.remove(itemId);
+                } else {
+                    reloaded.put(itemId, price);
+                }
+            });
+            prices = reloaded;
+            reloading = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Price of given item in cents, or {@link #UNKNOWN}
+     */
+    public long getPrice(long itemId) {
+        lock.readLock().lock();
+        try {
+            return prices.get(itemId, UNKNOWN);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return prices.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void setPrice(long itemId, long price) {
+        lock.writeLock().lock();
+        try {
+            prices.put(itemId, price);
+            if (reloading != null) {
+                reloading.put(itemId, price);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removePrice(long itemId) {
+        lock.writeLock().lock();
+        try {
+            prices.remove(itemId);
+            if (reloading != null) {
+                reloading.put(itemId, UNKNOWN);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.BasketLine;
+import com.acme.onlineshop.persistence.order.CustomerOrderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>"Frequently bought together": the items, that have been ordered (or put into a basket) together with an item most
+ * often.</p>
+ * <p>Pairs are counted incrementally in {@link CoOccurrenceCounts}: every refresh reads only the orders placed since
+ * the last one (by ascending order ID), in chunks, &amp; the items put into baskets meanwhile. Basket events are only
+ * queued by the request, a full queue drops them. When there are more pairs than allowed after a chunk or after the
+ * basket events, the rarest pairs are pruned.</p>
+ * <p>After each refresh, that has counted anything, the top neighbours of all items are taken into an immutable
+ * snapshot, so item pages read their recommendations without any lock or query.</p>
+ * <p>Memory: a pair takes ~16-27 bytes (16 bytes per slot at a load factor of up to 0.6), the snapshot 8 bytes per
+ * neighbour plus ~40 bytes per item. With the defaults (4 million pairs, 6 neighbours) &amp; a million items with
+ * recommendations that's ~135 MB for the pairs &amp; ~85 MB for the snapshot, plus ~135 MB temporarily, while the next
+ * snapshot is taken.</p>
+ */
+@Service
+public class RecommendationService implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(RecommendationService.class);
+    private final static String METRIC_PREFIX = "shop.recommendations";
+
+    private final CustomerOrderRepository orderRepository;
+    private final CoOccurrenceCounts counts = new CoOccurrenceCounts();
+    private final BlockingQueue<BasketAdd> basketAdds;
+    private final int top;
+    private final long minCount;
+    private final int maxPairs;
+    private final int chunkSize;
+    private final Counter dropped;
+    private final Counter pruned;
+    private final Timer snapshotTimer;
+    private volatile CoOccurrenceCounts.Neighbours neighbours = CoOccurrenceCounts.Neighbours.EMPTY;
+    private volatile int pairs;
+    /**
+     * ID of the last counted order
+     */
+    private long lastOrderId;
+
+    /**
+     * Item put into a basket, that already held the other items
+     */
+    private record BasketAdd(long itemId, long[] otherIds) {
+    }
+
+    @Autowired
+    public RecommendationService(CustomerOrderRepository orderRepository, MeterRegistry meterRegistry,
+                                 @Value("${shop.recommendations.top:6}") int top,
+                                 @Value("${shop.recommendations.min-count:2}") long minCount,
+                                 @Value("${shop.recommendations.max-pairs:4000000}") int maxPairs,
+                                 @Value("${shop.recommendations.queue-capacity:10000}") int queueCapacity,
+                                 @Value("${shop.recommendations.chunk-size:1000}") int chunkSize) {
+        this.orderRepository = orderRepository;
+        this.basketAdds = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.top = Math.max(1, top);
+        this.minCount = Math.max(1, minCount);
+        this.maxPairs = Math.max(1, maxPairs);
+        // A chunk must hold at least one complete order
+        this.chunkSize = Math.max(chunkSize, BasketService.MAX_LINES + 1);
+        this.dropped = Counter.builder(METRIC_PREFIX + ".dropped")
+                .description("Basket events, that were dropped, since the queue was full")
+                .register(meterRegistry);
+        this.pruned = Counter.builder(METRIC_PREFIX + ".pruned")
+                .description("Rare pairs, that were dropped to stay within the max. amount of pairs")
+                .register(meterRegistry);
+        this.snapshotTimer = Timer.builder(METRIC_PREFIX + ".snapshot")
+                .description("Time to take the top neighbours of all items")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".pairs", this, service -> service.pairs)
+                .description("Amount of counted pairs of items")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".items", this, service -> service.neighbours.size())
+                .description("Amount of items with recommendations")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts all orders, when the application is fully loaded.
+     *
+     * @param readyEvent The "boot up is finished" event
+     * @see ApplicationReadyEvent
+     */
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent readyEvent) {
+        refresh();
+    }
+
+    /**
+     * @return IDs of the items bought together with given item most often, best first
+     */
+    public long[] getFrequentlyBoughtWith(long itemId) {
+        return neighbours.get(itemId);
+    }
+
+    /**
+     * Queues an item, that has been added to a basket, to be counted with every other item of the basket
+     *
+     * @param basket All lines of the basket, incl. the added item
+     */
+    public void recordBasketAdd(long itemId, List<BasketLine> basket) {
+        long[] otherIds = basket.stream().mapToLong(BasketLine::itemId).filter(id -> id != itemId).toArray();
+        if (otherIds.length > 0 && !basketAdds.offer(new BasketAdd(itemId, otherIds))) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Counts all orders placed &amp; baskets changed since the last refresh, prunes rare pairs &amp; takes a new
+     * snapshot, if anything has been counted.
+     *
+     * @return Amount of counted orders &amp; basket events
+     */
+    @Scheduled(initialDelayString = "${shop.recommendations.refresh-interval:PT1M}", fixedDelayString = "${shop.recommendations.refresh-interval:PT1M}")
+    public synchronized int refresh() {
+        int counted = 0;
+        try {
+            counted += countNewOrders();
+        } catch (DataAccessException exc) {
+            LOGGER.error("Couldn't read new orders, retrying with next refresh", exc);
+        }
+        BasketAdd basketAdd;
+        while ((basketAdd = basketAdds.poll()) != null) {
+            counts.addWith(basketAdd.itemId(), basketAdd.otherIds());
+            counted++;
+        }
+        if (counted > 0) {
+            pruned.increment(counts.prune(maxPairs));
+            long start = System.nanoTime();
+            neighbours = counts.topNeighbours(top, minCount);
+            snapshotTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            pairs = counts.size();
+        }
+        return counted;
+    }
+
+    /**
+     * Orders are written by a single thread, so they are committed in the order of their IDs &amp; no order is
+     * skipped by reading from the last ID on.
+     *
+     * @return Amount of counted orders
+     */
+    private int countNewOrders() {
+        int orders = 0;
+        List<Object[]> rows;
+        do {
+            rows = orderRepository.findItemsOfOrdersAfter(lastOrderId, Pageable.ofSize(chunkSize));
+            int end = rows.size();
+            if (rows.size() == chunkSize) {
+                // The last order may continue in the next chunk
+                long lastId = orderId(rows.get(end - 1));
+                while (end > 0 && orderId(rows.get(end - 1)) == lastId) {
+                    end--;
+                }
+                if (end == 0) {
+                    end = rows.size();
+                }
+            }
+            int start = 0;
+            while (start < end) {
+                long orderId = orderId(rows.get(start));
+                int next = start;
+                while (next < end && orderId(rows.get(next)) == orderId) {
+                    next++;
+                }
+                long[] itemIds = new long[next - start];
+                for (int i = start; i < next; i++) {
+                    itemIds[i - start] = ((Number) rows.get(i)[1]).longValue();
+                }
+                counts.addTogether(itemIds);
+                lastOrderId = orderId;
+                orders++;
+                start = next;
+            }
+            // Pruned per chunk, so even counting the whole history (e.g. after a restart) stays within the max. pairs
+            pruned.increment(counts.prune(maxPairs));
+        } while (rows.size() == chunkSize);
+        return orders;
+    }
+
+    private static long orderId(Object[] row) {
+        return ((Number) row[0]).longValue();
+    }
+}
@@ -0,0 +1,563 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.SearchHit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>In-memory inverted index over the names &amp; descriptions of all categories, ranked by BM25.</p>
+ * <p>Items have no texts of their own, so only categories are documents. Items are merely counted per category, so
+ * every hit carries the amount of items in its category. Every term maps to a sorted array of document numbers &amp;
+ * term frequencies, so a query touches only the postings of its own terms. The last query term also matches as prefix
+ * (search as you type). Names count twice as much as descriptions.</p>
+ * <p>Categories &amp; items are updated one by one, without any database access. The whole index can be written to
+ * &amp; read from a binary snapshot.</p>
+ * <p>Thread-safe: queries share a read lock, updates take the write lock.</p>
+ */
+public final class SearchIndex {
+
+    private final static int MAGIC = 0x53524348;
+    private final static int FORMAT_VERSION = 2;
+    private final static double K1 = 1.2;
+    private final static double B = 0.75;
+    private final static int NAME_BOOST = 2;
+    /**
+     * Weight of terms, that only start with the last query term, compared to the term itself
+     */
+    private final static double PREFIX_WEIGHT = 0.5;
+    private final static int MAX_PREFIX_TERMS = 64;
+    /**
+     * Removed documents leave holes in the document numbers, which are closed once there are more holes than documents
+     */
+    private final static int MIN_HOLES_TO_COMPACT = 1024;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final List<Document> documents = new ArrayList<>();
+    private final Map<Long, Integer> categories = new HashMap<>();
+    private final Map<Long, ItemCategories> items = new HashMap<>();
+    private final Map<Long, Integer> itemCounts = new HashMap<>();
+    private long totalLength;
+    private long modifications;
+
+    //------------------------------------------------------ Query -----------------------------------------------------
+
+    /**
+     * Finds the most relevant categories. Any query term may match, categories matching more (&amp; rarer) terms rank
+     * higher.
+     *
+     * @param query Free text
+     * @param limit Max. amount of hits
+     * @return Hits ordered by descending relevance, empty if nothing matches
+     */
+    public List<SearchHit> search(String query, int limit) {
+        List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            int live = categories.size();
+            if (live == 0) {
+                return List.of();
+            }
+            double averageLength = Math.max(1.0, (double) totalLength / live);
+            float[] scores = new float[documents.size()];
+            for (int i = 0; i < queryTerms.size(); i++) {
+                String term = queryTerms.get(i);
+                Postings exact = terms.get(term);
+                if (exact != null) {
+                    score(exact, 1.0, live, averageLength, scores);
+                }
+                if (i == queryTerms.size() - 1) {
+                    int expanded = 0;
+                    for (Postings postings : terms.subMap(term, false, term + Character.MAX_VALUE, false).values()) {
+                        if (expanded++ == MAX_PREFIX_TERMS) {
+                            break;
+                        }
+                        score(postings, PREFIX_WEIGHT, live, averageLength, scores);
+                    }
+                }
+            }
+            PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1, Comparator.comparingDouble(documentNumber -> scores[documentNumber]));
+            for (int documentNumber = 0; documentNumber < scores.length; documentNumber++) {
+                if (scores[documentNumber] > 0 && (best.size() < limit || scores[documentNumber] > scores[best.peek()])) {
+                    best.add(documentNumber);
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+            }
+            SearchHit[] hits = new SearchHit[best.size()];
+            for (int i = hits.length - 1; i >= 0; i--) {
+                int documentNumber = best.poll();
+                Document document = documents.get(documentNumber);
+                hits[i] = new SearchHit(document.id, document.title, document.description, document.link, itemCounts.getOrDefault(document.id, 0),
+                        scores[documentNumber]);
+            }
+            return List.of(hits);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void score(Postings postings, double weight, int live, double averageLength, float[] scores) {
+        double idf = Math.log(1 + (live - postings.size + 0.5) / (postings.size + 0.5));
+        for (int i = 0; i < postings.size; i++) {
+            int documentNumber = postings.documents[i];
+            int frequency = postings.frequencies[i];
+            double norm = K1 * (1 - B + B * documents.get(documentNumber).length / averageLength);
+            scores[documentNumber] += (float) (weight * idf * frequency * (K1 + 1) / (frequency + norm));
+        }
+    }
+
+    //----------------------------------------------------- Updates ----------------------------------------------------
+
+    /**
+     * Adds or replaces a category.
+     *
+     * @param id ID of the category
+     * @param mainCategoryId ID of the main category, or 0 if this is a main category itself
+     * @param name Name of the category
+     * @param description Description of the category
+     * @param link Page of the category
+     */
+    public void putCategory(long id, long mainCategoryId, String name, String description, String link) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = categories.get(id);
+            if (existing != null) {
+                Document document = documents.get(existing);
+                if (document.mainCategoryId == mainCategoryId && document.title.equals(name) && document.description.equals(description) && document.link.equals(link)) {
+                    return;
+                }
+                remove(existing);
+            }
+            Map<String, Integer> frequencies = new HashMap<>();
+            int length = analyze(name, description, frequencies);
+            categories.put(id, add(new Document(id, name, description, link, mainCategoryId, length, frequencies.keySet().toArray(String[]::new)), frequencies));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a category. Its items are still counted, in case it is added again.
+     *
+     * @param id ID of the category
+     */
+    public void removeCategory(long id) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = categories.remove(id);
+            if (existing != null) {
+                remove(existing);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds or moves an item, which is counted in its categories.
+     *
+     * @param id ID of the item
+     * @param categoryId ID of its main category
+     * @param subCategoryId ID of its sub-category, or 0 if it has none
+     */
+    public void putItem(long id, long categoryId, long subCategoryId) {
+        lock.writeLock().lock();
+        try {
+            ItemCategories added = new ItemCategories(categoryId, subCategoryId);
+            ItemCategories existing = items.put(id, added);
+            if (added.equals(existing)) {
+                return;
+            }
+            if (existing != null) {
+                count(existing, -1);
+            }
+            count(added, 1);
+            modifications++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param id ID of the item
+     */
+    public void removeItem(long id) {
+        lock.writeLock().lock();
+        try {
+            ItemCategories existing = items.remove(id);
+            if (existing != null) {
+                count(existing, -1);
+                modifications++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void count(ItemCategories itemCategories, int delta) {
+        for (long categoryId : new long[] {itemCategories.categoryId, itemCategories.subCategoryId}) {
+            if (categoryId != 0) {
+                // Dropped at 0, so categories without items take no memory
+                itemCounts.merge(categoryId, delta, (count, added) -> (count + added != 0) ? count + added : null);
+            }
+        }
+    }
+
+    private int analyze(String name, String description, Map<String, Integer> frequencies) {
+        int length = 0;
+        for (String term : tokenize(name)) {
+            frequencies.merge(term, NAME_BOOST, Integer::sum);
+            length += NAME_BOOST;
+        }
+        for (String term : tokenize(description)) {
+            frequencies.merge(term, 1, Integer::sum);
+            length++;
+        }
+        return length;
+    }
+
+    private int add(Document document, Map<String, Integer> frequencies) {
+        int documentNumber = documents.size();
+        documents.add(document);
+        // New document numbers are always the highest, so postings stay sorted by appending
+        frequencies.forEach((term, frequency) -> terms.computeIfAbsent(term, key -> new Postings()).add(documentNumber, frequency));
+        totalLength += document.length;
+        modifications++;
+        return documentNumber;
+    }
+
+    private void remove(int documentNumber) {
+        Document document = documents.set(documentNumber, null);
+        for (String term : document.terms) {
+            Postings postings = terms.get(term);
+            postings.remove(documentNumber);
+            if (postings.size == 0) {
+                terms.remove(term);
+            }
+        }
+        totalLength -= document.length;
+        modifications++;
+        int holes = documents.size() - categories.size();
+        if (holes > MIN_HOLES_TO_COMPACT && holes > documents.size() / 2) {
+            compact();
+        }
+    }
+
+    /**
+     * Renumbers all documents without holes. Mapping is monotonic, so all postings stay sorted.
+     */
+    private void compact() {
+        int[] renumbered = new int[documents.size()];
+        List<Document> remaining = new ArrayList<>(categories.size());
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            if (document != null) {
+                renumbered[i] = remaining.size();
+                remaining.add(document);
+            }
+        }
+        for (Postings postings : terms.values()) {
+            for (int i = 0; i < postings.size; i++) {
+                postings.documents[i] = renumbered[postings.documents[i]];
+            }
+        }
+        documents.clear();
+        documents.addAll(remaining);
+        categories.clear();
+        for (int i = 0; i < documents.size(); i++) {
+            categories.put(documents.get(i).id, i);
+        }
+    }
+
+    //----------------------------------------------------- Status -----------------------------------------------------
+
+    public int getCategoryCount() {
+        lock.readLock().lock();
+        try {
+            return categories.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getItemCount() {
+        lock.readLock().lock();
+        try {
+            return items.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param categoryId ID of a main or sub-category
+     * @return Amount of indexed items of this category
+     */
+    public int getItemCount(long categoryId) {
+        lock.readLock().lock();
+        try {
+            return itemCounts.getOrDefault(categoryId, 0);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Highest indexed item ID, or 0 if there is none
+     */
+    public long getMaxItemId() {
+        lock.readLock().lock();
+        try {
+            return items.keySet().stream().mapToLong(Long::longValue).max().orElse(0);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return IDs of all indexed categories
+     */
+    public Set<Long> getCategoryIds() {
+        lock.readLock().lock();
+        try {
+            return new HashSet<>(categories.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return terms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Incremented by every change of a document, e.g. to find out, whether a snapshot is outdated
+     */
+    public long getModifications() {
+        lock.readLock().lock();
+        try {
+            return modifications;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //---------------------------------------------------- Snapshot ----------------------------------------------------
+
+    /**
+     * Writes all documents, postings &amp; items, so {@link #readFrom(InputStream)} restores the index without analyzing any
+     * text again.
+     *
+     * @param outputStream Target of the snapshot, not closed by this method
+     * @throws IOException If snapshot couldn't be written
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        lock.writeLock().lock();
+        try {
+            compact();
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(documents.size());
+            for (Document document : documents) {
+                output.writeLong(document.id);
+                writeString(output, document.title);
+                writeString(output, document.description);
+                writeString(output, document.link);
+                output.writeLong(document.mainCategoryId);
+                output.writeInt(document.length);
+            }
+            output.writeInt(terms.size());
+            for (Map.Entry<String, Postings> entry : terms.entrySet()) {
+                Postings postings = entry.getValue();
+                writeString(output, entry.getKey());
+                output.writeInt(postings.size);
+                for (int i = 0; i < postings.size; i++) {
+                    output.writeInt(postings.documents[i]);
+                    output.writeInt(postings.frequencies[i]);
+                }
+            }
+            output.writeInt(items.size());
+            for (Map.Entry<Long, ItemCategories> entry : items.entrySet()) {
+                output.writeLong(entry.getKey());
+                output.writeLong(entry.getValue().categoryId);
+                output.writeLong(entry.getValue().subCategoryId);
+            }
+            output.flush();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Restores an index from a snapshot of {@link #writeTo(OutputStream)}.
+     *
+     * @param inputStream Source of the snapshot, not closed by this method
+     * @return Restored index
+     * @throws IOException If snapshot couldn't be read or has an unknown format
+     */
+    public static SearchIndex readFrom(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream));
+        if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unknown format of search index snapshot");
+        }
+        SearchIndex index = new SearchIndex();
+        int documentCount = input.readInt();
+        List<List<String>> documentTerms = new ArrayList<>(documentCount);
+        List<Document> documents = new ArrayList<>(documentCount);
+        for (int i = 0; i < documentCount; i++) {
+            documents.add(new Document(input.readLong(), readString(input), readString(input), readString(input), input.readLong(), input.readInt(), null));
+            documentTerms.add(new ArrayList<>());
+        }
+        int termCount = input.readInt();
+        for (int i = 0; i < termCount; i++) {
+            String term = readString(input);
+            Postings postings = new Postings();
+            int size = input.readInt();
+            for (int j = 0; j < size; j++) {
+                int documentNumber = input.readInt();
+                postings.add(documentNumber, input.readInt());
+                documentTerms.get(documentNumber).add(term);
+            }
+            index.terms.put(term, postings);
+        }
+        for (int i = 0; i < documentCount; i++) {
+            Document read = documents.get(i);
+            Document document = new Document(read.id, read.title, read.description, read.link, read.mainCategoryId, read.length,
+                    documentTerms.get(i).toArray(String[]::new));
+            index.documents.add(document);
+            index.totalLength += document.length;
+            index.categories.put(document.id, i);
+        }
+        int itemCount = input.readInt();
+        for (int i = 0; i < itemCount; i++) {
+            long id = input.readLong();
+            ItemCategories itemCategories = new ItemCategories(input.readLong(), input.readLong());
+            index.items.put(id, itemCategories);
+            index.count(itemCategories, 1);
+        }
+        return index;
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //---------------------------------------------------- Analysis ----------------------------------------------------
+
+    /**
+     * Splits text into lower case terms of letters &amp; digits, without accents (e.g. "Café au lait" becomes "cafe",
+     * "au" &amp; "lait").
+     *
+     * @param text Any text, may be <code>null</code>
+     * @return Terms in order of appearance
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < decomposed.length(); ) {
+            int codePoint = decomposed.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.getType(codePoint) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(codePoint)) {
+                token.appendCodePoint(Character.toLowerCase(codePoint));
+            } else if (!token.isEmpty()) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (!token.isEmpty()) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * @param mainCategoryId Main category of a sub-category (0 for main categories)
+     * @param length Amount of (boosted) terms
+     * @param terms Distinct terms, to remove the document from their postings
+     */
+    private record Document(long id, String title, String description, String link, long mainCategoryId, int length, String[] terms) {
+    }
+
+    /**
+     * @param categoryId Main category of an item
+     * @param subCategoryId Sub-category of an item (0 if none)
+     */
+    private record ItemCategories(long categoryId, long subCategoryId) {
+    }
+
+    /**
+     * Document numbers in ascending order with the frequency of the term in each document
+     */
+    private static final class Postings {
+
+        private int[] documents = new int[4];
+        private int[] frequencies = new int[4];
+        private int size;
+
+        private void add(int documentNumber, int frequency) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            documents[size] = documentNumber;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        private void remove(int documentNumber) {
+            int index = Arrays.binarySearch(documents, 0, size, documentNumber);
+            if (index >= 0) {
+                System.arraycopy(documents, index + 1, documents, index, size - index - 1);
+                System.arraycopy(frequencies, index + 1, frequencies, index, size - index - 1);
+                size--;
+            }
+        }
+    }
+}
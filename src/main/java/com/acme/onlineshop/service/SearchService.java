@@ -0,0 +1,285 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.SearchHit;
+import com.acme.onlineshop.persistence.item.ItemRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * <p>Full-text search over the catalog, answered entirely from an in-memory {@link SearchIndex}.</p>
+ * <p>The index is built once at startup, either from the snapshot file of the last shutdown or from the database.
+ * Afterwards it follows all changes without rebuilding:</p>
+ * <ul>
+ *     <li>Items are updated by an {@link ItemChangeListener}, after their transaction has been committed</li>
+ *     <li>Categories are synchronized with the {@link CategoryTree}, whenever its version has changed</li>
+ * </ul>
+ * <p>The snapshot file is written periodically (if the index has changed) &amp; on shutdown.</p>
+ */
+@Service
+public class SearchService implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(SearchService.class);
+
+    private final static String METRIC_PREFIX = "shop.search";
+    private final static int BUILD_BATCH_SIZE = 1000;
+
+    private final ItemRepository itemRepository;
+    private final ItemService itemService;
+    private final CategoryService categoryService;
+    private final Path snapshotFile;
+    private final int maxResults;
+    private final Timer queryTimer;
+    private volatile SearchIndex index = new SearchIndex();
+    private volatile long categoryTreeVersion;
+    private final AtomicLong modifications = new AtomicLong();
+    /**
+     * Changes, that happen while a new index is built. They are applied to the new index as well, before it replaces
+     * the current one. <code>null</code> if no index is built.
+     */
+    private List<Consumer<SearchIndex>> pendingChanges;
+    private SearchIndex snapshotIndex;
+    private long snapshotModifications;
+
+    @Autowired
+    public SearchService(ItemRepository itemRepository, ItemService itemService, CategoryService categoryService,
+                         EntityManagerFactory entityManagerFactory, MeterRegistry meterRegistry,
+                         @Value("${shop.search.snapshot-file:search/index.bin}") String snapshotFile,
+                         @Value("${shop.search.max-results:50}") int maxResults) {
+        this.itemRepository = itemRepository;
+        this.itemService = itemService;
+        this.categoryService = categoryService;
+        this.snapshotFile = snapshotFile.isBlank() ? null : Path.of(snapshotFile).toAbsolutePath();
+        this.maxResults = maxResults;
+        ItemChangeListener.register(entityManagerFactory, new ItemChangeListener() {
+            @Override
+            protected void saved(long itemId, long categoryId, long subCategoryId, boolean hasThumbnail) {
+                apply(target -> target.putItem(itemId, categoryId, subCategoryId));
+            }
+
+            @Override
+            protected void deleted(long itemId) {
+                apply(target -> target.removeItem(itemId));
+            }
+        });
+        this.queryTimer = Timer.builder(METRIC_PREFIX + ".query")
+                .description("Time to answer a search query")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".documents", this, service -> service.index.getCategoryCount())
+                .description("Amount of indexed categories")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".terms", this, service -> service.index.getTermCount())
+                .description("Amount of distinct terms in the search index")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Builds the index, when the application is fully loaded, so all default categories &amp; items are included.
+     *
+     * @param readyEvent The "boot up is finished" event
+     * @see ApplicationReadyEvent
+     */
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent readyEvent) {
+        load();
+    }
+
+    /**
+     * Restores the index from its snapshot file. If there is none or if it doesn't match the items in the database,
+     * the index is rebuilt from the database instead.
+     */
+    public void load() {
+        long start = System.nanoTime();
+        beginBuild();
+        SearchIndex restored = readSnapshot();
+        boolean current;
+        try {
+            current = restored != null && restored.getItemCount() == itemRepository.count() && restored.getMaxItemId() == itemRepository.findMaxId();
+        } catch (RuntimeException exc) {
+            abortBuild();
+            throw exc;
+        }
+        if (current) {
+            replace(restored);
+            LOGGER.info("Search index restored from snapshot with {} items in {} ms", restored.getItemCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } else {
+            rebuild();
+        }
+    }
+
+    /**
+     * Builds a new index from the database &amp; replaces the current one. Searches are answered by the current index
+     * in the meantime.
+     */
+    public void rebuild() {
+        long start = System.nanoTime();
+        beginBuild();
+        SearchIndex built = new SearchIndex();
+        try {
+            putCategories(built, categoryService.getTree());
+            itemService.forEachTile(BUILD_BATCH_SIZE, tile -> built.putItem(tile.id(), tile.categoryId(), (tile.subCategoryId() != null) ? tile.subCategoryId() : 0));
+        } catch (RuntimeException exc) {
+            abortBuild();
+            throw exc;
+        }
+        replace(built);
+        LOGGER.info("Search index built from database with {} items in {} ms", built.getItemCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private synchronized void beginBuild() {
+        if (pendingChanges == null) {
+            pendingChanges = new ArrayList<>();
+        }
+    }
+
+    private synchronized void abortBuild() {
+        pendingChanges = null;
+    }
+
+    private synchronized void replace(SearchIndex replacement) {
+        if (pendingChanges != null) {
+            pendingChanges.forEach(change -> change.accept(replacement));
+            pendingChanges = null;
+        }
+        index = replacement;
+        modifications.incrementAndGet();
+        categoryTreeVersion = 0;
+        synchronizeCategories();
+    }
+
+    /**
+     * Applies a change to the current index &amp; to the one, which is built right now (if any)
+     */
+    private synchronized void apply(Consumer<SearchIndex> change) {
+        change.accept(index);
+        modifications.incrementAndGet();
+        if (pendingChanges != null) {
+            pendingChanges.add(change);
+        }
+    }
+
+    private void synchronizeCategories() {
+        CategoryTree tree = categoryService.getTree();
+        if (tree.getVersion() == categoryTreeVersion) {
+            return;
+        }
+        apply(target -> putCategories(target, tree));
+        categoryTreeVersion = tree.getVersion();
+    }
+
+    /**
+     * Adds or updates all categories of given tree &amp; removes the ones, that don't exist anymore. Unchanged
+     * categories are skipped.
+     */
+    private static void putCategories(SearchIndex target, CategoryTree tree) {
+        Set<Long> removed = target.getCategoryIds();
+        for (CategoryTree.Node mainCategory : tree.getMainCategories()) {
+            target.putCategory(mainCategory.getId(), 0, mainCategory.getName(), mainCategory.getDescription(), mainCategory.getLink());
+            removed.remove(mainCategory.getId());
+            for (CategoryTree.Node subCategory : mainCategory.getSubCategories()) {
+                target.putCategory(subCategory.getId(), mainCategory.getId(), subCategory.getName(), subCategory.getDescription(), subCategory.getLink());
+                removed.remove(subCategory.getId());
+            }
+        }
+        removed.forEach(target::removeCategory);
+    }
+
+    /**
+     * Finds the most relevant categories without any database access.
+     *
+     * @param query Free text, the last word also matches as prefix
+     * @return Hits ordered by descending relevance, at most <code>shop.search.max-results</code>
+     * @see SearchIndex#search(String, int)
+     */
+    public List<SearchHit> search(String query) {
+        long start = System.nanoTime();
+        try {
+            synchronizeCategories();
+            return index.search(query, maxResults);
+        } finally {
+            queryTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @param categoryId ID of a main or sub-category
+     * @return Amount of items of this category, without database access
+     */
+    public int countItems(long categoryId) {
+        return index.getItemCount(categoryId);
+    }
+
+    /**
+     * @return Changes whenever any category or item has been changed, e.g. to find out, whether derived data is outdated
+     */
+    public long getModifications() {
+        return modifications.get();
+    }
+
+    //---------------------------------------------------- Snapshot ----------------------------------------------------
+
+    private SearchIndex readSnapshot() {
+        if (snapshotFile == null) {
+            return null;
+        }
+        try (InputStream inputStream = Files.newInputStream(snapshotFile)) {
+            return SearchIndex.readFrom(inputStream);
+        } catch (NoSuchFileException exc) {
+            return null;
+        } catch (IOException | RuntimeException exc) {
+            LOGGER.warn("Couldn't read search index snapshot: {}", snapshotFile, exc);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the current index into the snapshot file, if it has changed since the last snapshot. The file is replaced
+     * atomically, so a crash never leaves a partial snapshot behind.
+     */
+    @PreDestroy
+    @Scheduled(initialDelayString = "${shop.search.snapshot-interval:PT5M}", fixedDelayString = "${shop.search.snapshot-interval:PT5M}")
+    public synchronized void writeSnapshot() {
+        SearchIndex current = index;
+        if (snapshotFile == null || pendingChanges != null || (current == snapshotIndex && current.getModifications() == snapshotModifications)) {
+            return;
+        }
+        Path temporaryFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(snapshotFile.getParent());
+            long indexModifications = current.getModifications();
+            try (OutputStream outputStream = Files.newOutputStream(temporaryFile)) {
+                current.writeTo(outputStream);
+            }
+            Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            snapshotIndex = current;
+            snapshotModifications = indexModifications;
+        } catch (IOException exc) {
+            LOGGER.warn("Couldn't write search index snapshot: {}", snapshotFile, exc);
+        }
+    }
+}
@@ -1,31 +1,107 @@
 package com.acme.onlineshop.service;
 
+import com.acme.onlineshop.dto.MediaFilePage;
 import com.acme.onlineshop.exception.StorageException;
 import com.acme.onlineshop.exception.StorageFileNotFoundException;
+import com.acme.onlineshop.persistence.media.MediaFile;
 import com.acme.onlineshop.persistence.user.User;
+import com.acme.onlineshop.utils.MediaLayout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.util.FileSystemUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Stream;
 
 /**
- * Abstract parent class for uploading arbitrary files
+ * <p>Abstract parent class for uploading arbitrary files</p>
+ * <p>Files are either stored as they are in a directory per user: <code>&lt;root&gt;/&lt;username&gt;/&lt;filename&gt;</code>,
+ * or, if a {@link ContentAddressedStorage} is given, deduplicated by their content. Inside the user directory, files
+ * may be spread over hash-prefix directories (see {@link MediaLayout}). Files are found in every layout, so they stay
+ * readable while they are migrated by {@link #relocate(String, Path)}.</p>
+ * <p>If a {@link HotImageCache} is given, it is kept in sync with every write. If a {@link MediaQuotaService} is
+ * given, every upload is checked against the quota of its owner &amp; booked into the usage ledger. If a
+ * {@link MediaManifestService} is given, files are listed from the manifest instead of the file system.</p>
  */
 public abstract class StorageService {
 
+    private final static Logger LOGGER = LoggerFactory.getLogger(StorageService.class);
+
+    /**
+     * Directory inside the root directory, that holds the files set aside by the {@link MediaGarbageCollectionService}
+     */
+    public final static String QUARANTINE_DIRECTORY = ".quarantine";
+
+    private final static int LOCK_STRIPES = 64;
+
     protected Path rootLocation;
+    /**
+     * Content addressed store, or <code>null</code> if files are stored in plain user directories
+     */
+    protected ContentAddressedStorage contentStorage;
+    /**
+     * Cache of small file contents, or <code>null</code> if nothing is cached
+     */
+    protected HotImageCache cache;
+    /**
+     * Usage ledger &amp; quota, or <code>null</code> if storage is unlimited
+     */
+    protected MediaQuotaService quota;
+    /**
+     * Manifest of all stored files, or <code>null</code> if files are listed from the file system
+     */
+    protected MediaManifestService manifest;
+    /**
+     * Amount of hash-prefix directories inside a user directory, 0 for a flat layout
+     */
+    protected int shardLevels;
+    /**
+     * Serializes uploads of the same file name of a user, so the replaced file is determined &amp; booked only once
+     */
+    private final ReentrantLock[] nameLocks;
 
-    protected StorageService(Path rootLocation) {
+    protected StorageService(Path rootLocation, ContentAddressedStorage contentStorage, HotImageCache cache, MediaQuotaService quota, MediaManifestService manifest, int shardLevels) {
         this.rootLocation = rootLocation;
+        this.contentStorage = contentStorage;
+        this.cache = cache;
+        this.quota = quota;
+        this.manifest = manifest;
+        this.shardLevels = MediaLayout.checkLevels(shardLevels);
+        this.nameLocks = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            nameLocks[i] = new ReentrantLock();
+        }
+    }
+
+    protected StorageService(Path rootLocation) {
+        this(rootLocation, null, null, null, null, 0);
+    }
+
+    public boolean isContentAddressed() {
+        return contentStorage != null;
     }
 
     protected void validateFile(MultipartFile file) {
@@ -42,19 +118,52 @@ public abstract class StorageService {
         }
     }
 
-    public void store(MultipartFile file, User user) throws StorageException {
+    /**
+     * Stores given file inside the directory of given user.
+     *
+     * @param file Uploaded file
+     * @param user Owner of the file
+     * @return Location of stored file, relative to the root directory of this storage
+     * @throws StorageException If file is invalid or couldn't be written
+     */
+    public Path store(MultipartFile file, User user) throws StorageException {
         validateUser(user, false);
         validateFile(file);
         try {
-            if (file.getOriginalFilename() != null) {
-                Path destinationFile = this.rootLocation.resolve(Paths.get(user.getUsername(), file.getOriginalFilename())).normalize().toAbsolutePath();
+            if (file.getOriginalFilename() != null && isContentAddressed()) {
+                String name = file.getOriginalFilename();
+                checkFileName(name);
+                return withinQuota(user, name, file.getSize(), () -> contentStorage.sizeOf(user.getUsername(), name), () -> contentStorage.store(file, user.getUsername()));
+            } else if (file.getOriginalFilename() != null) {
+                String name = file.getOriginalFilename();
+                checkFileName(name);
+                Path destinationFile = userDirectory(user.getUsername()).resolve(MediaLayout.locate(name, shardLevels)).normalize().toAbsolutePath();
                 if (!destinationFile.startsWith(this.rootLocation)) {
                     // This is a security check
                     throw new StorageException("Cannot store file outside pre defined directory: " + rootLocation);
                 }
-                try (InputStream inputStream = file.getInputStream()) {
-                    Files.copy(inputStream, destinationFile, StandardCopyOption.REPLACE_EXISTING);
-                }
+                AtomicReference<Optional<Path>> existing = new AtomicReference<>(Optional.empty());
+                return withinQuota(user, name, file.getSize(), () -> {
+                    existing.set(find(user.getUsername(), name));
+                    return existing.get().isPresent() ? OptionalLong.of(Files.size(existing.get().get())) : OptionalLong.empty();
+                }, () -> {
+                    Files.createDirectories(destinationFile.getParent());
+                    try (InputStream inputStream = file.getInputStream()) {
+                        Files.copy(inputStream, destinationFile, StandardCopyOption.REPLACE_EXISTING);
+                    } finally {
+                        invalidate(destinationFile);
+                    }
+                    Optional<Path> replaced = existing.get();
+                    if (replaced.isPresent() && !replaced.get().equals(destinationFile)) {
+                        // Replaced file hasn't been migrated to the current layout yet
+                        Files.deleteIfExists(replaced.get());
+                        invalidate(replaced.get());
+                    }
+                    if (manifest != null) {
+                        manifest.record(user.getUsername(), name, file.getSize());
+                    }
+                    return this.rootLocation.relativize(destinationFile);
+                });
             } else {
                 throw new StorageException("File has no original file name: " + file);
             }
@@ -63,39 +172,339 @@ public abstract class StorageService {
         }
     }
 
+    /**
+     * Books &amp; writes an upload under the lock of its name, so concurrent uploads of the same new name can't both
+     * book it as an additional file.
+     */
+    private <T> T withinQuota(User user, String name, long incomingBytes, MediaQuotaService.StorageAction<OptionalLong> replaced, MediaQuotaService.StorageAction<T> write) throws IOException {
+        if (quota == null) {
+            return write.run();
+        }
+        ReentrantLock lock = nameLocks[Math.floorMod(Objects.hash(user.getUsername(), name), LOCK_STRIPES)];
+        lock.lock();
+        try {
+            return quota.store(user.getUsername(), incomingBytes, replaced, write);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * File names are used as part of a path later on, therefore they mustn't leave the directory of a user
+     */
+    private static void checkFileName(String fileName) {
+        Path name = Path.of(fileName).normalize();
+        if (name.getNameCount() != 1 || name.toString().equals("..") || name.isAbsolute()) {
+            throw new StorageException("Invalid file name: " + fileName);
+        }
+    }
+
     private void validateUser(User user, boolean download) {
         if(user == null) {
             throw new StorageException("Anonymous users are NOT allowed to upload/download any files.");
         }
-        //TODO: check if user has enough space for additional pictures. Lets say..., 1-2 MB ?!?
+        // Storage space is checked by the MediaQuotaService while storing, since it has to be serialized with the write
     }
 
+    /**
+     * Lists the files of all users
+     *
+     * @return Locations of all files, relative to the root directory, e.g. <code>&lt;username&gt;/&lt;filename&gt;</code>
+     */
     public Stream<Path> loadAll() {
+        if (manifest != null) {
+            return manifest.listAll().stream().map(StorageService::toPath);
+        } else if (isContentAddressed()) {
+            return contentStorage.loadAll().stream().map(StorageService::toPath);
+        }
         try {
-            return Files.walk(this.rootLocation, 2).filter(path -> path.toFile().isFile()).map(this.rootLocation::relativize);
+            return Files.walk(this.rootLocation, 2 + MediaLayout.MAX_LEVELS)
+                    .filter(path -> path.toFile().isFile())
+                    .map(this.rootLocation::relativize)
+                    .filter(path -> path.getNameCount() >= 2 && !isReserved(path.getName(0).toString()) && !isDerivative(path))
+                    .map(path -> Path.of(path.getName(0).toString(), path.getFileName().toString()));
         } catch (IOException exc) {
             throw new StorageException("Failed to read stored files", exc);
         }
     }
 
+    /**
+     * Lists the files of given user
+     *
+     * @param user Owner of the files
+     * @return Locations of the files, relative to the root directory, e.g. <code>&lt;username&gt;/&lt;filename&gt;</code>
+     */
     public Stream<Path> loadAll(User user) {
         if(user == null) {
             return Stream.empty();
+        } else if (manifest != null) {
+            return manifest.listAll(user.getUsername()).stream().map(StorageService::toPath);
+        } else if (isContentAddressed()) {
+            return contentStorage.loadAll(user.getUsername()).stream().map(StorageService::toPath);
         } else {
             try {
-                return Files.walk(Paths.get(this.rootLocation.toString(), user.getUsername()), 1).filter(path -> path.toFile().isFile()).map(this.rootLocation::relativize);
+                return files(user.getUsername()).map(file -> Path.of(user.getUsername(), file.getFileName().toString()));
             } catch (IOException exc) {
                 throw new StorageException("Failed to read stored files", exc);
             }
         }
     }
 
+    /**
+     * Lists one page of the files of given user, or of all users.
+     *
+     * @param user Owner of the files, or <code>null</code> for the files of all users
+     * @param cursor Cursor of the previous page, or <code>null</code> for the first page
+     * @param size Amount of files per page
+     * @param sortField Property to sort by
+     * @param direction Sort direction
+     * @return Requested page of manifest entries with the cursor of the next one
+     * @throws StorageException If there is no manifest
+     * @throws IllegalArgumentException If cursor is invalid
+     */
+    public MediaFilePage list(User user, String cursor, int size, MediaManifestService.SortField sortField, Sort.Direction direction) {
+        if (manifest == null) {
+            throw new StorageException("Paginated listing requires a media manifest");
+        }
+        return manifest.list((user != null) ? user.getUsername() : null, cursor, size, sortField, direction);
+    }
+
+    private static Path toPath(MediaFile entry) {
+        return Path.of(entry.getUsername(), entry.getName());
+    }
+
+    public int getShardLevels() {
+        return shardLevels;
+    }
+
+    public Path userDirectory(String username) {
+        return rootLocation.resolve(username);
+    }
+
+    /**
+     * @return Names of all users, that have a directory inside the root directory
+     * @throws IOException If root directory couldn't be listed
+     */
+    public List<String> listUserDirectories() throws IOException {
+        if (!Files.isDirectory(rootLocation)) {
+            return List.of();
+        }
+        try (Stream<Path> directories = Files.list(rootLocation)) {
+            return directories.filter(Files::isDirectory)
+                    .map(directory -> directory.getFileName().toString())
+                    .filter(name -> !isReserved(name))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Lists the original files inside the directory of given user, regardless of their layout. Derivatives are
+     * skipped.
+     *
+     * @param username Owner of the files
+     * @return Absolute locations of the files. Has to be closed by the caller.
+     * @throws IOException If directory couldn't be listed
+     */
+    public Stream<Path> files(String username) throws IOException {
+        Path directory = userDirectory(username);
+        if (!Files.isDirectory(directory)) {
+            return Stream.empty();
+        }
+        return Files.walk(directory, 1 + MediaLayout.MAX_LEVELS)
+                .filter(Files::isRegularFile)
+                .filter(file -> !isDerivative(directory.relativize(file)));
+    }
+
+    /**
+     * @return <code>TRUE</code> if given directory inside the root directory belongs to no user
+     */
+    private static boolean isReserved(String directoryName) {
+        return directoryName.equals(ContentAddressedStorage.BLOB_DIRECTORY) || directoryName.equals(QUARANTINE_DIRECTORY);
+    }
+
+    private static boolean isDerivative(Path relativeLocation) {
+        for (Path element : relativeLocation) {
+            if (element.toString().equals(ImageDerivativeService.DERIVATIVE_DIRECTORY)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Searches given file in every layout, starting with the current one.
+     *
+     * @return Absolute location of the file, or empty if there is no such file
+     */
+    private Optional<Path> find(String username, String name) {
+        Path directory = userDirectory(username);
+        // The second pass catches a file, that has been moved by the migration while it was searched
+        for (int pass = 0; pass < 2; pass++) {
+            for (Path candidate : MediaLayout.candidates(name, shardLevels)) {
+                Path file = directory.resolve(candidate);
+                if (Files.isRegularFile(file)) {
+                    return Optional.of(file);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Moves given file of given user to its location in the current layout. The file is readable during the whole
+     * move: it is linked to its new location first &amp; unlinked from its old location afterwards. If the new
+     * location is taken already (by an upload in between), the newer file wins.
+     *
+     * @param username Owner of the file
+     * @param file Absolute location of the file, as listed by {@link #files(String)}
+     * @return <code>TRUE</code> if file has been moved, <code>FALSE</code> if it is at the right location already
+     * @throws IOException If file couldn't be moved
+     */
+    public boolean relocate(String username, Path file) throws IOException {
+        Path target = userDirectory(username).resolve(MediaLayout.locate(file.getFileName().toString(), shardLevels));
+        if (target.equals(file)) {
+            return false;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.createLink(target, file);
+        } catch (FileAlreadyExistsException exc) {
+            LOGGER.debug("File has been replaced during migration, drop outdated copy: {}", file);
+        } catch (NoSuchFileException exc) {
+            // File has been replaced or deleted in between
+            return false;
+        } catch (UnsupportedOperationException | FileSystemException exc) {
+            // No hard links on this file system, fall back to a plain move, that never replaces an existing file
+            if (!Files.exists(target)) {
+                Files.move(file, target);
+            }
+        }
+        Files.deleteIfExists(file);
+        invalidate(file);
+        return true;
+    }
+
+    /**
+     * Determines the actual storage usage of given user, by listing its directory (or summing up its references in
+     * content addressed mode). Generated derivatives don't count. In plain mode, the manifest of the user is aligned
+     * with the listed files as well.
+     *
+     * @param username Owner of the files
+     * @return Actual usage
+     * @throws IOException If directory couldn't be listed
+     */
+    private MediaQuotaService.Usage scan(String username) throws IOException {
+        if (isContentAddressed()) {
+            return contentStorage.usage(username);
+        }
+        Map<String, Long> files = new HashMap<>();
+        try (Stream<Path> paths = files(username)) {
+            for (Path file : (Iterable<Path>) paths::iterator) {
+                // During a migration, a file may be listed twice for a moment
+                files.put(file.getFileName().toString(), Files.size(file));
+            }
+        }
+        if (manifest != null) {
+            int corrections = manifest.synchronize(username, files);
+            if (corrections > 0) {
+                LOGGER.info("Corrected {} manifest entries of user: {}", corrections, username);
+            }
+        }
+        return new MediaQuotaService.Usage(files.values().stream().mapToLong(Long::longValue).sum(), files.size());
+    }
+
+    /**
+     * Periodically corrects the manifest &amp; the usage ledger of every user against the actual files, e.g. after
+     * files have been changed outside of this application. The first run also fills the manifest of files, that have
+     * been stored before the manifest existed.
+     */
+    @Scheduled(initialDelayString = "${shop.storage.reconcile-initial-delay:PT1M}", fixedDelayString = "${shop.storage.reconcile-interval:PT1H}")
+    public void reconcile() {
+        boolean plainManifest = manifest != null && !isContentAddressed();
+        if (quota == null && !plainManifest) {
+            return;
+        }
+        Set<String> usernames = new TreeSet<>();
+        if (quota != null) {
+            usernames.addAll(quota.getKnownUsernames());
+        }
+        if (isContentAddressed()) {
+            usernames.addAll(contentStorage.usernames());
+        } else {
+            try {
+                usernames.addAll(listUserDirectories());
+            } catch (IOException exc) {
+                LOGGER.warn("Couldn't list user directories for reconciliation", exc);
+            }
+        }
+        for (String username : usernames) {
+            try {
+                if (quota != null) {
+                    quota.reconcile(username, () -> scan(username));
+                } else {
+                    scan(username);
+                }
+            } catch (IOException | RuntimeException exc) {
+                LOGGER.warn("Couldn't reconcile media of user: {}", username, exc);
+            }
+        }
+    }
+
+    public Path getRootLocation() {
+        return rootLocation;
+    }
+
+    /**
+     * Resolves given file name to its location on disk. Files of a user are searched in every layout.
+     *
+     * @param filename File name relative to the root directory, e.g. <code>&lt;username&gt;/&lt;filename&gt;</code>
+     * @return Absolute location of the file
+     * @throws StorageFileNotFoundException If file name points outside the root directory
+     */
     public Path load(String filename) {
-        return rootLocation.resolve(filename);
+        Path path = Path.of(filename);
+        if (isContentAddressed() && path.getNameCount() == 2) {
+            return rootLocation.resolve(contentStorage.load(path.getName(0).toString(), path.getName(1).toString()));
+        }
+        Path file = rootLocation.resolve(filename).normalize();
+        if (!file.startsWith(rootLocation.normalize())) {
+            // This is a security check
+            throw new StorageFileNotFoundException("Could not read file: " + filename);
+        }
+        if (path.getNameCount() == 2 && !isContentAddressed()) {
+            String username = path.getName(0).toString();
+            String name = path.getName(1).toString();
+            Path current = userDirectory(username).resolve(MediaLayout.locate(name, shardLevels)).normalize();
+            if (cache != null && cache.contains(current)) {
+                // Hot files are served without touching the file system
+                return current;
+            }
+            return find(username, name).orElse(current);
+        }
+        return file;
+    }
+
+    /**
+     * Returns the content hash of given file, if it is a blob of the {@link ContentAddressedStorage}.
+     *
+     * @param file Location returned by {@link #load(String)}
+     * @return Hash of the content as hexadecimal string, or empty if file is no blob
+     */
+    public Optional<String> contentHashOf(Path file) {
+        if (isContentAddressed() && file.startsWith(rootLocation.resolve(ContentAddressedStorage.BLOB_DIRECTORY))
+                && ContentAddressedStorage.isContentHash(file.getFileName().toString())) {
+            return Optional.of(file.getFileName().toString());
+        }
+        return Optional.empty();
     }
 
     public Resource loadAsResource(String filename) {
         Path file = load(filename);
+        HotImageCache.CachedImage cached = (cache != null) ? cache.get(file) : null;
+        if (cached != null) {
+            return cached.asResource(file.getFileName().toString());
+        }
         try {
             Resource resource = new UrlResource(file.toUri());
             if (resource.exists() || resource.isReadable()) {
@@ -108,12 +517,74 @@ public abstract class StorageService {
         }
     }
 
+    /**
+     * Drops cached content of given file, after it has been changed
+     *
+     * @param file Absolute location of the file
+     */
+    public void invalidate(Path file) {
+        if (cache != null) {
+            cache.invalidate(file);
+        }
+    }
+
     public void deleteAll() {
+        if (isContentAddressed()) {
+            contentStorage.deleteAll();
+        }
         FileSystemUtils.deleteRecursively(rootLocation.toFile());
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+        if (quota != null) {
+            quota.resetAll();
+        }
+        if (manifest != null && !isContentAddressed()) {
+            manifest.removeAll();
+        }
+    }
+
+    /**
+     * Drops everything this storage knows about given (deleted) user: references to blobs, manifest entries, usage
+     * ledger &amp; cached files. The directory of the user is left untouched.
+     *
+     * @param username Name of a user, that doesn't exist anymore
+     */
+    public void forget(String username) {
+        if (isContentAddressed()) {
+            contentStorage.deleteAll(username);
+        }
+        if (cache != null && isContentAddressed()) {
+            // Unreferenced blobs are gone as well
+            cache.invalidateAll();
+        } else if (cache != null) {
+            cache.invalidateAll(userDirectory(username));
+        }
+        if (quota != null) {
+            quota.remove(List.of(username));
+        }
+        if (manifest != null && !isContentAddressed()) {
+            manifest.remove(username);
+        }
     }
 
     public void deleteAll(User user) {
         validateUser(user, true);
-        FileSystemUtils.deleteRecursively(Paths.get(rootLocation.toString(), user.getUsername()).toFile());
+        if (isContentAddressed()) {
+            contentStorage.deleteAll(user.getUsername());
+        }
+        FileSystemUtils.deleteRecursively(userDirectory(user.getUsername()).toFile());
+        if (cache != null && isContentAddressed()) {
+            // Unreferenced blobs are gone as well
+            cache.invalidateAll();
+        } else if (cache != null) {
+            cache.invalidateAll(userDirectory(user.getUsername()));
+        }
+        if (quota != null) {
+            quota.reset(user.getUsername());
+        }
+        if (manifest != null && !isContentAddressed()) {
+            manifest.remove(user.getUsername());
+        }
     }
 }
@@ -0,0 +1,111 @@
+package com.acme.onlineshop.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Stock counter of a single item, that many threads can take pieces from at the same time.</p>
+ * <p>The stock is split into stripes, each an atomic counter on its own cache line. A thread takes pieces from "its"
+ * stripe with a single CAS &amp; only moves on to other stripes, if its own one runs out. So threads selling the same
+ * (hot) item hardly ever contend for the same counter &amp; reservations scale with the amount of cores, instead of
+ * serializing on a single counter or a database row lock.</p>
+ * <p>The total never drops below 0, so no piece is sold twice. While an item is nearly sold out, a request may fail,
+ * although another one is just giving back a few pieces.</p>
+ */
+public final class StripedStock {
+
+    /**
+     * Longs between two stripes: 8 * 8 bytes = one cache line, so stripes don't share cache lines (false sharing)
+     */
+    private final static int PADDING = 8;
+
+    private final AtomicLongArray cells;
+    private final int stripes;
+
+    /**
+     * @param stripes Amount of stripes, a power of 2. Costs 64 bytes per stripe.
+     */
+    public StripedStock(int stripes) {
+        if (stripes <= 0 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Stripes must be a power of 2: " + stripes);
+        }
+        this.stripes = stripes;
+        this.cells = new AtomicLongArray(stripes * PADDING);
+    }
+
+    /**
+     * @return Pieces in stock. Only a snapshot, while other threads take or add pieces.
+     */
+    public long available() {
+        long sum = 0;
+        for (int i = 0; i < stripes; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Adds pieces (e.g. after a delivery), spread evenly over all stripes
+     */
+    public void add(long amount) {
+        long share = amount / stripes;
+        long rest = amount % stripes;
+        for (int i = 0; i < stripes; i++) {
+            long stripeAmount = share + ((i < rest) ? 1 : 0);
+            if (stripeAmount != 0) {
+                cells.addAndGet(i * PADDING, stripeAmount);
+            }
+        }
+    }
+
+    /**
+     * Gives back pieces, that have been taken before (e.g. of an expired reservation), to the stripe of this thread
+     */
+    public void giveBack(long amount) {
+        cells.addAndGet(home() * PADDING, amount);
+    }
+
+    /**
+     * Takes given amount of pieces, either all or none of them.
+     *
+     * @param amount Positive amount of pieces
+     * @return TRUE if pieces have been taken, FALSE if there are not enough in stock
+     */
+    public boolean tryTake(long amount) {
+        int home = home();
+        // Fast path: whole amount from a single stripe, starting with the one of this thread
+        for (int i = 0; i < stripes; i++) {
+            int index = ((home + i) & (stripes - 1)) * PADDING;
+            long current;
+            while ((current = cells.get(index)) >= amount) {
+                if (cells.compareAndSet(index, current, current - amount)) {
+                    return true;
+                }
+            }
+        }
+        // Slow path: collect the amount from several stripes & give it back, if there isn't enough in total
+        long taken = 0;
+        for (int i = 0; i < stripes && taken < amount; i++) {
+            int index = ((home + i) & (stripes - 1)) * PADDING;
+            long current;
+            while ((current = cells.get(index)) > 0) {
+                long part = Math.min(current, amount - taken);
+                if (cells.compareAndSet(index, current, current - part)) {
+                    taken += part;
+                    break;
+                }
+            }
+        }
+        if (taken < amount) {
+            if (taken > 0) {
+                giveBack(taken);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private int home() {
+        long threadId = Thread.currentThread().getId();
+        return (int) ((threadId * 0x9E3779B97F4A7C15L) >>> 32) & (stripes - 1);
+    }
+}
@@ -34,11 +34,16 @@ public class UserService implements UserDetailsService {
     public final static String ANONYMOUS_USERNAME = "anonymousUser";
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final MediaQuotaService mediaQuotaService;
+    private final CategoryAffinityService categoryAffinityService;
 
     @Autowired
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, MediaQuotaService mediaQuotaService,
+                       CategoryAffinityService categoryAffinityService) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.mediaQuotaService = mediaQuotaService;
+        this.categoryAffinityService = categoryAffinityService;
     }
 
     /**
@@ -108,13 +113,18 @@ public class UserService implements UserDetailsService {
         if(user.getRole() == Role.ADMIN && userRepository.countByRole(Role.ADMIN) < 1) {
             throw new IllegalStateException("Cannot delete last admin user");
         }
-        userRepository.delete(user);
+        categoryAffinityService.remove(List.of(user.getUsername()));
+        // Deleted as loaded, so a stale profile reference of given (detached) user isn't merged back
+        userRepository.findById(user.getUserId()).ifPresent(userRepository::delete);
+        mediaQuotaService.remove(List.of(user.getUsername()));
     }
 
     @Transactional
     public void deleteUsers(List<String> usernames) {
         if(nbrOfAdminUsersIsValid(usernames)) {
+            categoryAffinityService.remove(usernames);
             userRepository.deleteByUsernameIn(usernames);
+            mediaQuotaService.remove(usernames);
         } else {
             throw new IllegalStateException("Cannot delete last admin users");
         }
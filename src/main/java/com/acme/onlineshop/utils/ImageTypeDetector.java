@@ -0,0 +1,110 @@
+package com.acme.onlineshop.utils;
+
+import org.apache.tika.Tika;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * <p>Detects the MIME type of uploaded image files, by only reading the leading "magic" bytes of a stream.</p>
+ * <p>Binary formats (BMP, JPEG, PNG) are recognized by their signatures directly. Everything else (e.g. SVG, which is
+ * plain XML) is ambiguous and handed over to the full Apache Tika detector. Tika itself also just reads the head of
+ * the stream, so the uploaded file is never copied onto the heap as a whole.</p>
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/List_of_file_signatures">Wikipedia - List of file signatures</a>
+ */
+public final class ImageTypeDetector {
+
+    public final static String BMP = "image/bmp";
+    public final static String JPEG = "image/jpeg";
+    public final static String PNG = "image/png";
+    public final static String SVG = "image/svg+xml";
+
+    /**
+     * Amount of leading bytes, that are necessary to identify any of the binary image formats
+     */
+    public final static int HEADER_SIZE = 32;
+
+    private final static byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private final static byte[] JPEG_SIGNATURE = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private final static byte[] BMP_SIGNATURE = {'B', 'M'};
+    private final static Set<Integer> BMP_BITS_PER_PIXEL = Set.of(0, 1, 4, 8, 16, 24, 32);
+
+    /**
+     * The {@link Tika} facade is thread safe, therefore one instance (and its loaded MIME type repository) is shared
+     * for the entire application.
+     */
+    private final static Tika TIKA = new Tika();
+
+    private ImageTypeDetector() { }
+
+    /**
+     * Result of a detection
+     *
+     * @param mimeType Detected MIME type
+     * @param fromHeader <code>TRUE</code> if the type was determined by the signature check only, <code>FALSE</code>
+     *                   if Apache Tika had to be consulted
+     */
+    public record Detection(String mimeType, boolean fromHeader) { }
+
+    /**
+     * Checks the leading bytes of given header for a known image signature.
+     *
+     * @param header Leading bytes of a file
+     * @param length Amount of valid bytes inside header
+     * @return MIME type of the image, or <code>null</code> if the header is ambiguous
+     */
+    public static String detectFromHeader(byte[] header, int length) {
+        if (startsWith(header, length, PNG_SIGNATURE)) {
+            return PNG;
+        } else if (startsWith(header, length, JPEG_SIGNATURE)) {
+            return JPEG;
+        } else if (isBitmap(header, length)) {
+            return BMP;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Detects MIME type of given stream. Only the header is read, as long as it holds a known signature. Otherwise, the
+     * full Apache Tika detector takes over. The caller is responsible for closing the stream.
+     *
+     * @param stream Stream of uploaded file
+     * @return Detected MIME type
+     * @throws IOException If stream couldn't be read
+     */
+    public static Detection detect(InputStream stream) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(stream);
+        buffered.mark(HEADER_SIZE);
+        byte[] header = new byte[HEADER_SIZE];
+        int length = buffered.readNBytes(header, 0, HEADER_SIZE);
+        String mimeType = detectFromHeader(header, length);
+        if (mimeType != null) {
+            return new Detection(mimeType, true);
+        } else {
+            buffered.reset();
+            return new Detection(TIKA.detect(buffered), false);
+        }
+    }
+
+    private static boolean startsWith(byte[] header, int length, byte[] signature) {
+        return length >= signature.length && Arrays.equals(header, 0, signature.length, signature, 0, signature.length);
+    }
+
+    /**
+     * Same rules as Tika's own "image/bmp" magic: "BM", one color plane &amp; a valid amount of bits per pixel
+     */
+    private static boolean isBitmap(byte[] header, int length) {
+        if (length < 30 || !startsWith(header, length, BMP_SIGNATURE)) {
+            return false;
+        } else {
+            int planes = (header[26] & 0xFF) | (header[27] & 0xFF) << 8;
+            int bitsPerPixel = (header[28] & 0xFF) | (header[29] & 0xFF) << 8;
+            return planes == 1 && BMP_BITS_PER_PIXEL.contains(bitsPerPixel);
+        }
+    }
+}
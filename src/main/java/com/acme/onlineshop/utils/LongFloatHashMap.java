@@ -0,0 +1,237 @@
+package com.acme.onlineshop.utils;
+
+import java.util.Arrays;
+
+/**
+ * <p>Hash map from <code>long</code> to <code>float</code> without boxing, the counterpart of {@link LongLongHashMap}
+ * for scores: keys &amp; values live in two plain arrays (open addressing with linear probing). Missing keys read as
+ * 0.</p>
+ * <p>Meant for many small maps, e.g. a few scores per user, where a {@link java.util.HashMap} would spend most of its
+ * memory on boxed keys, values &amp; entries. <b>Not</b> thread-safe.</p>
+ */
+public final class LongFloatHashMap {
+
+    private final static float LOAD_FACTOR = 0.6f;
+    /**
+     * Marks a free slot. The key 0 itself is stored separately
+     */
+    private final static long FREE = 0;
+
+    private long[] keys;
+    private float[] values;
+    private int size;
+    private int threshold;
+    private boolean hasZeroKey;
+    private float zeroValue;
+
+    public LongFloatHashMap() {
+        this(4);
+    }
+
+    /**
+     * @param expectedSize Amount of entries, that fit without resizing
+     */
+    public LongFloatHashMap(int expectedSize) {
+        allocate(Math.max(4, Integer.highestOneBit((int) Math.ceil(Math.max(1, expectedSize) / LOAD_FACTOR) - 1) << 1));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new float[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * @return Value of given key, or 0 if key is missing
+     */
+    public float get(long key) {
+        if (key == FREE) {
+            return hasZeroKey ? zeroValue : 0;
+        }
+        int slot = find(key);
+        return (slot >= 0) ? values[slot] : 0;
+    }
+
+    public boolean containsKey(long key) {
+        return (key == FREE) ? hasZeroKey : find(key) >= 0;
+    }
+
+    /**
+     * @return Previous value of given key, or 0 if key was missing
+     */
+    public float put(long key, float value) {
+        if (key == FREE) {
+            float previous = hasZeroKey ? zeroValue : 0;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return previous;
+        }
+        int slot = find(key);
+        if (slot >= 0) {
+            float previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        insert(-slot - 1, key, value);
+        return 0;
+    }
+
+    /**
+     * Adds given delta to the value of given key. Missing keys start at 0.
+     *
+     * @return New value of given key
+     */
+    public float addTo(long key, float delta) {
+        if (key == FREE) {
+            put(key, get(key) + delta);
+            return zeroValue;
+        }
+        int slot = find(key);
+        if (slot >= 0) {
+            return values[slot] += delta;
+        }
+        insert(-slot - 1, key, delta);
+        return delta;
+    }
+
+    /**
+     * Multiplies all values by given factor &amp; removes the entries, that drop below the minimum
+     *
+     * @param minValue Smallest value, that is kept
+     */
+    public void scale(float factor, float minValue) {
+        if (hasZeroKey) {
+            zeroValue *= factor;
+            if (zeroValue < minValue) {
+                remove(FREE);
+            }
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                values[i] *= factor;
+            }
+        }
+        for (int i = 0; i < keys.length; i++) {
+            // Removing shifts a later entry into this slot, so look at it again
+            while (keys[i] != FREE && values[i] < minValue) {
+                remove(keys[i]);
+            }
+        }
+    }
+
+    /**
+     * @return Removed value of given key, or 0 if key was missing
+     */
+    public float remove(long key) {
+        if (key == FREE) {
+            float previous = hasZeroKey ? zeroValue : 0;
+            if (hasZeroKey) {
+                hasZeroKey = false;
+                zeroValue = 0;
+                size--;
+            }
+            return previous;
+        }
+        int slot = find(key);
+        if (slot < 0) {
+            return 0;
+        }
+        float previous = values[slot];
+        // Shift following entries of the same probe sequence back, so no lookup stops at the freed slot
+        int mask = keys.length - 1;
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = slot(keys[next]);
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = FREE;
+        values[free] = 0;
+        size--;
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, 0);
+        hasZeroKey = false;
+        zeroValue = 0;
+        size = 0;
+    }
+
+    /**
+     * Calls given consumer for every entry, in no particular order. The map must not be changed meanwhile.
+     */
+    public void forEach(EntryConsumer consumer) {
+        if (hasZeroKey) {
+            consumer.accept(FREE, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * @return Slot of given key, or <code>-(free slot) - 1</code> if key is missing
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -slot - 1;
+    }
+
+    private int slot(long key) {
+        // Murmur3 finalizer, so sequential IDs spread over the whole table
+        long hash = key;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash & (keys.length - 1);
+    }
+
+    private void insert(int slot, long key, float value) {
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > threshold) {
+            long[] oldKeys = keys;
+            float[] oldValues = values;
+            allocate(keys.length * 2);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != FREE) {
+                    int newSlot = -find(oldKeys[i]) - 1;
+                    keys[newSlot] = oldKeys[i];
+                    values[newSlot] = oldValues[i];
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, float value);
+    }
+}
@@ -0,0 +1,243 @@
+package com.acme.onlineshop.utils;
+
+import java.util.Arrays;
+
+/**
+ * <p>Hash map from <code>long</code> to <code>long</code> without boxing: keys &amp; values live in two plain arrays
+ * (open addressing with linear probing). Missing keys read as a default value.</p>
+ * <p>Meant for large amounts of small entries, e.g. counters per ID, where a {@link java.util.HashMap} would spend
+ * most of its memory on {@link Long} objects &amp; entries. <b>Not</b> thread-safe.</p>
+ */
+public final class LongLongHashMap {
+
+    private final static float LOAD_FACTOR = 0.6f;
+    /**
+     * Marks a free slot. The key 0 itself is stored separately
+     */
+    private final static long FREE = 0;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+    private int threshold;
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    public LongLongHashMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize Amount of entries, that fit without resizing
+     */
+    public LongLongHashMap(int expectedSize) {
+        allocate(Math.max(4, Integer.highestOneBit((int) Math.ceil(Math.max(1, expectedSize) / LOAD_FACTOR) - 1) << 1));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * @return Value of given key, or <code>defaultValue</code> if key is missing
+     */
+    public long get(long key, long defaultValue) {
+        if (key == FREE) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int slot = find(key);
+        return (slot >= 0) ? values[slot] : defaultValue;
+    }
+
+    /**
+     * @return Value of given key, or 0 if key is missing
+     */
+    public long get(long key) {
+        return get(key, 0);
+    }
+
+    public boolean containsKey(long key) {
+        return (key == FREE) ? hasZeroKey : find(key) >= 0;
+    }
+
+    /**
+     * @return Previous value of given key, or 0 if key was missing
+     */
+    public long put(long key, long value) {
+        if (key == FREE) {
+            long previous = hasZeroKey ? zeroValue : 0;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return previous;
+        }
+        int slot = find(key);
+        if (slot >= 0) {
+            long previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        insert(-slot - 1, key, value);
+        return 0;
+    }
+
+    /**
+     * Adds given delta to the value of given key. Missing keys start at 0.
+     *
+     * @return New value of given key
+     */
+    public long addTo(long key, long delta) {
+        if (key == FREE) {
+            put(key, get(key) + delta);
+            return zeroValue;
+        }
+        int slot = find(key);
+        if (slot >= 0) {
+            return values[slot] += delta;
+        }
+        insert(-slot - 1, key, delta);
+        return delta;
+    }
+
+    /**
+     * @return Removed value of given key, or 0 if key was missing
+     */
+    public long remove(long key) {
+        if (key == FREE) {
+            long previous = hasZeroKey ? zeroValue : 0;
+            if (hasZeroKey) {
+                hasZeroKey = false;
+                zeroValue = 0;
+                size--;
+            }
+            return previous;
+        }
+        int slot = find(key);
+        if (slot < 0) {
+            return 0;
+        }
+        long previous = values[slot];
+        // Shift following entries of the same probe sequence back, so no lookup stops at the freed slot
+        int mask = keys.length - 1;
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = slot(keys[next]);
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = FREE;
+        values[free] = 0;
+        size--;
+        return previous;
+    }
+
+    /**
+     * Removes all entries, that match given predicate. The predicate may be called more than once for an entry, so it
+     * must only look at key &amp; value.
+     *
+     * @return Amount of removed entries
+     */
+    public int removeIf(EntryPredicate predicate) {
+        int before = size;
+        if (hasZeroKey && predicate.test(FREE, zeroValue)) {
+            remove(FREE);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            // Removing shifts a following entry into this slot, so look at it again
+            while (keys[i] != FREE && predicate.test(keys[i], values[i])) {
+                remove(keys[i]);
+            }
+        }
+        return before - size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, 0);
+        hasZeroKey = false;
+        zeroValue = 0;
+        size = 0;
+    }
+
+    /**
+     * Calls given consumer for every entry, in no particular order. The map must not be changed meanwhile.
+     */
+    public void forEach(EntryConsumer consumer) {
+        if (hasZeroKey) {
+            consumer.accept(FREE, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * @return Slot of given key, or <code>-(free slot) - 1</code> if key is missing
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -slot - 1;
+    }
+
+    private int slot(long key) {
+        // Murmur3 finalizer, so sequential IDs spread over the whole table
+        long hash = key;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash & (keys.length - 1);
+    }
+
+    private void insert(int slot, long key, long value) {
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > threshold) {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            allocate(keys.length * 2);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != FREE) {
+                    int newSlot = -find(oldKeys[i]) - 1;
+                    keys[newSlot] = oldKeys[i];
+                    values[newSlot] = oldValues[i];
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+
+    @FunctionalInterface
+    public interface EntryPredicate {
+        boolean test(long key, long value);
+    }
+}
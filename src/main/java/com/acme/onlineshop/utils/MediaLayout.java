@@ -0,0 +1,76 @@
+package com.acme.onlineshop.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * <p>On-disk layout of the files inside a user directory.</p>
+ * <ul>
+ *     <li>Flat (0 levels): <code>&lt;username&gt;/&lt;filename&gt;</code></li>
+ *     <li>Sharded (1 to {@link #MAX_LEVELS} levels): <code>&lt;username&gt;/ab/cd/&lt;filename&gt;</code>, where every
+ *     level is a byte of the CRC32 of the file name as hexadecimal string. Two levels spread the files of a user over
+ *     65536 directories.</li>
+ * </ul>
+ * <p>The shard directories depend on the file name only, so a file can be found without any lookup table. The
+ * public location of a file (<code>&lt;username&gt;/&lt;filename&gt;</code>) is the same in every layout.</p>
+ */
+public final class MediaLayout {
+
+    public final static int MAX_LEVELS = 3;
+
+    private MediaLayout() { }
+
+    /**
+     * @param levels Amount of shard directories
+     * @throws IllegalArgumentException If levels are out of range
+     */
+    public static int checkLevels(int levels) {
+        if (levels < 0 || levels > MAX_LEVELS) {
+            throw new IllegalArgumentException("Shard levels have to be between 0 and %d, but are: %d".formatted(MAX_LEVELS, levels));
+        }
+        return levels;
+    }
+
+    /**
+     * Returns location of given file inside its user directory
+     *
+     * @param filename Plain file name
+     * @param levels Amount of shard directories
+     * @return e.g. <code>ab/cd/&lt;filename&gt;</code>
+     */
+    public static Path locate(String filename, int levels) {
+        if (levels == 0) {
+            return Path.of(filename);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(filename.getBytes(StandardCharsets.UTF_8));
+        long hash = crc.getValue();
+        Path location = Path.of("%02x".formatted((hash >>> 24) & 0xFF));
+        for (int level = 1; level < levels; level++) {
+            location = location.resolve("%02x".formatted((hash >>> (24 - 8 * level)) & 0xFF));
+        }
+        return location.resolve(filename);
+    }
+
+    /**
+     * Returns all locations given file could have inside its user directory: the one of the current layout first,
+     * followed by the ones of all other layouts. Needed while files are migrated from one layout to another.
+     *
+     * @param filename Plain file name
+     * @param levels Amount of shard directories of the current layout
+     * @return Possible locations, most likely first
+     */
+    public static List<Path> candidates(String filename, int levels) {
+        List<Path> candidates = new ArrayList<>(MAX_LEVELS + 1);
+        candidates.add(locate(filename, levels));
+        for (int other = 0; other <= MAX_LEVELS; other++) {
+            if (other != levels) {
+                candidates.add(locate(filename, other));
+            }
+        }
+        return candidates;
+    }
+}
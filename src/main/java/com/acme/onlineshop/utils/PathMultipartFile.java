@@ -0,0 +1,77 @@
+package com.acme.onlineshop.utils;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * {@link MultipartFile} backed by a (temporary) file on disk, e.g. an entry extracted from an uploaded archive. This
+ * way, such files pass the same validation &amp; storage code as regular uploads.
+ */
+public class PathMultipartFile implements MultipartFile {
+
+    private final Path file;
+    private final String originalFilename;
+    private final long size;
+
+    /**
+     * @param file Location of the content, which must not change anymore
+     * @param originalFilename File name as given by the client
+     * @throws IOException If size of file couldn't be determined
+     */
+    public PathMultipartFile(Path file, String originalFilename) throws IOException {
+        this.file = file;
+        this.originalFilename = originalFilename;
+        this.size = Files.size(file);
+    }
+
+    @Override
+    public String getName() {
+        return originalFilename;
+    }
+
+    @Override
+    public String getOriginalFilename() {
+        return originalFilename;
+    }
+
+    @Override
+    public String getContentType() {
+        return null;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public byte[] getBytes() throws IOException {
+        return Files.readAllBytes(file);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return Files.newInputStream(file);
+    }
+
+    @Override
+    public void transferTo(File destination) throws IOException {
+        transferTo(destination.toPath());
+    }
+
+    @Override
+    public void transferTo(Path destination) throws IOException {
+        Files.copy(file, destination, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -16,6 +16,10 @@ public enum URL {
     // --------------- REST ---------------
     REST_ACTUATOR("", Path.REST_ACTUATOR),
     REST_API("", Path.REST_API),
+    REST_EXPORT("", Path.REST_EXPORT),
+    REST_ITEMS("", Path.REST_ITEMS),
+    REST_MEDIA("", Path.REST_MEDIA),
+    REST_SEARCH("", Path.REST_SEARCH),
     REST_SECURITY("", Path.REST_SECURITY),
     REST_SYSTEM("", Path.REST_SYSTEM),
 
@@ -31,6 +35,7 @@ public enum URL {
     CONTACT("contact", Path.CONTACT),
     HOME("home", Path.HOME),
     INDEX("index", Path.INDEX),
+    ITEM("item", Path.ITEM),
     LOGIN("login", Path.LOGIN),
     LOGOUT("logout", Path.LOGOUT),
     PROFILE("profile", Path.PROFILE),
@@ -54,6 +59,10 @@ public enum URL {
         // --------------- REST ---------------
         public final static String REST_ACTUATOR = "/actuator";
         public final static String REST_API = "/api";
+        public final static String REST_EXPORT = REST_API + "/export";
+        public final static String REST_ITEMS = REST_API + "/items";
+        public final static String REST_MEDIA = REST_API + "/media";
+        public final static String REST_SEARCH = REST_API + "/search";
         public final static String REST_SECURITY = REST_API + "/security";
         public final static String REST_SYSTEM = REST_API + "/system";
 
@@ -69,6 +78,7 @@ public enum URL {
         public final static String CONTACT = "/contact";
         public final static String HOME = "/home";
         public final static String INDEX = "/";
+        public final static String ITEM = "/item";
         public final static String LOGIN = "/login";
         public final static String LOGOUT = "/logout";
         public final static String PROFILE = "/profile";
@@ -0,0 +1,51 @@
+'use strict';
+
+/**
+ * Execute if site is finished loading on client side
+ */
+document.addEventListener("DOMContentLoaded", function(event) {
+
+    const search_form = document.getElementById("searchForm");
+    if (search_form === null) {
+        return;
+    }
+    const search_input = search_form.querySelector("input[name='search']");
+    const completions = document.getElementById("searchCompletions");
+    let latest_prefix = "";
+
+    search_input.addEventListener("input", function(event) {
+        const prefix = search_input.value.trim();
+        latest_prefix = prefix;
+        if (prefix.length === 0) {
+            completions.replaceChildren();
+            return;
+        }
+        fetch(search_form.dataset.completions + "?prefix=" + encodeURIComponent(prefix))
+            .then(response => response.ok ? response.json() : [])
+            .then(suggestions => {
+                // Responses may arrive out of order, only show the ones of the latest keystroke
+                if (prefix === latest_prefix) {
+                    showCompletions(completions, suggestions);
+                }
+            })
+            .catch(() => completions.replaceChildren());
+    });
+
+});
+
+/**
+ * Replaces the options of the search box by given suggestions.
+ *
+ * @param {HTMLDataListElement} completions
+ * @param {Array<{text: string, context: ?string}>} suggestions
+ */
+function showCompletions(completions, suggestions) {
+    completions.replaceChildren(...suggestions.map(suggestion => {
+        const option = document.createElement("option");
+        option.value = suggestion.text;
+        if (suggestion.context !== null) {
+            option.label = suggestion.context;
+        }
+        return option;
+    }));
+}
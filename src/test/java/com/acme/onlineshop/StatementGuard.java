@@ -0,0 +1,26 @@
+package com.acme.onlineshop;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.function.Supplier;
+
+/**
+ * Fails a test, if a block of code (e.g. a request or the rendering of a view) issues more JDBC statements than
+ * expected. Relies on <code>hibernate.generate_statistics</code>, which is enabled in the test properties.
+ */
+public class StatementGuard {
+
+    public static <T> T assertMaxStatements(EntityManagerFactory entityManagerFactory, long maxStatements, Supplier<T> action) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Assertions.assertTrue(statistics.isStatisticsEnabled(), "Hibernate statistics are disabled");
+        long before = statistics.getPrepareStatementCount();
+        T result = action.get();
+        long statements = statistics.getPrepareStatementCount() - before;
+        Assertions.assertTrue(statements <= maxStatements, "Expected at most %d statements, but %d were issued".formatted(maxStatements, statements));
+        return result;
+    }
+
+}
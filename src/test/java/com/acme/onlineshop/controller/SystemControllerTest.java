@@ -1,6 +1,7 @@
 package com.acme.onlineshop.controller;
 
 import com.acme.onlineshop.condition.SkipWhenSecurityDeactivated;
+import com.acme.onlineshop.service.CatalogCacheService;
 import com.acme.onlineshop.service.SystemService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,6 +23,8 @@ public class SystemControllerTest extends RestApiTest {
 
     @MockBean
     private SystemService service;
+    @MockBean
+    private CatalogCacheService catalogCacheService;
 
     @Test
     public void shutDown() throws Exception {
@@ -0,0 +1,176 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.BasketLine;
+import com.acme.onlineshop.persistence.basket.StoredBasket;
+import com.acme.onlineshop.persistence.basket.StoredBasketRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class BasketServiceTest {
+
+    @Autowired
+    private StoredBasketRepository basketRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private BasketService basketService;
+
+    @BeforeEach
+    void setUp() {
+        basketRepository.deleteAll();
+        basketService = newService(Duration.ofMinutes(30));
+    }
+
+    private BasketService newService(Duration idleTimeout) {
+        return newService(idleTimeout, Duration.ofHours(24));
+    }
+
+    private BasketService newService(Duration idleTimeout, Duration sessionTtl) {
+        return new BasketService(basketRepository, transactionManager, new SimpleMeterRegistry(), 2, idleTimeout, sessionTtl);
+    }
+
+    @Test
+    void keepLinesSortedByItem() {
+        basketService.add("alice", 42, 1);
+        basketService.add("alice", 7, 2);
+        basketService.add("alice", 42, 3);
+        basketService.setQuantity("alice", 99, 1);
+        basketService.setQuantity("alice", 99, 0);
+
+        Assertions.assertEquals(List.of(new BasketLine(7, 2), new BasketLine(42, 4)), basketService.getLines("alice"));
+        Assertions.assertTrue(basketService.getLines("bob").isEmpty());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> basketService.add("alice", 7, BasketService.MAX_QUANTITY));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> basketService.add("alice", 7, 0));
+    }
+
+    @Test
+    void writeBehindInBatchesAndRestoreLazily() {
+        basketService.add("alice", 1, 1);
+        basketService.add("bob", 2, 2);
+        basketService.add("carol", 3, 3);
+        Assertions.assertEquals(0, basketRepository.count());
+
+        Assertions.assertEquals(3, basketService.flush());
+        Assertions.assertEquals(3, basketRepository.count());
+        Assertions.assertEquals(0, basketService.flush());
+
+        basketService.add("alice", 1, 1);
+        basketService.clear("bob");
+        Assertions.assertEquals(2, basketService.flush());
+        Assertions.assertFalse(basketRepository.existsById("bob"));
+
+        // New instance after a "restart"
+        BasketService restarted = newService(Duration.ofMinutes(30));
+        Assertions.assertEquals(List.of(new BasketLine(1, 2)), restarted.getLines("alice"));
+        Assertions.assertEquals(List.of(new BasketLine(3, 3)), restarted.getLines("carol"));
+    }
+
+    @Test
+    void mergeSessionBasketIntoUserBasket() {
+        String session = BasketService.sessionOwner("basket-1");
+        String user = BasketService.userOwner("alice");
+        basketService.add(user, 1, 1);
+        basketService.add(session, 1, 2);
+        basketService.add(session, 2, BasketService.MAX_QUANTITY);
+        basketService.add(user, 2, 1);
+
+        basketService.merge(session, user);
+
+        Assertions.assertEquals(List.of(new BasketLine(1, 3), new BasketLine(2, BasketService.MAX_QUANTITY)), basketService.getLines(user));
+        Assertions.assertTrue(basketService.getLines(session).isEmpty());
+        basketService.flush();
+        Assertions.assertFalse(basketRepository.existsById(session));
+    }
+
+    @Test
+    void expireUnchangedSessionBaskets() throws InterruptedException {
+        BasketService service = newService(Duration.ofMinutes(30), Duration.ZERO);
+        String session = BasketService.sessionOwner("basket-1");
+        String user = BasketService.userOwner("alice");
+        service.add(session, 1, 1);
+        service.add(user, 1, 1);
+        service.flush();
+        Thread.sleep(5);
+
+        Assertions.assertEquals(1, service.expireSessionBaskets());
+        Assertions.assertFalse(basketRepository.existsById(session));
+        Assertions.assertTrue(basketRepository.existsById(user));
+        Assertions.assertTrue(service.getLines(session).isEmpty());
+    }
+
+    @Test
+    void keepBasketsDirtyAfterFailedFlush() {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        PlatformTransactionManager flakyManager = new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                if (failing.get()) {
+                    throw new CannotCreateTransactionException("Database is down");
+                }
+                return transactionManager.getTransaction(definition);
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+                transactionManager.commit(status);
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+                transactionManager.rollback(status);
+            }
+        };
+        BasketService service = new BasketService(basketRepository, flakyManager, new SimpleMeterRegistry(), 2, Duration.ofMinutes(30), Duration.ofHours(24));
+        service.add("alice", 1, 1);
+
+        Assertions.assertEquals(0, service.flush());
+        failing.set(false);
+        Assertions.assertEquals(1, service.flush());
+        Assertions.assertTrue(basketRepository.existsById("alice"));
+    }
+
+    @Test
+    void evictIdleBasketsOnlyAfterWriting() throws InterruptedException {
+        BasketService service = newService(Duration.ZERO);
+        service.add("alice", 5, 1);
+        Thread.sleep(5);
+
+        service.flush();
+        StoredBasket stored = basketRepository.findById("alice").orElseThrow();
+        stored.setContent(BasketCodec.encode(new long[]{6}, new int[]{2}, 1));
+        basketRepository.save(stored);
+
+        // Evicted by the flush, so the next access reads the stored basket
+        Assertions.assertEquals(List.of(new BasketLine(6, 2)), service.getLines("alice"));
+    }
+
+    @Test
+    void encodeCompactly() {
+        long[] itemIds = {3, 1000, 1_000_000_000_000L};
+        int[] quantities = {1, 99, 5};
+
+        byte[] content = BasketCodec.encode(itemIds, quantities, 3);
+        BasketCodec.Lines lines = BasketCodec.decode(content);
+
+        Assertions.assertArrayEquals(itemIds, lines.itemIds());
+        Assertions.assertArrayEquals(quantities, lines.quantities());
+        Assertions.assertTrue(content.length <= 16);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BasketCodec.decode(new byte[]{1, 5}));
+    }
+}
@@ -0,0 +1,79 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.CacheRegionUsage;
+import com.acme.onlineshop.persistence.item.CatalogCacheRegions;
+import com.acme.onlineshop.persistence.item.MainCategory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+
+@DataJpaTest
+public class CatalogCacheServiceTest {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private CatalogCacheService cacheService;
+    private long musicId;
+
+    @BeforeEach
+    void setUp() {
+        cacheService = new CatalogCacheService(entityManagerFactory);
+        cacheService.evict(null);
+        MainCategory music = new MainCategory("Music", "CDs");
+        entityManager.persist(music);
+        entityManager.flush();
+        entityManager.clear();
+        musicId = music.getId();
+    }
+
+    private CacheRegionUsage categoryRegion() {
+        return cacheService.getStatistics().regions().stream()
+                .filter(region -> region.region().equals(CatalogCacheRegions.CATEGORY))
+                .findFirst().orElseThrow();
+    }
+
+    @Test
+    void answerRepeatedLookupsFromCache() {
+        long hitsBefore = categoryRegion().hits();
+
+        entityManager.find(MainCategory.class, musicId);
+        entityManager.clear();
+        entityManager.find(MainCategory.class, musicId);
+
+        Assertions.assertEquals(hitsBefore + 1, categoryRegion().hits());
+    }
+
+    @Test
+    void evictSingleRegion() {
+        entityManager.find(MainCategory.class, musicId);
+        entityManager.clear();
+        Assertions.assertTrue(entityManagerFactory.getCache().contains(MainCategory.class, musicId));
+
+        cacheService.evict(CatalogCacheRegions.CATEGORY);
+
+        Assertions.assertFalse(entityManagerFactory.getCache().contains(MainCategory.class, musicId));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> cacheService.evict("unknown"));
+    }
+
+    @Test
+    void refuseStatisticsIfDisabled() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(false);
+        try {
+            Assertions.assertThrows(IllegalStateException.class, () -> cacheService.getStatistics());
+        } finally {
+            statistics.setStatisticsEnabled(true);
+        }
+    }
+}
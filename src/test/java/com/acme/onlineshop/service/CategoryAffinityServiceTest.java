@@ -0,0 +1,126 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.persistence.user.CategoryAffinityRepository;
+import com.acme.onlineshop.persistence.user.ProfileRepository;
+import com.acme.onlineshop.persistence.user.User;
+import com.acme.onlineshop.persistence.user.UserRepository;
+import com.acme.onlineshop.security.Role;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class CategoryAffinityServiceTest {
+
+    private final static Duration HALF_LIFE = Duration.ofHours(1);
+    private final static long SHOES = 1;
+    private final static long SHIRTS = 2;
+    private final static long HATS = 3;
+
+    @Autowired
+    private CategoryAffinityRepository affinityRepository;
+    @Autowired
+    private ProfileRepository profileRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private CategoryAffinityService affinityService;
+    private String username;
+    private long userId;
+
+    @BeforeEach
+    void setUp() {
+        affinityRepository.deleteAll();
+        affinityService = newService();
+        username = "affinity-" + UUID.randomUUID();
+        userId = userRepository.save(new User(username, "secret", username + "@example.com", Role.USER)).getUserId();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        affinityService.shutdown();
+    }
+
+    private CategoryAffinityService newService() {
+        return new CategoryAffinityService(affinityRepository, profileRepository, userRepository, transactionManager, new SimpleMeterRegistry(),
+                HALF_LIFE, 2, 100, 2, Duration.ofMinutes(30));
+    }
+
+    @Test
+    void rankRecentInterestAboveOlderInterest() throws Exception {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            affinityService.record(userId, SHOES, CategoryAffinityService.VIEW_WEIGHT, start);
+        }
+        affinityService.record(userId, HATS, 0.5f, start);
+        // 3 views two half-lives ago are worth 0.75 views now
+        affinityService.record(userId, SHIRTS, CategoryAffinityService.VIEW_WEIGHT, start + 2 * HALF_LIFE.toMillis());
+        affinityService.awaitEvents();
+
+        Assertions.assertArrayEquals(new long[]{SHIRTS, SHOES}, affinityService.getFavourites(userId));
+
+        // Long forgotten interest is dropped, when the scores are brought back to the current time
+        affinityService.record(userId, HATS, CategoryAffinityService.BASKET_WEIGHT, start + 40 * HALF_LIFE.toMillis());
+        affinityService.awaitEvents();
+        Assertions.assertArrayEquals(new long[]{HATS}, affinityService.getFavourites(userId));
+    }
+
+    @Test
+    void writeBehindAndRestoreAfterRestart() throws Exception {
+        affinityService.recordView(userId, SHOES);
+        affinityService.recordBasketAdd(userId, SHIRTS);
+        affinityService.awaitEvents();
+        Assertions.assertEquals(0, affinityRepository.count());
+
+        Assertions.assertEquals(1, affinityService.flush());
+        Assertions.assertEquals(1, affinityRepository.count());
+        Assertions.assertEquals(0, affinityService.flush());
+
+        CategoryAffinityService restarted = newService();
+        try {
+            // Not in memory yet: restored in the background, the page is rendered without favourites meanwhile
+            Assertions.assertArrayEquals(new long[0], restarted.getFavourites(userId));
+            restarted.awaitEvents();
+            Assertions.assertArrayEquals(new long[]{SHIRTS, SHOES}, restarted.getFavourites(userId));
+        } finally {
+            restarted.shutdown();
+        }
+    }
+
+    @Test
+    void deleteUserWithStoredAffinity() throws Exception {
+        affinityService.recordView(userId, SHOES);
+        affinityService.awaitEvents();
+        Assertions.assertEquals(1, affinityService.flush());
+        Assertions.assertEquals(1, profileRepository.findIdsByUserIds(List.of(userId)).size());
+
+        // Same order as UserService.deleteUsers
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            affinityService.remove(List.of(username));
+            userRepository.deleteByUsernameIn(List.of(username));
+        });
+
+        Assertions.assertTrue(userRepository.findById(userId).isEmpty());
+        Assertions.assertEquals(0, affinityRepository.count());
+        Assertions.assertTrue(profileRepository.findIdsByUserIds(List.of(userId)).isEmpty());
+        // Dropped from memory as well, so nothing is written for the deleted user anymore
+        Assertions.assertArrayEquals(new long[0], affinityService.getFavourites(userId));
+        affinityService.awaitEvents();
+        Assertions.assertEquals(0, affinityService.flush());
+    }
+}
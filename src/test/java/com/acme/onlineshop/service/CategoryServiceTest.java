@@ -0,0 +1,113 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.persistence.item.MainCategory;
+import com.acme.onlineshop.persistence.item.MainCategoryRepository;
+import com.acme.onlineshop.persistence.item.SubCategory;
+import com.acme.onlineshop.persistence.item.SubCategoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CategoryServiceTest {
+
+    private final List<MainCategory> stored = new ArrayList<>();
+    private MainCategoryRepository mainCategoryRepository;
+    private CategoryService categoryService;
+
+    @BeforeEach
+    void setUp() {
+        MainCategory music = new MainCategory("Music", "CDs");
+        music.setId(1);
+        SubCategory vinyl = new SubCategory("Vinyl", "...", music);
+        vinyl.setId(11);
+        SubCategory cd = new SubCategory("CD", "...", music);
+        cd.setId(12);
+        music.getSubCategories().addAll(List.of(vinyl, cd));
+        MainCategory books = new MainCategory("Books", "Text Books");
+        books.setId(2);
+        // Fetch joins return a main category once per sub-category
+        stored.addAll(List.of(music, music, books));
+
+        mainCategoryRepository = Mockito.mock(MainCategoryRepository.class);
+        Mockito.when(mainCategoryRepository.findEagerAllByOrderByName()).thenAnswer(call -> List.copyOf(stored));
+        Mockito.when(mainCategoryRepository.save(ArgumentMatchers.any(MainCategory.class))).thenAnswer(call -> {
+            MainCategory category = call.getArgument(0);
+            stored.add(category);
+            return category;
+        });
+        categoryService = new CategoryService(mainCategoryRepository, Mockito.mock(SubCategoryRepository.class), Mockito.mock(CatalogCacheService.class), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void buildSortedTreeWithLinksOnce() {
+        CategoryTree tree = categoryService.getTree();
+        Assertions.assertSame(tree, categoryService.getTree());
+        Mockito.verify(mainCategoryRepository, Mockito.times(1)).findEagerAllByOrderByName();
+
+        Assertions.assertEquals(1, tree.getVersion());
+        Assertions.assertEquals(4, tree.size());
+        Assertions.assertEquals(List.of("Books", "Music"), tree.getMainCategories().stream().map(CategoryTree.Node::getName).toList());
+        CategoryTree.Node music = tree.getMainCategories().get(1);
+        Assertions.assertEquals(1, music.getPosition());
+        Assertions.assertEquals(List.of("CD", "Vinyl"), music.getSubCategories().stream().map(CategoryTree.Node::getName).toList());
+        Assertions.assertEquals(music.getLink() + "/cd", tree.get(12).getLink());
+        Assertions.assertEquals(1L, tree.get(12).getMainCategoryId());
+    }
+
+    @Test
+    void replaceTreeAfterChange() {
+        CategoryTree before = categoryService.getTree();
+        MainCategory food = new MainCategory("Food", "Pizzas");
+        food.setId(3);
+        categoryService.addNewMainCategory(food);
+
+        CategoryTree after = categoryService.getTree();
+        Assertions.assertNotSame(before, after);
+        Assertions.assertEquals(2, categoryService.getTreeVersion());
+        Assertions.assertEquals(3, after.getMainCategories().size());
+        // Former tree stays untouched for requests, that still render it
+        Assertions.assertEquals(2, before.getMainCategories().size());
+    }
+
+    @Test
+    void replaceTreeAfterCommitOfSurroundingTransaction() {
+        categoryService.getTree();
+        MainCategory food = new MainCategory("Food", "Pizzas");
+        food.setId(3);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            categoryService.addNewMainCategory(food);
+            // Not committed yet
+            Assertions.assertEquals(1, categoryService.getTreeVersion());
+
+            TransactionSynchronizationUtils.triggerAfterCommit();
+            Assertions.assertEquals(2, categoryService.getTreeVersion());
+            Assertions.assertEquals(3, categoryService.getTree().getMainCategories().size());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void resolveMainAndSubCategoryPaths() {
+        CategoryTree tree = categoryService.getTree();
+
+        Assertions.assertEquals(1, tree.resolve("music").getId());
+        Assertions.assertEquals(11, tree.resolve("music/vinyl").getId());
+        Assertions.assertEquals(11, tree.resolve("Music/Vinyl").getId());
+        Assertions.assertSame(tree.resolve("music"), tree.getMainCategory("music"));
+        Assertions.assertNull(tree.getMainCategory("music/vinyl"));
+        Assertions.assertNull(tree.resolve("books/vinyl"));
+        Assertions.assertNull(tree.resolve("unknown"));
+        // Unknown paths never reach the database
+        Mockito.verify(mainCategoryRepository, Mockito.times(1)).findEagerAllByOrderByName();
+    }
+}
@@ -0,0 +1,50 @@
+package com.acme.onlineshop.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CoOccurrenceCountsTest {
+
+    @Test
+    void rankItemsBoughtTogetherMostOften() {
+        CoOccurrenceCounts counts = new CoOccurrenceCounts();
+        counts.addTogether(new long[]{1, 2, 3});
+        counts.addTogether(new long[]{2, 1, 1});
+        counts.addTogether(new long[]{1, 4});
+        counts.addWith(4, new long[]{1, 4});
+        counts.addWith(5, new long[]{2});
+
+        Assertions.assertEquals(2, counts.get(1, 2));
+        Assertions.assertEquals(2, counts.get(4, 1));
+        Assertions.assertEquals(5, counts.size());
+
+        CoOccurrenceCounts.Neighbours neighbours = counts.topNeighbours(2, 1);
+        // Equal counts are ordered by ID
+        Assertions.assertArrayEquals(new long[]{2, 4}, neighbours.get(1));
+        Assertions.assertArrayEquals(new long[]{1, 3}, neighbours.get(2));
+        Assertions.assertArrayEquals(new long[]{2}, neighbours.get(5));
+        Assertions.assertArrayEquals(new long[0], neighbours.get(42));
+        Assertions.assertArrayEquals(new long[]{2, 4}, counts.topNeighbours(3, 2).get(1));
+        Assertions.assertArrayEquals(new long[0], counts.topNeighbours(3, 2).get(3));
+    }
+
+    @Test
+    void pruneRarestPairsFirst() {
+        CoOccurrenceCounts counts = new CoOccurrenceCounts();
+        for (int i = 0; i < 3; i++) {
+            counts.addTogether(new long[]{1, 2});
+        }
+        counts.addTogether(new long[]{1, 3});
+        counts.addTogether(new long[]{1, 3});
+        for (long itemId = 10; itemId < 20; itemId++) {
+            counts.addTogether(new long[]{1, itemId});
+        }
+
+        Assertions.assertEquals(0, counts.prune(12));
+        Assertions.assertEquals(10, counts.prune(8));
+        Assertions.assertEquals(2, counts.size());
+        Assertions.assertEquals(1, counts.prune(1));
+        Assertions.assertEquals(3, counts.get(1, 2));
+        Assertions.assertEquals(0, counts.get(1, 3));
+    }
+}
@@ -0,0 +1,53 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.Completion;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class CompletionIndexTest {
+
+    private static CompletionIndex.Entry entry(String name, long weight) {
+        return new CompletionIndex.Entry(name.toLowerCase().replace(' ', '_'), new Completion(name, null, "/category/" + name, weight));
+    }
+
+    private static List<String> texts(List<Completion> completions) {
+        return completions.stream().map(Completion::text).toList();
+    }
+
+    @Test
+    void completeHeaviestFirst() {
+        CompletionIndex index = new CompletionIndex(List.of(entry("Science Fiction", 5), entry("Science", 3), entry("Sports", 9), entry("Fishing", 5)));
+        Assertions.assertEquals(List.of("Sports", "Science Fiction", "Science"), texts(index.complete("s", 10)));
+        Assertions.assertEquals(List.of("Sports"), texts(index.complete("S", 1)));
+        // Later words match as well ("fiction" before "fishing" with equal weights), spaces match the word separator
+        Assertions.assertEquals(List.of("Science Fiction", "Fishing"), texts(index.complete("fi", 10)));
+        Assertions.assertEquals(List.of("Science Fiction"), texts(index.complete("science f", 10)));
+        Assertions.assertTrue(index.complete("x", 10).isEmpty());
+        Assertions.assertTrue(index.complete("", 10).isEmpty());
+        Assertions.assertTrue(CompletionIndex.EMPTY.complete("s", 10).isEmpty());
+    }
+
+    @Test
+    void matchSortingOfAllMatches() {
+        Random random = new Random(42);
+        List<CompletionIndex.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            entries.add(entry("c" + Integer.toString(random.nextInt(5000), 36), random.nextInt(100)));
+        }
+        CompletionIndex index = new CompletionIndex(entries);
+        for (String prefix : List.of("c", "c1", "ca", "c2z")) {
+            List<Long> expected = entries.stream()
+                    .filter(entry -> entry.slug().startsWith(prefix))
+                    .map(entry -> entry.completion().weight())
+                    .sorted(Comparator.reverseOrder())
+                    .limit(7)
+                    .toList();
+            Assertions.assertEquals(expected, index.complete(prefix, 7).stream().map(Completion::weight).toList());
+        }
+    }
+}
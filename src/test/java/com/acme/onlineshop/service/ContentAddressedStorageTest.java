@@ -0,0 +1,140 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.persistence.media.MediaBlob;
+import com.acme.onlineshop.persistence.media.MediaBlobRepository;
+import com.acme.onlineshop.persistence.media.MediaFileRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ContentAddressedStorageTest {
+
+    @TempDir
+    Path root;
+
+    @Autowired
+    private MediaBlobRepository blobRepository;
+    @Autowired
+    private MediaFileRepository fileRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ContentAddressedStorage contentStorage;
+
+    @BeforeEach
+    void setUp() {
+        contentStorage = new ContentAddressedStorage(root, blobRepository, fileRepository, transactionManager);
+        contentStorage.deleteAll();
+    }
+
+    private static MockMultipartFile file(String name, String content) {
+        return new MockMultipartFile("file", name, "text/plain", content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long referenceCount(Path blob) {
+        return blobRepository.findById(blob.getFileName().toString()).map(MediaBlob::getReferenceCount).orElse(0L);
+    }
+
+    private long blobFiles() throws Exception {
+        Path blobs = root.resolve(ContentAddressedStorage.BLOB_DIRECTORY);
+        if (!Files.exists(blobs)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.walk(blobs)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @Test
+    void storeDuplicateContentOnce() throws Exception {
+        Path first = contentStorage.store(file("a.txt", "same"), "user");
+        Path second = contentStorage.store(file("b.txt", "same"), "user");
+        // Same content under same name again changes nothing
+        contentStorage.store(file("a.txt", "same"), "user");
+
+        Assertions.assertEquals(first, second);
+        Assertions.assertEquals(2, referenceCount(first));
+        Assertions.assertEquals(1, blobFiles());
+        Assertions.assertEquals(2, fileRepository.findAllByUsernameOrderByName("user").size());
+    }
+
+    @Test
+    void replaceContentOfName() throws Exception {
+        Path old = contentStorage.store(file("a.txt", "old"), "user");
+        Path replaced = contentStorage.store(file("a.txt", "new"), "user");
+
+        Assertions.assertNotEquals(old, replaced);
+        Assertions.assertFalse(contentStorage.isReferenced(old.getFileName().toString()));
+        Assertions.assertFalse(Files.exists(root.resolve(old)));
+        Assertions.assertEquals(1, referenceCount(replaced));
+        Assertions.assertEquals(replaced, contentStorage.load("user", "a.txt"));
+    }
+
+    @Test
+    void deleteBlobWithLastReference() throws Exception {
+        Path shared = contentStorage.store(file("a.txt", "shared"), "alice");
+        contentStorage.store(file("b.txt", "shared"), "bob");
+
+        contentStorage.deleteAll("alice");
+        Assertions.assertEquals(1, referenceCount(shared));
+        Assertions.assertTrue(Files.exists(root.resolve(shared)));
+
+        contentStorage.deleteAll("bob");
+        Assertions.assertFalse(contentStorage.isReferenced(shared.getFileName().toString()));
+        Assertions.assertFalse(Files.exists(root.resolve(shared)));
+    }
+
+    @Test
+    void replaceSameNameConcurrently() throws Exception {
+        int threads = 4;
+        int uploads = 25;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                int id = thread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int upload = 0; upload < uploads; upload++) {
+                        contentStorage.store(file("a.txt", "content " + id + "/" + upload), "user");
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Exactly the last content is left, referenced once, without any leaked blob
+        Path last = contentStorage.load("user", "a.txt");
+        Assertions.assertEquals(1, fileRepository.count());
+        Assertions.assertEquals(1, blobRepository.count());
+        Assertions.assertEquals(1, referenceCount(last));
+        Assertions.assertEquals(1, blobFiles());
+    }
+}
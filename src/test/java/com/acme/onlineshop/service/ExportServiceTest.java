@@ -0,0 +1,86 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.persistence.item.Item;
+import com.acme.onlineshop.persistence.item.ItemRepository;
+import com.acme.onlineshop.persistence.item.MainCategory;
+import com.acme.onlineshop.persistence.item.MainCategoryRepository;
+import com.acme.onlineshop.persistence.item.SubCategory;
+import com.acme.onlineshop.persistence.item.SubCategoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+@DataJpaTest
+public class ExportServiceTest {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private ItemRepository itemRepository;
+    @Autowired
+    private MainCategoryRepository mainCategoryRepository;
+    @Autowired
+    private SubCategoryRepository subCategoryRepository;
+
+    private ExportService exportService;
+    private List<Item> items;
+
+    @BeforeEach
+    void setUp() {
+        exportService = new ExportService(entityManager, transactionManager, new SimpleMeterRegistry(), 2);
+        MainCategory music = mainCategoryRepository.save(new MainCategory("Music", "CDs"));
+        SubCategory vinyl = subCategoryRepository.save(new SubCategory("Vinyl", "...", music));
+        items = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            items.add(new Item(music, (i % 2 == 0) ? vinyl : null, null, new ArrayList<>()));
+        }
+        items = itemRepository.saveAllAndFlush(items);
+        entityManager.clear();
+    }
+
+    @Test
+    void exportEveryItemExactlyOnceAcrossChunks() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        long rows = exportService.export(ExportService.Dataset.ITEMS, ExportService.Format.NDJSON, false, output);
+
+        List<String> lines = output.toString(StandardCharsets.UTF_8).lines().toList();
+        Assertions.assertEquals(5, rows);
+        Assertions.assertEquals(5, lines.size());
+        Assertions.assertEquals("{\"id\":%d,\"category\":\"music\",\"subCategory\":\"vinyl\",\"thumbnail\":null}".formatted(items.get(0).getId()), lines.get(0));
+        Assertions.assertEquals("{\"id\":%d,\"category\":\"music\",\"subCategory\":null,\"thumbnail\":null}".formatted(items.get(1).getId()), lines.get(1));
+    }
+
+    @Test
+    void exportCompressedCsvWithHeader() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        exportService.export(ExportService.Dataset.CATEGORIES, ExportService.Format.CSV, true, output);
+
+        String csv;
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+            csv = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        List<String> lines = csv.lines().toList();
+        Assertions.assertEquals(3, lines.size());
+        Assertions.assertEquals("id,name,slug,description,mainCategoryId", lines.get(0));
+        Assertions.assertTrue(lines.get(1).endsWith(",Music,music,CDs,"));
+        Assertions.assertTrue(lines.get(2).contains(",Vinyl,vinyl,...,"));
+    }
+}
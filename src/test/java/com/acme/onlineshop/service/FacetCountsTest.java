@@ -0,0 +1,44 @@
+package com.acme.onlineshop.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FacetCountsTest {
+
+    @Test
+    void countItemsIncrementally() {
+        FacetCounts counts = new FacetCounts();
+        counts.put(1, 10, 11, true);
+        counts.put(2, 10, 12, false);
+        counts.put(3, 10, 0, false);
+        Assertions.assertEquals(3, counts.getItems(10));
+        Assertions.assertEquals(1, counts.getItems(11));
+        Assertions.assertEquals(1, counts.getItemsWithThumbnail(10));
+
+        // Update takes back the former facets of the item
+        counts.put(1, 10, 12, false);
+        Assertions.assertEquals(0, counts.getItems(11));
+        Assertions.assertEquals(2, counts.getItems(12));
+        Assertions.assertEquals(0, counts.getItemsWithThumbnail(10));
+
+        counts.remove(2);
+        counts.remove(2);
+        Assertions.assertEquals(2, counts.getItems(10));
+        Assertions.assertEquals(1, counts.getItems(12));
+        Assertions.assertEquals(2, counts.size());
+    }
+
+    @Test
+    void findDifferences() {
+        FacetCounts counts = new FacetCounts();
+        counts.put(1, 10, 11, false);
+        FacetCounts recounted = new FacetCounts();
+        recounted.put(1, 10, 11, false);
+        Assertions.assertEquals(0, counts.differences(recounted));
+
+        recounted.put(2, 20, 0, false);
+        recounted.put(1, 10, 11, true);
+        // Category 20 is new, 10 & 11 have a different amount of items with thumbnail
+        Assertions.assertEquals(3, counts.differences(recounted));
+    }
+}
@@ -0,0 +1,122 @@
+package com.acme.onlineshop.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+public class HotImageCacheTest {
+
+    @TempDir
+    Path root;
+
+    private Path image(String name, int size) throws IOException {
+        return Files.write(root.resolve(name), new byte[size]);
+    }
+
+    @Test
+    void keepFrequentlyRequestedImages() throws IOException {
+        HotImageCache cache = new HotImageCache(new SimpleMeterRegistry(), true, 200, 100);
+        Path hot = image("hot.png", 100);
+        Path warm = image("warm.png", 100);
+        Path cold = image("cold.png", 100);
+        for (int i = 0; i < 5; i++) {
+            cache.get(hot);
+            cache.get(warm);
+        }
+        cache.load(hot, "image/png");
+        cache.load(warm, "image/png");
+        // Requested once only, therefore it mustn't replace any of the others
+        Assertions.assertNull(cache.get(cold));
+        cache.load(cold, "image/png");
+        Assertions.assertNotNull(cache.get(hot));
+        Assertions.assertNotNull(cache.get(warm));
+        Assertions.assertNull(cache.get(cold));
+        Assertions.assertEquals(200, cache.getUsedBytes());
+    }
+
+    @Test
+    void evictLeastRecentlyRequestedImage() throws IOException {
+        HotImageCache cache = new HotImageCache(new SimpleMeterRegistry(), true, 200, 100);
+        Path older = image("older.png", 100);
+        Path newer = image("newer.png", 100);
+        Path hot = image("hot.png", 100);
+        cache.load(older, "image/png");
+        cache.load(newer, "image/png");
+        cache.get(newer);
+        for (int i = 0; i < 5; i++) {
+            cache.get(hot);
+        }
+        cache.load(hot, "image/png");
+        Assertions.assertFalse(cache.contains(older));
+        Assertions.assertTrue(cache.contains(newer));
+        Assertions.assertTrue(cache.contains(hot));
+        Assertions.assertEquals(200, cache.getUsedBytes());
+    }
+
+    @Test
+    void countRequestsConcurrently() throws Exception {
+        HotImageCache.FrequencySketch sketch = new HotImageCache.FrequencySketch(1024);
+        Path hot = root.resolve("hot.png");
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 3; j++) {
+                    sketch.increment(hot);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // Saturated at 15, no increment is lost
+        Assertions.assertEquals(12, sketch.frequency(hot));
+        for (int i = 0; i < 10; i++) {
+            sketch.increment(hot);
+        }
+        Assertions.assertEquals(15, sketch.frequency(hot));
+        Assertions.assertEquals(0, sketch.frequency(root.resolve("cold.png")));
+    }
+
+    @Test
+    void rejectImagesExceedingEntryLimit() throws IOException {
+        HotImageCache cache = new HotImageCache(new SimpleMeterRegistry(), true, 1000, 100);
+        Path large = image("large.png", 101);
+        Assertions.assertFalse(cache.accepts(101));
+        cache.load(large, "image/png");
+        Assertions.assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    void invalidateDirectory() throws IOException {
+        HotImageCache cache = new HotImageCache(new SimpleMeterRegistry(), true, 1000, 100);
+        Files.createDirectories(root.resolve("user"));
+        Path userImage = image("user/a.png", 10);
+        Path otherImage = image("b.png", 10);
+        cache.load(userImage, "image/png");
+        cache.load(otherImage, "image/png");
+        cache.invalidateAll(root.resolve("user"));
+        Assertions.assertNull(cache.get(userImage));
+        Assertions.assertNotNull(cache.get(otherImage));
+        Assertions.assertEquals(10, cache.getUsedBytes());
+    }
+
+    @Test
+    void takeMetadataFromReadFile() throws IOException {
+        HotImageCache cache = new HotImageCache(new SimpleMeterRegistry(), true, 1000, 100);
+        Path file = image("a.png", 10);
+        // Replaced after the caller looked it up, but before it has been loaded
+        Files.write(file, new byte[20]);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1_000_000));
+        HotImageCache.CachedImage image = cache.load(file, "image/png");
+        Assertions.assertEquals(20, image.length());
+        Assertions.assertEquals(1_000_000, image.lastModified());
+        Assertions.assertSame(image, cache.get(file));
+    }
+}
@@ -0,0 +1,185 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.exception.StorageFileNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+public class ImageDeliveryServiceTest {
+
+    private final static byte[] CONTENT = "0123456789".getBytes();
+
+    @TempDir
+    Path root;
+
+    private Path file;
+    private ImageService imageService;
+    private ImageDeliveryService deliveryService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.write(root.resolve("image.png"), CONTENT);
+        imageService = Mockito.mock(ImageService.class);
+        Mockito.when(imageService.load("image.png")).thenReturn(file);
+        Mockito.when(imageService.contentHashOf(file)).thenReturn(Optional.empty());
+        deliveryService = new ImageDeliveryService(imageService, new HotImageCache(new SimpleMeterRegistry(), false, 0, 0), new SimpleMeterRegistry(), Long.MAX_VALUE);
+    }
+
+    private MockHttpServletResponse get(MockHttpServletRequest request) throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        deliveryService.send("image.png", request, response);
+        return response;
+    }
+
+    @Test
+    void sendFullFileWithValidators() throws IOException {
+        MockHttpServletResponse response = get(new MockHttpServletRequest("GET", "/"));
+        Assertions.assertEquals(200, response.getStatus());
+        Assertions.assertArrayEquals(CONTENT, response.getContentAsByteArray());
+        Assertions.assertEquals("image/png", response.getContentType());
+        Assertions.assertNotNull(response.getHeader(HttpHeaders.ETAG));
+        Assertions.assertNotNull(response.getHeader(HttpHeaders.LAST_MODIFIED));
+    }
+
+    @Test
+    void sendUploadedSvgAsSandboxedAttachment() throws IOException {
+        Path svg = Files.writeString(root.resolve("evil.svg"), "<svg xmlns=\"http://www.w3.org/2000/svg\"><script>alert(1)</script></svg>");
+        Mockito.when(imageService.load("evil.svg")).thenReturn(svg);
+        Mockito.when(imageService.contentHashOf(svg)).thenReturn(Optional.empty());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        deliveryService.send("evil.svg", new MockHttpServletRequest("GET", "/"), response);
+
+        Assertions.assertEquals("image/svg+xml", response.getContentType());
+        Assertions.assertTrue(response.getHeader(HttpHeaders.CONTENT_DISPOSITION).startsWith("attachment"));
+        Assertions.assertEquals("sandbox", response.getHeader("Content-Security-Policy"));
+        Assertions.assertEquals("nosniff", response.getHeader("X-Content-Type-Options"));
+
+        // Raster images are still shown inline, but sandboxed as well
+        MockHttpServletResponse png = get(new MockHttpServletRequest("GET", "/"));
+        Assertions.assertTrue(png.getHeader(HttpHeaders.CONTENT_DISPOSITION).startsWith("inline"));
+        Assertions.assertEquals("sandbox", png.getHeader("Content-Security-Policy"));
+        Assertions.assertEquals("nosniff", png.getHeader("X-Content-Type-Options"));
+    }
+
+    @Test
+    void answerMatchingETagWithNotModified() throws IOException {
+        String etag = get(new MockHttpServletRequest("GET", "/")).getHeader(HttpHeaders.ETAG);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        MockHttpServletResponse response = get(request);
+        Assertions.assertEquals(304, response.getStatus());
+        Assertions.assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void sendSingleRange() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+        MockHttpServletResponse response = get(request);
+        Assertions.assertEquals(206, response.getStatus());
+        Assertions.assertEquals("bytes 2-4/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        Assertions.assertEquals("234", response.getContentAsString());
+    }
+
+    @Test
+    void rejectUnsatisfiableRange() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader(HttpHeaders.RANGE, "bytes=20-");
+        MockHttpServletResponse response = get(request);
+        Assertions.assertEquals(416, response.getStatus());
+        Assertions.assertEquals("bytes */10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void ignoreRangeOfOutdatedVersion() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"outdated\"");
+        MockHttpServletResponse response = get(request);
+        Assertions.assertEquals(200, response.getStatus());
+        Assertions.assertArrayEquals(CONTENT, response.getContentAsByteArray());
+    }
+
+    @Test
+    void sendRangeOnlyForExactLastModified() throws IOException {
+        long lastModified = get(new MockHttpServletRequest("GET", "/")).getDateHeader(HttpHeaders.LAST_MODIFIED);
+        MockHttpServletRequest exact = new MockHttpServletRequest("GET", "/");
+        exact.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+        exact.addHeader(HttpHeaders.IF_RANGE, lastModified);
+        Assertions.assertEquals(206, get(exact).getStatus());
+
+        MockHttpServletRequest later = new MockHttpServletRequest("GET", "/");
+        later.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+        later.addHeader(HttpHeaders.IF_RANGE, lastModified + 60_000);
+        MockHttpServletResponse response = get(later);
+        Assertions.assertEquals(200, response.getStatus());
+        Assertions.assertArrayEquals(CONTENT, response.getContentAsByteArray());
+    }
+
+    @Test
+    void serveHotImageFromCache() throws IOException {
+        deliveryService = new ImageDeliveryService(imageService, new HotImageCache(new SimpleMeterRegistry(), true, 1024, 1024), new SimpleMeterRegistry(), Long.MAX_VALUE);
+        get(new MockHttpServletRequest("GET", "/"));
+        // Served from memory, without any file system access
+        Files.delete(file);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader(HttpHeaders.RANGE, "bytes=-3");
+        MockHttpServletResponse response = get(request);
+        Assertions.assertEquals(206, response.getStatus());
+        Assertions.assertEquals("789", response.getContentAsString());
+    }
+
+    /**
+     * Cache, that runs given action right before it loads a file, like a concurrent upload would do
+     */
+    private static HotImageCache cacheChangingFileBeforeLoad(Runnable change) {
+        return new HotImageCache(new SimpleMeterRegistry(), true, 1024, 1024) {
+            @Override
+            public CachedImage load(Path file, String contentType) throws IOException {
+                change.run();
+                return super.load(file, contentType);
+            }
+        };
+    }
+
+    @Test
+    void describeContentThatHasActuallyBeenRead() throws IOException {
+        deliveryService = new ImageDeliveryService(imageService, cacheChangingFileBeforeLoad(() -> {
+            try {
+                Files.write(file, "abcd".getBytes());
+            } catch (IOException exc) {
+                throw new IllegalStateException(exc);
+            }
+        }), new SimpleMeterRegistry(), Long.MAX_VALUE);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-8");
+        MockHttpServletResponse response = get(request);
+        Assertions.assertEquals(206, response.getStatus());
+        Assertions.assertEquals("bytes 0-3/4", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        Assertions.assertEquals(4, response.getContentLength());
+        Assertions.assertEquals("abcd", response.getContentAsString());
+    }
+
+    @Test
+    void reportFileDeletedBeforeLoadAsNotFound() {
+        deliveryService = new ImageDeliveryService(imageService, cacheChangingFileBeforeLoad(() -> {
+            try {
+                Files.delete(file);
+            } catch (IOException exc) {
+                throw new IllegalStateException(exc);
+            }
+        }), new SimpleMeterRegistry(), Long.MAX_VALUE);
+        Assertions.assertThrows(StorageFileNotFoundException.class, () -> get(new MockHttpServletRequest("GET", "/")));
+    }
+}
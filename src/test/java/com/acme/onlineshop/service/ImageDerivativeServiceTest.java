@@ -0,0 +1,93 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.persistence.item.LargeImage;
+import com.acme.onlineshop.persistence.item.LargeImageRepository;
+import com.acme.onlineshop.persistence.item.SmallImage;
+import com.acme.onlineshop.persistence.item.SmallImageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+public class ImageDerivativeServiceTest {
+
+    @TempDir
+    Path root;
+
+    private SmallImageRepository smallImageRepository;
+    private LargeImageRepository largeImageRepository;
+    private ImageDerivativeService derivativeService;
+
+    @BeforeEach
+    void setUp() {
+        ImageService imageService = Mockito.mock(ImageService.class);
+        Mockito.when(imageService.getRootLocation()).thenReturn(root);
+        smallImageRepository = Mockito.mock(SmallImageRepository.class);
+        Mockito.when(smallImageRepository.findByLocation(ArgumentMatchers.anyString())).thenReturn(Optional.empty());
+        Mockito.when(smallImageRepository.save(ArgumentMatchers.any(SmallImage.class))).thenAnswer(call -> call.getArgument(0));
+        largeImageRepository = Mockito.mock(LargeImageRepository.class);
+        Mockito.when(largeImageRepository.findByLocation(ArgumentMatchers.anyString())).thenReturn(Optional.empty());
+        Mockito.when(largeImageRepository.save(ArgumentMatchers.any(LargeImage.class))).thenAnswer(call -> call.getArgument(0));
+        derivativeService = new ImageDerivativeService(imageService, smallImageRepository, largeImageRepository, new SimpleMeterRegistry(),
+                16, 32, 64, 1, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        derivativeService.shutdown();
+    }
+
+    @Test
+    void resolveNextToOriginal() {
+        Path derivative = ImageDerivativeService.resolve(Path.of("alice", "shoe.png"), ImageDerivativeService.Derivative.THUMBNAIL);
+
+        Assertions.assertEquals(Path.of("alice", ImageDerivativeService.DERIVATIVE_DIRECTORY), derivative.getParent());
+        Assertions.assertTrue(derivative.getFileName().toString().startsWith("shoe_"));
+        Assertions.assertTrue(derivative.getFileName().toString().endsWith("_thumbnail.jpg"));
+        Assertions.assertEquals(derivative, ImageDerivativeService.resolve(Path.of("alice", "shoe.png"), ImageDerivativeService.Derivative.THUMBNAIL));
+        Assertions.assertNotEquals(derivative, ImageDerivativeService.resolve(Path.of("alice", "shoe.png"), ImageDerivativeService.Derivative.ZOOM));
+    }
+
+    @Test
+    void resolveDistinctDerivativesOfSimilarNames() {
+        Set<Path> derivatives = new HashSet<>();
+        for (String name : List.of("shoe.png", "shoe.jpg", "shoe .png", "shoe_.png", "shoe")) {
+            derivatives.add(ImageDerivativeService.resolve(Path.of("alice", name), ImageDerivativeService.Derivative.LISTING));
+        }
+        Assertions.assertEquals(5, derivatives.size());
+    }
+
+    @Test
+    void generateAllDerivativesOfEachOriginal() throws IOException {
+        BufferedImage image = new BufferedImage(100, 50, BufferedImage.TYPE_INT_RGB);
+        ImageIO.write(image, "png", Files.createDirectories(root.resolve("alice")).resolve("shoe.png").toFile());
+        ImageIO.write(image, "jpeg", root.resolve("alice").resolve("shoe.jpg").toFile());
+
+        derivativeService.generate(Path.of("alice", "shoe.png"));
+        derivativeService.generate(Path.of("alice", "shoe.jpg"));
+
+        try (Stream<Path> files = Files.list(root.resolve("alice").resolve(ImageDerivativeService.DERIVATIVE_DIRECTORY))) {
+            Assertions.assertEquals(6, files.count());
+        }
+        BufferedImage thumbnail = ImageIO.read(root.resolve(ImageDerivativeService.resolve(Path.of("alice", "shoe.png"), ImageDerivativeService.Derivative.THUMBNAIL)).toFile());
+        Assertions.assertEquals(16, thumbnail.getWidth());
+        Assertions.assertEquals(8, thumbnail.getHeight());
+        Mockito.verify(smallImageRepository, Mockito.times(4)).save(ArgumentMatchers.any(SmallImage.class));
+        Mockito.verify(largeImageRepository, Mockito.times(2)).save(ArgumentMatchers.any(LargeImage.class));
+    }
+}
@@ -0,0 +1,138 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.StockLevel;
+import com.acme.onlineshop.dto.StockReservation;
+import com.acme.onlineshop.persistence.item.StockChangeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class InventoryServiceTest {
+
+    private final static long HOT_ITEM = 1;
+
+    @Autowired
+    private StockChangeRepository changeRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private InventoryService inventoryService;
+
+    @BeforeEach
+    void setUp() {
+        changeRepository.deleteAll();
+        inventoryService = newService();
+    }
+
+    private InventoryService newService() {
+        return new InventoryService(changeRepository, transactionManager, new SimpleMeterRegistry(), 8, Duration.ofMinutes(15), 2);
+    }
+
+    /**
+     * Runs given amount of single piece reservations of the hot item on each thread, all starting at once
+     *
+     * @return Successful reservations
+     */
+    private List<StockReservation> reserveConcurrently(int threads, int attemptsPerThread) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<List<StockReservation>>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    List<StockReservation> reservations = new ArrayList<>();
+                    for (int attempt = 0; attempt < attemptsPerThread; attempt++) {
+                        inventoryService.reserve(HOT_ITEM, 1).ifPresent(reservations::add);
+                    }
+                    return reservations;
+                }));
+            }
+            start.countDown();
+            List<StockReservation> reservations = new ArrayList<>();
+            for (Future<List<StockReservation>> result : results) {
+                reservations.addAll(result.get(30, TimeUnit.SECONDS));
+            }
+            return reservations;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void neverOversellHotItemUnderContention() throws Exception {
+        inventoryService.restock(HOT_ITEM, 1000);
+
+        List<StockReservation> reservations = reserveConcurrently(8, 250);
+
+        Assertions.assertEquals(1000, reservations.size());
+        Assertions.assertEquals(1000, reservations.stream().mapToLong(StockReservation::id).distinct().count());
+        Assertions.assertEquals(0, inventoryService.getAvailable(HOT_ITEM));
+        Assertions.assertTrue(inventoryService.reserve(HOT_ITEM, 1).isEmpty());
+    }
+
+    @Test
+    void returnExpiredAndCancelledReservationsIntoStock() {
+        inventoryService.restock(HOT_ITEM, 10);
+        StockReservation sold = inventoryService.reserve(HOT_ITEM, 3).orElseThrow();
+        StockReservation cancelled = inventoryService.reserve(HOT_ITEM, 2).orElseThrow();
+        StockReservation expired = inventoryService.reserve(HOT_ITEM, 5).orElseThrow();
+        Assertions.assertTrue(inventoryService.reserve(HOT_ITEM, 1).isEmpty());
+
+        Assertions.assertTrue(inventoryService.confirm(sold.id()));
+        Assertions.assertTrue(inventoryService.cancel(cancelled.id()));
+        Assertions.assertEquals(List.of(new StockLevel(HOT_ITEM, 2, 5)), inventoryService.getLevels());
+
+        Assertions.assertEquals(1, inventoryService.expireReservations(expired.expiresAt().plusMillis(1)));
+        Assertions.assertFalse(inventoryService.confirm(expired.id()));
+        Assertions.assertEquals(7, inventoryService.getAvailable(HOT_ITEM));
+        Assertions.assertEquals(0, inventoryService.expireReservations(Instant.now()));
+    }
+
+    @Test
+    void journalInBatchesAndReloadStock() {
+        inventoryService.restock(HOT_ITEM, 10);
+        inventoryService.restock(2, 4);
+        inventoryService.confirm(inventoryService.reserve(HOT_ITEM, 3).orElseThrow().id());
+        // Not journaled, since it isn't sold yet
+        inventoryService.reserve(2, 1);
+
+        Assertions.assertEquals(3, inventoryService.flushJournal());
+        Assertions.assertEquals(3, changeRepository.count());
+
+        InventoryService restarted = newService();
+        restarted.load();
+        Assertions.assertEquals(7, restarted.getAvailable(HOT_ITEM));
+        Assertions.assertEquals(4, restarted.getAvailable(2));
+    }
+
+    @Test
+    void takeAllOrNothingAcrossStripes() {
+        StripedStock stock = new StripedStock(4);
+        stock.add(6);
+
+        // 6 pieces spread as 2, 2, 1, 1: only the slow path collects 5 of them
+        Assertions.assertTrue(stock.tryTake(5));
+        Assertions.assertFalse(stock.tryTake(2));
+        Assertions.assertEquals(1, stock.available());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new StripedStock(3));
+    }
+}
@@ -0,0 +1,132 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.ItemImportStatus;
+import com.acme.onlineshop.persistence.item.ImportCheckpoint;
+import com.acme.onlineshop.persistence.item.ImportCheckpointRepository;
+import com.acme.onlineshop.persistence.item.Item;
+import com.acme.onlineshop.persistence.item.ItemRepository;
+import com.acme.onlineshop.persistence.item.MainCategory;
+import com.acme.onlineshop.persistence.item.MainCategoryRepository;
+import com.acme.onlineshop.persistence.item.SubCategory;
+import com.acme.onlineshop.persistence.item.SubCategoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ItemImportServiceTest {
+
+    @TempDir
+    Path directory;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private ItemRepository itemRepository;
+    @Autowired
+    private MainCategoryRepository mainCategoryRepository;
+    @Autowired
+    private SubCategoryRepository subCategoryRepository;
+    @Autowired
+    private ImportCheckpointRepository checkpointRepository;
+
+    private ItemImportService importService;
+    private SubCategory vinyl;
+
+    @BeforeEach
+    void setUp() {
+        CategoryService categoryService = new CategoryService(mainCategoryRepository, subCategoryRepository, new CatalogCacheService(entityManagerFactory),
+                new SimpleMeterRegistry());
+        MainCategory music = categoryService.addNewMainCategory(new MainCategory("Music", "CDs"));
+        vinyl = categoryService.addNewSubCategory(new SubCategory("Vinyl", "...", music));
+        importService = new ItemImportService(entityManager, categoryService, checkpointRepository, transactionManager, new SimpleMeterRegistry(),
+                directory.toString(), 2, 20);
+    }
+
+    @AfterEach
+    void tearDown() {
+        itemRepository.deleteAll();
+        checkpointRepository.deleteAll();
+        subCategoryRepository.deleteAll();
+        mainCategoryRepository.deleteAll();
+    }
+
+    @Test
+    void importCsvByNameOrSlugAndIgnoreUnknownCategories() throws IOException {
+        Files.writeString(directory.resolve("items.csv"), """
+                Category,SubCategory
+                Music,Vinyl
+                music,
+                Books,
+                music,cd
+                """);
+
+        ItemImportStatus status = importService.importFiles(List.of("items.csv"));
+
+        Assertions.assertNull(status.error());
+        Assertions.assertEquals(4, status.rowsRead());
+        Assertions.assertEquals(2, status.rowsImported());
+        Assertions.assertEquals(2, status.rowsInvalid());
+        List<Item> items = itemRepository.findAll();
+        Assertions.assertEquals(2, items.size());
+        Assertions.assertEquals(1, items.stream().filter(item -> item.getSubCategory() != null && item.getSubCategory().getId() == vinyl.getId()).count());
+        ImportCheckpoint checkpoint = checkpointRepository.findById("items.csv").orElseThrow();
+        Assertions.assertTrue(checkpoint.isCompleted());
+        Assertions.assertEquals(4, checkpoint.getRows());
+    }
+
+    @Test
+    void continueAfterLastCommittedRowAndSkipCompletedFiles() throws IOException {
+        Path file = directory.resolve("items.ndjson");
+        Files.writeString(file, """
+                {"category": "Music", "subCategory": "Vinyl"}
+                {"category": "Music"}
+                not json
+                {"category": "Music", "subCategory": "Vinyl"}
+                """);
+        ImportCheckpoint interrupted = new ImportCheckpoint("items.ndjson", Files.size(file), Files.getLastModifiedTime(file).toMillis());
+        interrupted.setRows(2);
+        checkpointRepository.save(interrupted);
+
+        ItemImportStatus status = importService.importFiles(List.of("items.ndjson"));
+
+        Assertions.assertEquals(2, status.rowsSkipped());
+        Assertions.assertEquals(2, status.rowsRead());
+        Assertions.assertEquals(1, status.rowsImported());
+        Assertions.assertEquals(1, status.rowsInvalid());
+        Assertions.assertEquals(1, itemRepository.count());
+
+        status = importService.importFiles(List.of("items.ndjson"));
+
+        Assertions.assertEquals(0, status.rowsRead());
+        Assertions.assertEquals(4, status.rowsSkipped());
+        Assertions.assertEquals(1, itemRepository.count());
+    }
+
+    @Test
+    void rejectFilesOutsideImportDirectory() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> importService.importFiles(List.of("../items.csv")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> importService.importFiles(List.of("missing.csv")));
+    }
+}
@@ -0,0 +1,147 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.StatementGuard;
+import com.acme.onlineshop.dto.ItemTile;
+import com.acme.onlineshop.dto.ItemTilePage;
+import com.acme.onlineshop.persistence.item.Item;
+import com.acme.onlineshop.persistence.item.ItemRepository;
+import com.acme.onlineshop.persistence.item.LargeImage;
+import com.acme.onlineshop.persistence.item.MainCategory;
+import com.acme.onlineshop.persistence.item.MainCategoryRepository;
+import com.acme.onlineshop.persistence.item.SmallImage;
+import com.acme.onlineshop.persistence.item.SubCategory;
+import com.acme.onlineshop.persistence.item.SubCategoryRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.List;
+
+@DataJpaTest
+public class ItemServiceTest {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private ItemRepository itemRepository;
+    @Autowired
+    private MainCategoryRepository mainCategoryRepository;
+    @Autowired
+    private SubCategoryRepository subCategoryRepository;
+
+    private ItemService itemService;
+    private SubCategory shoes;
+
+    @BeforeEach
+    void setUp() {
+        itemService = new ItemService(itemRepository);
+        MainCategory clothes = mainCategoryRepository.save(new MainCategory("Clothes", "Clothes"));
+        SubCategory shirts = subCategoryRepository.save(new SubCategory("Shirts", "Shirts", clothes));
+        shoes = subCategoryRepository.save(new SubCategory("Shoes", "Shoes", clothes));
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            items.add(new Item(clothes, (i % 3 == 0) ? null : (i % 3 == 1) ? shoes : shirts, null, new ArrayList<>()));
+        }
+        itemRepository.saveAll(items);
+    }
+
+    private List<ItemTile> listAll(Long subCategoryId, int size) {
+        List<ItemTile> tiles = new ArrayList<>();
+        String cursor = null;
+        do {
+            ItemTilePage page = itemService.listTiles(subCategoryId, cursor, size);
+            Assertions.assertTrue(page.items().size() <= size);
+            tiles.addAll(page.items());
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        return tiles;
+    }
+
+    @Test
+    void listEveryItemExactlyOnceInCatalogOrder() {
+        List<ItemTile> tiles = listAll(null, 2);
+        Assertions.assertEquals(7, tiles.size());
+        Assertions.assertEquals(7, tiles.stream().mapToLong(ItemTile::id).distinct().count());
+        // Items without sub-category first, then ordered by (subCategory, id)
+        Assertions.assertNull(tiles.get(0).subCategoryId());
+        Assertions.assertNull(tiles.get(2).subCategoryId());
+        for (int i = 4; i < tiles.size(); i++) {
+            ItemTile previous = tiles.get(i - 1);
+            ItemTile current = tiles.get(i);
+            Assertions.assertTrue(previous.subCategoryId() < current.subCategoryId()
+                    || (previous.subCategoryId().equals(current.subCategoryId()) && previous.id() < current.id()));
+        }
+        Assertions.assertEquals("Clothes", tiles.get(0).categoryName());
+    }
+
+    @Test
+    void listSingleSubCategory() {
+        List<ItemTile> tiles = listAll(shoes.getId(), 1);
+        Assertions.assertEquals(2, tiles.size());
+        Assertions.assertTrue(tiles.stream().allMatch(tile -> tile.subCategoryName().equals("Shoes")));
+    }
+
+    @Test
+    void rejectInvalidCursor() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> itemService.listTiles(null, "not a cursor", 10));
+    }
+
+    @Test
+    void renderCategoryGridWithSingleQuery() {
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 48; i++) {
+            SmallImage thumbnail = new SmallImage();
+            thumbnail.setLocation("alice/tile%d.png".formatted(i));
+            items.add(new Item(shoes.getCategory(), shoes, thumbnail, new ArrayList<>()));
+        }
+        itemRepository.saveAll(items);
+        entityManager.flush();
+        entityManager.clear();
+        entityManagerFactory.getCache().evictAll();
+
+        ItemTilePage page = StatementGuard.assertMaxStatements(entityManagerFactory, 1, () -> itemService.listTiles(shoes.getId(), null, 48));
+
+        // 2 items of the set up have no thumbnail, the grid starts with them
+        Assertions.assertEquals(48, page.items().size());
+        Assertions.assertEquals(46, page.items().stream().filter(tile -> tile.thumbnail() != null).count());
+        Assertions.assertTrue(page.items().stream().allMatch(tile -> tile.subCategoryName().equals("Shoes") && tile.categoryName().equals("Clothes")));
+        Assertions.assertNotNull(page.nextCursor());
+    }
+
+    @Test
+    void loadDetailWithAllImages() {
+        SmallImage thumbnail = new SmallImage();
+        thumbnail.setLocation("alice/thumbnail.png");
+        Item item = new Item(shoes.getCategory(), shoes, thumbnail, new ArrayList<>());
+        for (int i = 0; i < 3; i++) {
+            LargeImage image = new LargeImage();
+            image.setLocation("alice/image%d.png".formatted(i));
+            image.setItems(new ArrayList<>(List.of(item)));
+            item.getImages().add(image);
+        }
+        itemRepository.save(item);
+        entityManager.flush();
+        entityManager.clear();
+        entityManagerFactory.getCache().evictAll();
+
+        Item detail = StatementGuard.assertMaxStatements(entityManagerFactory, 1, () -> {
+            Item loaded = itemService.findDetail(item.getId()).orElseThrow();
+            Assertions.assertEquals("alice/thumbnail.png", loaded.getThumbnail().getLocation());
+            Assertions.assertEquals(3, loaded.getImages().size());
+            loaded.getImages().forEach(image -> Assertions.assertTrue(image.getLocation().startsWith("alice/image")));
+            Assertions.assertEquals("Shoes", loaded.getSubCategory().getName());
+            Assertions.assertEquals("Clothes", loaded.getSubCategory().getCategory().getName());
+            return loaded;
+        });
+
+        Assertions.assertEquals(item.getId(), detail.getId());
+    }
+}
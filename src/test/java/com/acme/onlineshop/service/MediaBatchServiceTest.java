@@ -0,0 +1,98 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.BatchUploadResult;
+import com.acme.onlineshop.exception.StorageException;
+import com.acme.onlineshop.persistence.item.LargeImage;
+import com.acme.onlineshop.persistence.user.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class MediaBatchServiceTest {
+
+    private final User user = new User();
+    private MediaBatchService batchService;
+
+    @BeforeEach
+    void setUp() {
+        user.setUsername("user");
+        ImageService imageService = Mockito.mock(ImageService.class);
+        Mockito.when(imageService.store(ArgumentMatchers.any(MultipartFile.class), ArgumentMatchers.eq(user))).thenAnswer(call -> {
+            MultipartFile file = call.getArgument(0);
+            if (file.getOriginalFilename().endsWith(".txt")) {
+                throw new StorageException("Not an image");
+            }
+            Assertions.assertTrue(file.getSize() > 0);
+            return Path.of("user", file.getOriginalFilename());
+        });
+        batchService = new MediaBatchService(imageService, Mockito.mock(ImageDerivativeService.class), new SimpleMeterRegistry(), 2, 10, 10 * 1024 * 1024);
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchService.shutdown();
+    }
+
+    private static byte[] zip(Object... namesAndSizes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < namesAndSizes.length; i += 2) {
+                zip.putNextEntry(new ZipEntry((String) namesAndSizes[i]));
+                zip.write(new byte[(Integer) namesAndSizes[i + 1]]);
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void storeArchiveEntriesInOrder() throws IOException {
+        byte[] archive = zip("a.png", 10, "folder/b.jpg", 20, "notes.txt", 5, "__MACOSX/._a.png", 1);
+        List<BatchUploadResult> results = batchService.storeArchive(new ByteArrayInputStream(archive), user);
+        Assertions.assertEquals(List.of(
+                BatchUploadResult.stored("a.png", "user/a.png"),
+                BatchUploadResult.stored("b.jpg", "user/b.jpg"),
+                BatchUploadResult.rejected("notes.txt", "Not an image")), results);
+    }
+
+    @Test
+    void rejectOversizedEntry() throws IOException {
+        byte[] archive = zip("huge.png", LargeImage.MAX_SIZE_IN_KILO_BYTES * 1024 + 1, "small.png", 1);
+        List<BatchUploadResult> results = batchService.storeArchive(new ByteArrayInputStream(archive), user);
+        Assertions.assertFalse(results.get(0).stored());
+        Assertions.assertTrue(results.get(1).stored());
+    }
+
+    @Test
+    void rejectTooManyFiles() throws IOException {
+        Object[] entries = new Object[22];
+        for (int i = 0; i < 11; i++) {
+            entries[2 * i] = "image%d.png".formatted(i);
+            entries[2 * i + 1] = 1;
+        }
+        Assertions.assertThrows(StorageException.class, () -> batchService.storeArchive(new ByteArrayInputStream(zip(entries)), user));
+    }
+
+    @Test
+    void rejectLaterFilesWithSameName() throws IOException {
+        byte[] archive = zip("a/x.jpg", 10, "b/x.jpg", 20, "y.jpg", 5);
+        List<BatchUploadResult> results = batchService.storeArchive(new ByteArrayInputStream(archive), user);
+        Assertions.assertEquals(List.of(
+                BatchUploadResult.stored("x.jpg", "user/x.jpg"),
+                BatchUploadResult.rejected("x.jpg", "Batch contains another file with this name."),
+                BatchUploadResult.stored("y.jpg", "user/y.jpg")), results);
+    }
+}
@@ -0,0 +1,97 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.MediaGcReport;
+import com.acme.onlineshop.persistence.item.ImageRepository;
+import com.acme.onlineshop.persistence.user.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class MediaGarbageCollectionServiceTest {
+
+    @TempDir
+    Path root;
+
+    private StorageService storageService;
+    private UserRepository userRepository;
+    private ImageRepository imageRepository;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storageService = new StorageService(root, null, null, null, null, 0) { };
+        userRepository = Mockito.mock(UserRepository.class);
+        Mockito.when(userRepository.existsUserByUsername("alice")).thenReturn(true);
+        imageRepository = Mockito.mock(ImageRepository.class);
+        Mockito.when(imageRepository.findAllLocations()).thenReturn(List.of("alice/derivatives/kept_thumb.jpg", "/alice/derivatives/missing_thumb.jpg"));
+
+        write("alice/image.png", 10);
+        write("alice/derivatives/kept_thumb.jpg", 20);
+        write("alice/derivatives/orphan_thumb.jpg", 30);
+        write("bob/image.png", 40);
+        write("bob/derivatives/image_thumb.jpg", 50);
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.toList()) {
+                Files.setLastModifiedTime(path, FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+            }
+        }
+        // Too young to be collected
+        write("alice/derivatives/new_thumb.jpg", 60);
+    }
+
+    private void write(String location, int size) throws IOException {
+        Path file = root.resolve(location);
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[size]);
+    }
+
+    private MediaGarbageCollectionService collector(boolean quarantine) {
+        return new MediaGarbageCollectionService(storageService, Mockito.mock(ContentAddressedStorage.class), userRepository, imageRepository,
+                new SimpleMeterRegistry(), true, quarantine, Duration.ofHours(1), Duration.ofDays(7), 0, 0);
+    }
+
+    @Test
+    void quarantineOrphans() throws IOException {
+        MediaGcReport report = collector(true).collect();
+
+        Assertions.assertEquals(1, report.orphanedUserDirectories());
+        Assertions.assertEquals(3, report.orphanedFiles());
+        Assertions.assertEquals(120, report.orphanedBytes());
+        Assertions.assertEquals(0, report.reclaimedBytes());
+        Assertions.assertEquals(List.of("alice/derivatives/missing_thumb.jpg"), report.danglingLocations());
+        Assertions.assertNotNull(report.finishedAt());
+
+        Assertions.assertFalse(Files.exists(root.resolve("bob")));
+        Assertions.assertFalse(Files.exists(root.resolve("alice/derivatives/orphan_thumb.jpg")));
+        Assertions.assertTrue(Files.exists(root.resolve("alice/image.png")));
+        Assertions.assertTrue(Files.exists(root.resolve("alice/derivatives/kept_thumb.jpg")));
+        Assertions.assertTrue(Files.exists(root.resolve("alice/derivatives/new_thumb.jpg")));
+        try (Stream<Path> quarantined = Files.walk(root.resolve(StorageService.QUARANTINE_DIRECTORY))) {
+            Assertions.assertEquals(3, quarantined.filter(Files::isRegularFile).count());
+        }
+        // Quarantine belongs to no user
+        Assertions.assertEquals(List.of("alice"), storageService.listUserDirectories());
+    }
+
+    @Test
+    void deleteOrphans() throws IOException {
+        MediaGcReport report = collector(false).collect();
+
+        Assertions.assertEquals(3, report.orphanedFiles());
+        Assertions.assertEquals(120, report.reclaimedBytes());
+        Assertions.assertFalse(Files.exists(root.resolve("bob")));
+        Assertions.assertFalse(Files.exists(root.resolve(StorageService.QUARANTINE_DIRECTORY)));
+        Assertions.assertEquals(List.of("alice"), storageService.listUserDirectories());
+    }
+}
@@ -0,0 +1,83 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.persistence.user.User;
+import com.acme.onlineshop.utils.MediaLayout;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class MediaLayoutMigrationServiceTest {
+
+    @TempDir
+    Path root;
+
+    private final User user = new User();
+    private StorageService flatStorage;
+    private StorageService shardedStorage;
+    private MediaLayoutMigrationService migrationService;
+
+    @BeforeEach
+    void setUp() {
+        user.setUsername("alice");
+        flatStorage = new StorageService(root, null, null, null, null, 0) { };
+        shardedStorage = new StorageService(root, null, null, null, null, 2) { };
+        migrationService = new MediaLayoutMigrationService(shardedStorage, new SimpleMeterRegistry(), 2, Duration.ZERO);
+    }
+
+    private static MockMultipartFile upload(String name, String content) {
+        return new MockMultipartFile("file", name, "image/png", content.getBytes());
+    }
+
+    @Test
+    void moveFilesWhileTheyStayReadable() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            flatStorage.store(upload("image%d.png".formatted(i), "content" + i), user);
+        }
+        // Not migrated yet, but readable through the sharded layout already
+        Path unmigrated = shardedStorage.load("alice/image3.png");
+        Assertions.assertEquals(root.resolve("alice/image3.png"), unmigrated);
+
+        migrationService.migrate();
+
+        Assertions.assertEquals(5, migrationService.getStatus().movedFiles());
+        Assertions.assertEquals(0, migrationService.getStatus().failedFiles());
+        for (int i = 0; i < 5; i++) {
+            String name = "image%d.png".formatted(i);
+            Path expected = root.resolve("alice").resolve(MediaLayout.locate(name, 2));
+            Assertions.assertEquals(expected, shardedStorage.load("alice/" + name));
+            Assertions.assertEquals("content" + i, Files.readString(expected));
+            Assertions.assertFalse(Files.exists(root.resolve("alice").resolve(name)));
+        }
+        try (Stream<Path> files = shardedStorage.loadAll(user)) {
+            Assertions.assertEquals(5, files.count());
+        }
+    }
+
+    @Test
+    void keepNewerUploadOverOutdatedCopy() throws IOException {
+        flatStorage.store(upload("image.png", "old"), user);
+        // Upload with the new layout replaces the flat copy right away
+        shardedStorage.store(upload("image.png", "new"), user);
+        Assertions.assertFalse(Files.exists(root.resolve("alice/image.png")));
+
+        // An outdated copy, which appeared in between, never overwrites the newer file
+        Files.writeString(root.resolve("alice/image.png"), "old");
+        migrationService.migrate();
+
+        Path file = shardedStorage.load("alice/image.png");
+        Assertions.assertEquals("new", Files.readString(file));
+        try (Stream<Path> files = shardedStorage.files("alice")) {
+            Assertions.assertEquals(List.of(file), files.toList());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.MediaFilePage;
+import com.acme.onlineshop.persistence.media.MediaFile;
+import com.acme.onlineshop.persistence.media.MediaFileRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+@DataJpaTest
+public class MediaManifestServiceTest {
+
+    @Autowired
+    private MediaFileRepository fileRepository;
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private MediaManifestService manifestService;
+
+    @BeforeEach
+    void setUp() {
+        manifestService = new MediaManifestService(fileRepository, entityManager, transactionManager);
+        fileRepository.deleteAll();
+        Instant uploadedAt = Instant.parse("2022-08-01T12:00:00Z");
+        // Sizes repeat, so pages have to continue by user & name within equal sizes
+        fileRepository.saveAll(List.of(
+                new MediaFile("bob", "a.png", null, 20, uploadedAt),
+                new MediaFile("alice", "c.png", null, 10, uploadedAt.plusSeconds(2)),
+                new MediaFile("alice", "a.png", null, 20, uploadedAt.plusSeconds(1)),
+                new MediaFile("bob", "b.png", null, 10, uploadedAt),
+                new MediaFile("alice", "b.png", null, 10, uploadedAt.plusSeconds(3))));
+    }
+
+    private List<String> listAll(String username, MediaManifestService.SortField sortField, Sort.Direction direction) {
+        List<String> files = new ArrayList<>();
+        String cursor = null;
+        do {
+            MediaFilePage page = manifestService.list(username, cursor, 2, sortField, direction);
+            Assertions.assertTrue(page.files().size() <= 2);
+            page.files().forEach(file -> files.add(file.getUsername() + "/" + file.getName()));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        return files;
+    }
+
+    @Test
+    void listFilesOfUserByName() {
+        Assertions.assertEquals(List.of("alice/a.png", "alice/b.png", "alice/c.png"), listAll("alice", MediaManifestService.SortField.NAME, Sort.Direction.ASC));
+        Assertions.assertEquals(List.of("bob/b.png", "bob/a.png"), listAll("bob", MediaManifestService.SortField.NAME, Sort.Direction.DESC));
+    }
+
+    @Test
+    void listFilesOfAllUsersBySize() {
+        Assertions.assertEquals(List.of("alice/b.png", "alice/c.png", "bob/b.png", "alice/a.png", "bob/a.png"),
+                listAll(null, MediaManifestService.SortField.SIZE, Sort.Direction.ASC));
+        Assertions.assertEquals(List.of("bob/a.png", "alice/a.png", "bob/b.png", "alice/c.png", "alice/b.png"),
+                listAll(null, MediaManifestService.SortField.SIZE, Sort.Direction.DESC));
+    }
+
+    @Test
+    void listFilesOfUserByUploadTime() {
+        Assertions.assertEquals(List.of("alice/b.png", "alice/c.png", "alice/a.png"), listAll("alice", MediaManifestService.SortField.UPLOADED, Sort.Direction.DESC));
+    }
+
+    @Test
+    void rejectInvalidCursor() {
+        String nameCursor = manifestService.list(null, null, 1, MediaManifestService.SortField.NAME, Sort.Direction.ASC).nextCursor();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> manifestService.list(null, nameCursor, 1, MediaManifestService.SortField.SIZE, Sort.Direction.ASC));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> manifestService.list(null, "not a cursor", 1, MediaManifestService.SortField.NAME, Sort.Direction.ASC));
+    }
+}
@@ -0,0 +1,111 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.exception.StorageException;
+import com.acme.onlineshop.persistence.media.MediaUsage;
+import com.acme.onlineshop.persistence.media.MediaUsageRepository;
+import com.acme.onlineshop.persistence.user.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class MediaQuotaServiceTest {
+
+    @TempDir
+    Path root;
+
+    private final Map<String, MediaUsage> ledger = new ConcurrentHashMap<>();
+    private MediaQuotaService quotaService;
+
+    @BeforeEach
+    void setUp() {
+        MediaUsageRepository repository = Mockito.mock(MediaUsageRepository.class);
+        Mockito.when(repository.findById(ArgumentMatchers.anyString())).thenAnswer(call -> Optional.ofNullable(ledger.get(call.<String>getArgument(0))));
+        Mockito.when(repository.save(ArgumentMatchers.any(MediaUsage.class))).thenAnswer(call -> {
+            MediaUsage usage = call.getArgument(0);
+            ledger.put(usage.getUsername(), usage);
+            return usage;
+        });
+        quotaService = new MediaQuotaService(repository, Mockito.mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), 1000);
+    }
+
+    @Test
+    void bookUploadsIncrementally() throws IOException {
+        quotaService.store("user", 400, OptionalLong::empty, () -> null);
+        quotaService.store("user", 300, OptionalLong::empty, () -> null);
+        // Overwrites the first file
+        quotaService.store("user", 100, () -> OptionalLong.of(400), () -> null);
+        Assertions.assertEquals(new MediaQuotaService.Usage(400, 2), quotaService.getUsage("user"));
+    }
+
+    @Test
+    void rejectUploadExceedingQuota() throws IOException {
+        quotaService.store("user", 900, OptionalLong::empty, () -> null);
+        AtomicBoolean written = new AtomicBoolean(false);
+        Assertions.assertThrows(StorageException.class, () -> quotaService.store("user", 101, OptionalLong::empty, () -> written.getAndSet(true)));
+        Assertions.assertFalse(written.get());
+        Assertions.assertEquals(new MediaQuotaService.Usage(900, 1), quotaService.getUsage("user"));
+    }
+
+    @Test
+    void reconcileWithActualUsage() throws IOException {
+        quotaService.store("user", 500, OptionalLong::empty, () -> null);
+        quotaService.reconcile("user", () -> new MediaQuotaService.Usage(200, 3));
+        Assertions.assertEquals(new MediaQuotaService.Usage(200, 3), quotaService.getUsage("user"));
+        Assertions.assertNotNull(ledger.get("user").getReconciledAt());
+    }
+
+    @Test
+    void releaseReservationOfFailedWrite() throws IOException {
+        quotaService.store("user", 300, OptionalLong::empty, () -> null);
+        Assertions.assertThrows(IOException.class, () -> quotaService.store("user", 500, OptionalLong::empty, () -> {
+            throw new IOException("Disk full");
+        }));
+        Assertions.assertEquals(new MediaQuotaService.Usage(300, 1), quotaService.getUsage("user"));
+    }
+
+    @Test
+    void bookConcurrentUploadsOfSameNameOnce() throws Exception {
+        User user = new User();
+        user.setUsername("user");
+        StorageService storageService = new StorageService(root, null, null, quotaService, null, 0) { };
+        int uploads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(uploads);
+        try {
+            List<Future<Path>> results = new ArrayList<>();
+            for (int i = 0; i < uploads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return storageService.store(new MockMultipartFile("file", "image.png", "image/png", new byte[100]), user);
+                }));
+            }
+            start.countDown();
+            for (Future<Path> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(new MediaQuotaService.Usage(100, 1), quotaService.getUsage("user"));
+    }
+}
@@ -0,0 +1,182 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.BasketLine;
+import com.acme.onlineshop.dto.PlacedOrder;
+import com.acme.onlineshop.persistence.item.ItemRepository;
+import com.acme.onlineshop.persistence.item.StockChange;
+import com.acme.onlineshop.persistence.item.StockChangeRepository;
+import com.acme.onlineshop.persistence.order.CustomerOrderRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class OrderServiceTest {
+
+    private final static long SHIRT = 1;
+    private final static long SHOES = 2;
+
+    @Autowired
+    private CustomerOrderRepository orderRepository;
+    @Autowired
+    private StockChangeRepository changeRepository;
+    @Autowired
+    private ItemRepository itemRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+    private InventoryService inventoryService;
+    private OrderService orderService;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository.deleteAll();
+        changeRepository.deleteAll();
+        meterRegistry = new SimpleMeterRegistry();
+        PriceService priceService = new PriceService(itemRepository, entityManagerFactory, meterRegistry);
+        priceService.setPrice(SHIRT, 1999);
+        priceService.setPrice(SHOES, 5000);
+        inventoryService = new InventoryService(changeRepository, transactionManager, meterRegistry, 4, Duration.ofMinutes(15), 500);
+        inventoryService.restock(SHIRT, 100);
+        inventoryService.restock(SHOES, 1);
+        orderService = new OrderService(priceService, inventoryService, orderRepository, transactionManager, meterRegistry,
+                50, Duration.ofMillis(50), Duration.ofSeconds(10), Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        orderService.shutdown();
+        orderRepository.deleteAll();
+    }
+
+    @Test
+    void placeOrderOnlyOnceForRetries() {
+        List<BasketLine> lines = List.of(new BasketLine(SHIRT, 2), new BasketLine(SHOES, 1));
+
+        PlacedOrder placed = orderService.place("alice", "checkout-1", lines);
+        PlacedOrder retried = orderService.place("alice", "checkout-1", lines);
+
+        Assertions.assertEquals(placed, retried);
+        Assertions.assertEquals(2 * 1999 + 5000, placed.total());
+        Assertions.assertEquals(1, orderRepository.count());
+        Assertions.assertEquals(98, inventoryService.getAvailable(SHIRT));
+        Assertions.assertEquals(0, inventoryService.getAvailable(SHOES));
+    }
+
+    @Test
+    void scopeIdempotencyKeysByOwner() {
+        PlacedOrder alice = orderService.place("alice", "checkout-1", List.of(new BasketLine(SHIRT, 1)));
+        PlacedOrder bob = orderService.place("bob", "checkout-1", List.of(new BasketLine(SHIRT, 2)));
+
+        Assertions.assertNotEquals(alice.orderId(), bob.orderId());
+        Assertions.assertEquals(2 * 1999, bob.total());
+        Assertions.assertEquals(2, orderRepository.count());
+        Assertions.assertEquals(97, inventoryService.getAvailable(SHIRT));
+    }
+
+    @Test
+    void failOnlyTheBrokenOrderOfABatch() throws Exception {
+        // Longer than the owner column, so only the insert of this order fails
+        String brokenOwner = "x".repeat(200);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<PlacedOrder>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                String owner = (i == 0) ? brokenOwner : "user" + i;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return orderService.place(owner, "checkout-1", List.of(new BasketLine(SHIRT, 1)));
+                }));
+            }
+            start.countDown();
+            ExecutionException broken = Assertions.assertThrows(ExecutionException.class, () -> results.get(0).get(30, TimeUnit.SECONDS));
+            Assertions.assertInstanceOf(IllegalStateException.class, broken.getCause());
+            for (Future<PlacedOrder> result : results.subList(1, results.size())) {
+                Assertions.assertNotNull(result.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assertions.assertEquals(3, orderRepository.count());
+        Assertions.assertEquals(97, inventoryService.getAvailable(SHIRT));
+        Assertions.assertEquals(3, changeRepository.findAll().stream().filter(change -> change.getReason() == StockChange.Reason.SALE).count());
+    }
+
+    @Test
+    void journalSalesWithTheirOrder() {
+        orderService.place("alice", "checkout-1", List.of(new BasketLine(SHIRT, 2), new BasketLine(SHOES, 1)));
+
+        // Written by the commit of the order, not by the next flush of the journal
+        List<StockChange> sales = changeRepository.findAll().stream().filter(change -> change.getReason() == StockChange.Reason.SALE).toList();
+        Assertions.assertEquals(2, sales.size());
+        Assertions.assertEquals(-3, sales.stream().mapToInt(StockChange::getDelta).sum());
+        Assertions.assertEquals(2, inventoryService.flushJournal(), "Only the restocks are queued");
+    }
+
+    @Test
+    void rejectSoldOutAndUnknownItemsWithoutReservingAnything() {
+        Assertions.assertThrows(IllegalStateException.class, () -> orderService.place("alice", "checkout-1", List.of(new BasketLine(SHIRT, 1), new BasketLine(SHOES, 2))));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> orderService.place("alice", "checkout-2", List.of(new BasketLine(42, 1))));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> orderService.place("alice", " ", List.of(new BasketLine(SHIRT, 1))));
+        Assertions.assertEquals(100, inventoryService.getAvailable(SHIRT));
+        Assertions.assertEquals(0, orderRepository.count());
+
+        // Failed checkouts can be retried with the same key
+        Assertions.assertNotNull(orderService.place("alice", "checkout-1", List.of(new BasketLine(SHOES, 1))));
+    }
+
+    @Test
+    void commitConcurrentCheckoutsTogether() throws Exception {
+        int checkouts = 20;
+        ExecutorService executor = Executors.newFixedThreadPool(checkouts);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<PlacedOrder>> results = new ArrayList<>();
+            for (int i = 0; i < checkouts; i++) {
+                String key = "checkout-" + i;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return orderService.place("user" + key, key, List.of(new BasketLine(SHIRT, 1)));
+                }));
+            }
+            start.countDown();
+            for (Future<PlacedOrder> result : results) {
+                Assertions.assertNotNull(result.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assertions.assertEquals(checkouts, orderRepository.count());
+        Assertions.assertEquals(100 - checkouts, inventoryService.getAvailable(SHIRT));
+        // Less transactions than orders
+        long batches = meterRegistry.get("shop.orders.batch.size").summary().count();
+        Assertions.assertTrue(batches < checkouts, "Committed in %d batches".formatted(batches));
+        Assertions.assertEquals(batches, meterRegistry.get("shop.orders.stage").tag("stage", "commit").timer().count());
+        Assertions.assertEquals(checkouts, meterRegistry.get("shop.orders.stage").tag("stage", "total").timer().count());
+    }
+}
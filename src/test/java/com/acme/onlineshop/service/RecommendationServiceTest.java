@@ -0,0 +1,69 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.persistence.order.CustomerOrderRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+public class RecommendationServiceTest {
+
+    /**
+     * Pairs of order ID &amp; item ID, ordered by order ID, like the repository returns them
+     */
+    private final List<long[]> rows = new ArrayList<>();
+    private SimpleMeterRegistry meterRegistry;
+    private CustomerOrderRepository orderRepository;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        orderRepository = Mockito.mock(CustomerOrderRepository.class);
+        Mockito.when(orderRepository.findItemsOfOrdersAfter(ArgumentMatchers.anyLong(), ArgumentMatchers.any(Pageable.class))).thenAnswer(call -> {
+            long afterId = call.getArgument(0);
+            Pageable limit = call.getArgument(1);
+            return rows.stream().filter(row -> row[0] > afterId).limit(limit.getPageSize()).map(row -> new Object[]{row[0], row[1]}).toList();
+        });
+    }
+
+    private void addOrder(long orderId, long... itemIds) {
+        for (long itemId : itemIds) {
+            rows.add(new long[]{orderId, itemId});
+        }
+    }
+
+    private RecommendationService newService() {
+        // The smallest chunk: a full basket & one more line
+        return new RecommendationService(orderRepository, meterRegistry, 6, 1, 100_000, 100, 0);
+    }
+
+    @Test
+    void countOrderSplitAcrossChunksOnce() {
+        // The first chunk (101 lines) ends with 2 of the 4 lines of the second order
+        addOrder(1, LongStream.rangeClosed(1, BasketService.MAX_LINES - 1).toArray());
+        addOrder(2, 1001, 1002, 1003, 1004);
+        addOrder(3, 1001, 1002);
+        RecommendationService service = newService();
+
+        Assertions.assertEquals(3, service.refresh());
+        Mockito.verify(orderRepository, Mockito.times(2)).findItemsOfOrdersAfter(ArgumentMatchers.anyLong(), ArgumentMatchers.any(Pageable.class));
+        Mockito.verify(orderRepository).findItemsOfOrdersAfter(ArgumentMatchers.eq(1L), ArgumentMatchers.any(Pageable.class));
+
+        // Every pair of the split order is counted, the first one not twice
+        Assertions.assertArrayEquals(new long[]{1002, 1003, 1004}, service.getFrequentlyBoughtWith(1001));
+        Assertions.assertArrayEquals(new long[]{1001, 1003, 1004}, service.getFrequentlyBoughtWith(1002));
+        Assertions.assertArrayEquals(new long[]{1001, 1002, 1003}, service.getFrequentlyBoughtWith(1004));
+        Assertions.assertEquals(0, service.refresh());
+
+        addOrder(4, 1003, 1004);
+        Assertions.assertEquals(1, service.refresh());
+        Assertions.assertArrayEquals(new long[]{1004, 1001, 1002}, service.getFrequentlyBoughtWith(1003));
+    }
+}
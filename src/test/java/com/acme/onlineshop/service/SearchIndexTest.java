@@ -0,0 +1,86 @@
+package com.acme.onlineshop.service;
+
+import com.acme.onlineshop.dto.SearchHit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+public class SearchIndexTest {
+
+    private SearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new SearchIndex();
+        index.putCategory(1, 0, "Music", "CDs, Vinyl & more", "/category/music");
+        index.putCategory(2, 1, "Vinyl", "Records", "/category/music/vinyl");
+        index.putCategory(3, 0, "Books", "Text Books & Novels", "/category/books");
+        index.putItem(10, 1, 2);
+        index.putItem(11, 3, 0);
+        index.putItem(12, 3, 0);
+    }
+
+    private static List<Long> ids(List<SearchHit> hits) {
+        return hits.stream().map(SearchHit::id).toList();
+    }
+
+    @Test
+    void rankNamesAboveDescriptions() {
+        List<SearchHit> hits = index.search("vinyl", 10);
+        // "Vinyl" is the name of category 2, but only part of the description of category 1
+        Assertions.assertEquals(List.of(2L, 1L), ids(hits));
+        Assertions.assertEquals("/category/music/vinyl", hits.get(0).link());
+        Assertions.assertEquals(1, index.search("vinyl", 1).size());
+    }
+
+    @Test
+    void matchLastTermAsPrefix() {
+        Assertions.assertEquals(List.of(3L), ids(index.search("Nov", 10)));
+        Assertions.assertTrue(index.search("Mus ic", 10).isEmpty());
+        Assertions.assertTrue(index.search(" ", 10).isEmpty());
+    }
+
+    @Test
+    void countItemsOfCategories() {
+        Assertions.assertEquals(1, index.search("music", 10).get(0).itemCount());
+        Assertions.assertEquals(2, index.search("books", 10).get(0).itemCount());
+
+        index.putCategory(3, 0, "Comics", "Graphic Novels", "/category/comics");
+        Assertions.assertTrue(index.search("text", 10).isEmpty());
+        Assertions.assertEquals(2, index.search("comics", 10).get(0).itemCount());
+
+        index.removeItem(11);
+        index.putItem(12, 1, 2);
+        Assertions.assertEquals(0, index.search("comics", 10).get(0).itemCount());
+        Assertions.assertEquals(2, index.getItemCount(1));
+        Assertions.assertEquals(2, index.getItemCount(2));
+        Assertions.assertEquals(2, index.getItemCount());
+    }
+
+    @Test
+    void restoreSnapshot() throws IOException {
+        index.removeItem(12);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        index.writeTo(outputStream);
+        SearchIndex restored = SearchIndex.readFrom(new ByteArrayInputStream(outputStream.toByteArray()));
+
+        Assertions.assertEquals(index.search("music books", 10), restored.search("music books", 10));
+        Assertions.assertEquals(11, restored.getMaxItemId());
+        Assertions.assertEquals(1, restored.getItemCount(3));
+        // Restored index accepts further changes
+        restored.putCategory(2, 1, "Jazz", "Records", "/category/music/jazz");
+        Assertions.assertEquals(List.of(2L), ids(restored.search("jazz", 10)));
+        Assertions.assertEquals(1, restored.search("jazz", 10).get(0).itemCount());
+        Assertions.assertThrows(IOException.class, () -> SearchIndex.readFrom(new ByteArrayInputStream(new byte[8])));
+    }
+
+    @Test
+    void ignoreCaseAndAccents() {
+        Assertions.assertEquals(List.of("cafe", "au", "lait", "42"), SearchIndex.tokenize("Café au-LAIT (42)"));
+    }
+}
@@ -0,0 +1,58 @@
+package com.acme.onlineshop.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class ImageTypeDetectorTest {
+
+    @Test
+    void detectPngFromHeader() throws IOException {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13};
+        ImageTypeDetector.Detection detection = ImageTypeDetector.detect(new ByteArrayInputStream(png));
+        Assertions.assertEquals(ImageTypeDetector.PNG, detection.mimeType());
+        Assertions.assertTrue(detection.fromHeader());
+    }
+
+    @Test
+    void detectJpegFromHeader() throws IOException {
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F'};
+        ImageTypeDetector.Detection detection = ImageTypeDetector.detect(new ByteArrayInputStream(jpeg));
+        Assertions.assertEquals(ImageTypeDetector.JPEG, detection.mimeType());
+        Assertions.assertTrue(detection.fromHeader());
+    }
+
+    @Test
+    void detectBitmapFromHeader() throws IOException {
+        byte[] bmp = new byte[ImageTypeDetector.HEADER_SIZE];
+        bmp[0] = 'B';
+        bmp[1] = 'M';
+        bmp[26] = 1;
+        bmp[28] = 24;
+        ImageTypeDetector.Detection detection = ImageTypeDetector.detect(new ByteArrayInputStream(bmp));
+        Assertions.assertEquals(ImageTypeDetector.BMP, detection.mimeType());
+        Assertions.assertTrue(detection.fromHeader());
+    }
+
+    @Test
+    void detectSvgWithTika() throws IOException {
+        byte[] svg = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <svg xmlns="http://www.w3.org/2000/svg" width="16" height="16"><rect width="16" height="16"/></svg>
+                """.getBytes(StandardCharsets.UTF_8);
+        ImageTypeDetector.Detection detection = ImageTypeDetector.detect(new ByteArrayInputStream(svg));
+        Assertions.assertEquals(ImageTypeDetector.SVG, detection.mimeType());
+        Assertions.assertFalse(detection.fromHeader());
+    }
+
+    @Test
+    void detectUnknownWithTika() throws IOException {
+        byte[] text = "Definitely not an image".getBytes(StandardCharsets.UTF_8);
+        ImageTypeDetector.Detection detection = ImageTypeDetector.detect(new ByteArrayInputStream(text));
+        Assertions.assertEquals("text/plain", detection.mimeType());
+        Assertions.assertFalse(detection.fromHeader());
+    }
+}
@@ -0,0 +1,58 @@
+package com.acme.onlineshop.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+public class LongLongHashMapTest {
+
+    @Test
+    void behaveLikeHashMap() {
+        LongLongHashMap map = new LongLongHashMap(4);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            // Small key range, so keys are removed & added again many times (incl. key 0)
+            long key = random.nextInt(2000) - 100;
+            switch (random.nextInt(3)) {
+                case 0 -> Assertions.assertEquals(Objects.requireNonNullElse(expected.put(key, (long) i), 0L), map.put(key, i));
+                case 1 -> Assertions.assertEquals(expected.merge(key, 5L, Long::sum), map.addTo(key, 5));
+                default -> Assertions.assertEquals(Objects.requireNonNullElse(expected.remove(key), 0L), map.remove(key));
+            }
+        }
+        Assertions.assertEquals(expected.size(), map.size());
+        Map<Long, Long> actual = new HashMap<>();
+        map.forEach(actual::put);
+        Assertions.assertEquals(expected, actual);
+        Assertions.assertEquals(-1, map.get(Long.MAX_VALUE, -1));
+
+        map.clear();
+        Assertions.assertTrue(map.isEmpty());
+        Assertions.assertFalse(map.containsKey(0));
+    }
+
+    @Test
+    void removeMatchingEntries() {
+        LongLongHashMap map = new LongLongHashMap(4);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 10_000; i++) {
+            long key = random.nextInt(50_000);
+            long value = random.nextInt(10);
+            map.put(key, value);
+            expected.put(key, value);
+        }
+        int removable = (int) expected.values().stream().filter(value -> value < 5).count();
+
+        Assertions.assertEquals(removable, map.removeIf((key, value) -> value < 5));
+        expected.values().removeIf(value -> value < 5);
+        Map<Long, Long> actual = new HashMap<>();
+        map.forEach(actual::put);
+        Assertions.assertEquals(expected, actual);
+        expected.forEach((key, value) -> Assertions.assertEquals(value, map.get(key, -1)));
+    }
+}